@@ -0,0 +1,36 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.accesslog.AccessLogContext;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TAsyncProcessor;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.server.AbstractNonblockingServer.AsyncFrameBuffer;
+
+public class AccessLogAsyncProcessor implements TAsyncProcessor, TProcessor {
+
+    private final AsyncMessageProcessor delegate;
+
+    public AccessLogAsyncProcessor(TAsyncProcessor delegate) {
+        this.delegate = TMultiplexedAsyncProcessor.toMessageProcessor(delegate);
+    }
+
+    @Override
+    public void process(AsyncFrameBuffer fb) throws TException {
+        TProtocol in = fb.getInputProtocol();
+        TMessage message = in.readMessageBegin();
+        AccessLogContext.enter(message.seqid, in.getTransport().getBytesRemainingInBuffer(), fb);
+        try {
+            this.delegate.process(fb, message);
+        } finally {
+            AccessLogContext.exit();
+        }
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        throw new TApplicationException(TApplicationException.INTERNAL_ERROR, "Async processor requires a nonblocking server");
+    }
+}
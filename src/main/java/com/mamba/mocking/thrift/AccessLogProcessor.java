@@ -0,0 +1,28 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.accesslog.AccessLogContext;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TProtocol;
+
+//为access log提供seqid、参数大小与客户端地址
+public class AccessLogProcessor implements TProcessor {
+
+    private final TProcessor delegate;
+
+    public AccessLogProcessor(TProcessor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        TMessage message = in.readMessageBegin();
+        AccessLogContext.enter(message.seqid, in.getTransport().getBytesRemainingInBuffer(), in.getTransport());
+        try {
+            this.delegate.process(new StoredMessageProtocol(in, message), out);
+        } finally {
+            AccessLogContext.exit();
+        }
+    }
+}
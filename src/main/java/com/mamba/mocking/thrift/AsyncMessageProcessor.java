@@ -0,0 +1,11 @@
+package com.mamba.mocking.thrift;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.server.AbstractNonblockingServer.AsyncFrameBuffer;
+
+//消息头已经读出的异步处理, 供TMultiplexedAsyncProcessor分发
+public interface AsyncMessageProcessor {
+
+    void process(AsyncFrameBuffer fb, TMessage message) throws TException;
+}
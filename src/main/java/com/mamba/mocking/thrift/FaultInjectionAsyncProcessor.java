@@ -0,0 +1,132 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.MockProcessorFactory.MethodSlot;
+import com.mamba.mocking.thrift.MockProcessorFactory.MockState;
+import com.mamba.mocking.thrift.fault.FaultType;
+import com.mamba.mocking.thrift.latency.CapacityModel;
+import com.mamba.mocking.thrift.metrics.MethodMetrics;
+import com.mamba.mocking.thrift.metrics.ServiceMetrics;
+import com.mamba.mocking.thrift.timer.WaitStrategy;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TAsyncProcessor;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.server.AbstractNonblockingServer.AsyncFrameBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+public class FaultInjectionAsyncProcessor implements TAsyncProcessor, TProcessor, AsyncMessageProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FaultInjectionAsyncProcessor.class);
+
+    //truncate: 不完整的响应交给selector写出后再关闭连接
+    private static final long TRUNCATE_CLOSE_DELAY = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final AsyncMessageProcessor delegate;
+
+    private final MockStateTable.StateRef state;
+
+    private final WaitStrategy waitStrategy;
+
+    private final ServiceMetrics serviceMetrics;
+
+    FaultInjectionAsyncProcessor(TAsyncProcessor delegate, MockStateTable.StateRef state, WaitStrategy waitStrategy, ServiceMetrics serviceMetrics) {
+        this.delegate = TMultiplexedAsyncProcessor.toMessageProcessor(delegate);
+        this.state = state;
+        this.waitStrategy = waitStrategy;
+        this.serviceMetrics = serviceMetrics;
+    }
+
+    @Override
+    public void process(AsyncFrameBuffer fb) throws TException {
+        process(fb, fb.getInputProtocol().readMessageBegin());
+    }
+
+    @Override
+    public void process(AsyncFrameBuffer fb, TMessage message) throws TException {
+        MockState state = this.state.get();
+        MethodSlot methodSlot = state.getMethodSlot(message.name);
+        MethodFault fault = methodSlot.getFault();
+        FaultType type = fault == null || message.type != TMessageType.CALL ? null : fault.decide();
+        if (type == null) {
+            CapacityModel capacity = message.type == TMessageType.CALL ? methodSlot.getCapacity() : null;
+            if (capacity != null && !capacity.admit()) {
+                reject(fb, message, capacity);
+                return;
+            }
+            this.delegate.process(fb, message);
+            return;
+        }
+        MethodMetrics metrics = fault.getMetrics();
+        metrics.recordFault();
+        if (type == FaultType.TIMEOUT) {
+            this.waitStrategy.schedule(fault.getHoldNanos(), () -> {
+                try {
+                    this.delegate.process(fb, message);
+                } catch (TException e) {
+                    LOGGER.error("Exception processing delayed message", e);
+                    fb.close();
+                }
+            });
+            return;
+        }
+        long startTime = metrics.begin();
+        TProtocol in = fb.getInputProtocol();
+        try {
+            TProtocolUtil.skip(in, TType.STRUCT);
+            in.readMessageEnd();
+        } catch (TException e) {
+            metrics.end(startTime, true);
+            throw e;
+        }
+        this.waitStrategy.schedule(type == FaultType.DROP ? fault.getHoldNanos() : fault.sampleDelay(), () -> {
+            try {
+                if (type == FaultType.RESET || type == FaultType.DROP) {
+                    fb.close();
+                    return;
+                }
+                fault.write(type, fb.getOutputProtocol(), message.seqid);
+                fb.responseReady();
+                if (type == FaultType.TRUNCATE) {
+                    this.waitStrategy.schedule(TRUNCATE_CLOSE_DELAY, fb::close);
+                }
+            } catch (TException e) {
+                LOGGER.error("Exception writing to internal frame buffer", e);
+                fb.close();
+            } finally {
+                metrics.end(startTime, true);
+            }
+        });
+    }
+
+    private void reject(AsyncFrameBuffer fb, TMessage message, CapacityModel capacity) throws TException {
+        MethodMetrics metrics = this.serviceMetrics.method(message.name);
+        metrics.recordRejection();
+        long startTime = metrics.begin();
+        try {
+            TProtocol in = fb.getInputProtocol();
+            TProtocolUtil.skip(in, TType.STRUCT);
+            in.readMessageEnd();
+            if (capacity.isReset()) {
+                fb.close();
+            } else {
+                MethodFault.writeApplicationException(fb.getOutputProtocol(), message.name, message.seqid, "Capacity exceeded: " + message.name);
+                fb.responseReady();
+            }
+        } finally {
+            metrics.end(startTime, true);
+        }
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        throw new TApplicationException(TApplicationException.INTERNAL_ERROR, "Async processor requires a nonblocking server");
+    }
+}
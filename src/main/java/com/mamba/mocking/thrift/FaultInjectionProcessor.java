@@ -0,0 +1,122 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.MockProcessorFactory.MethodSlot;
+import com.mamba.mocking.thrift.MockProcessorFactory.MockState;
+import com.mamba.mocking.thrift.fault.FaultType;
+import com.mamba.mocking.thrift.latency.CapacityModel;
+import com.mamba.mocking.thrift.metrics.MethodMetrics;
+import com.mamba.mocking.thrift.metrics.ServiceMetrics;
+import com.mamba.mocking.thrift.timer.WaitStrategy;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.net.SocketException;
+
+//故障注入与容量模型的拒绝: 未配置或本次未命中时交给原processor(generated/raw)处理.
+//响应在这里直接写出, 不经过TBaseProcessor, 避免thrift对每个TApplicationException输出error日志
+public class FaultInjectionProcessor implements TProcessor {
+
+    private final TProcessor delegate;
+
+    private final MockStateTable.StateRef state;
+
+    private final WaitStrategy waitStrategy;
+
+    private final ServiceMetrics serviceMetrics;
+
+    FaultInjectionProcessor(TProcessor delegate, MockStateTable.StateRef state, WaitStrategy waitStrategy, ServiceMetrics serviceMetrics) {
+        this.delegate = delegate;
+        this.state = state;
+        this.waitStrategy = waitStrategy;
+        this.serviceMetrics = serviceMetrics;
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        MockState state = this.state.get();
+        if (!state.interceptsMessages()) {
+            this.delegate.process(in, out);
+            return;
+        }
+        TMessage message = in.readMessageBegin();
+        MethodSlot methodSlot = state.getMethodSlot(message.name);
+        MethodFault fault = methodSlot.getFault();
+        FaultType type = fault == null || message.type != TMessageType.CALL ? null : fault.decide();
+        if (type == null) {
+            CapacityModel capacity = message.type == TMessageType.CALL ? methodSlot.getCapacity() : null;
+            if (capacity != null && !capacity.admit()) {
+                reject(in, out, message, capacity);
+                return;
+            }
+            this.delegate.process(new StoredMessageProtocol(in, message), out);
+            return;
+        }
+        MethodMetrics metrics = fault.getMetrics();
+        metrics.recordFault();
+        try {
+            if (type == FaultType.TIMEOUT) {
+                this.waitStrategy.await(fault.getHoldNanos());
+                this.delegate.process(new StoredMessageProtocol(in, message), out);
+                return;
+            }
+            long startTime = metrics.begin();
+            try {
+                TProtocolUtil.skip(in, TType.STRUCT);
+                in.readMessageEnd();
+                this.waitStrategy.await(type == FaultType.DROP ? fault.getHoldNanos() : fault.sampleDelay());
+                if (type == FaultType.ERROR || type == FaultType.EXCEPTION) {
+                    fault.write(type, out, message.seqid);
+                    return;
+                }
+                if (type == FaultType.TRUNCATE) {
+                    fault.write(type, out, message.seqid);
+                }
+            } finally {
+                metrics.end(startTime, true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TException(e);
+        }
+        close(out.getTransport(), type == FaultType.RESET);
+        throw new TTransportException(TTransportException.END_OF_FILE, "Injected fault: " + type);
+    }
+
+    private void reject(TProtocol in, TProtocol out, TMessage message, CapacityModel capacity) throws TException {
+        MethodMetrics metrics = this.serviceMetrics.method(message.name);
+        metrics.recordRejection();
+        long startTime = metrics.begin();
+        try {
+            TProtocolUtil.skip(in, TType.STRUCT);
+            in.readMessageEnd();
+            if (!capacity.isReset()) {
+                MethodFault.writeApplicationException(out, message.name, message.seqid, "Capacity exceeded: " + message.name);
+                return;
+            }
+        } finally {
+            metrics.end(startTime, true);
+        }
+        close(out.getTransport(), true);
+        throw new TTransportException(TTransportException.END_OF_FILE, "Capacity exceeded: " + message.name);
+    }
+
+    //reset且transport为TSocket时设置SO_LINGER=0, 关闭时发送RST
+    private static void close(TTransport transport, boolean reset) {
+        if (reset && transport instanceof TSocket) {
+            try {
+                ((TSocket) transport).getSocket().setSoLinger(true, 0);
+            } catch (SocketException e) {
+                //ignore, 退化为正常关闭
+            }
+        }
+        transport.close();
+    }
+}
@@ -0,0 +1,100 @@
+package com.mamba.mocking.thrift;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TAsyncProcessor;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.server.AbstractNonblockingServer.AsyncFrameBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+//首次调用(或预热)时创建processor, 创建期间同一service的请求等待; 创建失败后该service的调用都返回INTERNAL_ERROR, 需修正配置后重启
+public class LazyProcessor implements TProcessor, TAsyncProcessor, AsyncMessageProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazyProcessor.class);
+
+    private final String serviceName;
+
+    private final Callable<TProcessor> processorFactory;
+
+    private volatile TProcessor processor;
+
+    private volatile AsyncMessageProcessor messageProcessor;
+
+    private volatile Throwable failure;
+
+    LazyProcessor(String serviceName, Callable<TProcessor> processorFactory) {
+        this.serviceName = serviceName;
+        this.processorFactory = processorFactory;
+    }
+
+    public boolean init() {
+        if (this.processor != null) {
+            return true;
+        }
+        if (this.failure != null) {
+            return false;
+        }
+        synchronized (this) {
+            if (this.processor == null && this.failure == null) {
+                long startTime = System.nanoTime();
+                try {
+                    TProcessor processor = this.processorFactory.call();
+                    if (processor instanceof TAsyncProcessor) {
+                        this.messageProcessor = TMultiplexedAsyncProcessor.toMessageProcessor((TAsyncProcessor) processor);
+                    }
+                    this.processor = processor;
+                    LOGGER.info("Service initialized: {}, cost {}ms", this.serviceName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                } catch (Exception | LinkageError e) {
+                    this.failure = e;
+                    LOGGER.error("Service initialize failed: {}", this.serviceName, e);
+                }
+            }
+            return this.processor != null;
+        }
+    }
+
+    @Override
+    public void process(AsyncFrameBuffer fb) throws TException {
+        process(fb, fb.getInputProtocol().readMessageBegin());
+    }
+
+    @Override
+    public void process(AsyncFrameBuffer fb, TMessage message) throws TException {
+        if (init()) {
+            this.messageProcessor.process(fb, message);
+            return;
+        }
+        reject(fb.getInputProtocol(), fb.getOutputProtocol(), message);
+        fb.responseReady();
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        if (init()) {
+            this.processor.process(in, out);
+            return;
+        }
+        reject(in, out, in.readMessageBegin());
+    }
+
+    private void reject(TProtocol in, TProtocol out, TMessage message) throws TException {
+        TProtocolUtil.skip(in, TType.STRUCT);
+        in.readMessageEnd();
+        if (message.type != TMessageType.CALL) {
+            return;
+        }
+        out.writeMessageBegin(new TMessage(message.name, TMessageType.EXCEPTION, message.seqid));
+        new TApplicationException(TApplicationException.INTERNAL_ERROR, "Service initialize failed: " + this.serviceName).write(out);
+        out.writeMessageEnd();
+        out.getTransport().flush();
+    }
+}
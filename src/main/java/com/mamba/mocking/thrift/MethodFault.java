@@ -0,0 +1,131 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.accesslog.AccessLog;
+import com.mamba.mocking.thrift.fault.FaultPolicy;
+import com.mamba.mocking.thrift.fault.FaultType;
+import com.mamba.mocking.thrift.latency.LatencyModel;
+import com.mamba.mocking.thrift.metrics.MethodMetrics;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.meta_data.FieldMetaData;
+import org.apache.thrift.meta_data.StructMetaData;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+
+import java.util.Map;
+
+//方法的故障注入: 声明异常的响应启动时构造, 请求时只做一次随机判定
+class MethodFault {
+
+    private static final TStruct TRUNCATED_STRUCT = new TStruct("");
+
+    private static final TField TRUNCATED_FIELD = new TField("success", TType.STRUCT, (short) 0);
+
+    private final String serviceName;
+
+    private final String methodName;
+
+    private final FaultPolicy policy;
+
+    private final LatencyModel latency;
+
+    private final MethodMetrics metrics;
+
+    private final AccessLog accessLog;
+
+    //设置了异常字段的_result, 只读
+    private final TBase exceptionResult;
+
+    private MethodFault(String serviceName, String methodName, FaultPolicy policy, LatencyModel latency, MethodMetrics metrics, AccessLog accessLog, TBase exceptionResult) {
+        this.serviceName = serviceName;
+        this.methodName = methodName;
+        this.policy = policy;
+        this.latency = latency;
+        this.metrics = metrics;
+        this.accessLog = accessLog;
+        this.exceptionResult = exceptionResult;
+    }
+
+    static MethodFault bind(String serviceName, Class<?> serviceClass, String methodName, FaultPolicy policy, LatencyModel latency, MethodMetrics metrics, AccessLog accessLog) throws Exception {
+        TBase exceptionResult = null;
+        if (policy.contains(FaultType.EXCEPTION)) {
+            exceptionResult = newExceptionResult(serviceClass, methodName, policy.getExceptionType());
+        }
+        return new MethodFault(serviceName, methodName, policy, latency, metrics, accessLog, exceptionResult);
+    }
+
+    //在_result中按类型查找声明的异常字段, exceptionType为null时取第一个
+    private static TBase newExceptionResult(Class<?> serviceClass, String methodName, String exceptionType) throws Exception {
+        Class<? extends TBase> resultClass;
+        try {
+            resultClass = (Class<? extends TBase>) Class.forName(serviceClass.getName() + '$' + methodName + "_result", true, serviceClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Oneway method can not throw exception: " + methodName);
+        }
+        for (Map.Entry<? extends TFieldIdEnum, FieldMetaData> entry : FieldMetaData.getStructMetaDataMap(resultClass).entrySet()) {
+            TFieldIdEnum field = entry.getKey();
+            if (field.getThriftFieldId() == 0 || !(entry.getValue().valueMetaData instanceof StructMetaData)) {
+                continue;
+            }
+            Class<? extends TBase> exceptionClass = ((StructMetaData) entry.getValue().valueMetaData).structClass;
+            if (exceptionType == null || exceptionType.equals(exceptionClass.getSimpleName()) || exceptionType.equals(exceptionClass.getName())) {
+                TBase result = resultClass.newInstance();
+                result.setFieldValue(field, exceptionClass.newInstance());
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Exception not declared in method " + methodName + ": " + (exceptionType == null ? "*" : exceptionType));
+    }
+
+    FaultType decide() {
+        return this.policy.decide();
+    }
+
+    MethodMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    long getHoldNanos() {
+        return this.policy.getHoldNanos();
+    }
+
+    long sampleDelay() {
+        long delay = this.latency.sample();
+        this.metrics.recordDelay(delay);
+        this.accessLog.log(this.serviceName, this.methodName, delay);
+        return delay;
+    }
+
+    void write(FaultType type, TProtocol out, int seqid) throws TException {
+        if (type == FaultType.ERROR) {
+            writeApplicationException(out, this.methodName, seqid, "Injected fault: " + this.methodName);
+            return;
+        }
+        if (type == FaultType.EXCEPTION) {
+            out.writeMessageBegin(new TMessage(this.methodName, TMessageType.REPLY, seqid));
+            this.exceptionResult.write(out);
+            out.writeMessageEnd();
+        } else if (type == FaultType.TRUNCATE) {
+            //只写出消息头与第一个字段头, 客户端读取字段值时遇到连接关闭; framed transport下为一个不完整消息的帧
+            out.writeMessageBegin(new TMessage(this.methodName, TMessageType.REPLY, seqid));
+            out.writeStructBegin(TRUNCATED_STRUCT);
+            out.writeFieldBegin(TRUNCATED_FIELD);
+        } else {
+            throw new IllegalArgumentException("Fault has no response: " + type);
+        }
+        out.getTransport().flush();
+    }
+
+    static void writeApplicationException(TProtocol out, String methodName, int seqid, String message) throws TException {
+        out.writeMessageBegin(new TMessage(methodName, TMessageType.EXCEPTION, seqid));
+        new TApplicationException(TApplicationException.INTERNAL_ERROR, message).write(out);
+        out.writeMessageEnd();
+        out.getTransport().flush();
+    }
+}
@@ -1,28 +1,64 @@
 package com.mamba.mocking.thrift;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mamba.mocking.thrift.accesslog.AccessLog;
+import com.mamba.mocking.thrift.conf.CapacityModelParser;
+import com.mamba.mocking.thrift.conf.FaultPolicyParser;
+import com.mamba.mocking.thrift.conf.LatencyModelParser;
+import com.mamba.mocking.thrift.conf.PayloadGeneratorParser;
+import com.mamba.mocking.thrift.conf.ServiceConf;
+import com.mamba.mocking.thrift.dispatch.DispatchEngine;
+import com.mamba.mocking.thrift.dispatch.IfaceGenerator;
+import com.mamba.mocking.thrift.dispatch.MockMethod;
+import com.mamba.mocking.thrift.fixture.FixtureFile;
+import com.mamba.mocking.thrift.fixture.FixtureValue;
+import com.mamba.mocking.thrift.latency.CapacityModel;
+import com.mamba.mocking.thrift.latency.LatencyModel;
+import com.mamba.mocking.thrift.latency.LatencyModels;
+import com.mamba.mocking.thrift.metrics.MethodMetrics;
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import com.mamba.mocking.thrift.metrics.ServiceMetrics;
+import com.mamba.mocking.thrift.rule.RuleMatcher;
+import com.mamba.mocking.thrift.rule.RuleParser;
+import com.mamba.mocking.thrift.template.ResponseTemplate;
+import com.mamba.mocking.thrift.timer.WaitStrategies;
+import com.mamba.mocking.thrift.timer.WaitStrategy;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import org.apache.thrift.TBase;
 import org.apache.thrift.TBaseAsyncProcessor;
+import org.apache.thrift.TAsyncProcessor;
 import org.apache.thrift.TBaseProcessor;
 import org.apache.thrift.TProcessor;
 import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TMemoryBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.BiFunction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public class MockProcessorFactory {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(MockProcessorFactory.class);
+
     private final Class<?> serviceClass;
 
     private final Class<?> ifaceClass;
@@ -31,14 +67,34 @@ public class MockProcessorFactory {
 
     private final Constructor<? extends TBaseAsyncProcessor> asyncProcessorConstructor;
 
+    private final WaitStrategy waitStrategy;
+
+    private final ServiceMetrics serviceMetrics;
+
+    private final AccessLog accessLog;
+
+    //方法名到MockState中方法下标的映射, 创建时按方法名排序确定, 所有MockState共用; 下标methodIndexMap.size()为未知方法
+    private final Map<String, Integer> methodIndexMap;
+
+    //当前生效的返回值与延迟, 与同一endpoint的其它service共用一个MockStateTable, 热加载与场景切换时整体替换;
+    //请求路径只做一次volatile读, 不会看到部分生效的配置
+    private final MockStateTable.StateRef state;
+
+    private DispatchEngine dispatchEngine = DispatchEngine.GENERATED;
+
+    private TProtocolFactory protocolFactory;
+
     private static final Gson GSON = new Gson();
 
     public MockProcessorFactory(Class<?> serviceClass) throws Exception {
-        Map<String, Class<?>> innerClassMap = Arrays.stream(serviceClass.getClasses()).collect(Collectors.toMap(Class::getSimpleName, Function.identity()));
-        Class<?> ifaceClass = innerClassMap.get("Iface");
-        Class<?> asyncIface = innerClassMap.get("AsyncIface");
-        Class<?> processorClass = innerClassMap.get("Processor");
-        Class<?> asyncProcessorClass = innerClassMap.get("AsyncProcessor");
+        this(serviceClass, WaitStrategies.sleep(), new MetricsRegistry(false, null).service(serviceClass.getSimpleName()), AccessLog.OFF, new MockStateTable());
+    }
+
+    public MockProcessorFactory(Class<?> serviceClass, WaitStrategy waitStrategy, ServiceMetrics serviceMetrics, AccessLog accessLog, MockStateTable stateTable) throws Exception {
+        Class<?> ifaceClass = innerClass(serviceClass, "Iface");
+        Class<?> asyncIface = innerClass(serviceClass, "AsyncIface");
+        Class<?> processorClass = innerClass(serviceClass, "Processor");
+        Class<?> asyncProcessorClass = innerClass(serviceClass, "AsyncProcessor");
         if (ifaceClass == null || !ifaceClass.isInterface()
                 || asyncIface == null || !asyncIface.isInterface()
                 || processorClass == null || !TBaseProcessor.class.isAssignableFrom(processorClass)
@@ -49,80 +105,583 @@ public class MockProcessorFactory {
         this.ifaceClass = ifaceClass;
         this.processorConstructor = ((Class<? extends TBaseProcessor>) processorClass).getConstructor(ifaceClass);
         this.asyncProcessorConstructor = ((Class<? extends TBaseAsyncProcessor>) asyncProcessorClass).getConstructor(asyncIface);
+        this.waitStrategy = waitStrategy;
+        this.serviceMetrics = serviceMetrics;
+        this.accessLog = accessLog;
+        this.methodIndexMap = genMethodIndexMap(ifaceClass);
+        this.state = stateTable.register();
+    }
+
+    public TProcessor newProcessor(Map<String, String> mockMethodReturnMap, Map<String, Integer> mockMethodDelayMap, int defaultDelay) throws Exception {
+        return newProcessor(legacyConf(mockMethodReturnMap, mockMethodDelayMap, defaultDelay), null);
     }
 
-    public TBaseProcessor newProcessor(Map<String, String> mockMethodReturnMap, Map<String, Integer> mockMethodDelayMap, int defaultDelay) throws Exception {
-        return newProcessor(mockMethodReturnMap, mockMethodDelayMap, defaultDelay, this.processorConstructor, (args, mockReturn) -> mockReturn.getValue());
+    public TProcessor newProcessor(ServiceConf serviceConf, TProtocolFactory protocolFactory) throws Exception {
+        this.dispatchEngine = serviceConf.getDispatchEngine();
+        this.protocolFactory = protocolFactory;
+        publish(newState(serviceConf));
+        return buildProcessor();
     }
 
-    public TBaseAsyncProcessor newAsyncProcessor(Map<String, String> mockMethodReturnMap, Map<String, Integer> mockMethodDelayMap, int defaultDelay) throws Exception {
-        return newProcessor(mockMethodReturnMap, mockMethodDelayMap, defaultDelay, this.asyncProcessorConstructor, (args, mockReturn) -> {
-            AsyncMethodCallback callback = (AsyncMethodCallback) args[args.length - 1];
-            callback.onComplete(mockReturn.getValue());
+    private TProcessor buildProcessor() throws Exception {
+        TProcessor processor = newProcessor(this.dispatchEngine, this.processorConstructor, false, (callback, value, delay) -> {
+            this.waitStrategy.await(delay);
+            return value;
+        });
+        if (this.dispatchEngine == DispatchEngine.RAW) {
+            processor = new RawReplayProcessor(processor, this.state, this.waitStrategy);
+        }
+        //故障与容量模型可热加载, 始终包装; 均未配置时只多一次volatile读
+        return new FaultInjectionProcessor(processor, this.state, this.waitStrategy, this.serviceMetrics);
+    }
+
+    public TProcessor newAsyncProcessor(Map<String, String> mockMethodReturnMap, Map<String, Integer> mockMethodDelayMap, int defaultDelay) throws Exception {
+        return newAsyncProcessor(legacyConf(mockMethodReturnMap, mockMethodDelayMap, defaultDelay), null);
+    }
+
+    public TProcessor newAsyncProcessor(ServiceConf serviceConf, TProtocolFactory protocolFactory) throws Exception {
+        this.dispatchEngine = serviceConf.getDispatchEngine();
+        this.protocolFactory = protocolFactory;
+        publish(newState(serviceConf));
+        return buildAsyncProcessor();
+    }
+
+    private TProcessor buildAsyncProcessor() throws Exception {
+        TAsyncProcessor processor = newProcessor(this.dispatchEngine, this.asyncProcessorConstructor, true, (callback, value, delay) -> {
+            //延迟由时间轮完成, 不占用worker线程
+            this.waitStrategy.schedule(delay, () -> callback.onComplete(value));
             return null;
         });
+        if (this.dispatchEngine == DispatchEngine.RAW) {
+            processor = new RawReplayAsyncProcessor(processor, this.state, this.waitStrategy);
+        }
+        return new FaultInjectionAsyncProcessor(processor, this.state, this.waitStrategy, this.serviceMetrics);
+    }
+
+    //解析并校验新的返回值与延迟, 失败时抛出异常, 不影响当前生效的配置.
+    public MockState newState(ServiceConf serviceConf) throws Exception {
+        LatencyModel defaultLatency = serviceConf.getDefaultLatency();
+        Map<String, String> mockMethodReturnMap = serviceConf.getMockMethodReturnMap();
+        MockReturn mockReturnDefault = MockReturn.of(defaultLatency, null);
+        Map<String, Object[]> generatedMap = genGeneratedMap(mockMethodReturnMap, serviceConf.getMockMethodReturnFileMap(), serviceConf.getMockMethodGenerateMap());
+        Map<String, MockReturn> mockReturnMap = genMockReturnMap(this.serviceClass, this.ifaceClass, mockMethodReturnMap, serviceConf.getMockMethodReturnFileMap(), generatedMap, serviceConf.getMockMethodLatencyMap(), defaultLatency);
+        Map<String, RuleMatcher<MockReturn>> ruleMatcherMap = genRuleMatcherMap(serviceConf.getMockMethodRulesMap(), mockReturnMap, mockReturnDefault);
+        Map<String, CapacityModel> capacityDefineMap = new HashMap<>();
+        Map<String, CapacityModel> capacityMap = genCapacityMap(serviceConf.getMockMethodCapacityMap(), capacityDefineMap);
+        Map<String, RawReply> rawReplyMap = this.dispatchEngine == DispatchEngine.RAW ? genRawReplyMap(mockReturnMap, mockReturnDefault, ruleMatcherMap, capacityMap, this.protocolFactory) : Collections.emptyMap();
+        Map<String, MethodFault> faultMap = genFaultMap(serviceConf.getMockMethodFaultMap(), mockReturnMap, mockReturnDefault);
+        MethodSlot[] methodSlots = new MethodSlot[this.methodIndexMap.size() + 1];
+        for (Map.Entry<String, Integer> methodIndexEntry : this.methodIndexMap.entrySet()) {
+            String name = methodIndexEntry.getKey();
+            methodSlots[methodIndexEntry.getValue()] = new MethodSlot(mockReturnMap.getOrDefault(name, mockReturnDefault), ruleMatcherMap.get(name), rawReplyMap.get(name), faultMap.get(name), capacityMap.get(name));
+        }
+        methodSlots[this.methodIndexMap.size()] = new MethodSlot(mockReturnDefault, null, null, null, null);
+        return new MockState(this.methodIndexMap, methodSlots, !faultMap.isEmpty() || !capacityMap.isEmpty(), generatedMap, capacityDefineMap);
+    }
+
+    //lazy: 启动时只加载service类, 返回值解析、Iface生成与processor创建推迟到首次调用(或预热);
+    //首次调用前切换场景或热加载只替换待创建的state, 不解析
+    public LazyProcessor newLazyProcessor(boolean async, ServiceConf serviceConf, TProtocolFactory protocolFactory) {
+        this.dispatchEngine = serviceConf.getDispatchEngine();
+        this.protocolFactory = protocolFactory;
+        this.state.getTable().defer(this.state.getIndex(), () -> newState(serviceConf));
+        return new LazyProcessor(this.serviceMetrics.getName(), () -> {
+            this.state.getTable().init(this.state.getIndex());
+            return async ? buildAsyncProcessor() : buildProcessor();
+        });
+    }
+
+    private void publish(MockState state) {
+        this.state.getTable().set(this.state.getIndex(), state);
+    }
+
+    public MockStateTable getStateTable() {
+        return this.state.getTable();
+    }
+
+    public int getStateIndex() {
+        return this.state.getIndex();
+    }
+
+    public Class<?> getServiceClass() {
+        return this.serviceClass;
+    }
+
+    public DispatchEngine getDispatchEngine() {
+        return this.dispatchEngine;
+    }
+
+    public ServiceMetrics getServiceMetrics() {
+        return this.serviceMetrics;
+    }
+
+    //按生成代码的命名约定直接加载; getClasses()会加载全部内部类(每个方法的args/result), service多时启动慢
+    private static Class<?> innerClass(Class<?> serviceClass, String simpleName) {
+        try {
+            Class<?> innerClass = Class.forName(serviceClass.getName() + '$' + simpleName, false, serviceClass.getClassLoader());
+            return Modifier.isPublic(innerClass.getModifiers()) ? innerClass : null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    //Thrift的service方法不能重载, 方法名唯一
+    private static Map<String, Integer> genMethodIndexMap(Class<?> ifaceClass) {
+        Method[] methods = ifaceClass.getMethods();
+        String[] names = new String[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            names[i] = methods[i].getName();
+        }
+        Arrays.sort(names);
+        Map<String, Integer> methodIndexMap = new HashMap<>((int) Math.ceil(names.length / 0.75));
+        for (int i = 0; i < names.length; i++) {
+            methodIndexMap.put(names[i], i);
+        }
+        return Collections.unmodifiableMap(methodIndexMap);
+    }
+
+    //旧接口的delay单位为毫秒
+    private ServiceConf legacyConf(Map<String, String> mockMethodReturnMap, Map<String, Integer> mockMethodDelayMap, int defaultDelay) {
+        Map<String, LatencyModel> mockMethodLatencyMap = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : mockMethodDelayMap.entrySet()) {
+            mockMethodLatencyMap.put(entry.getKey(), LatencyModels.fixed(TimeUnit.MILLISECONDS.toNanos(Math.max(entry.getValue(), 0))));
+        }
+        return new ServiceConf(this.serviceClass.getName(), LatencyModels.fixed(TimeUnit.MILLISECONDS.toNanos(Math.max(defaultDelay, 0))), DispatchEngine.GENERATED, mockMethodReturnMap, mockMethodLatencyMap);
     }
 
-    private <T extends TProcessor> T newProcessor(Map<String, String> mockMethodReturnMap, Map<String, Integer> mockMethodDelayMap, int defaultDelay, Constructor<T> processorConstructor, BiFunction<Object[], MockReturn, Object> mockCallback) throws Exception {
-        MockReturn mockReturnDefault = new MockReturn(Math.max(defaultDelay, 0), null);
-        Map<String, MockReturn> mockReturnMap = genMockReturnMap(this.ifaceClass, mockMethodReturnMap, mockMethodDelayMap, mockReturnDefault.getDelay());
+    private <T extends TProcessor> T newProcessor(DispatchEngine dispatchEngine, Constructor<T> processorConstructor, boolean async, MockCallback mockCallback) throws Exception {
         Class<?> ifaceClass = processorConstructor.getParameterTypes()[0];
-        MockInvocation invocation = new MockInvocation(this.serviceClass.getSimpleName(), mockReturnMap, mockReturnDefault, mockCallback);
-        Object proxyIface = Proxy.newProxyInstance(ifaceClass.getClassLoader(), new Class<?>[]{ifaceClass}, invocation);
-        return processorConstructor.newInstance(proxyIface);
+        String serviceName = this.serviceMetrics.getName();
+        Function<Method, MockMethod> mockMethodFactory = method -> new MockMethodInvoker(serviceName, method.getName(), this.methodIndexMap.get(method.getName()), this.state, mockCallback, this.serviceMetrics.method(method.getName()), this.accessLog);
+        MockMethod mockMethodDefault = new MockMethodInvoker(serviceName, "*", this.methodIndexMap.size(), this.state, mockCallback, this.serviceMetrics.method("*"), this.accessLog);
+        Object iface = null;
+        if (dispatchEngine != DispatchEngine.PROXY) {
+            try {
+                iface = IfaceGenerator.newInstance(ifaceClass, mockMethodFactory);
+            } catch (Exception | LinkageError e) {
+                LOGGER.warn("Generate iface failed, fallback to proxy: {}", ifaceClass.getName(), e);
+            }
+        }
+        if (iface == null) {
+            MockInvocation invocation = new MockInvocation(genMockMethodMap(ifaceClass, mockMethodFactory), mockMethodDefault, async);
+            iface = Proxy.newProxyInstance(ifaceClass.getClassLoader(), new Class<?>[]{ifaceClass}, invocation);
+        }
+        return processorConstructor.newInstance(iface);
+    }
+
+    //retrun、returnFile优先于generate; 生成结果按(方法, generate配置)缓存在MockState中, 热加载时配置未变则直接复用
+    private Map<String, Object[]> genGeneratedMap(Map<String, String> mockMethodReturnMap, Map<String, String> mockMethodReturnFileMap, Map<String, String> mockMethodGenerateMap) throws Exception {
+        if (mockMethodGenerateMap.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        MockState previous = this.state.get();
+        Map<String, Object[]> generatedMap = new HashMap<>();
+        for (Map.Entry<String, String> entry : mockMethodGenerateMap.entrySet()) {
+            String name = entry.getKey();
+            String mockMethodReturn = mockMethodReturnMap.get(name);
+            if (mockMethodReturn != null && !mockMethodReturn.trim().isEmpty() || mockMethodReturnFileMap.containsKey(name)) {
+                continue;
+            }
+            String key = name + '=' + entry.getValue();
+            Object[] values = previous == null ? null : previous.generatedMap.get(key);
+            if (values == null) {
+                long startTime = System.nanoTime();
+                values = PayloadGeneratorParser.parseGenerator(entry.getValue()).generate(this.serviceClass, name);
+                LOGGER.info("Generated {}.{}: {}, cost {}ms", this.serviceMetrics.getName(), name, entry.getValue(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            }
+            generatedMap.put(key, values);
+            generatedMap.put(name, values);
+        }
+        return generatedMap;
+    }
+
+    //规则中未指定的返回值/延迟沿用方法的配置
+    private Map<String, RuleMatcher<MockReturn>> genRuleMatcherMap(Map<String, String> mockMethodRulesMap, Map<String, MockReturn> mockReturnMap, MockReturn mockReturnDefault) {
+        if (mockMethodRulesMap.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, RuleMatcher<MockReturn>> ruleMatcherMap = new HashMap<>();
+        for (Method method : this.ifaceClass.getMethods()) {
+            String name = method.getName();
+            String rules = mockMethodRulesMap.get(name);
+            if (rules == null || rules.trim().isEmpty()) {
+                continue;
+            }
+            MockReturn mockReturn = mockReturnMap.getOrDefault(name, mockReturnDefault);
+            ruleMatcherMap.put(name, RuleParser.parseRules(rules, this.serviceClass, method, rule -> {
+                JsonElement value = rule.has("retrun") ? rule.get("retrun") : rule.get("return");
+                String latency = getString(rule, "latency", getString(rule, "delay", null));
+                LatencyModel ruleLatency = latency == null ? mockReturn.getLatency() : LatencyModelParser.parseLatencyModel(latency);
+                return value == null ? mockReturn.withLatency(ruleLatency) : parseReturn(ruleLatency, value, this.serviceClass, method);
+            }));
+        }
+        return ruleMatcherMap;
     }
 
-    private static Map<String, MockReturn> genMockReturnMap(Class<?> ifaceClass, Map<String, String> mockMethodReturnMap, Map<String, Integer> mockMethodDelayMap, int defaultDelay) {
+    //故障响应的延迟使用方法的配置(不按参数匹配规则)
+    private Map<String, MethodFault> genFaultMap(Map<String, String> mockMethodFaultMap, Map<String, MockReturn> mockReturnMap, MockReturn mockReturnDefault) throws Exception {
+        if (mockMethodFaultMap.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        String serviceName = this.serviceMetrics.getName();
+        Map<String, MethodFault> faultMap = new HashMap<>();
+        for (Method method : this.ifaceClass.getMethods()) {
+            String name = method.getName();
+            String fault = mockMethodFaultMap.get(name);
+            if (fault == null || fault.trim().isEmpty()) {
+                continue;
+            }
+            LatencyModel latency = mockReturnMap.getOrDefault(name, mockReturnDefault).getLatency();
+            faultMap.put(name, MethodFault.bind(serviceName, this.serviceClass, name, FaultPolicyParser.parseFaultPolicy(fault), latency, this.serviceMetrics.method(name), this.accessLog));
+        }
+        return faultMap;
+    }
+
+    //按(方法, capacity配置)复用上一个MockState中的模型, 热加载时配置未变则保留排队状态
+    private Map<String, CapacityModel> genCapacityMap(Map<String, String> mockMethodCapacityMap, Map<String, CapacityModel> capacityDefineMap) {
+        if (mockMethodCapacityMap.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        MockState previous = this.state.get();
+        Map<String, CapacityModel> capacityMap = new HashMap<>();
+        for (Method method : this.ifaceClass.getMethods()) {
+            String name = method.getName();
+            String capacity = mockMethodCapacityMap.get(name);
+            String key = name;
+            if (capacity == null || capacity.trim().isEmpty()) {
+                capacity = mockMethodCapacityMap.get("*");
+                key = "*";
+                if (capacity == null || capacity.trim().isEmpty()) {
+                    continue;
+                }
+            }
+            String defineKey = key + '=' + capacity;
+            CapacityModel capacityModel = capacityDefineMap.get(defineKey);
+            if (capacityModel == null) {
+                capacityModel = previous == null ? null : previous.capacityDefineMap.get(defineKey);
+                if (capacityModel == null) {
+                    capacityModel = CapacityModelParser.parseCapacityModel(capacity);
+                }
+                capacityDefineMap.put(defineKey, capacityModel);
+            }
+            capacityMap.put(name, capacityModel);
+        }
+        return capacityMap;
+    }
+
+    private static String getString(JsonObject object, String name, String defaultValue) {
+        JsonElement value = object.get(name);
+        return value == null || value.isJsonNull() ? defaultValue : value.getAsString();
+    }
+
+    //只预编码固定返回值的方法; 返回值模板、按参数匹配规则、配置了容量模型、oneway、原始类型返回null(TBaseProcessor会报错)的方法仍交给原processor处理.
+    //二进制返回值文件本身就是TBinaryProtocol编码的result struct, 二进制协议时直接写出映射的内容, 不解析; json文件保持首次调用时解析
+    private Map<String, RawReply> genRawReplyMap(Map<String, MockReturn> mockReturnMap, MockReturn mockReturnDefault, Map<String, RuleMatcher<MockReturn>> ruleMatcherMap, Map<String, CapacityModel> capacityMap, TProtocolFactory protocolFactory) throws Exception {
+        TProtocolFactory factory = protocolFactory == null ? new TBinaryProtocol.Factory() : protocolFactory;
+        boolean binary = factory.getProtocol(new TMemoryBuffer(0)).getClass() == TBinaryProtocol.class;
+        String serviceName = this.serviceMetrics.getName();
+        Map<String, RawReply> rawReplyMap = new HashMap<>();
+        for (Method method : this.ifaceClass.getMethods()) {
+            String name = method.getName();
+            if (ruleMatcherMap.containsKey(name) || capacityMap.containsKey(name)) {
+                continue;
+            }
+            MockReturn mockReturn = mockReturnMap.getOrDefault(name, mockReturnDefault);
+            if (mockReturn.getTemplate() != null) {
+                continue;
+            }
+            FixtureValue fixture = mockReturn.getFixture();
+            if (fixture != null) {
+                if (binary && !fixture.getFile().isJson() && resultClass(this.serviceClass, name) != null) {
+                    rawReplyMap.put(name, RawReply.of(serviceName, name, mockReturn, this.serviceMetrics.method(name), this.accessLog, TBinaryProtocol.class, fixture.getFile().content()));
+                }
+                continue;
+            }
+            Class<?> returnType = method.getReturnType();
+            if (mockReturn.getValue() == null && returnType.isPrimitive() && returnType != void.class) {
+                continue;
+            }
+            Class<?> resultClass = resultClass(this.serviceClass, name);
+            if (resultClass == null) {
+                continue;
+            }
+            Object[] values = mockReturn.getValues();
+            TBase[] results = new TBase[values.length];
+            for (int i = 0; i < values.length; i++) {
+                results[i] = (TBase) resultClass.newInstance();
+                if (values[i] != null) {
+                    results[i].setFieldValue(results[i].fieldForId(0), values[i]);
+                }
+            }
+            rawReplyMap.put(name, RawReply.encode(serviceName, name, mockReturn, this.serviceMetrics.method(name), this.accessLog, results, factory));
+        }
+        return rawReplyMap;
+    }
+
+    private static Map<String, MockMethod> genMockMethodMap(Class<?> ifaceClass, Function<Method, MockMethod> mockMethodFactory) {
+        Method[] methods = ifaceClass.getMethods();
+        Map<String, MockMethod> mockMethodMap = new HashMap<>((int) Math.ceil(methods.length / 0.75));
+        for (Method method : methods) {
+            mockMethodMap.put(method.getName(), mockMethodFactory.apply(method));
+        }
+        return mockMethodMap;
+    }
+
+    private static Map<String, MockReturn> genMockReturnMap(Class<?> serviceClass, Class<?> ifaceClass, Map<String, String> mockMethodReturnMap, Map<String, String> mockMethodReturnFileMap, Map<String, Object[]> generatedMap, Map<String, LatencyModel> mockMethodLatencyMap, LatencyModel defaultLatency) throws IOException {
         Method[] methods = ifaceClass.getMethods();
         Map<String, MockReturn> mockReturnMap = new HashMap<>((int) Math.ceil(methods.length / 0.75));
         for (Method method : methods) {
             String name = method.getName();
             String mockMethodReturn = mockMethodReturnMap.get(name);
-            int mockMethodDelay = mockMethodDelayMap.getOrDefault(name, defaultDelay);
-            if (mockMethodReturn == null || mockMethodReturn.trim().isEmpty()) {
-                if (mockMethodDelay == defaultDelay) {
+            String mockMethodReturnFile = mockMethodReturnFileMap.get(name);
+            LatencyModel mockMethodLatency = mockMethodLatencyMap.getOrDefault(name, defaultLatency);
+            Object[] generated = generatedMap.get(name);
+            if ((mockMethodReturn == null || mockMethodReturn.trim().isEmpty()) && mockMethodReturnFile != null) {
+                FixtureValue fixture = new FixtureValue(FixtureFile.open(mockMethodReturnFile), method.getGenericReturnType(), resultClass(serviceClass, name));
+                mockReturnMap.put(name, MockReturn.ofFixture(mockMethodLatency, fixture));
+            } else if (generated != null) {
+                mockReturnMap.put(name, MockReturn.ofPool(mockMethodLatency, generated));
+            } else if (mockMethodReturn == null || mockMethodReturn.trim().isEmpty()) {
+                if (mockMethodLatency == defaultLatency) {
                     continue;
                 }
-                mockReturnMap.put(name, new MockReturn(mockMethodDelay, null));
+                mockReturnMap.put(name, MockReturn.of(mockMethodLatency, null));
             } else {
-                mockReturnMap.put(name, new MockReturn(mockMethodDelay, GSON.fromJson(mockMethodReturn, method.getGenericReturnType())));
+                mockReturnMap.put(name, ResponseTemplate.isTemplate(mockMethodReturn) ? parseReturn(mockMethodLatency, JsonParser.parseString(mockMethodReturn), serviceClass, method) : MockReturn.of(mockMethodLatency, GSON.fromJson(mockMethodReturn, method.getGenericReturnType())));
             }
         }
         return mockReturnMap;
     }
 
+    //生成代码中的<方法>_result, 不存在时返回null
+    private static Class<?> resultClass(Class<?> serviceClass, String methodName) {
+        try {
+            return Class.forName(serviceClass.getName() + '$' + methodName + "_result", true, serviceClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    //含${变量}时编译为模板, 每次调用渲染; 否则解析一次, 所有调用共享
+    private static MockReturn parseReturn(LatencyModel latency, JsonElement value, Class<?> serviceClass, Method method) {
+        if (ResponseTemplate.isTemplate(value)) {
+            return MockReturn.ofTemplate(latency, ResponseTemplate.compile(value, method.getGenericReturnType(), RuleParser.argNames(serviceClass, method), method.getGenericParameterTypes()));
+        }
+        return MockReturn.of(latency, GSON.fromJson(value, method.getGenericReturnType()));
+    }
+
     @AllArgsConstructor
     private static class MockInvocation implements InvocationHandler {
 
-        private static final Logger LOGGER = LoggerFactory.getLogger(MockInvocation.class.getSimpleName());
+        private final Map<String, MockMethod> mockMethodMap;
+
+        private final MockMethod mockMethodDefault;
+
+        private final boolean async;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            MockMethod mockMethod = this.mockMethodMap.getOrDefault(method.getName(), this.mockMethodDefault);
+            if (!this.async) {
+                return mockMethod.invoke(args, null);
+            }
+            AsyncMethodCallback<Object> callback = (AsyncMethodCallback<Object>) args[args.length - 1];
+            return mockMethod.invoke(args.length > 1 ? Arrays.copyOf(args, args.length - 1) : null, callback);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class MockMethodInvoker implements MockMethod {
 
         private final String serviceName;
 
-        private final Map<String, MockReturn> mockReturnMap;
+        private final String methodName;
+
+        //MockState中的方法下标, 请求路径只做一次volatile读与一次数组读
+        private final int methodIndex;
+
+        private final MockStateTable.StateRef state;
 
-        private final MockReturn mockReturnDefault;
+        private final MockCallback mockCallback;
 
-        private final BiFunction<Object[], MockReturn, Object> mockCallback;
+        private final MethodMetrics metrics;
+
+        private final AccessLog accessLog;
 
         @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            String methodName = method.getName();
-            MockReturn mockReturn = this.mockReturnMap.getOrDefault(methodName, this.mockReturnDefault);
-            int delay = mockReturn.getDelay();
-            if (delay > 0) {
-                Thread.sleep(delay);
+        public Object invoke(Object[] args, AsyncMethodCallback<Object> callback) throws Exception {
+            long startTime = this.metrics.begin();
+            MethodSlot methodSlot = this.state.get().getMethodSlot(this.methodIndex);
+            MockReturn mockReturn = methodSlot.getMockReturn(args);
+            long delay = mockReturn.getLatency().sample();
+            //容量模型: 采样的延迟作为服务时间, 再加上排队时间; 是否拒绝已在FaultInjectionProcessor中判定
+            CapacityModel capacity = methodSlot.getCapacity();
+            if (capacity != null) {
+                delay += capacity.reserve(delay);
+            }
+            this.metrics.recordDelay(delay);
+            this.accessLog.log(this.serviceName, this.methodName, delay);
+            if (callback != null) {
+                callback = new MetricsCallback(callback, this.metrics, startTime);
+            }
+            boolean error = true;
+            try {
+                //模板在收到请求时渲染, 渲染失败与其他异常一样返回给客户端
+                Object value = this.mockCallback.apply(callback, mockReturn.getValue(args), delay);
+                error = false;
+                return value;
+            } finally {
+                //异步调用在callback完成时结束
+                if (callback == null || error) {
+                    this.metrics.end(startTime, error);
+                }
             }
-            LOGGER.info("mock method: {}.{}, delay: {}", this.serviceName, methodName, delay);
-            return this.mockCallback.apply(args, mockReturn);
         }
     }
 
-    @Getter
+    //异步调用的耗时包含响应序列化
     @AllArgsConstructor
-    private static class MockReturn {
+    private static class MetricsCallback implements AsyncMethodCallback<Object> {
+
+        private final AsyncMethodCallback<Object> delegate;
+
+        private final MethodMetrics metrics;
+
+        private final long startTime;
 
-        private final int delay;
+        @Override
+        public void onComplete(Object response) {
+            try {
+                this.delegate.onComplete(response);
+            } finally {
+                this.metrics.end(this.startTime, false);
+            }
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            try {
+                this.delegate.onError(exception);
+            } finally {
+                this.metrics.end(this.startTime, true);
+            }
+        }
+    }
+
+    private interface MockCallback {
+
+        Object apply(AsyncMethodCallback<Object> callback, Object value, long delay) throws Exception;
+    }
 
-        private final Object value;
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class MockState {
+
+        private final Map<String, Integer> methodIndexMap;
+
+        //下标见methodIndexMap, 最后一个为未知方法
+        private final MethodSlot[] methodSlots;
+
+        //配置了故障或容量模型时需要先读出消息头
+        private final boolean interceptsMessages;
+
+        //key为方法名及"方法名=generate配置"
+        private final Map<String, Object[]> generatedMap;
+
+        //key为"方法名=capacity配置"或"*=capacity配置", 用于热加载时复用
+        private final Map<String, CapacityModel> capacityDefineMap;
+
+        MethodSlot getMethodSlot(int methodIndex) {
+            return this.methodSlots[methodIndex];
+        }
+
+        //按消息头中的方法名查找, 用于FaultInjectionProcessor与RawReplayProcessor
+        MethodSlot getMethodSlot(String methodName) {
+            Integer methodIndex = this.methodIndexMap.get(methodName);
+            return this.methodSlots[methodIndex == null ? this.methodSlots.length - 1 : methodIndex];
+        }
+
+        boolean interceptsMessages() {
+            return this.interceptsMessages;
+        }
+    }
+
+    //一个方法当前生效的返回值、规则、预编码响应、故障与容量模型
+    @Getter(AccessLevel.PACKAGE)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    static final class MethodSlot {
+
+        private final MockReturn mockReturn;
+
+        private final RuleMatcher<MockReturn> ruleMatcher;
+
+        private final RawReply rawReply;
+
+        private final MethodFault fault;
+
+        private final CapacityModel capacity;
+
+        //先按参数匹配规则, 未命中时使用方法的返回值
+        MockReturn getMockReturn(Object[] args) {
+            if (this.ruleMatcher != null) {
+                MockReturn mockReturn = this.ruleMatcher.match(args);
+                if (mockReturn != null) {
+                    return mockReturn;
+                }
+            }
+            return this.mockReturn;
+        }
+    }
+
+    @Getter
+    static class MockReturn {
+
+        private final LatencyModel latency;
+
+        //多个候选值时每次调用随机取一个, 不在请求路径上分配
+        private final Object[] values;
+
+        //不为null时每次调用按参数渲染, values不使用
+        private final ResponseTemplate template;
+
+        //不为null时首次调用解析返回值文件, values不使用
+        private final FixtureValue fixture;
+
+        private MockReturn(LatencyModel latency, Object[] values, ResponseTemplate template, FixtureValue fixture) {
+            this.latency = latency;
+            this.values = values;
+            this.template = template;
+            this.fixture = fixture;
+        }
+
+        static MockReturn of(LatencyModel latency, Object value) {
+            return new MockReturn(latency, new Object[]{value}, null, null);
+        }
+
+        static MockReturn ofPool(LatencyModel latency, Object[] values) {
+            return new MockReturn(latency, values, null, null);
+        }
+
+        static MockReturn ofTemplate(LatencyModel latency, ResponseTemplate template) {
+            return new MockReturn(latency, new Object[]{null}, template, null);
+        }
+
+        static MockReturn ofFixture(LatencyModel latency, FixtureValue fixture) {
+            return new MockReturn(latency, new Object[]{null}, null, fixture);
+        }
+
+        MockReturn withLatency(LatencyModel latency) {
+            return new MockReturn(latency, this.values, this.template, this.fixture);
+        }
+
+        Object getValue(Object[] args) {
+            if (this.template != null) {
+                return this.template.render(args);
+            }
+            return this.fixture == null ? getValue() : this.fixture.get();
+        }
+
+        Object getValue() {
+            return this.values.length == 1 ? this.values[0] : this.values[ThreadLocalRandom.current().nextInt(this.values.length)];
+        }
     }
 }
@@ -0,0 +1,117 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.MockProcessorFactory.MockState;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+//一个endpoint所有service当前生效的MockState, 按service下标存放在一个数组中; 热加载、场景切换与方法覆盖整体替换数组,
+//一次引用交换对所有service同时生效. lazy且尚未创建的service没有state, 只记录首次调用时如何创建
+public final class MockStateTable {
+
+    private final AtomicReference<MockState[]> states = new AtomicReference<>(new MockState[0]);
+
+    //lazy且尚未创建的service的待创建state, 创建后为null
+    private Callable<MockState>[] pending = new Callable[0];
+
+    //按下标提供state, 切换场景时使用
+    public interface Source {
+
+        MockState state(int index) throws Exception;
+    }
+
+    //创建MockProcessorFactory时调用, 返回该service的下标
+    synchronized StateRef register() {
+        int index = this.pending.length;
+        this.pending = Arrays.copyOf(this.pending, index + 1);
+        this.states.set(Arrays.copyOf(this.states.get(), index + 1));
+        return new StateRef(this, index);
+    }
+
+    public int size() {
+        return this.states.get().length;
+    }
+
+    public MockState get(int index) {
+        return this.states.get()[index];
+    }
+
+    public synchronized boolean isPending(int index) {
+        return this.pending[index] != null;
+    }
+
+    //只替换一个已创建service的state
+    synchronized void set(int index, MockState state) {
+        MockState[] states = this.states.get().clone();
+        states[index] = state;
+        this.states.set(states);
+    }
+
+    synchronized void defer(int index, Callable<MockState> pending) {
+        this.pending[index] = pending;
+    }
+
+    //lazy的service首次调用时创建state; 创建不持锁, 期间发生切换时按新的待创建state重新创建
+    void init(int index) throws Exception {
+        for (; ; ) {
+            Callable<MockState> pending;
+            synchronized (this) {
+                pending = this.pending[index];
+                if (pending == null) {
+                    return;
+                }
+            }
+            MockState state = pending.call();
+            synchronized (this) {
+                if (this.pending[index] == pending) {
+                    this.pending[index] = null;
+                    set(index, state);
+                    return;
+                }
+            }
+        }
+    }
+
+    //已创建的service取source中的state, 任一失败时抛出异常且不替换; lazy且尚未创建的service只替换待创建的state
+    public synchronized void swap(Source source) throws Exception {
+        MockState[] states = new MockState[this.pending.length];
+        for (int i = 0; i < states.length; i++) {
+            if (this.pending[i] == null) {
+                states[i] = source.state(i);
+            }
+        }
+        for (int i = 0; i < states.length; i++) {
+            if (this.pending[i] != null) {
+                int index = i;
+                this.pending[i] = () -> source.state(index);
+            }
+        }
+        this.states.set(states);
+    }
+
+    //一个service在表中的位置; 请求路径只做一次volatile读与一次数组读
+    static final class StateRef {
+
+        private final MockStateTable table;
+
+        private final int index;
+
+        private StateRef(MockStateTable table, int index) {
+            this.table = table;
+            this.index = index;
+        }
+
+        MockState get() {
+            return this.table.states.get()[this.index];
+        }
+
+        MockStateTable getTable() {
+            return this.table;
+        }
+
+        int getIndex() {
+            return this.index;
+        }
+    }
+}
@@ -2,10 +2,20 @@ package com.mamba.mocking.thrift;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.mamba.mocking.thrift.accesslog.AccessLog;
+import com.mamba.mocking.thrift.conf.AccessLogParser;
+import com.mamba.mocking.thrift.conf.ConfigWatcher;
+import com.mamba.mocking.thrift.conf.ExecutorParser;
+import com.mamba.mocking.thrift.conf.LoadGeneratorParser;
+import com.mamba.mocking.thrift.conf.MetricsParser;
+import com.mamba.mocking.thrift.conf.RecordReplayParser;
+import com.mamba.mocking.thrift.conf.ScenarioManager;
 import com.mamba.mocking.thrift.conf.TProcessorParser;
 import com.mamba.mocking.thrift.conf.TProtocolFactoryParser;
 import com.mamba.mocking.thrift.conf.TServerManager;
 import com.mamba.mocking.thrift.conf.TTransportFactoryParser;
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import org.apache.thrift.TAsyncProcessor;
 import org.apache.thrift.TProcessor;
 import org.apache.thrift.protocol.TProtocolFactory;
 import org.apache.thrift.transport.TTransportFactory;
@@ -14,34 +24,153 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 
 public class MockThriftServer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MockThriftServer.class);
 
+    //-c与-p可重复, 按顺序一一对应; 多个endpoint时共享worker线程池、时间轮与MetricsRegistry
     @Parameter(names = {"-c", "--conf"}, description = "mock conf", required = true)
-    private File conf;
+    private List<File> confs = new ArrayList<>();
 
-    @Parameter(names = {"-p", "--port"}, description = "port", required = true)
-    private int port;
+    @Parameter(names = {"-p", "--port"}, description = "port")
+    private List<Integer> ports = new ArrayList<>();
+
+    @Parameter(names = {"-w", "--workerThreads"}, description = "max shared worker threads of multiple endpoints, 0 means unbounded")
+    private int workerThreads;
+
+    //按conf中的bench配置压测target, 不启动server; classpath/transport/protocol/service.class与mock配置相同
+    @Parameter(names = {"--bench"}, description = "run load generator with bench conf instead of mock server")
+    private boolean bench;
 
     public void serve() throws Exception {
-        Properties props = new Properties();
-        try (FileInputStream stream = new FileInputStream(this.conf)) {
-            props.load(stream);
+        if (this.bench) {
+            bench();
+            return;
+        }
+        if (this.confs.size() != this.ports.size()) {
+            throw new IllegalArgumentException("Each conf requires a port: " + this.confs + " " + this.ports);
+        }
+        List<Properties> propsList = new ArrayList<>();
+        for (File conf : this.confs) {
+            propsList.add(load(conf));
+        }
+        if (this.confs.size() == 1) {
+            try (MetricsRegistry metricsRegistry = MetricsParser.parseMetrics(propsList.get(0).getProperty("metrics"))) {
+                metricsRegistry.start();
+                serve(this.confs.get(0), propsList.get(0), this.ports.get(0), metricsRegistry, null, "");
+            }
+            return;
+        }
+        //metrics取第一个conf的配置
+        String metrics = propsList.get(0).getProperty("metrics");
+        for (int i = 1; i < propsList.size(); i++) {
+            if (propsList.get(i).getProperty("metrics") != null && !Objects.equals(metrics, propsList.get(i).getProperty("metrics"))) {
+                LOGGER.warn("Endpoints share metrics of {}, ignore metrics of {}", this.confs.get(0), this.confs.get(i));
+            }
+        }
+        ExecutorService executor = ExecutorParser.newCachedExecutor("shared-worker-", this.workerThreads, true);
+        try (MetricsRegistry metricsRegistry = MetricsParser.parseMetrics(metrics)) {
+            metricsRegistry.start();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < this.confs.size(); i++) {
+                File conf = this.confs.get(i);
+                Properties props = propsList.get(i);
+                int port = this.ports.get(i);
+                Thread thread = new Thread(() -> {
+                    try {
+                        serve(conf, props, port, metricsRegistry, executor, port + "/");
+                    } catch (Throwable t) {
+                        LOGGER.error("Endpoint stopped: {} {}", port, conf, t);
+                    }
+                }, "endpoint-" + port);
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void serve(File conf, Properties props, int port, MetricsRegistry metricsRegistry, ExecutorService executor, String metricsPrefix) throws Exception {
+        URL classpath = toURI(props.getProperty("classpath"), conf).toURL();
+        try (URLClassLoader classLoader = URLClassLoader.newInstance(new URL[]{classpath}, Thread.currentThread().getContextClassLoader());
+             AccessLog accessLog = AccessLogParser.parseAccessLog(props)) {
+            TServerManager serverManager = TServerManager.newInstance(props.getProperty("server"));
+            TTransportFactory transportFactory = TTransportFactoryParser.parseTransportFactory(props.getProperty("transport"));
+            TProtocolFactory protocolFactory = TProtocolFactoryParser.parseProtocolFactory(props.getProperty("protocol"));
+            Map<String, MockProcessorFactory> processorFactoryMap = new HashMap<>();
+            //mode=record/replay时不使用service配置, 请求按原始消息转发或回放
+            TProcessor processor = RecordReplayParser.parseProcessor(props.getProperty("mode"), transportFactory, protocolFactory, metricsRegistry);
+            if (processor == null) {
+                processor = TProcessorParser.parseProcessor(props, classLoader, serverManager.isAsync(), protocolFactory, metricsRegistry, accessLog, processorFactoryMap, metricsPrefix);
+                if (accessLog.isContextRequired()) {
+                    processor = serverManager.isAsync() ? new AccessLogAsyncProcessor((TAsyncProcessor) processor) : new AccessLogProcessor(processor);
+                }
+            }
+            //场景与管理接口; record/replay时没有service配置
+            ScenarioManager scenarioManager = null;
+            if (!processorFactoryMap.isEmpty()) {
+                scenarioManager = new ScenarioManager(props, processorFactoryMap);
+                scenarioManager.start();
+            } else if (props.getProperty("admin") != null) {
+                LOGGER.warn("Admin endpoint requires service conf, ignored: {}", conf);
+            }
+            //reload=false关闭热加载; classpath中的jar不会重新加载
+            ConfigWatcher configWatcher = null;
+            if (scenarioManager != null && Boolean.parseBoolean(props.getProperty("reload", "true").trim())) {
+                configWatcher = new ConfigWatcher(conf, props, scenarioManager);
+            }
+            try {
+                serverManager.serve(port, processor, transportFactory, protocolFactory, executor, metricsRegistry.transport(String.valueOf(port)));
+            } finally {
+                if (configWatcher != null) {
+                    configWatcher.close();
+                }
+                if (scenarioManager != null) {
+                    scenarioManager.close();
+                }
+                if (processor instanceof AutoCloseable) {
+                    ((AutoCloseable) processor).close();
+                }
+            }
+        }
+    }
+
+    private void bench() throws Exception {
+        if (this.confs.size() != 1) {
+            throw new IllegalArgumentException("Bench requires one conf: " + this.confs);
         }
-        URL classpath = toURI(props.getProperty("classpath"), this.conf).toURL();
+        File conf = this.confs.get(0);
+        Properties props = load(conf);
+        URL classpath = toURI(props.getProperty("classpath"), conf).toURL();
         try (URLClassLoader classLoader = URLClassLoader.newInstance(new URL[]{classpath}, Thread.currentThread().getContextClassLoader())) {
-            TProcessor processor = TProcessorParser.parseProcessor(props, classLoader);
             TTransportFactory transportFactory = TTransportFactoryParser.parseTransportFactory(props.getProperty("transport"));
             TProtocolFactory protocolFactory = TProtocolFactoryParser.parseProtocolFactory(props.getProperty("protocol"));
-            TServerManager serverManager = TServerManager.newInstance(props.getProperty("server"));
-            serverManager.serve(this.port, processor, transportFactory, protocolFactory);
+            LoadGeneratorParser.parseLoadGenerator(props, classLoader, transportFactory, protocolFactory).run();
+        }
+    }
+
+    private static Properties load(File conf) throws IOException {
+        Properties props = new Properties();
+        try (FileInputStream stream = new FileInputStream(conf)) {
+            props.load(stream);
         }
+        return props;
     }
 
     private static URI toURI(String path, File conf) {
@@ -0,0 +1,50 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.metrics.ServiceMetrics;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+
+//替代TMultiplexedProcessor: 消息名按MultiplexedRouter缓存的路由分发, 不再每次indexOf/substring, 并按service计数
+public class MultiplexedProcessor implements TProcessor {
+
+    //按线程复用重放消息头的包装, 不再每次调用分配; 调用结束后释放对连接protocol的引用, 不会因线程空闲而持有已关闭连接的缓冲区
+    private static final ThreadLocal<StoredMessageProtocol> STORED_PROTOCOL = new ThreadLocal<>();
+
+    private final MultiplexedRouter<TProcessor> router = new MultiplexedRouter<>();
+
+    public void registerProcessor(String serviceName, TProcessor processor, ServiceMetrics metrics) {
+        this.router.register(serviceName, processor, metrics);
+    }
+
+    public void registerDefault(TProcessor processor, ServiceMetrics metrics) {
+        this.router.registerDefault(processor, metrics);
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        TMessage message = in.readMessageBegin();
+        if (message.type != TMessageType.CALL && message.type != TMessageType.ONEWAY) {
+            throw new TProtocolException(TProtocolException.NOT_IMPLEMENTED, "This should not have happened!?");
+        }
+        MultiplexedRouter.Route<TProcessor> route = this.router.route(message.name);
+        if (route == null) {
+            throw new TProtocolException(TProtocolException.NOT_IMPLEMENTED, "Service name not found in message name: " + message.name);
+        }
+        route.metrics.recordDispatch();
+        StoredMessageProtocol protocol = STORED_PROTOCOL.get();
+        if (protocol == null) {
+            protocol = new StoredMessageProtocol(in, message);
+            STORED_PROTOCOL.set(protocol);
+        }
+        protocol.reset(in, route.isDefault() ? message : new TMessage(route.methodName, message.type, message.seqid));
+        try {
+            route.processor.process(protocol, out);
+        } finally {
+            protocol.release();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.metrics.ServiceMetrics;
+import org.apache.thrift.protocol.TMultiplexedProtocol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//多路复用的消息名("service:method")到processor与方法名的路由. 首次出现的消息名解析一次后放入开放寻址表(写时复制),
+//之后每次调用只计算一次hashCode并比较字符串, 不再indexOf/substring; 未知service不缓存, 缓存数量有上限, 防止异常的消息名撑大
+final class MultiplexedRouter<P> {
+
+    private static final int MAX_ROUTES = 4096;
+
+    private final Map<String, Service<P>> serviceMap = new HashMap<>();
+
+    private Service<P> defaultService;
+
+    private volatile Table<P> table = new Table<>(new String[16], new Route[16], 0);
+
+    void register(String serviceName, P processor, ServiceMetrics metrics) {
+        this.serviceMap.put(serviceName, new Service<>(processor, metrics));
+    }
+
+    void registerDefault(P processor, ServiceMetrics metrics) {
+        this.defaultService = new Service<>(processor, metrics);
+    }
+
+    //service不存在时返回null
+    Route<P> route(String name) {
+        Table<P> table = this.table;
+        int mask = table.keys.length - 1;
+        for (int i = name.hashCode() & mask; ; i = (i + 1) & mask) {
+            String key = table.keys[i];
+            if (key == null) {
+                return resolve(name);
+            }
+            if (key.equals(name)) {
+                return table.routes[i];
+            }
+        }
+    }
+
+    private synchronized Route<P> resolve(String name) {
+        Table<P> table = this.table;
+        int mask = table.keys.length - 1;
+        for (int i = name.hashCode() & mask; table.keys[i] != null; i = (i + 1) & mask) {
+            if (table.keys[i].equals(name)) {
+                return table.routes[i];
+            }
+        }
+        Route<P> route;
+        int index = name.indexOf(TMultiplexedProtocol.SEPARATOR);
+        if (index < 0) {
+            if (this.defaultService == null) {
+                return null;
+            }
+            route = new Route<>(this.defaultService.processor, null, this.defaultService.metrics);
+        } else {
+            Service<P> service = this.serviceMap.get(name.substring(0, index));
+            if (service == null) {
+                return null;
+            }
+            route = new Route<>(service.processor, name.substring(index + TMultiplexedProtocol.SEPARATOR.length()), service.metrics);
+        }
+        if (table.size < MAX_ROUTES) {
+            this.table = table.with(name, route);
+        }
+        return route;
+    }
+
+    static final class Route<P> {
+
+        final P processor;
+
+        //默认service(消息名不带前缀)时为null, 原消息直接交给processor
+        final String methodName;
+
+        final ServiceMetrics metrics;
+
+        private Route(P processor, String methodName, ServiceMetrics metrics) {
+            this.processor = processor;
+            this.methodName = methodName;
+            this.metrics = metrics;
+        }
+
+        boolean isDefault() {
+            return this.methodName == null;
+        }
+    }
+
+    private static final class Service<P> {
+
+        private final P processor;
+
+        private final ServiceMetrics metrics;
+
+        private Service(P processor, ServiceMetrics metrics) {
+            this.processor = processor;
+            this.metrics = metrics;
+        }
+    }
+
+    //负载因子不超过0.5, 线性探测
+    private static final class Table<P> {
+
+        private final String[] keys;
+
+        private final Route<P>[] routes;
+
+        private final int size;
+
+        private Table(String[] keys, Route<P>[] routes, int size) {
+            this.keys = keys;
+            this.routes = routes;
+            this.size = size;
+        }
+
+        private Table<P> with(String name, Route<P> route) {
+            int capacity = this.keys.length;
+            while ((this.size + 1) * 2 > capacity) {
+                capacity <<= 1;
+            }
+            String[] keys = new String[capacity];
+            Route<P>[] routes = new Route[capacity];
+            for (int i = 0; i < this.keys.length; i++) {
+                if (this.keys[i] != null) {
+                    put(keys, routes, this.keys[i], this.routes[i]);
+                }
+            }
+            put(keys, routes, name, route);
+            return new Table<>(keys, routes, this.size + 1);
+        }
+
+        private static <P> void put(String[] keys, Route<P>[] routes, String name, Route<P> route) {
+            int mask = keys.length - 1;
+            int i = name.hashCode() & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = name;
+            routes[i] = route;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.metrics.MethodMetrics;
+import com.mamba.mocking.thrift.timer.WaitStrategy;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TAsyncProcessor;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.server.AbstractNonblockingServer.AsyncFrameBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RawReplayAsyncProcessor implements TAsyncProcessor, TProcessor, AsyncMessageProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RawReplayAsyncProcessor.class);
+
+    private final AsyncMessageProcessor delegate;
+
+    private final MockStateTable.StateRef state;
+
+    private final WaitStrategy waitStrategy;
+
+    RawReplayAsyncProcessor(TAsyncProcessor delegate, MockStateTable.StateRef state, WaitStrategy waitStrategy) {
+        this.delegate = TMultiplexedAsyncProcessor.toMessageProcessor(delegate);
+        this.state = state;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public void process(AsyncFrameBuffer fb) throws TException {
+        process(fb, fb.getInputProtocol().readMessageBegin());
+    }
+
+    @Override
+    public void process(AsyncFrameBuffer fb, TMessage message) throws TException {
+        TProtocol in = fb.getInputProtocol();
+        TProtocol out = fb.getOutputProtocol();
+        RawReply rawReply = this.state.get().getMethodSlot(message.name).getRawReply();
+        if (rawReply == null || message.type != TMessageType.CALL || !rawReply.isWritable(out)) {
+            this.delegate.process(fb, message);
+            return;
+        }
+        MethodMetrics metrics = rawReply.getMetrics();
+        long startTime = metrics.begin();
+        try {
+            TProtocolUtil.skip(in, TType.STRUCT);
+            in.readMessageEnd();
+        } catch (TException e) {
+            metrics.end(startTime, true);
+            throw e;
+        }
+        this.waitStrategy.schedule(rawReply.sampleDelay(), () -> {
+            try {
+                rawReply.write(out, message.seqid);
+                fb.responseReady();
+                metrics.end(startTime, false);
+            } catch (TException e) {
+                LOGGER.error("Exception writing to internal frame buffer", e);
+                fb.close();
+                metrics.end(startTime, true);
+            }
+        });
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        throw new TApplicationException(TApplicationException.INTERNAL_ERROR, "Async processor requires a nonblocking server");
+    }
+}
@@ -0,0 +1,51 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.metrics.MethodMetrics;
+import com.mamba.mocking.thrift.timer.WaitStrategy;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+
+public class RawReplayProcessor implements TProcessor {
+
+    private final TProcessor delegate;
+
+    private final MockStateTable.StateRef state;
+
+    private final WaitStrategy waitStrategy;
+
+    RawReplayProcessor(TProcessor delegate, MockStateTable.StateRef state, WaitStrategy waitStrategy) {
+        this.delegate = delegate;
+        this.state = state;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        TMessage message = in.readMessageBegin();
+        RawReply rawReply = this.state.get().getMethodSlot(message.name).getRawReply();
+        if (rawReply == null || message.type != TMessageType.CALL || !rawReply.isWritable(out)) {
+            this.delegate.process(new StoredMessageProtocol(in, message), out);
+            return;
+        }
+        MethodMetrics metrics = rawReply.getMetrics();
+        long startTime = metrics.begin();
+        boolean error = true;
+        try {
+            TProtocolUtil.skip(in, TType.STRUCT);
+            in.readMessageEnd();
+            this.waitStrategy.await(rawReply.sampleDelay());
+            rawReply.write(out, message.seqid);
+            error = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TException(e);
+        } finally {
+            metrics.end(startTime, error);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.MockProcessorFactory.MockReturn;
+import com.mamba.mocking.thrift.accesslog.AccessLog;
+import com.mamba.mocking.thrift.metrics.MethodMetrics;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TTransport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+//预编码的响应: 消息头之后的全部字节(result struct + messageEnd); 有多个候选返回值时每个都预编码, 写出时随机取一个.
+//body可以是返回值文件的内存映射, 写出时分块复制, 不整体读入堆
+class RawReply {
+
+    private static final int CHUNK_SIZE = 64 << 10;
+
+    private static final ThreadLocal<byte[]> CHUNK = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+    private final String serviceName;
+
+    private final String methodName;
+
+    private final MockReturn mockReturn;
+
+    private final MethodMetrics metrics;
+
+    private final AccessLog accessLog;
+
+    private final Class<? extends TProtocol> protocolClass;
+
+    private final ByteBuffer[] bodies;
+
+    private RawReply(String serviceName, String methodName, MockReturn mockReturn, MethodMetrics metrics, AccessLog accessLog, Class<? extends TProtocol> protocolClass, ByteBuffer[] bodies) {
+        this.serviceName = serviceName;
+        this.methodName = methodName;
+        this.mockReturn = mockReturn;
+        this.metrics = metrics;
+        this.accessLog = accessLog;
+        this.protocolClass = protocolClass;
+        this.bodies = bodies;
+    }
+
+    static RawReply encode(String serviceName, String methodName, MockReturn mockReturn, MethodMetrics metrics, AccessLog accessLog, TBase[] results, TProtocolFactory protocolFactory) throws TException {
+        ByteBuffer[] bodies = new ByteBuffer[results.length];
+        Class<? extends TProtocol> protocolClass = null;
+        for (int i = 0; i < results.length; i++) {
+            TMemoryBuffer buffer = new TMemoryBuffer(256);
+            TProtocol protocol = protocolFactory.getProtocol(buffer);
+            protocol.writeMessageBegin(new TMessage(methodName, TMessageType.REPLY, 0));
+            int offset = buffer.length();
+            results[i].write(protocol);
+            protocol.writeMessageEnd();
+            protocol.getTransport().flush();
+            bodies[i] = ByteBuffer.wrap(buffer.getArray(), offset, buffer.length() - offset).slice();
+            protocolClass = protocol.getClass();
+        }
+        return new RawReply(serviceName, methodName, mockReturn, metrics, accessLog, protocolClass, bodies);
+    }
+
+    //已按protocolClass编码好的body, 如二进制返回值文件
+    static RawReply of(String serviceName, String methodName, MockReturn mockReturn, MethodMetrics metrics, AccessLog accessLog, Class<? extends TProtocol> protocolClass, ByteBuffer body) {
+        return new RawReply(serviceName, methodName, mockReturn, metrics, accessLog, protocolClass, new ByteBuffer[]{body});
+    }
+
+    //响应只能写到与预编码相同的协议上
+    boolean isWritable(TProtocol out) {
+        return out.getClass() == this.protocolClass;
+    }
+
+    MethodMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    long sampleDelay() {
+        long delay = this.mockReturn.getLatency().sample();
+        this.metrics.recordDelay(delay);
+        this.accessLog.log(this.serviceName, this.methodName, delay);
+        return delay;
+    }
+
+    void write(TProtocol out, int seqid) throws TException {
+        out.writeMessageBegin(new TMessage(this.methodName, TMessageType.REPLY, seqid));
+        ByteBuffer body = this.bodies.length == 1 ? this.bodies[0] : this.bodies[ThreadLocalRandom.current().nextInt(this.bodies.length)];
+        write(out.getTransport(), body);
+        out.getTransport().flush();
+    }
+
+    private static void write(TTransport transport, ByteBuffer body) throws TException {
+        if (body.hasArray()) {
+            transport.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            return;
+        }
+        ByteBuffer buffer = body.duplicate();
+        byte[] chunk = CHUNK.get();
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            transport.write(chunk, 0, length);
+        }
+    }
+}
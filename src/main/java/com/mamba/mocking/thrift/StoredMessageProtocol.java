@@ -0,0 +1,245 @@
+package com.mamba.mocking.thrift;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMap;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TSet;
+import org.apache.thrift.protocol.TStruct;
+
+import java.nio.ByteBuffer;
+
+//同TMultiplexedProcessor.StoredMessageProtocol: 消息头已读出, 交给其他processor时重放.
+//不继承TProtocolDecorator(被包装的protocol是final的), 以便MultiplexedProcessor按线程复用时在调用结束后释放对连接的引用
+class StoredMessageProtocol extends TProtocol {
+
+    private TProtocol protocol;
+
+    private TMessage message;
+
+    StoredMessageProtocol(TProtocol protocol, TMessage message) {
+        super(protocol.getTransport());
+        this.protocol = protocol;
+        this.message = message;
+    }
+
+    //仅供同一线程内复用, 见MultiplexedProcessor
+    void reset(TProtocol protocol, TMessage message) {
+        this.trans_ = protocol.getTransport();
+        this.protocol = protocol;
+        this.message = message;
+    }
+
+    void release() {
+        this.trans_ = null;
+        this.protocol = null;
+        this.message = null;
+    }
+
+    @Override
+    public void writeMessageBegin(TMessage message) throws TException {
+        this.protocol.writeMessageBegin(message);
+    }
+
+    @Override
+    public void writeMessageEnd() throws TException {
+        this.protocol.writeMessageEnd();
+    }
+
+    @Override
+    public void writeStructBegin(TStruct struct) throws TException {
+        this.protocol.writeStructBegin(struct);
+    }
+
+    @Override
+    public void writeStructEnd() throws TException {
+        this.protocol.writeStructEnd();
+    }
+
+    @Override
+    public void writeFieldBegin(TField field) throws TException {
+        this.protocol.writeFieldBegin(field);
+    }
+
+    @Override
+    public void writeFieldEnd() throws TException {
+        this.protocol.writeFieldEnd();
+    }
+
+    @Override
+    public void writeFieldStop() throws TException {
+        this.protocol.writeFieldStop();
+    }
+
+    @Override
+    public void writeMapBegin(TMap map) throws TException {
+        this.protocol.writeMapBegin(map);
+    }
+
+    @Override
+    public void writeMapEnd() throws TException {
+        this.protocol.writeMapEnd();
+    }
+
+    @Override
+    public void writeListBegin(TList list) throws TException {
+        this.protocol.writeListBegin(list);
+    }
+
+    @Override
+    public void writeListEnd() throws TException {
+        this.protocol.writeListEnd();
+    }
+
+    @Override
+    public void writeSetBegin(TSet set) throws TException {
+        this.protocol.writeSetBegin(set);
+    }
+
+    @Override
+    public void writeSetEnd() throws TException {
+        this.protocol.writeSetEnd();
+    }
+
+    @Override
+    public void writeBool(boolean b) throws TException {
+        this.protocol.writeBool(b);
+    }
+
+    @Override
+    public void writeByte(byte b) throws TException {
+        this.protocol.writeByte(b);
+    }
+
+    @Override
+    public void writeI16(short i16) throws TException {
+        this.protocol.writeI16(i16);
+    }
+
+    @Override
+    public void writeI32(int i32) throws TException {
+        this.protocol.writeI32(i32);
+    }
+
+    @Override
+    public void writeI64(long i64) throws TException {
+        this.protocol.writeI64(i64);
+    }
+
+    @Override
+    public void writeDouble(double dub) throws TException {
+        this.protocol.writeDouble(dub);
+    }
+
+    @Override
+    public void writeString(String str) throws TException {
+        this.protocol.writeString(str);
+    }
+
+    @Override
+    public void writeBinary(ByteBuffer buf) throws TException {
+        this.protocol.writeBinary(buf);
+    }
+
+    @Override
+    public TMessage readMessageBegin() {
+        return this.message;
+    }
+
+    @Override
+    public void readMessageEnd() throws TException {
+        this.protocol.readMessageEnd();
+    }
+
+    @Override
+    public TStruct readStructBegin() throws TException {
+        return this.protocol.readStructBegin();
+    }
+
+    @Override
+    public void readStructEnd() throws TException {
+        this.protocol.readStructEnd();
+    }
+
+    @Override
+    public TField readFieldBegin() throws TException {
+        return this.protocol.readFieldBegin();
+    }
+
+    @Override
+    public void readFieldEnd() throws TException {
+        this.protocol.readFieldEnd();
+    }
+
+    @Override
+    public TMap readMapBegin() throws TException {
+        return this.protocol.readMapBegin();
+    }
+
+    @Override
+    public void readMapEnd() throws TException {
+        this.protocol.readMapEnd();
+    }
+
+    @Override
+    public TList readListBegin() throws TException {
+        return this.protocol.readListBegin();
+    }
+
+    @Override
+    public void readListEnd() throws TException {
+        this.protocol.readListEnd();
+    }
+
+    @Override
+    public TSet readSetBegin() throws TException {
+        return this.protocol.readSetBegin();
+    }
+
+    @Override
+    public void readSetEnd() throws TException {
+        this.protocol.readSetEnd();
+    }
+
+    @Override
+    public boolean readBool() throws TException {
+        return this.protocol.readBool();
+    }
+
+    @Override
+    public byte readByte() throws TException {
+        return this.protocol.readByte();
+    }
+
+    @Override
+    public short readI16() throws TException {
+        return this.protocol.readI16();
+    }
+
+    @Override
+    public int readI32() throws TException {
+        return this.protocol.readI32();
+    }
+
+    @Override
+    public long readI64() throws TException {
+        return this.protocol.readI64();
+    }
+
+    @Override
+    public double readDouble() throws TException {
+        return this.protocol.readDouble();
+    }
+
+    @Override
+    public String readString() throws TException {
+        return this.protocol.readString();
+    }
+
+    @Override
+    public ByteBuffer readBinary() throws TException {
+        return this.protocol.readBinary();
+    }
+}
@@ -0,0 +1,145 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.metrics.ServiceMetrics;
+import org.apache.thrift.AsyncProcessFunction;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TAsyncProcessor;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TBaseAsyncProcessor;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.server.AbstractNonblockingServer.AsyncFrameBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+//libthrift 0.13没有异步版本的TMultiplexedProcessor, 这里按TBaseAsyncProcessor的流程实现
+public class TMultiplexedAsyncProcessor implements TAsyncProcessor, TProcessor, AsyncMessageProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TMultiplexedAsyncProcessor.class);
+
+    private static final Field IFACE_FIELD;
+
+    static {
+        try {
+            IFACE_FIELD = TBaseAsyncProcessor.class.getDeclaredField("iface");
+            IFACE_FIELD.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final MultiplexedRouter<AsyncMessageProcessor> router = new MultiplexedRouter<>();
+
+    public void registerProcessor(String serviceName, TAsyncProcessor processor, ServiceMetrics metrics) {
+        this.router.register(serviceName, toMessageProcessor(processor), metrics);
+    }
+
+    public void registerDefault(TAsyncProcessor processor, ServiceMetrics metrics) {
+        this.router.registerDefault(toMessageProcessor(processor), metrics);
+    }
+
+    @Override
+    public void process(AsyncFrameBuffer fb) throws TException {
+        process(fb, fb.getInputProtocol().readMessageBegin());
+    }
+
+    @Override
+    public void process(AsyncFrameBuffer fb, TMessage message) throws TException {
+        if (message.type != TMessageType.CALL && message.type != TMessageType.ONEWAY) {
+            throw new TProtocolException(TProtocolException.NOT_IMPLEMENTED, "This should not have happened!?");
+        }
+        MultiplexedRouter.Route<AsyncMessageProcessor> route = this.router.route(message.name);
+        if (route == null) {
+            throw new TProtocolException(TProtocolException.NOT_IMPLEMENTED, "Service name not found in message name: " + message.name);
+        }
+        route.metrics.recordDispatch();
+        route.processor.process(fb, route.isDefault() ? message : new TMessage(route.methodName, message.type, message.seqid));
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        throw new TApplicationException(TApplicationException.INTERNAL_ERROR, "Async processor requires a nonblocking server");
+    }
+
+    public static AsyncMessageProcessor toMessageProcessor(TAsyncProcessor processor) {
+        if (processor instanceof AsyncMessageProcessor) {
+            return (AsyncMessageProcessor) processor;
+        }
+        if (processor instanceof TBaseAsyncProcessor) {
+            return new BaseAsyncMessageProcessor((TBaseAsyncProcessor<?>) processor);
+        }
+        throw new IllegalArgumentException("Unsupported async processor: " + processor.getClass().getName());
+    }
+
+    private static void writeException(TProtocol out, TMessage message, TApplicationException x) throws TException {
+        out.writeMessageBegin(new TMessage(message.name, TMessageType.EXCEPTION, message.seqid));
+        x.write(out);
+        out.writeMessageEnd();
+        out.getTransport().flush();
+    }
+
+    private static class BaseAsyncMessageProcessor implements AsyncMessageProcessor {
+
+        private final Map<String, ? extends AsyncProcessFunction> processMap;
+
+        private final Object iface;
+
+        private BaseAsyncMessageProcessor(TBaseAsyncProcessor<?> processor) {
+            this.processMap = processor.getProcessMapView();
+            try {
+                this.iface = IFACE_FIELD.get(processor);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void process(AsyncFrameBuffer fb, TMessage message) throws TException {
+            TProtocol in = fb.getInputProtocol();
+            TProtocol out = fb.getOutputProtocol();
+            AsyncProcessFunction fn = this.processMap.get(message.name);
+            if (fn == null) {
+                TProtocolUtil.skip(in, TType.STRUCT);
+                in.readMessageEnd();
+                if (message.type == TMessageType.CALL) {
+                    TApplicationException x = new TApplicationException(TApplicationException.UNKNOWN_METHOD, "Invalid method name: '" + message.name + "'");
+                    writeException(out, message, x);
+                }
+                fb.responseReady();
+                return;
+            }
+            TBase args = fn.getEmptyArgsInstance();
+            try {
+                args.read(in);
+            } catch (TProtocolException e) {
+                in.readMessageEnd();
+                if (message.type == TMessageType.CALL) {
+                    writeException(out, message, new TApplicationException(TApplicationException.PROTOCOL_ERROR, e.getMessage()));
+                }
+                fb.responseReady();
+                return;
+            }
+            in.readMessageEnd();
+            if (message.type == TMessageType.ONEWAY) {
+                fb.responseReady();
+            }
+            AsyncMethodCallback resultHandler = fn.getResultHandler(fb, message.seqid);
+            try {
+                fn.start(this.iface, args, resultHandler);
+            } catch (Exception e) {
+                LOGGER.debug("Exception handling function", e);
+                resultHandler.onError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.mamba.mocking.thrift.accesslog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+//请求线程按采样率写入环形队列, 后台线程批量写文件(未配置文件时写标准输出);
+//写失败时后台线程不退出: 关闭文件并退避重新打开, 期间丢弃的日志计入恢复后的dropped
+public class AccessLog implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccessLog.class);
+
+    public static final AccessLog OFF = new AccessLog();
+
+    private static final int BATCH_SIZE = 1024;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final long REOPEN_MIN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long REOPEN_MAX_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final double sample;
+
+    private final boolean seqid;
+
+    private final boolean argsSize;
+
+    private final boolean client;
+
+    private final AccessLogBuffer buffer;
+
+    private final Output output;
+
+    private final Thread worker;
+
+    //以下只由后台线程访问; writer为null表示写失败后尚未重新打开
+    private Writer writer;
+
+    //已写入writer但还没flush的条数, flush失败时计为丢失
+    private long unflushed;
+
+    //写失败丢失的条数, 恢复后与队列满丢弃的条数一起写出
+    private long lost;
+
+    private long reopenNanos = REOPEN_MIN_NANOS;
+
+    private long nextReopen;
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    private volatile boolean running = true;
+
+    private AccessLog() {
+        this.sample = 0;
+        this.seqid = false;
+        this.argsSize = false;
+        this.client = false;
+        this.buffer = null;
+        this.output = null;
+        this.worker = null;
+    }
+
+    public AccessLog(String file, double sample, int bufferSize, boolean seqid, boolean argsSize, boolean client) throws IOException {
+        this(file == null || file.isEmpty() ? StandardOutput::new : () -> new FileOutputStream(file, true), sample, bufferSize, seqid, argsSize, client);
+    }
+
+    AccessLog(Output output, double sample, int bufferSize, boolean seqid, boolean argsSize, boolean client) throws IOException {
+        if (sample <= 0 || sample > 1) {
+            throw new IllegalArgumentException("sample must be in (0, 1]: " + sample);
+        }
+        this.sample = sample;
+        this.seqid = seqid;
+        this.argsSize = argsSize;
+        this.client = client;
+        this.buffer = new AccessLogBuffer(bufferSize);
+        this.output = output;
+        //首次打开失败时直接抛出
+        this.writer = open(output);
+        this.worker = new Thread(this::run, "access-log-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "access-log-shutdown"));
+    }
+
+    public boolean isEnabled() {
+        return this.buffer != null;
+    }
+
+    //seqid/args/client需要最外层processor设置AccessLogContext
+    public boolean isContextRequired() {
+        return this.seqid || this.argsSize || this.client;
+    }
+
+    public void log(String serviceName, String methodName, long delay) {
+        if (this.buffer == null) {
+            return;
+        }
+        if (this.sample < 1 && ThreadLocalRandom.current().nextDouble() >= this.sample) {
+            return;
+        }
+        int seqid = -1;
+        int argsSize = -1;
+        String client = null;
+        AccessLogContext context = isContextRequired() ? AccessLogContext.current() : null;
+        if (context != null) {
+            seqid = context.getSeqid();
+            argsSize = context.getArgsSize();
+            if (this.client) {
+                client = context.resolveClient();
+            }
+        }
+        this.buffer.offer(System.currentTimeMillis(), serviceName, methodName, delay, seqid, argsSize, client);
+    }
+
+    private static Writer open(Output output) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(output.open(), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private void run() {
+        while (this.running) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        while (drain() > 0) {
+            //写完剩余的日志
+        }
+        if (this.writer != null) {
+            try {
+                this.writer.close();
+            } catch (IOException e) {
+                LOGGER.error("Close access log failed, lost " + this.unflushed + " entries", e);
+            }
+        } else {
+            LOGGER.error("Access log closed while unavailable, lost " + (this.lost + this.buffer.takeDropped()) + " entries");
+        }
+    }
+
+    private int drain() {
+        if (this.writer == null && !reopen()) {
+            //文件不可写时仍然取出并计数, 避免队列一直是满的
+            int count = this.buffer.drain(entry -> this.lost++, BATCH_SIZE);
+            return count;
+        }
+        try {
+            int count = this.buffer.drain(this::write, BATCH_SIZE);
+            if (count < BATCH_SIZE) {
+                writeDropped();
+                this.writer.flush();
+                this.unflushed = 0;
+            }
+            return count;
+        } catch (IOException | UncheckedIOException e) {
+            this.lost += this.unflushed;
+            this.unflushed = 0;
+            LOGGER.error("Write access log failed, reopen in " + TimeUnit.NANOSECONDS.toMillis(this.reopenNanos) + "ms", e);
+            try {
+                this.writer.close();
+            } catch (IOException | UncheckedIOException ignored) {
+                //缓冲中的内容已计为丢失
+            }
+            this.writer = null;
+            this.nextReopen = System.nanoTime() + this.reopenNanos;
+            return 1;
+        }
+    }
+
+    //按退避间隔重新打开, 成功后先写出期间丢弃的条数
+    private boolean reopen() {
+        if (System.nanoTime() - this.nextReopen < 0) {
+            return false;
+        }
+        try {
+            this.writer = open(this.output);
+        } catch (IOException e) {
+            this.reopenNanos = Math.min(this.reopenNanos * 2, REOPEN_MAX_NANOS);
+            this.nextReopen = System.nanoTime() + this.reopenNanos;
+            LOGGER.error("Reopen access log failed, lost " + this.lost + " entries so far, retry in " + TimeUnit.NANOSECONDS.toMillis(this.reopenNanos) + "ms", e);
+            return false;
+        }
+        LOGGER.warn("Access log reopened, lost " + this.lost + " entries");
+        this.reopenNanos = REOPEN_MIN_NANOS;
+        return true;
+    }
+
+    private void write(AccessLogBuffer.Entry entry) {
+        StringBuilder sb = this.line;
+        sb.setLength(0);
+        sb.append(this.dateFormat.format(new Date(entry.timestamp)))
+                .append(' ').append(entry.serviceName).append('.').append(entry.methodName)
+                .append(" delay=").append(entry.delay / 1000000D);
+        if (this.seqid) {
+            sb.append(" seqid=").append(entry.seqid);
+        }
+        if (this.argsSize) {
+            sb.append(" args=").append(entry.argsSize);
+        }
+        if (this.client) {
+            sb.append(" client=").append(entry.client == null ? "-" : entry.client);
+        }
+        sb.append('\n');
+        try {
+            this.writer.append(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.unflushed++;
+    }
+
+    private void writeDropped() throws IOException {
+        long dropped = this.buffer.takeDropped() + this.lost;
+        if (dropped > 0) {
+            this.lost = dropped;
+            this.writer.append(this.dateFormat.format(new Date())).append(" dropped=").append(String.valueOf(dropped)).append('\n');
+            this.writer.flush();
+            this.lost = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.worker == null || !this.running) {
+            return;
+        }
+        this.running = false;
+        LockSupport.unpark(this.worker);
+        try {
+            this.worker.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    interface Output {
+
+        OutputStream open() throws IOException;
+    }
+
+    //写失败时关闭writer不能关闭标准输出
+    private static final class StandardOutput extends FilterOutputStream {
+
+        private StandardOutput() {
+            super(System.out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
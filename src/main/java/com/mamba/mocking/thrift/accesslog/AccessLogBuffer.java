@@ -0,0 +1,107 @@
+package com.mamba.mocking.thrift.accesslog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+//有界多生产者单消费者环形队列: 槽位预分配, 生产者CAS抢占序号, 满时丢弃并计数, 不阻塞请求线程
+final class AccessLogBuffer {
+
+    private final Entry[] entries;
+
+    //槽位序号: 等于pos表示可写, 等于pos+1表示可读
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private final LongAdder dropped = new LongAdder();
+
+    //只由消费线程访问
+    private long head;
+
+    AccessLogBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be in (0, 2^30]: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (size <= 0) {
+            size = 1;
+        }
+        this.entries = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.entries[i] = new Entry();
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    boolean offer(long timestamp, String serviceName, String methodName, long delay, int seqid, int argsSize, String client) {
+        long pos = this.tail.get();
+        for (; ; ) {
+            int index = (int) (pos & this.mask);
+            long diff = this.sequences.get(index) - pos;
+            if (diff == 0) {
+                if (this.tail.compareAndSet(pos, pos + 1)) {
+                    Entry entry = this.entries[index];
+                    entry.timestamp = timestamp;
+                    entry.serviceName = serviceName;
+                    entry.methodName = methodName;
+                    entry.delay = delay;
+                    entry.seqid = seqid;
+                    entry.argsSize = argsSize;
+                    entry.client = client;
+                    this.sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = this.tail.get();
+            } else if (diff < 0) {
+                this.dropped.increment();
+                return false;
+            } else {
+                pos = this.tail.get();
+            }
+        }
+    }
+
+    int drain(Consumer<Entry> consumer, int limit) {
+        int count = 0;
+        while (count < limit) {
+            int index = (int) (this.head & this.mask);
+            if (this.sequences.get(index) != this.head + 1) {
+                break;
+            }
+            Entry entry = this.entries[index];
+            consumer.accept(entry);
+            entry.client = null;
+            this.sequences.lazySet(index, this.head + this.entries.length);
+            this.head++;
+            count++;
+        }
+        return count;
+    }
+
+    long takeDropped() {
+        return this.dropped.sumThenReset();
+    }
+
+    static final class Entry {
+
+        long timestamp;
+
+        String serviceName;
+
+        String methodName;
+
+        long delay;
+
+        int seqid;
+
+        int argsSize;
+
+        String client;
+    }
+}
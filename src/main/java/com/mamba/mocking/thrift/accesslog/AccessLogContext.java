@@ -0,0 +1,89 @@
+package com.mamba.mocking.thrift.accesslog;
+
+import org.apache.thrift.server.AbstractNonblockingServer.FrameBuffer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TNonblockingSocket;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+
+import java.lang.reflect.Field;
+
+//当前线程正在处理的请求, 由最外层processor设置; 异步Iface在process线程内同步调用, 同样可见
+public final class AccessLogContext {
+
+    private static final ThreadLocal<AccessLogContext> CURRENT = ThreadLocal.withInitial(AccessLogContext::new);
+
+    private static final Field FRAMED_TRANSPORT_FIELD = getField(TFramedTransport.class, "transport_");
+
+    private static final Field FRAME_BUFFER_TRANSPORT_FIELD = getField(FrameBuffer.class, "trans_");
+
+    private boolean active;
+
+    private int seqid;
+
+    private int argsSize;
+
+    //TTransport或FrameBuffer, 只在采样命中时解析地址
+    private Object peer;
+
+    private AccessLogContext() {
+    }
+
+    public static void enter(int seqid, int argsSize, Object peer) {
+        AccessLogContext context = CURRENT.get();
+        context.active = true;
+        context.seqid = seqid;
+        context.argsSize = argsSize;
+        context.peer = peer;
+    }
+
+    public static void exit() {
+        AccessLogContext context = CURRENT.get();
+        context.active = false;
+        context.peer = null;
+    }
+
+    static AccessLogContext current() {
+        AccessLogContext context = CURRENT.get();
+        return context.active ? context : null;
+    }
+
+    int getSeqid() {
+        return this.seqid;
+    }
+
+    int getArgsSize() {
+        return this.argsSize;
+    }
+
+    String resolveClient() {
+        Object peer = this.peer;
+        try {
+            if (peer instanceof FrameBuffer && FRAME_BUFFER_TRANSPORT_FIELD != null) {
+                peer = FRAME_BUFFER_TRANSPORT_FIELD.get(peer);
+            }
+            if (peer instanceof TFramedTransport && FRAMED_TRANSPORT_FIELD != null) {
+                peer = FRAMED_TRANSPORT_FIELD.get(peer);
+            }
+            if (peer instanceof TSocket) {
+                return String.valueOf(((TSocket) peer).getSocket().getRemoteSocketAddress());
+            }
+            if (peer instanceof TNonblockingSocket) {
+                return String.valueOf(((TNonblockingSocket) peer).getSocketChannel().getRemoteAddress());
+            }
+        } catch (Exception e) {
+            //ignore
+        }
+        return null;
+    }
+
+    private static Field getField(Class<?> clazz, String name) {
+        try {
+            Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
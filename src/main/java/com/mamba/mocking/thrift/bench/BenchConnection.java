@@ -0,0 +1,163 @@
+package com.mamba.mocking.thrift.bench;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+//pipelined连接: 发送线程最多pipeline个请求在途, 读线程按顺序读响应(thrift server对同一连接按序响应);
+//读写各用一个protocol实例(TCompactProtocol等有读写共用的状态), 共享同一个transport
+final class BenchConnection {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BenchConnection.class);
+
+    private final int id;
+
+    private final TSocket socket;
+
+    private final TProtocol out;
+
+    private final TProtocol in;
+
+    private final BenchRequest request;
+
+    private final LoadGenerator generator;
+
+    private final TBase result;
+
+    private final TFieldIdEnum[] exceptionFields;
+
+    private final Semaphore permits;
+
+    //在途请求的计划发送时间与实际发送时间, 环形; permits保证不会覆盖未完成的槽位
+    private final long[] intendedTimes;
+
+    private final long[] sendTimes;
+
+    private volatile long tail;
+
+    private long head;
+
+    private int seqid;
+
+    private volatile boolean closing;
+
+    private volatile boolean failed;
+
+    BenchConnection(int id, String host, int port, int timeout, TTransportFactory transportFactory, TProtocolFactory protocolFactory, BenchRequest request, int pipeline, LoadGenerator generator) throws Exception {
+        this.id = id;
+        this.socket = new TSocket(host, port, timeout);
+        this.socket.open();
+        TTransport transport = transportFactory.getTransport(this.socket);
+        this.out = protocolFactory.getProtocol(transport);
+        this.in = protocolFactory.getProtocol(transport);
+        this.request = request;
+        this.generator = generator;
+        this.result = request.newResult();
+        this.exceptionFields = request.getExceptionFields();
+        this.permits = new Semaphore(pipeline);
+        this.intendedTimes = new long[pipeline];
+        this.sendTimes = new long[pipeline];
+        Thread reader = new Thread(this::read, "bench-reader-" + id);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    //intendedTime<0时为实际发送时间; 连接失败时返回false
+    boolean send(long intendedTime) throws Exception {
+        this.permits.acquire();
+        if (this.failed) {
+            return false;
+        }
+        int index = (int) (this.tail % this.intendedTimes.length);
+        long sendTime = System.nanoTime();
+        this.intendedTimes[index] = intendedTime < 0 ? sendTime : intendedTime;
+        this.sendTimes[index] = sendTime;
+        this.tail = this.tail + 1;
+        try {
+            this.request.write(this.out, this.seqid++);
+        } catch (Exception e) {
+            fail(e);
+            return false;
+        }
+        return true;
+    }
+
+    //等待在途请求完成后关闭
+    void close(long timeoutNanos) throws InterruptedException {
+        if (!this.failed && !this.permits.tryAcquire(this.intendedTimes.length, timeoutNanos, TimeUnit.NANOSECONDS)) {
+            LOGGER.warn("Connection {} closed with {} requests in flight", this.id, this.tail - this.head);
+        }
+        this.closing = true;
+        this.socket.close();
+    }
+
+    boolean isFailed() {
+        return this.failed;
+    }
+
+    private void read() {
+        try {
+            while (!this.closing) {
+                TMessage message = this.in.readMessageBegin();
+                LoadGenerator.Outcome outcome;
+                if (message.type == TMessageType.EXCEPTION) {
+                    TApplicationException.readFrom(this.in);
+                    outcome = LoadGenerator.Outcome.ERROR;
+                } else {
+                    outcome = readResult() ? LoadGenerator.Outcome.SUCCESS : LoadGenerator.Outcome.EXCEPTION;
+                }
+                this.in.readMessageEnd();
+                long now = System.nanoTime();
+                //读volatile的tail, 保证看到发送线程写入的时间
+                if (this.head >= this.tail) {
+                    throw new IllegalStateException("Unexpected response: " + message.name);
+                }
+                int index = (int) (this.head % this.intendedTimes.length);
+                this.head++;
+                this.generator.complete(this.intendedTimes[index], this.sendTimes[index], now, outcome);
+                this.permits.release();
+            }
+        } catch (Exception e) {
+            if (!this.closing) {
+                fail(e);
+            }
+        }
+    }
+
+    //返回值为field 0, void方法没有field; 其他field为IDL声明的异常
+    @SuppressWarnings("unchecked")
+    private boolean readResult() throws Exception {
+        this.result.clear();
+        this.result.read(this.in);
+        for (TFieldIdEnum field : this.exceptionFields) {
+            if (this.result.isSet(field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void fail(Exception e) {
+        if (this.failed) {
+            return;
+        }
+        this.failed = true;
+        LOGGER.error("Connection {} failed, {} requests in flight", this.id, this.tail - this.head, e);
+        this.generator.fail(this.tail - this.head);
+        this.socket.close();
+        //唤醒等待permit的发送线程
+        this.permits.release(this.intendedTimes.length);
+    }
+}
@@ -0,0 +1,113 @@
+package com.mamba.mocking.thrift.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.meta_data.FieldMetaData;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+//压测请求: 参数按Iface方法的参数类型从json数组反序列化, 启动时构造一次, 每次发送只换seqid
+public class BenchRequest {
+
+    private static final Gson GSON = new Gson();
+
+    //多路复用时为"服务名:方法名"
+    private final String messageName;
+
+    private final TBase<?, ?> args;
+
+    //响应按生成的_result类读取(TTupleProtocol没有field头, 无法通用地跳过)
+    private final Class<?> resultClass;
+
+    private BenchRequest(String messageName, TBase<?, ?> args, Class<?> resultClass) {
+        this.messageName = messageName;
+        this.args = args;
+        this.resultClass = resultClass;
+    }
+
+    public String getMessageName() {
+        return this.messageName;
+    }
+
+    TBase<?, ?> newResult() throws Exception {
+        return (TBase<?, ?>) this.resultClass.newInstance();
+    }
+
+    @SuppressWarnings("unchecked")
+    TFieldIdEnum[] getExceptionFields() {
+        List<TFieldIdEnum> fields = new ArrayList<>();
+        for (TFieldIdEnum field : FieldMetaData.getStructMetaDataMap((Class<? extends TBase>) this.resultClass).keySet()) {
+            if (field.getThriftFieldId() != 0) {
+                fields.add(field);
+            }
+        }
+        return fields.toArray(new TFieldIdEnum[0]);
+    }
+
+    public void write(TProtocol out, int seqid) throws TException {
+        out.writeMessageBegin(new TMessage(this.messageName, TMessageType.CALL, seqid));
+        this.args.write(out);
+        out.writeMessageEnd();
+        out.getTransport().flush();
+    }
+
+    //argsJson: [参数1, 参数2, ...], 缺少的参数为默认值; service: 多路复用时的服务名, 可为null
+    public static BenchRequest of(Class<?> serviceClass, String methodName, String argsJson, String service) throws Exception {
+        Class<?> ifaceClass = Class.forName(serviceClass.getName() + "$Iface", true, serviceClass.getClassLoader());
+        Method method = null;
+        for (Method m : ifaceClass.getMethods()) {
+            if (m.getName().equals(methodName)) {
+                method = m;
+            }
+        }
+        if (method == null) {
+            throw new IllegalArgumentException("No such method: " + serviceClass.getName() + "." + methodName);
+        }
+        JsonArray array = argsJson == null || argsJson.trim().isEmpty() ? new JsonArray() : JsonParser.parseString(argsJson).getAsJsonArray();
+        Type[] types = method.getGenericParameterTypes();
+        Class<?>[] classes = method.getParameterTypes();
+        if (array.size() > types.length) {
+            throw new IllegalArgumentException("Too many args for " + methodName + ": " + array.size());
+        }
+        Object[] values = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            values[i] = i < array.size() ? GSON.fromJson(array.get(i), types[i]) : defaultValue(classes[i]);
+        }
+        Class<?> argsClass = Class.forName(serviceClass.getName() + '$' + methodName + "_args", true, serviceClass.getClassLoader());
+        TBase<?, ?> args = (TBase<?, ?>) (types.length == 0 ? argsClass.getConstructor().newInstance() : argsClass.getConstructor(classes).newInstance(values));
+        Class<?> resultClass = Class.forName(serviceClass.getName() + '$' + methodName + "_result", true, serviceClass.getClassLoader());
+        return new BenchRequest(service == null ? methodName : service + ':' + methodName, args, resultClass);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0D;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,276 @@
+package com.mamba.mocking.thrift.bench;
+
+import com.mamba.mocking.thrift.metrics.LatencyHistogram;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TTransportFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+//压测客户端, connections个pipelined连接:
+//closed-loop: 每个连接保持pipeline个请求在途, 响应后立即发送下一个; 响应时间按预热期的平均服务时间补记被阻塞的请求(HdrHistogram expected interval)
+//open-loop: 按固定到达率rate发送, 连接在途已满时请求顺延, 响应时间从计划发送时间算起; 两者均校正coordinated omission
+public class LoadGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999, 0.9999};
+
+    enum Outcome {
+        SUCCESS, EXCEPTION, ERROR
+    }
+
+    private final String host;
+
+    private final int port;
+
+    private final int timeout;
+
+    private final TTransportFactory transportFactory;
+
+    private final TProtocolFactory protocolFactory;
+
+    private final BenchRequest request;
+
+    private final int connections;
+
+    private final int pipeline;
+
+    //每秒请求数, <=0为closed-loop
+    private final double rate;
+
+    private final long durationNanos;
+
+    private final long warmupNanos;
+
+    //closed-loop补记的期望间隔, <=0时取预热期的平均服务时间
+    private volatile long expectedIntervalNanos;
+
+    //实际发送到收到响应
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+    //计划发送到收到响应
+    private final LatencyHistogram responseTime = new LatencyHistogram();
+
+    private final LatencyHistogram warmupServiceTime = new LatencyHistogram();
+
+    private final LongAdder successes = new LongAdder();
+
+    private final LongAdder exceptions = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder lost = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder sent = new LongAdder();
+
+    //结束前完成的请求数, 用于计算吞吐; 结束后等待在途请求完成, 其延迟计入结果
+    private final LongAdder completedInTime = new LongAdder();
+
+    private volatile long warmupEndTime = Long.MAX_VALUE;
+
+    private volatile long endTime = Long.MAX_VALUE;
+
+    public LoadGenerator(String host, int port, int timeout, TTransportFactory transportFactory, TProtocolFactory protocolFactory, BenchRequest request,
+                         int connections, int pipeline, double rate, long durationNanos, long warmupNanos, long expectedIntervalNanos) {
+        if (connections <= 0 || pipeline <= 0 || durationNanos <= 0 || warmupNanos < 0) {
+            throw new IllegalArgumentException("Invalid bench: connections=" + connections + ", pipeline=" + pipeline + ", duration=" + durationNanos + "ns, warmup=" + warmupNanos + "ns");
+        }
+        this.host = host;
+        this.port = port;
+        this.timeout = timeout;
+        this.transportFactory = transportFactory;
+        this.protocolFactory = protocolFactory;
+        this.request = request;
+        this.connections = connections;
+        this.pipeline = pipeline;
+        this.rate = rate;
+        this.durationNanos = durationNanos;
+        this.warmupNanos = warmupNanos;
+        this.expectedIntervalNanos = expectedIntervalNanos;
+    }
+
+    public void run() throws Exception {
+        LOGGER.info("Bench {} on {}:{}: {}, {} connections x pipeline {}, warmup {}s, duration {}s", this.request.getMessageName(), this.host, this.port,
+                this.rate > 0 ? "open-loop " + this.rate + " req/s" : "closed-loop", this.connections, this.pipeline,
+                this.warmupNanos / 1e9, this.durationNanos / 1e9);
+        List<BenchConnection> benchConnections = new ArrayList<>();
+        for (int i = 0; i < this.connections; i++) {
+            benchConnections.add(new BenchConnection(i, this.host, this.port, this.timeout, this.transportFactory, this.protocolFactory, this.request, this.pipeline, this));
+        }
+        long startTime = System.nanoTime();
+        this.warmupEndTime = startTime + this.warmupNanos;
+        long endTime = this.warmupEndTime + this.durationNanos;
+        this.endTime = endTime;
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < this.connections; i++) {
+            BenchConnection connection = benchConnections.get(i);
+            //open-loop时各连接错开起始时间, 合起来是均匀的到达
+            long offset = this.rate > 0 ? (long) (1e9 / this.rate * i) : 0;
+            Thread sender = new Thread(() -> send(connection, startTime + offset, endTime), "bench-sender-" + i);
+            sender.setDaemon(true);
+            sender.start();
+            senders.add(sender);
+        }
+        progress(startTime, endTime);
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        for (BenchConnection connection : benchConnections) {
+            connection.close(Math.max(TimeUnit.MILLISECONDS.toNanos(this.timeout), TimeUnit.SECONDS.toNanos(1)));
+        }
+        report(benchConnections);
+    }
+
+    private void send(BenchConnection connection, long startTime, long endTime) {
+        //open-loop: 每个连接的到达间隔为connections/rate
+        double interval = this.rate > 0 ? 1e9 * this.connections / this.rate : 0;
+        try {
+            for (long i = 0; ; i++) {
+                //closed-loop没有计划时间, 取得permit后的实际发送时间即计划时间
+                long intendedTime = -1;
+                if (interval > 0) {
+                    intendedTime = startTime + (long) (interval * i);
+                    long now;
+                    while ((now = System.nanoTime()) < intendedTime) {
+                        LockSupport.parkNanos(intendedTime - now);
+                    }
+                }
+                if (Math.max(intendedTime, System.nanoTime()) >= endTime || !connection.send(intendedTime)) {
+                    return;
+                }
+                this.sent.increment();
+            }
+        } catch (Exception e) {
+            LOGGER.error("Bench sender stopped", e);
+        }
+    }
+
+    private void progress(long startTime, long endTime) throws InterruptedException {
+        long last = 0;
+        for (long second = 1; ; second++) {
+            long next = startTime + TimeUnit.SECONDS.toNanos(second);
+            long now;
+            while ((now = System.nanoTime()) < Math.min(next, endTime)) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(next, endTime) - now);
+            }
+            if (this.warmupNanos > 0 && this.expectedIntervalNanos <= 0 && now >= this.warmupEndTime) {
+                LatencyHistogram.Snapshot warmup = this.warmupServiceTime.snapshot();
+                this.expectedIntervalNanos = (long) warmup.getMean();
+            }
+            long count = this.completed.sum();
+            LOGGER.info("{}{}s: {} req/s, errors={}", now < this.warmupEndTime ? "warmup " : "", second, count - last, this.exceptions.sum() + this.errors.sum() + this.lost.sum());
+            last = count;
+            if (now >= endTime) {
+                return;
+            }
+        }
+    }
+
+    void complete(long intendedTime, long sendTime, long responseTime, Outcome outcome) {
+        this.completed.increment();
+        //按完成时间区分预热: 超出处理能力时, 预热期积压的请求在统计期内完成, 其排队时间应计入结果
+        if (responseTime < this.warmupEndTime) {
+            this.warmupServiceTime.record(responseTime - sendTime);
+            return;
+        }
+        switch (outcome) {
+            case SUCCESS:
+                this.successes.increment();
+                break;
+            case EXCEPTION:
+                this.exceptions.increment();
+                break;
+            default:
+                this.errors.increment();
+                break;
+        }
+        if (responseTime < this.endTime) {
+            this.completedInTime.increment();
+        }
+        this.serviceTime.record(responseTime - sendTime);
+        if (this.rate > 0) {
+            this.responseTime.record(responseTime - intendedTime);
+        } else {
+            this.responseTime.record(responseTime - intendedTime, this.expectedIntervalNanos);
+        }
+    }
+
+    //连接失败时在途的请求
+    void fail(long inFlight) {
+        this.lost.add(inFlight);
+    }
+
+    long getSuccesses() {
+        return this.successes.sum();
+    }
+
+    long getFailures() {
+        return this.exceptions.sum() + this.errors.sum() + this.lost.sum();
+    }
+
+    long getSent() {
+        return this.sent.sum();
+    }
+
+    long getExpectedIntervalNanos() {
+        return this.expectedIntervalNanos;
+    }
+
+    LatencyHistogram.Snapshot serviceTimeSnapshot() {
+        return this.serviceTime.snapshot();
+    }
+
+    LatencyHistogram.Snapshot responseTimeSnapshot() {
+        return this.responseTime.snapshot();
+    }
+
+    private void report(List<BenchConnection> benchConnections) {
+        LatencyHistogram.Snapshot service = this.serviceTime.snapshot();
+        LatencyHistogram.Snapshot response = this.responseTime.snapshot();
+        int failedConnections = 0;
+        for (BenchConnection connection : benchConnections) {
+            if (connection.isFailed()) {
+                failedConnections++;
+            }
+        }
+        LOGGER.info("=========Bench result=======");
+        LOGGER.info("requests={}, throughput={} req/s, success={}, exception={}, error={}, lost={}, failedConnections={}",
+                service.getCount(), String.format("%.1f", this.completedInTime.sum() * 1e9 / this.durationNanos),
+                this.successes.sum(), this.exceptions.sum(), this.errors.sum(), this.lost.sum(), failedConnections);
+        if (this.rate > 0) {
+            //超出处理能力时积压的请求在结束前来不及发送
+            long scheduled = (long) (this.rate * (this.warmupNanos + this.durationNanos) / 1e9);
+            LOGGER.info("open-loop scheduled={}, sent={}, unsent={}", scheduled, this.sent.sum(), Math.max(scheduled - this.sent.sum(), 0));
+        } else {
+            LOGGER.info("closed-loop expected interval: {}ms{}", format(this.expectedIntervalNanos), this.expectedIntervalNanos > 0 ? "" : " (no warmup, response time not corrected)");
+        }
+        StringBuilder header = new StringBuilder(String.format("%-14s%10s", "(ms)", "mean"));
+        for (double percentile : PERCENTILES) {
+            header.append(String.format("%10s", "p" + String.valueOf(percentile * 100).replaceAll("\\.?0+$", "")));
+        }
+        header.append(String.format("%10s", "max"));
+        LOGGER.info("{}", header);
+        LOGGER.info("{}", row("service time", service));
+        LOGGER.info("{}", row("response time", response));
+    }
+
+    private static String row(String name, LatencyHistogram.Snapshot snapshot) {
+        StringBuilder sb = new StringBuilder(String.format("%-14s%10s", name, format((long) snapshot.getMean())));
+        for (double percentile : PERCENTILES) {
+            sb.append(String.format("%10s", format(snapshot.getPercentile(percentile))));
+        }
+        return sb.append(String.format("%10s", format(snapshot.getMax()))).toString();
+    }
+
+    private static String format(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+}
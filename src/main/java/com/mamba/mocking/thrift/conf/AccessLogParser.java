@@ -0,0 +1,41 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.accesslog.AccessLog;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+public class AccessLogParser {
+
+    //accesslog=off 或 accesslog.sample=0 时完全关闭
+    public static AccessLog parseAccessLog(Properties props) throws IOException {
+        String enabled = props.getProperty("accesslog", "on").trim();
+        double sample = Double.parseDouble(props.getProperty("accesslog.sample", "1").trim());
+        if ("off".equalsIgnoreCase(enabled) || sample <= 0) {
+            return AccessLog.OFF;
+        }
+        if (!"on".equalsIgnoreCase(enabled)) {
+            throw new IllegalArgumentException("Unsupported accesslog: " + enabled);
+        }
+        String file = props.getProperty("accesslog.file");
+        int bufferSize = Integer.parseInt(props.getProperty("accesslog.bufferSize", "65536").trim());
+        Set<String> fields = new HashSet<>();
+        String fieldsValue = props.getProperty("accesslog.fields");
+        if (fieldsValue != null) {
+            for (String field : fieldsValue.split(",")) {
+                if (!field.trim().isEmpty()) {
+                    fields.add(field.trim());
+                }
+            }
+        }
+        Set<String> unsupportedFields = new HashSet<>(fields);
+        unsupportedFields.removeAll(Arrays.asList("seqid", "args", "client"));
+        if (!unsupportedFields.isEmpty()) {
+            throw new IllegalArgumentException("Unsupported accesslog fields: " + unsupportedFields);
+        }
+        return new AccessLog(file == null ? null : file.trim(), Math.min(sample, 1), bufferSize, fields.contains("seqid"), fields.contains("args"), fields.contains("client"));
+    }
+}
@@ -0,0 +1,33 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.latency.CapacityModel;
+
+import java.util.Map;
+
+public class CapacityModelParser {
+
+    //queue(servers=8,queue=64,timeout=500ms,reject=error|reset); queue默认不限, timeout默认不限, queue=0即无等待队列(Erlang-B)
+    public static CapacityModel parseCapacityModel(String define) {
+        return ParameterizedPropertyParser.parse(define, CapacityModelParser::newCapacityModel);
+    }
+
+    public static CapacityModel newCapacityModel(String name, Map<String, String> attrs) {
+        if (!"queue".equals(name)) {
+            throw new IllegalArgumentException("Unsupported capacity: " + name);
+        }
+        String servers = attrs.get("servers");
+        if (servers == null) {
+            throw new IllegalArgumentException("Require capacity attr: servers");
+        }
+        String queue = attrs.get("queue");
+        String timeout = attrs.get("timeout");
+        String reject = attrs.getOrDefault("reject", "error");
+        if (!"error".equals(reject) && !"reset".equals(reject)) {
+            throw new IllegalArgumentException("Unsupported capacity reject: " + reject);
+        }
+        return new CapacityModel(Integer.parseInt(servers),
+                queue == null ? Integer.MAX_VALUE : Integer.parseInt(queue),
+                timeout == null ? Long.MAX_VALUE : (long) DurationParser.parseNanos(timeout),
+                "reset".equals(reject));
+    }
+}
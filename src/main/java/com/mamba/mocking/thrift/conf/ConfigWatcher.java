@@ -0,0 +1,130 @@
+package com.mamba.mocking.thrift.conf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+//监听配置文件所在目录(兼容编辑器先写临时文件再rename的保存方式), 文件变化后重新加载并回调; 回调失败时保留原配置
+public class ConfigWatcher implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigWatcher.class);
+
+    //连续的写事件合并为一次加载, 同时避免读到写了一半的文件
+    private static final long DEBOUNCE_MILLIS = 200;
+
+    private final File file;
+
+    private final Listener listener;
+
+    private final WatchService watchService;
+
+    private final Thread worker;
+
+    private Properties current;
+
+    public ConfigWatcher(File file, Properties props, Listener listener) throws IOException {
+        this.file = file.getAbsoluteFile();
+        this.listener = listener;
+        this.current = props;
+        Path dir = this.file.getParentFile().toPath();
+        this.watchService = dir.getFileSystem().newWatchService();
+        dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.worker = new Thread(this::run, "config-watcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+        LOGGER.info("Watching config: {}", this.file);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = this.watchService.take();
+                boolean changed = pollChanged(key);
+                if (!changed) {
+                    continue;
+                }
+                TimeUnit.MILLISECONDS.sleep(DEBOUNCE_MILLIS);
+                for (WatchKey next = this.watchService.poll(); next != null; next = this.watchService.poll()) {
+                    pollChanged(next);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //closed
+        }
+    }
+
+    private boolean pollChanged(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (context instanceof Path && ((Path) context).getFileName().toString().equals(this.file.getName())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() {
+        Properties props = new Properties();
+        try (FileInputStream stream = new FileInputStream(this.file)) {
+            props.load(stream);
+        } catch (IOException e) {
+            LOGGER.error("Load config failed, keep previous: {}", this.file, e);
+            return;
+        }
+        if (props.equals(this.current)) {
+            return;
+        }
+        Set<String> restartRequired = new TreeSet<>();
+        for (String propertyName : union(props.stringPropertyNames(), this.current.stringPropertyNames())) {
+            if (!propertyName.startsWith("service.") && !propertyName.startsWith("scenario.") && !Objects.equals(props.getProperty(propertyName), this.current.getProperty(propertyName))) {
+                restartRequired.add(propertyName);
+            }
+        }
+        try {
+            this.listener.reload(props);
+        } catch (Exception e) {
+            LOGGER.error("Reject config, keep previous: {}", this.file, e);
+            return;
+        }
+        this.current = props;
+        if (restartRequired.isEmpty()) {
+            LOGGER.info("Config reloaded: {}", this.file);
+        } else {
+            LOGGER.warn("Config reloaded: {}, changes require restart and are ignored: {}", this.file, restartRequired);
+        }
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        Set<String> union = new TreeSet<>(a);
+        union.addAll(b);
+        return union;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+        this.worker.interrupt();
+    }
+
+    public interface Listener {
+
+        void reload(Properties props) throws Exception;
+    }
+}
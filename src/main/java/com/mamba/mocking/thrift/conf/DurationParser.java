@@ -0,0 +1,28 @@
+package com.mamba.mocking.thrift.conf;
+
+final class DurationParser {
+
+    //250us, 0.5ms, 10(默认毫秒), 1s -> 纳秒
+    static double parseNanos(String define) {
+        String value = define.trim();
+        int end = value.length();
+        while (end > 0 && Character.isLetter(value.charAt(end - 1))) {
+            end--;
+        }
+        String unit = value.substring(end);
+        double number = Double.parseDouble(value.substring(0, end));
+        switch (unit) {
+            case "ns":
+                return number;
+            case "us":
+                return number * 1000D;
+            case "":
+            case "ms":
+                return number * 1000000D;
+            case "s":
+                return number * 1000000000D;
+            default:
+                throw new IllegalArgumentException("Unsupported duration unit: " + define);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.mamba.mocking.thrift.conf;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutorParser {
+
+    //fixed(threads=64), cached(max=1000), forkjoin(parallelism=8), virtual
+    public static ExecutorService parseExecutor(String define) {
+        return ParameterizedPropertyParser.parse(define, ExecutorParser::newExecutor);
+    }
+
+    public static ExecutorService newExecutor(String name, Map<String, String> attrs) {
+        if ("fixed".equals(name)) {
+            String threads = attrs.get("threads");
+            if (threads == null) {
+                throw new IllegalArgumentException("Require executor attr: threads");
+            }
+            return Executors.newFixedThreadPool(Integer.parseInt(threads), newThreadFactory("worker-", false));
+        }
+        if ("cached".equals(name)) {
+            return newCachedExecutor("worker-", Integer.parseInt(attrs.getOrDefault("max", "0")), false);
+        }
+        if ("forkjoin".equals(name)) {
+            //work-stealing, asyncMode; TThreadPoolServer的每个连接独占一个任务, 连接数超过parallelism时会排队
+            String parallelism = attrs.get("parallelism");
+            return parallelism == null ? Executors.newWorkStealingPool() : Executors.newWorkStealingPool(Integer.parseInt(parallelism));
+        }
+        if ("virtual".equals(name)) {
+            return newVirtualThreadPerTaskExecutor();
+        }
+        throw new IllegalArgumentException("Unsupported executor: " + name);
+    }
+
+    //同thrift默认的worker线程池: 空闲60s回收, 不排队; maxThreads<=0表示不限
+    public static ExecutorService newCachedExecutor(String namePrefix, int maxThreads, boolean daemon) {
+        return new ThreadPoolExecutor(0, maxThreads <= 0 ? Integer.MAX_VALUE : maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), newThreadFactory(namePrefix, daemon));
+    }
+
+    //多个server共用一个线程池时每个server使用一个视图: libthrift的server停止时会shutdown并awaitTermination传入的executorService,
+    //视图只拒绝本server的新任务并等待本server已提交的任务完成, 不关闭底层线程池; 底层线程池由创建方关闭
+    public static ExecutorService share(ExecutorService executor) {
+        return new SharedExecutor(executor);
+    }
+
+    //项目以1.8为目标, 运行在Java 21+时通过反射创建
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Virtual threads require Java 21+, current: " + System.getProperty("java.version"));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Create virtual thread executor failed", e);
+        }
+    }
+
+    static ThreadFactory newThreadFactory(String namePrefix, boolean daemon) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+
+    private static class SharedExecutor extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+
+        //通过本视图提交且未完成的任务数
+        private int running;
+
+        private boolean shutdown;
+
+        private SharedExecutor(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            synchronized (this) {
+                if (this.shutdown) {
+                    throw new RejectedExecutionException("Executor shutdown");
+                }
+                this.running++;
+            }
+            try {
+                this.delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        done();
+                    }
+                });
+            } catch (RuntimeException e) {
+                done();
+                throw e;
+            }
+        }
+
+        private synchronized void done() {
+            if (--this.running == 0) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public synchronized void shutdown() {
+            this.shutdown = true;
+        }
+
+        //底层线程池中的任务不属于本视图, 无法取出或中断; 同shutdown
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown();
+            return Collections.emptyList();
+        }
+
+        @Override
+        public synchronized boolean isShutdown() {
+            return this.shutdown;
+        }
+
+        @Override
+        public synchronized boolean isTerminated() {
+            return this.shutdown && this.running == 0;
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+}
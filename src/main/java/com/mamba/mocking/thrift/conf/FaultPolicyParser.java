@@ -0,0 +1,78 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.fault.FaultPolicy;
+import com.mamba.mocking.thrift.fault.FaultType;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class FaultPolicyParser {
+
+    private static final long DEFAULT_HOLD_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    //random(error=1%,exception=2%,reset=0.5%,drop=0.1%,timeout=0.1%,truncate=0.1%,exceptionType=XxxException,hold=30s)
+    //burst(period=60s,duration=5s,offset=0,error=100%)
+    public static FaultPolicy parseFaultPolicy(String define) {
+        return ParameterizedPropertyParser.parse(define, FaultPolicyParser::newFaultPolicy);
+    }
+
+    public static FaultPolicy newFaultPolicy(String name, Map<String, String> attrs) {
+        boolean burst;
+        if ("random".equals(name)) {
+            burst = false;
+        } else if ("burst".equals(name)) {
+            burst = true;
+        } else {
+            throw new IllegalArgumentException("Unsupported fault: " + name);
+        }
+        Map<FaultType, Double> rates = new EnumMap<>(FaultType.class);
+        long periodMillis = 0;
+        long durationMillis = 0;
+        long offsetMillis = 0;
+        String exceptionType = null;
+        long holdNanos = DEFAULT_HOLD_NANOS;
+        for (Map.Entry<String, String> attr : attrs.entrySet()) {
+            String key = attr.getKey();
+            String value = attr.getValue();
+            if (burst && "period".equals(key)) {
+                periodMillis = parseMillis(value);
+            } else if (burst && "duration".equals(key)) {
+                durationMillis = parseMillis(value);
+            } else if (burst && "offset".equals(key)) {
+                offsetMillis = parseMillis(value);
+            } else if ("exceptionType".equals(key)) {
+                exceptionType = value;
+            } else if ("hold".equals(key)) {
+                holdNanos = (long) DurationParser.parseNanos(value);
+            } else {
+                rates.put(parseType(name, key), parseRate(value));
+            }
+        }
+        if (burst && (periodMillis <= 0 || durationMillis <= 0)) {
+            throw new IllegalArgumentException("Require fault attrs: period, duration");
+        }
+        return new FaultPolicy(rates, periodMillis, durationMillis, offsetMillis, exceptionType, holdNanos);
+    }
+
+    private static FaultType parseType(String name, String key) {
+        try {
+            return FaultType.valueOf(key.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported attr in fault " + name + ": " + key);
+        }
+    }
+
+    //5%, 0.05
+    static double parseRate(String value) {
+        if (value.endsWith("%")) {
+            return Double.parseDouble(value.substring(0, value.length() - 1)) / 100D;
+        }
+        return Double.parseDouble(value);
+    }
+
+    private static long parseMillis(String value) {
+        return (long) (DurationParser.parseNanos(value) / 1000000D);
+    }
+}
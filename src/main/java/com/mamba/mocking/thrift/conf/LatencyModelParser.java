@@ -0,0 +1,84 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.latency.LatencyModel;
+import com.mamba.mocking.thrift.latency.LatencyModels;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+public class LatencyModelParser {
+
+    public static LatencyModel parseLatencyModel(String define) {
+        return ParameterizedPropertyParser.parse(define, LatencyModelParser::newLatencyModel);
+    }
+
+    public static LatencyModel newLatencyModel(String name, Map<String, String> attrs) {
+        if ("fixed".equals(name)) {
+            return LatencyModels.fixed(getValue(name, attrs, "delay"));
+        }
+        if ("uniform".equals(name)) {
+            return LatencyModels.uniform(getValue(name, attrs, "min"), getValue(name, attrs, "max"));
+        }
+        if ("normal".equals(name)) {
+            return LatencyModels.normal(getValue(name, attrs, "mean"), getValue(name, attrs, "stddev"));
+        }
+        if ("lognormal".equals(name)) {
+            String sigma = attrs.get("sigma");
+            if (sigma == null) {
+                throw new IllegalArgumentException("Missing sigma in latency: " + name);
+            }
+            return LatencyModels.logNormal(getValue(name, attrs, "median"), Double.parseDouble(sigma));
+        }
+        if ("exponential".equals(name)) {
+            return LatencyModels.exponential(getValue(name, attrs, "mean"));
+        }
+        if ("empirical".equals(name)) {
+            //empirical(p50=5,p99=40,p999=200), empirical(p50=5,p99=40,p999=200,max=500): max限制外推的尾部
+            TreeMap<Double, Double> table = new TreeMap<>();
+            for (Map.Entry<String, String> attr : attrs.entrySet()) {
+                if (attr.getKey().equals("max")) {
+                    continue;
+                }
+                table.put(parsePercentile(attr.getKey()), DurationParser.parseNanos(attr.getValue()));
+            }
+            double[] percentiles = new double[table.size()];
+            double[] values = new double[table.size()];
+            int i = 0;
+            for (Map.Entry<Double, Double> entry : table.entrySet()) {
+                percentiles[i] = entry.getKey();
+                values[i] = entry.getValue();
+                i++;
+            }
+            String max = attrs.get("max");
+            return LatencyModels.empirical(percentiles, values, max == null ? Double.POSITIVE_INFINITY : DurationParser.parseNanos(max));
+        }
+        if (attrs.isEmpty() && !name.isEmpty() && (Character.isDigit(name.charAt(0)) || name.charAt(0) == '.')) {
+            //latency=10, latency=250us, 等同于fixed(delay=...)
+            return LatencyModels.fixed(DurationParser.parseNanos(name));
+        }
+        throw new IllegalArgumentException("Unsupported latency: " + name);
+    }
+
+    private static double getValue(String name, Map<String, String> attrs, String attrName) {
+        String value = attrs.get(attrName);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + attrName + " in latency: " + name);
+        }
+        return DurationParser.parseNanos(value);
+    }
+
+    //p50 -> 0.5, p99 -> 0.99, p999 -> 0.999, p99.99 -> 0.9999, p100 -> 1
+    static double parsePercentile(String key) {
+        if (key.length() < 2 || key.charAt(0) != 'p') {
+            throw new IllegalArgumentException("Invalid percentile: " + key);
+        }
+        String digits = key.substring(1);
+        if (digits.equals("100")) {
+            return 1D;
+        }
+        if (digits.indexOf('.') < 0 && digits.length() > 2) {
+            digits = digits.substring(0, 2) + '.' + digits.substring(2);
+        }
+        return Double.parseDouble(digits) / 100D;
+    }
+}
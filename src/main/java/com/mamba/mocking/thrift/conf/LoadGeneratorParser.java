@@ -0,0 +1,69 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.bench.BenchRequest;
+import com.mamba.mocking.thrift.bench.LoadGenerator;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TTransportFactory;
+
+import java.util.Map;
+import java.util.Properties;
+
+public class LoadGeneratorParser {
+
+    //bench=closed(target=127.0.0.1:9001,method=getStruct,connections=8,pipeline=1,duration=30s,warmup=5s)
+    //bench=open(target=127.0.0.1:9001,method=getStruct,rate=20000,connections=8,pipeline=16,duration=30s,warmup=5s)
+    //参数为bench.args的json数组; service: 多路复用时的服务名, 使用service.<service>.class
+    public static LoadGenerator parseLoadGenerator(Properties props, ClassLoader classLoader, TTransportFactory transportFactory, TProtocolFactory protocolFactory) {
+        String define = props.getProperty("bench");
+        if (define == null || define.trim().isEmpty()) {
+            throw new IllegalArgumentException("Require bench conf: bench=closed(...) or bench=open(...)");
+        }
+        return ParameterizedPropertyParser.parse(define, (name, attrs) -> newLoadGenerator(name, attrs, props, classLoader, transportFactory, protocolFactory));
+    }
+
+    public static LoadGenerator newLoadGenerator(String name, Map<String, String> attrs, Properties props, ClassLoader classLoader, TTransportFactory transportFactory, TProtocolFactory protocolFactory) {
+        if (!"closed".equals(name) && !"open".equals(name)) {
+            throw new IllegalArgumentException("Unsupported bench: " + name);
+        }
+        String target = attrs.get("target");
+        int split = target == null ? -1 : target.lastIndexOf(':');
+        if (split <= 0) {
+            throw new IllegalArgumentException("Require bench attr: target=host:port");
+        }
+        String method = attrs.get("method");
+        if (method == null) {
+            throw new IllegalArgumentException("Require bench attr: method");
+        }
+        double rate = 0;
+        if ("open".equals(name)) {
+            String value = attrs.get("rate");
+            if (value == null || (rate = Double.parseDouble(value)) <= 0) {
+                throw new IllegalArgumentException("Require open bench attr: rate > 0");
+            }
+        }
+        String service = attrs.get("service");
+        String classKey = service == null ? "service.class" : "service." + service + ".class";
+        String className = props.getProperty(classKey);
+        if (className == null) {
+            throw new IllegalArgumentException("Require bench service: " + classKey);
+        }
+        BenchRequest request;
+        try {
+            request = BenchRequest.of(Class.forName(className.trim(), true, classLoader), method, props.getProperty("bench.args"), service);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid bench request: " + className + "." + method, e);
+        }
+        return new LoadGenerator(target.substring(0, split), Integer.parseInt(target.substring(split + 1)),
+                (int) (DurationParser.parseNanos(attrs.getOrDefault("timeout", "10s")) / 1000000D),
+                transportFactory == null ? new TTransportFactory() : transportFactory, protocolFactory == null ? new TBinaryProtocol.Factory() : protocolFactory, request,
+                Integer.parseInt(attrs.getOrDefault("connections", "1")),
+                Integer.parseInt(attrs.getOrDefault("pipeline", "1")),
+                rate,
+                (long) DurationParser.parseNanos(attrs.getOrDefault("duration", "30s")),
+                (long) DurationParser.parseNanos(attrs.getOrDefault("warmup", "5s")),
+                (long) DurationParser.parseNanos(attrs.getOrDefault("interval", "0")));
+    }
+}
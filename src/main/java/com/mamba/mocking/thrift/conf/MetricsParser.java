@@ -0,0 +1,32 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+public class MetricsParser {
+
+    //默认只注册JMX
+    public static MetricsRegistry parseMetrics(String define) {
+        MetricsRegistry metricsRegistry = ParameterizedPropertyParser.parse(define, MetricsParser::newMetricsRegistry);
+        return metricsRegistry == null ? new MetricsRegistry(true, null) : metricsRegistry;
+    }
+
+    public static MetricsRegistry newMetricsRegistry(String name, Map<String, String> attrs) {
+        if ("jmx".equals(name)) {
+            return new MetricsRegistry(true, null);
+        } else if ("http".equals(name)) {
+            String port = attrs.get("port");
+            if (port == null) {
+                throw new IllegalArgumentException("Require metrics attr: port");
+            }
+            String host = attrs.getOrDefault("host", "127.0.0.1");
+            return new MetricsRegistry(true, new InetSocketAddress(host, Integer.parseInt(port)));
+        } else if ("none".equals(name)) {
+            return new MetricsRegistry(false, null);
+        } else {
+            throw new IllegalArgumentException("Unsupported metrics: " + name);
+        }
+    }
+}
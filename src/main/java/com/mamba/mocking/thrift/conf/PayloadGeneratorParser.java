@@ -0,0 +1,24 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.generate.PayloadGenerator;
+
+import java.util.Map;
+
+public class PayloadGeneratorParser {
+
+    //list(size=10000,string=4096), struct(innerSize=100,pool=8), auto(...)
+    public static PayloadGenerator parseGenerator(String define) {
+        return ParameterizedPropertyParser.parse(define, PayloadGeneratorParser::newGenerator);
+    }
+
+    public static PayloadGenerator newGenerator(String name, Map<String, String> attrs) {
+        return new PayloadGenerator(name,
+                Integer.parseInt(attrs.getOrDefault("size", "10")),
+                Integer.parseInt(attrs.getOrDefault("innerSize", "2")),
+                Integer.parseInt(attrs.getOrDefault("string", "16")),
+                Integer.parseInt(attrs.getOrDefault("depth", "4")),
+                Boolean.parseBoolean(attrs.getOrDefault("optional", "true")),
+                Integer.parseInt(attrs.getOrDefault("pool", "1")),
+                Long.parseLong(attrs.getOrDefault("seed", "0")));
+    }
+}
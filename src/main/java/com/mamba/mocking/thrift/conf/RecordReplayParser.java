@@ -0,0 +1,57 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import com.mamba.mocking.thrift.recording.RecordProcessor;
+import com.mamba.mocking.thrift.recording.ReplayProcessor;
+import com.mamba.mocking.thrift.recording.ReplayStore;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TTransportFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+public class RecordReplayParser {
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    //mode=mock(默认)时返回null, 使用service配置
+    public static TProcessor parseProcessor(String define, TTransportFactory transportFactory, TProtocolFactory protocolFactory, MetricsRegistry metricsRegistry) {
+        return ParameterizedPropertyParser.parse(define, (name, attrs) -> newProcessor(name, attrs, transportFactory, protocolFactory, metricsRegistry));
+    }
+
+    public static TProcessor newProcessor(String name, Map<String, String> attrs, TTransportFactory transportFactory, TProtocolFactory protocolFactory, MetricsRegistry metricsRegistry) {
+        if ("mock".equals(name)) {
+            return null;
+        }
+        String file = attrs.get("file");
+        if (file == null) {
+            throw new IllegalArgumentException("Require " + name + " attr: file");
+        }
+        try {
+            if ("record".equals(name)) {
+                //record(upstream=127.0.0.1:9090,file=./replay.dat,timeout=3s,segmentSize=64m)
+                String upstream = attrs.get("upstream");
+                int split = upstream == null ? -1 : upstream.lastIndexOf(':');
+                if (split <= 0) {
+                    throw new IllegalArgumentException("Require record attr: upstream=host:port");
+                }
+                int timeout = (int) (DurationParser.parseNanos(attrs.getOrDefault("timeout", "3s")) / 1000000D);
+                int segmentSize = SizeParser.parseSize(attrs.getOrDefault("segmentSize", String.valueOf(DEFAULT_SEGMENT_SIZE)));
+                ReplayStore store = ReplayStore.open(new File(file), segmentSize, false);
+                return new RecordProcessor(upstream.substring(0, split), Integer.parseInt(upstream.substring(split + 1)), timeout,
+                        transportFactory, protocolFactory == null ? new TBinaryProtocol.Factory() : protocolFactory, store, metricsRegistry);
+            }
+            if ("replay".equals(name)) {
+                //replay(file=./replay.dat)
+                return new ReplayProcessor(ReplayStore.open(new File(file), DEFAULT_SEGMENT_SIZE, true), metricsRegistry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Open replay file failed: " + file, e);
+        }
+        throw new IllegalArgumentException("Unsupported mode: " + name);
+    }
+}
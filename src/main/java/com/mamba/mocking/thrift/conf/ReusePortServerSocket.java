@@ -0,0 +1,145 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.metrics.AcceptorStats;
+import org.apache.thrift.transport.TNonblockingServerTransport;
+import org.apache.thrift.transport.TNonblockingSocket;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+//同TNonblockingServerSocket, bind前设置SO_REUSEPORT, 多个实例可监听同一端口, 由内核在监听socket间分配新连接;
+//接受的连接统计读写字节数
+final class ReusePortServerSocket extends TNonblockingServerTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReusePortServerSocket.class);
+
+    //StandardSocketOptions.SO_REUSEPORT在Java 9才加入, 编译目标为1.8, 反射获取; Java 8运行时为null
+    private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+
+    private static final int BACKLOG = 1024;
+
+    private final ServerSocketChannel serverSocketChannel;
+
+    private final AcceptorStats stats;
+
+    ReusePortServerSocket(int port, AcceptorStats stats) throws TTransportException {
+        if (SO_REUSEPORT == null) {
+            throw new TTransportException("SO_REUSEPORT requires Java 9+, or use NettyServer(epoll) instead");
+        }
+        this.stats = stats;
+        try {
+            this.serverSocketChannel = ServerSocketChannel.open();
+            if (!this.serverSocketChannel.supportedOptions().contains(SO_REUSEPORT)) {
+                this.serverSocketChannel.close();
+                throw new TTransportException("SO_REUSEPORT not supported on this platform");
+            }
+            this.serverSocketChannel.configureBlocking(false);
+            this.serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            this.serverSocketChannel.setOption(SO_REUSEPORT, true);
+            this.serverSocketChannel.bind(new InetSocketAddress(port), BACKLOG);
+        } catch (IOException e) {
+            throw new TTransportException("Could not create ServerSocket on port " + port + ".", e);
+        }
+    }
+
+    @Override
+    public void listen() {
+    }
+
+    @Override
+    protected TNonblockingSocket acceptImpl() throws TTransportException {
+        try {
+            SocketChannel socketChannel = this.serverSocketChannel.accept();
+            if (socketChannel == null) {
+                return null;
+            }
+            this.stats.connected();
+            return new CountingSocket(socketChannel, this.stats);
+        } catch (IOException e) {
+            throw new TTransportException(e);
+        }
+    }
+
+    @Override
+    public void registerSelector(Selector selector) {
+        try {
+            this.serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (ClosedChannelException e) {
+            //与TNonblockingServerSocket相同, 已关闭时忽略
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.serverSocketChannel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close server socket.", e);
+        }
+    }
+
+    @Override
+    public void interrupt() {
+        close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    //nonblocking server的FrameBuffer只通过read/write(ByteBuffer)读写
+    private static class CountingSocket extends TNonblockingSocket {
+
+        private final AcceptorStats stats;
+
+        private boolean closed;
+
+        private CountingSocket(SocketChannel socketChannel, AcceptorStats stats) throws IOException {
+            super(socketChannel);
+            this.stats = stats;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            int n = super.read(buffer);
+            if (n > 0) {
+                this.stats.read(n);
+            }
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer buffer) throws IOException {
+            int n = super.write(buffer);
+            if (n > 0) {
+                this.stats.written(n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            if (!this.closed) {
+                this.closed = true;
+                this.stats.disconnected();
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.MockProcessorFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+//预加载的场景: scenario.<name>.service.xxx覆盖基础配置中的同名service.xxx. 基础场景直接使用启动时已发布的state, 其它场景只为其覆盖的service创建MockState,
+//未覆盖的service与基础场景共用; lazy且尚未创建的service不解析, 首次调用或首次切换时创建. 所有service的state放在一个数组中, 切换只交换一次引用.
+//本地HTTP管理接口(admin=http(port=N)):
+//GET /scenario 当前状态; POST /scenario?name=xxx 切换场景; POST /scenario/override 请求体为service.xxx=...格式的配置, 覆盖当前场景的方法配置;
+//GET /scenario/audit 切换记录(毫秒时间戳), 同时输出到ScenarioAudit日志
+public class ScenarioManager implements AutoCloseable, ConfigWatcher.Listener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScenarioManager.class);
+
+    private static final Logger AUDIT = LoggerFactory.getLogger("ScenarioAudit");
+
+    //基础配置(不含scenario.*)对应的场景名
+    public static final String DEFAULT_SCENARIO = "default";
+
+    private static final String SCENARIO_PREFIX = "scenario.";
+
+    private static final int MAX_AUDIT = 1000;
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final Map<String, MockProcessorFactory> processorFactoryMap;
+
+    private final InetSocketAddress httpAddress;
+
+    private final Deque<String> auditLog = new ArrayDeque<>();
+
+    //当前场景上的方法覆盖, 切换场景时清空
+    private final Properties overrides = new Properties();
+
+    private Properties props;
+
+    private Map<String, TProcessorParser.PreparedStates> scenarioMap;
+
+    private String active;
+
+    private HttpServer httpServer;
+
+    public ScenarioManager(Properties props, Map<String, MockProcessorFactory> processorFactoryMap) throws Exception {
+        this.processorFactoryMap = processorFactoryMap;
+        this.httpAddress = ParameterizedPropertyParser.parse(props.getProperty("admin"), ScenarioManager::parseAddress);
+        this.props = props;
+        //已发布的state作为基础场景, 不再解析; publish只把lazy service的待创建state转到基础场景, 创建后由各场景共用
+        TProcessorParser.PreparedStates defaultStates = TProcessorParser.publishedStates(overlay(props, DEFAULT_SCENARIO, null), processorFactoryMap);
+        defaultStates.publish();
+        this.scenarioMap = prepare(props, defaultStates);
+        this.active = DEFAULT_SCENARIO;
+        String initial = props.getProperty("scenario", DEFAULT_SCENARIO).trim();
+        if (!initial.equals(DEFAULT_SCENARIO)) {
+            switchTo(initial);
+        }
+        LOGGER.info("Scenarios prepared: {}, active: {}", this.scenarioMap.keySet(), this.active);
+    }
+
+    public synchronized void switchTo(String name) throws Exception {
+        TProcessorParser.PreparedStates preparedStates = this.scenarioMap.get(name);
+        if (preparedStates == null) {
+            throw new IllegalArgumentException("Unknown scenario: " + name + ", available: " + this.scenarioMap.keySet());
+        }
+        long startTime = System.nanoTime();
+        preparedStates.publish();
+        long cost = System.nanoTime() - startTime;
+        String previous = this.active;
+        this.active = name;
+        this.overrides.clear();
+        audit("switch " + previous + " -> " + name + ", " + this.processorFactoryMap.size() + " services in one swap, cost " + TimeUnit.NANOSECONDS.toMicros(cost) + "us");
+    }
+
+    //只接受service.开头的配置; 与当前场景合并后只重新解析被覆盖的service, 任一service失败时不发布
+    public synchronized void override(Properties lines) throws Exception {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Empty override");
+        }
+        for (String propertyName : lines.stringPropertyNames()) {
+            if (!propertyName.startsWith("service.")) {
+                throw new IllegalArgumentException("Only service properties can be overridden: " + propertyName);
+            }
+        }
+        Properties merged = new Properties();
+        merged.putAll(this.overrides);
+        merged.putAll(lines);
+        TProcessorParser.PreparedStates preparedStates;
+        try {
+            preparedStates = TProcessorParser.prepareStates(overlay(this.props, this.active, merged), this.processorFactoryMap, this.scenarioMap.get(this.active), TProcessorParser.serviceNames(merged.stringPropertyNames()));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid override: " + e, e);
+        }
+        long startTime = System.nanoTime();
+        preparedStates.publish();
+        long cost = System.nanoTime() - startTime;
+        this.overrides.putAll(lines);
+        audit("override " + this.active + " " + new TreeSet<>(lines.stringPropertyNames()) + ", " + this.processorFactoryMap.size() + " services in one swap, cost " + TimeUnit.NANOSECONDS.toMicros(cost) + "us");
+    }
+
+    //配置文件变化: 重新预加载所有场景并发布当前场景, 方法覆盖清空; 当前场景被删除时拒绝
+    @Override
+    public synchronized void reload(Properties props) throws Exception {
+        TProcessorParser.PreparedStates defaultStates = TProcessorParser.prepareStates(overlay(props, DEFAULT_SCENARIO, null), this.processorFactoryMap, null, this.processorFactoryMap.keySet());
+        Map<String, TProcessorParser.PreparedStates> scenarioMap = prepare(props, defaultStates);
+        TProcessorParser.PreparedStates preparedStates = scenarioMap.get(this.active);
+        if (preparedStates == null) {
+            throw new IllegalStateException("Active scenario removed: " + this.active);
+        }
+        preparedStates.publish();
+        this.props = props;
+        this.scenarioMap = scenarioMap;
+        this.overrides.clear();
+        audit("reload " + this.active + ", scenarios: " + scenarioMap.keySet() + ", " + this.processorFactoryMap.size() + " services in one swap");
+    }
+
+    public synchronized String status() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("active=").append(this.active).append('\n');
+        sb.append("scenarios=").append(String.join(",", this.scenarioMap.keySet())).append('\n');
+        for (String propertyName : new TreeSet<>(this.overrides.stringPropertyNames())) {
+            sb.append("override ").append(propertyName).append('=').append(this.overrides.getProperty(propertyName)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public synchronized String audit() {
+        StringBuilder sb = new StringBuilder();
+        for (String line : this.auditLog) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    //每行: 毫秒时间戳 本地时间 操作, 便于与延迟曲线对齐
+    private void audit(String action) {
+        long now = System.currentTimeMillis();
+        String line = now + " " + TIME_FORMATTER.format(Instant.ofEpochMilli(now)) + " " + action;
+        if (this.auditLog.size() >= MAX_AUDIT) {
+            this.auditLog.pollFirst();
+        }
+        this.auditLog.addLast(line);
+        AUDIT.info(line);
+    }
+
+    private Map<String, TProcessorParser.PreparedStates> prepare(Properties props, TProcessorParser.PreparedStates defaultStates) throws Exception {
+        Set<String> names = new TreeSet<>();
+        for (String propertyName : props.stringPropertyNames()) {
+            if (propertyName.startsWith(SCENARIO_PREFIX)) {
+                int end = propertyName.indexOf('.', SCENARIO_PREFIX.length());
+                if (end > SCENARIO_PREFIX.length()) {
+                    names.add(propertyName.substring(SCENARIO_PREFIX.length(), end));
+                }
+            }
+        }
+        names.remove(DEFAULT_SCENARIO);
+        Map<String, TProcessorParser.PreparedStates> scenarioMap = new LinkedHashMap<>();
+        scenarioMap.put(DEFAULT_SCENARIO, defaultStates);
+        for (String name : names) {
+            try {
+                Set<String> servicePropertyNames = new TreeSet<>();
+                String prefix = SCENARIO_PREFIX + name + ".";
+                for (String propertyName : props.stringPropertyNames()) {
+                    if (propertyName.startsWith(prefix)) {
+                        servicePropertyNames.add(propertyName.substring(prefix.length()));
+                    }
+                }
+                scenarioMap.put(name, TProcessorParser.prepareStates(overlay(props, name, null), this.processorFactoryMap, defaultStates, TProcessorParser.serviceNames(servicePropertyNames)));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid scenario: " + name, e);
+            }
+        }
+        return scenarioMap;
+    }
+
+    //基础配置 + scenario.<name>.service.xxx + 覆盖
+    private static Properties overlay(Properties props, String name, Properties overrides) {
+        Properties result = new Properties();
+        String prefix = SCENARIO_PREFIX + name + ".";
+        for (String propertyName : props.stringPropertyNames()) {
+            if (!propertyName.startsWith(SCENARIO_PREFIX)) {
+                result.setProperty(propertyName, props.getProperty(propertyName));
+            }
+        }
+        if (!name.equals(DEFAULT_SCENARIO)) {
+            for (String propertyName : props.stringPropertyNames()) {
+                if (propertyName.startsWith(prefix)) {
+                    String servicePropertyName = propertyName.substring(prefix.length());
+                    if (!servicePropertyName.startsWith("service.")) {
+                        throw new IllegalArgumentException("Scenario only supports service properties: " + propertyName);
+                    }
+                    result.setProperty(servicePropertyName, props.getProperty(propertyName));
+                }
+            }
+        }
+        if (overrides != null) {
+            result.putAll(overrides);
+        }
+        return result;
+    }
+
+    private static InetSocketAddress parseAddress(String name, Map<String, String> attrs) {
+        if (!"http".equals(name)) {
+            throw new IllegalArgumentException("Unsupported admin: " + name);
+        }
+        String port = attrs.get("port");
+        if (port == null) {
+            throw new IllegalArgumentException("Require admin attr: port");
+        }
+        return new InetSocketAddress(attrs.getOrDefault("host", "127.0.0.1"), Integer.parseInt(port));
+    }
+
+    public void start() throws IOException {
+        if (this.httpAddress == null) {
+            return;
+        }
+        this.httpServer = HttpServer.create(this.httpAddress, 0);
+        this.httpServer.createContext("/scenario", this::handle);
+        this.httpServer.start();
+        LOGGER.info("Admin endpoint: http://{}:{}/scenario", this.httpAddress.getHostString(), this.httpServer.getAddress().getPort());
+    }
+
+    @Override
+    public void close() {
+        if (this.httpServer != null) {
+            this.httpServer.stop(0);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        int code = 200;
+        String body;
+        try {
+            if ("GET".equals(method) && path.equals("/scenario")) {
+                body = status();
+            } else if ("GET".equals(method) && path.equals("/scenario/audit")) {
+                body = audit();
+            } else if ("POST".equals(method) && path.equals("/scenario")) {
+                String name = queryParam(exchange.getRequestURI().getRawQuery(), "name");
+                if (name == null) {
+                    throw new IllegalArgumentException("Require query param: name");
+                }
+                switchTo(name);
+                body = status();
+            } else if ("POST".equals(method) && path.equals("/scenario/override")) {
+                Properties lines = new Properties();
+                try (InputStream stream = exchange.getRequestBody()) {
+                    lines.load(new InputStreamReader(stream, StandardCharsets.UTF_8));
+                }
+                override(lines);
+                body = status();
+            } else {
+                code = 404;
+                body = "GET /scenario, GET /scenario/audit, POST /scenario?name=xxx, POST /scenario/override\n";
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            code = 400;
+            body = e.getMessage() + '\n';
+        } catch (Exception e) {
+            LOGGER.warn("Admin request failed: {} {}", method, exchange.getRequestURI(), e);
+            code = 500;
+            body = e + "\n";
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String queryParam(String query, String name) throws IOException {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int index = pair.indexOf('=');
+            if (index > 0 && pair.substring(0, index).equals(name)) {
+                return URLDecoder.decode(pair.substring(index + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+}
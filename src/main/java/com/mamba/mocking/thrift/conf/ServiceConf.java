@@ -0,0 +1,42 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.dispatch.DispatchEngine;
+import com.mamba.mocking.thrift.latency.LatencyModel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+
+//一个service的mock配置, 由TProcessorParser从Properties解析; MockProcessorFactory按它创建processor与MockState
+@Getter
+@AllArgsConstructor
+public class ServiceConf {
+
+    private final String serviceType;
+
+    private final LatencyModel defaultLatency;
+
+    private final DispatchEngine dispatchEngine;
+
+    private final Map<String, String> mockMethodReturnMap;
+
+    private final Map<String, LatencyModel> mockMethodLatencyMap;
+
+    private final Map<String, String> mockMethodRulesMap;
+
+    private final Map<String, String> mockMethodGenerateMap;
+
+    private final Map<String, String> mockMethodFaultMap;
+
+    //key为方法名, "*"为service级别
+    private final Map<String, String> mockMethodCapacityMap;
+
+    //值为返回值文件路径, retrun优先
+    private final Map<String, String> mockMethodReturnFileMap;
+
+    //只配置返回值与延迟
+    public ServiceConf(String serviceType, LatencyModel defaultLatency, DispatchEngine dispatchEngine, Map<String, String> mockMethodReturnMap, Map<String, LatencyModel> mockMethodLatencyMap) {
+        this(serviceType, defaultLatency, dispatchEngine, mockMethodReturnMap, mockMethodLatencyMap, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+    }
+}
@@ -0,0 +1,132 @@
+package com.mamba.mocking.thrift.conf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+//service元数据索引(service类 -> Iface方法名), 按classpath中jar内容的SHA-256缓存在磁盘: <dir>/<sha256>.index;
+//lazy启动时用于校验配置的方法名, 命中缓存时不需要反射Iface(会加载所有参数与返回值的struct类)
+final class ServiceIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceIndex.class);
+
+    private final File file;
+
+    private final Properties index = new Properties();
+
+    private boolean dirty;
+
+    private ServiceIndex(File file) {
+        this.file = file;
+    }
+
+    //cacheDir为null或classpath不是本地jar时只在内存中建立索引
+    static ServiceIndex load(String cacheDir, ClassLoader classLoader) {
+        File file = null;
+        if (cacheDir != null && !cacheDir.isEmpty()) {
+            String hash = hash(classLoader);
+            if (hash != null) {
+                file = new File(cacheDir, hash + ".index");
+            }
+        }
+        ServiceIndex serviceIndex = new ServiceIndex(file);
+        if (file != null && file.isFile()) {
+            try (InputStream stream = Files.newInputStream(file.toPath())) {
+                serviceIndex.index.load(stream);
+                LOGGER.info("Service index loaded: {}, services={}", file, serviceIndex.index.size());
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.warn("Load service index failed, rebuild: {}", file, e);
+                serviceIndex.index.clear();
+            }
+        }
+        return serviceIndex;
+    }
+
+    //未命中时反射Iface并记录, 由save()写回磁盘
+    Set<String> methods(String serviceType, ClassLoader classLoader) throws ClassNotFoundException {
+        String methods = this.index.getProperty(serviceType);
+        if (methods == null) {
+            Class<?> ifaceClass = Class.forName(serviceType + "$Iface", false, classLoader);
+            Set<String> methodNames = new TreeSet<>();
+            for (Method method : ifaceClass.getMethods()) {
+                methodNames.add(method.getName());
+            }
+            methods = String.join(",", methodNames);
+            this.index.setProperty(serviceType, methods);
+            this.dirty = true;
+        }
+        return methods.isEmpty() ? Collections.emptySet() : new HashSet<>(Arrays.asList(methods.split(",")));
+    }
+
+    //先写临时文件再rename, 多个进程同时启动时不会读到写了一半的索引
+    void save() {
+        if (this.file == null || !this.dirty) {
+            return;
+        }
+        try {
+            Path dir = this.file.getAbsoluteFile().getParentFile().toPath();
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, this.file.getName(), ".tmp");
+            try (OutputStream stream = Files.newOutputStream(temp)) {
+                this.index.store(stream, null);
+            }
+            Files.move(temp, this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.dirty = false;
+            LOGGER.info("Service index saved: {}, services={}", this.file, this.index.size());
+        } catch (IOException e) {
+            LOGGER.warn("Save service index failed: {}", this.file, e);
+        }
+    }
+
+    //classpath中所有本地jar的内容摘要; 含目录或远程URL时内容可能变化而摘要不变, 不缓存
+    private static String hash(ClassLoader classLoader) {
+        if (!(classLoader instanceof URLClassLoader)) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[65536];
+            for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                if (!"file".equals(url.getProtocol())) {
+                    return null;
+                }
+                File jar = new File(url.toURI());
+                if (!jar.isFile()) {
+                    return null;
+                }
+                try (InputStream stream = Files.newInputStream(jar.toPath())) {
+                    for (int n; (n = stream.read(buffer)) > 0; ) {
+                        digest.update(buffer, 0, n);
+                    }
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (IOException | URISyntaxException | NoSuchAlgorithmException e) {
+            LOGGER.warn("Hash classpath failed, service index not cached", e);
+            return null;
+        }
+    }
+}
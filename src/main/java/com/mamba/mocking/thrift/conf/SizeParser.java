@@ -0,0 +1,28 @@
+package com.mamba.mocking.thrift.conf;
+
+final class SizeParser {
+
+    //64m, 512k, 1g, 无单位时为字节
+    static int parseSize(String define) {
+        String value = define.trim().toLowerCase();
+        long unit = 1;
+        switch (value.charAt(value.length() - 1)) {
+            case 'k':
+                unit = 1L << 10;
+                break;
+            case 'm':
+                unit = 1L << 20;
+                break;
+            case 'g':
+                unit = 1L << 30;
+                break;
+            default:
+                break;
+        }
+        long size = Long.parseLong(unit == 1 ? value : value.substring(0, value.length() - 1)) * unit;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Size too large: " + define);
+        }
+        return (int) size;
+    }
+}
@@ -1,22 +1,281 @@
 package com.mamba.mocking.thrift.conf;
 
+import com.mamba.mocking.thrift.LazyProcessor;
 import com.mamba.mocking.thrift.MockProcessorFactory;
-import org.apache.thrift.TMultiplexedProcessor;
+import com.mamba.mocking.thrift.MockStateTable;
+import com.mamba.mocking.thrift.MultiplexedProcessor;
+import com.mamba.mocking.thrift.TMultiplexedAsyncProcessor;
+import com.mamba.mocking.thrift.accesslog.AccessLog;
+import com.mamba.mocking.thrift.dispatch.DispatchEngine;
+import com.mamba.mocking.thrift.latency.LatencyModel;
+import com.mamba.mocking.thrift.latency.LatencyModels;
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import com.mamba.mocking.thrift.metrics.ServiceMetrics;
+import com.mamba.mocking.thrift.timer.WaitStrategy;
+import lombok.Getter;
+import org.apache.thrift.TAsyncProcessor;
 import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TProcessorParser {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(TProcessorParser.class);
+
     public static TProcessor parseProcessor(Properties props, ClassLoader classLoader) throws Exception {
+        return parseProcessor(props, classLoader, false, null, new MetricsRegistry(false, null), AccessLog.OFF, new HashMap<>(), "");
+    }
+
+    //processorFactoryMap: 输出每个service的MockProcessorFactory, 用于热加载; metricsPrefix: 多个endpoint共享MetricsRegistry时区分同名service
+    public static TProcessor parseProcessor(Properties props, ClassLoader classLoader, boolean async, TProtocolFactory protocolFactory, MetricsRegistry metricsRegistry, AccessLog accessLog, Map<String, MockProcessorFactory> processorFactoryMap, String metricsPrefix) throws Exception {
         //解析Properties
+        long startTime = System.nanoTime();
+        Map<String, ServiceConf> serviceConfMap = parseServiceConfs(props);
+        Startup startup = ParameterizedPropertyParser.parse(props.getProperty("startup", "eager"), Startup::new);
+        //只有一个未命名service时不是多路复用, 首次调用就要创建, lazy没有意义
+        boolean lazy = startup.isLazy() && !(serviceConfMap.size() == 1 && serviceConfMap.containsKey(""));
+        if (lazy) {
+            validateMethods(serviceConfMap, ServiceIndex.load(startup.getCache(), classLoader), classLoader);
+        }
+
+        //创建Processor: service类在当前线程加载; eager(threads>1)时并行解析返回值并创建processor
+        WaitStrategy waitStrategy = WaitStrategyParser.parseWaitStrategy(props.getProperty("wait"));
+        Map<String, TProcessor> mockProcessorMap = new HashMap<>();
+        Map<String, Future<TProcessor>> futureMap = new HashMap<>();
+        ExecutorService executor = !lazy && startup.getThreads() > 1 ? Executors.newFixedThreadPool(startup.getThreads(), ExecutorParser.newThreadFactory("startup-", true)) : null;
+        MockStateTable stateTable = new MockStateTable();
+        try {
+            for (Map.Entry<String, ServiceConf> serviceConfEntry : serviceConfMap.entrySet()) {
+                String serviceName = serviceConfEntry.getKey();
+                ServiceConf serviceConf = serviceConfEntry.getValue();
+                Class<?> serviceClass = classLoader.loadClass(serviceConf.getServiceType());
+                MockProcessorFactory processorFactory = new MockProcessorFactory(serviceClass, waitStrategy, metricsRegistry.service(metricsPrefix + (serviceName.isEmpty() ? serviceClass.getSimpleName() : serviceName)), accessLog, stateTable);
+                if (lazy) {
+                    mockProcessorMap.put(serviceName, processorFactory.newLazyProcessor(async, serviceConf, protocolFactory));
+                } else if (executor != null) {
+                    futureMap.put(serviceName, executor.submit(() -> newProcessor(processorFactory, serviceConf, async, protocolFactory)));
+                } else {
+                    mockProcessorMap.put(serviceName, newProcessor(processorFactory, serviceConf, async, protocolFactory));
+                }
+                processorFactoryMap.put(serviceName, processorFactory);
+            }
+            for (Map.Entry<String, Future<TProcessor>> futureEntry : futureMap.entrySet()) {
+                try {
+                    mockProcessorMap.put(futureEntry.getKey(), futureEntry.getValue().get());
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        if (lazy && startup.getWarmup() > 0) {
+            warmup(mockProcessorMap, startup.getWarmup());
+        }
+        LOGGER.info("Processors created: services={}, startup={}, cost {}ms", mockProcessorMap.size(), lazy ? "lazy" : "eager", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
+        //组合Processor
+        if (mockProcessorMap.isEmpty()) {
+            throw new IllegalStateException("None service register in properties");
+        }
+        if (mockProcessorMap.size() == 1) {
+            Map.Entry<String, TProcessor> processorEntry = mockProcessorMap.entrySet().iterator().next();
+            if (processorEntry.getKey().isEmpty()) {
+                return processorEntry.getValue();
+            }
+        }
+        if (async) {
+            TMultiplexedAsyncProcessor multiplexedProcessor = new TMultiplexedAsyncProcessor();
+            for (Map.Entry<String, TProcessor> processorEntry : mockProcessorMap.entrySet()) {
+                String serviceName = processorEntry.getKey();
+                TAsyncProcessor mockProcessor = (TAsyncProcessor) processorEntry.getValue();
+                ServiceMetrics serviceMetrics = processorFactoryMap.get(serviceName).getServiceMetrics();
+                if (serviceName.isEmpty()) {
+                    multiplexedProcessor.registerDefault(mockProcessor, serviceMetrics);
+                } else {
+                    multiplexedProcessor.registerProcessor(serviceName, mockProcessor, serviceMetrics);
+                }
+            }
+            return multiplexedProcessor;
+        }
+        MultiplexedProcessor multiplexedProcessor = new MultiplexedProcessor();
+        for (Map.Entry<String, TProcessor> processorEntry : mockProcessorMap.entrySet()) {
+            String serviceName = processorEntry.getKey();
+            TProcessor mockProcessor = processorEntry.getValue();
+            ServiceMetrics serviceMetrics = processorFactoryMap.get(serviceName).getServiceMetrics();
+            if (serviceName.isEmpty()) {
+                multiplexedProcessor.registerDefault(mockProcessor, serviceMetrics);
+            } else {
+                multiplexedProcessor.registerProcessor(serviceName, mockProcessor, serviceMetrics);
+            }
+        }
+        return multiplexedProcessor;
+    }
+
+    private static TProcessor newProcessor(MockProcessorFactory processorFactory, ServiceConf serviceConf, boolean async, TProtocolFactory protocolFactory) throws Exception {
+        if (async) {
+            return processorFactory.newAsyncProcessor(serviceConf, protocolFactory);
+        }
+        return processorFactory.newProcessor(serviceConf, protocolFactory);
+    }
+
+    //lazy时配置错误要到首次调用才暴露, 启动时先按索引校验方法名; 未知的方法名与eager一样被忽略, 这里只告警
+    private static void validateMethods(Map<String, ServiceConf> serviceConfMap, ServiceIndex serviceIndex, ClassLoader classLoader) throws ClassNotFoundException {
+        for (ServiceConf serviceConf : serviceConfMap.values()) {
+            Set<String> methods = serviceIndex.methods(serviceConf.getServiceType(), classLoader);
+            Set<String> confMethods = new TreeSet<>();
+            confMethods.addAll(serviceConf.getMockMethodReturnMap().keySet());
+            confMethods.addAll(serviceConf.getMockMethodLatencyMap().keySet());
+            confMethods.addAll(serviceConf.getMockMethodRulesMap().keySet());
+            confMethods.addAll(serviceConf.getMockMethodGenerateMap().keySet());
+            confMethods.addAll(serviceConf.getMockMethodFaultMap().keySet());
+            confMethods.addAll(serviceConf.getMockMethodCapacityMap().keySet());
+            confMethods.addAll(serviceConf.getMockMethodReturnFileMap().keySet());
+            confMethods.remove("*");
+            confMethods.removeAll(methods);
+            if (!confMethods.isEmpty()) {
+                LOGGER.warn("Unknown methods of {}: {}", serviceConf.getServiceType(), confMethods);
+            }
+        }
+        serviceIndex.save();
+    }
+
+    //后台预热, 不阻塞监听; 未预热到的service仍在首次调用时创建
+    private static void warmup(Map<String, TProcessor> mockProcessorMap, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, mockProcessorMap.size()), ExecutorParser.newThreadFactory("warmup-", true));
+        long startTime = System.nanoTime();
+        AtomicInteger remaining = new AtomicInteger(mockProcessorMap.size());
+        for (TProcessor processor : mockProcessorMap.values()) {
+            executor.execute(() -> {
+                ((LazyProcessor) processor).init();
+                if (remaining.decrementAndGet() == 0) {
+                    LOGGER.info("Warmup finished: services={}, cost {}ms", mockProcessorMap.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    //热加载: 只更新返回值与延迟; 新增/删除service、修改class或dispatch需要重启.
+    //所有已创建的service都校验通过后才发布, 任一失败则抛出异常, 保留原配置; lazy且尚未创建的service只替换待创建的配置
+    public static void reloadProcessor(Properties props, Map<String, MockProcessorFactory> processorFactoryMap) throws Exception {
+        prepareStates(props, processorFactoryMap, null, processorFactoryMap.keySet()).publish();
+    }
+
+    //已发布的state作为基础场景, 不再解析; lazy且尚未创建的service在首次调用时按props创建
+    public static PreparedStates publishedStates(Properties props, Map<String, MockProcessorFactory> processorFactoryMap) {
+        Map<String, ServiceConf> serviceConfMap = parseServiceConfs(props);
+        MockStateTable stateTable = checkServices(serviceConfMap, processorFactoryMap);
+        Entry[] entries = new Entry[stateTable.size()];
+        for (Map.Entry<String, ServiceConf> serviceConfEntry : serviceConfMap.entrySet()) {
+            MockProcessorFactory processorFactory = processorFactoryMap.get(serviceConfEntry.getKey());
+            int index = processorFactory.getStateIndex();
+            entries[index] = new Entry(processorFactory, serviceConfEntry.getValue(), stateTable.get(index));
+        }
+        return new PreparedStates(stateTable, entries);
+    }
+
+    //预先解析changedServices的配置并创建MockState, 其余service与base共用同一份state; base为null时解析所有service.
+    //lazy且尚未创建的service只解析配置, state在首次调用时创建; 之后publish一次替换所有service的引用. 用于热加载、场景切换与方法覆盖
+    public static PreparedStates prepareStates(Properties props, Map<String, MockProcessorFactory> processorFactoryMap, PreparedStates base, Set<String> changedServices) throws Exception {
+        Map<String, ServiceConf> serviceConfMap = parseServiceConfs(props);
+        MockStateTable stateTable = checkServices(serviceConfMap, processorFactoryMap);
+        Entry[] entries = new Entry[stateTable.size()];
+        for (Map.Entry<String, ServiceConf> serviceConfEntry : serviceConfMap.entrySet()) {
+            MockProcessorFactory processorFactory = processorFactoryMap.get(serviceConfEntry.getKey());
+            int index = processorFactory.getStateIndex();
+            if (base != null && !changedServices.contains(serviceConfEntry.getKey())) {
+                entries[index] = base.entries[index];
+                continue;
+            }
+            Entry entry = new Entry(processorFactory, serviceConfEntry.getValue(), null);
+            if (!stateTable.isPending(index)) {
+                entry.state();
+            }
+            entries[index] = entry;
+        }
+        return new PreparedStates(stateTable, entries);
+    }
+
+    //service.xxx与service.method.X.xxx属于未命名service, service.name.xxx与service.name.method.X.xxx属于name
+    public static Set<String> serviceNames(Collection<String> propertyNames) {
+        Set<String> serviceNames = new HashSet<>();
+        for (String propertyName : propertyNames) {
+            if (!propertyName.startsWith("service.")) {
+                continue;
+            }
+            int length = propertyName.split("\\.").length;
+            if (length == 2 || length == 4) {
+                serviceNames.add("");
+            } else if (length == 3 || length == 5) {
+                serviceNames.add(propertyName.split("\\.")[1]);
+            }
+        }
+        return serviceNames;
+    }
+
+    private static MockStateTable checkServices(Map<String, ServiceConf> serviceConfMap, Map<String, MockProcessorFactory> processorFactoryMap) {
+        if (!serviceConfMap.keySet().equals(processorFactoryMap.keySet())) {
+            throw new IllegalStateException("Services changed, restart required: " + processorFactoryMap.keySet() + " -> " + serviceConfMap.keySet());
+        }
+        MockStateTable stateTable = null;
+        for (Map.Entry<String, ServiceConf> serviceConfEntry : serviceConfMap.entrySet()) {
+            ServiceConf serviceConf = serviceConfEntry.getValue();
+            MockProcessorFactory processorFactory = processorFactoryMap.get(serviceConfEntry.getKey());
+            if (!processorFactory.getServiceClass().getName().equals(serviceConf.getServiceType())) {
+                throw new IllegalStateException("Service class changed, restart required: " + serviceConf.getServiceType());
+            }
+            if (processorFactory.getDispatchEngine() != serviceConf.getDispatchEngine()) {
+                throw new IllegalStateException("Service dispatch changed, restart required: " + serviceConf.getDispatchEngine());
+            }
+            if (stateTable == null) {
+                stateTable = processorFactory.getStateTable();
+            } else if (stateTable != processorFactory.getStateTable()) {
+                throw new IllegalStateException("Services of an endpoint must share one MockStateTable");
+            }
+        }
+        if (stateTable == null || stateTable.size() != processorFactoryMap.size()) {
+            throw new IllegalStateException("MockStateTable does not match services: " + processorFactoryMap.keySet());
+        }
+        return stateTable;
+    }
+
+    private static Map<String, ServiceConf> parseServiceConfs(Properties props) {
         Map<String, String> classMap = new HashMap<>();
-        Map<String, Integer> delayMap = new HashMap<>();
-        Map<String, Map<String, Integer>> methodDelayMap = new HashMap<>();
+        Map<String, LatencyModel> delayMap = new HashMap<>();
+        Map<String, LatencyModel> latencyMap = new HashMap<>();
+        Map<String, DispatchEngine> dispatchMap = new HashMap<>();
+        Map<String, Map<String, LatencyModel>> methodDelayMap = new HashMap<>();
+        Map<String, Map<String, LatencyModel>> methodLatencyMap = new HashMap<>();
         Map<String, Map<String, String>> methodReturnMap = new HashMap<>();
+        Map<String, Map<String, String>> methodRulesMap = new HashMap<>();
+        Map<String, Map<String, String>> methodGenerateMap = new HashMap<>();
+        Map<String, Map<String, String>> methodFaultMap = new HashMap<>();
+        Map<String, Map<String, String>> methodCapacityMap = new HashMap<>();
+        Map<String, Map<String, String>> methodReturnFileMap = new HashMap<>();
         for (String propertyName : props.stringPropertyNames()) {
             if (!propertyName.startsWith("service.")) {
                 continue;
@@ -32,78 +291,63 @@ public class TProcessorParser {
             String[] propertyNameSplits = propertyName.split("\\.");
             switch (propertyNameSplits.length) {
                 case 2: //service.class=com.mamba.benchmark.thrift.sample.face.SharedService
-                    classifyProperty(propertyValueTrim, "", propertyNameSplits[1], classMap, delayMap);
+                    classifyProperty(propertyValueTrim, "", propertyNameSplits[1], classMap, delayMap, latencyMap, dispatchMap, methodCapacityMap);
                     break;
                 case 3: //service.name1.class=com.mamba.benchmark.thrift.sample.face.SharedService
-                    classifyProperty(propertyValueTrim, propertyNameSplits[1], propertyNameSplits[2], classMap, delayMap);
+                    classifyProperty(propertyValueTrim, propertyNameSplits[1], propertyNameSplits[2], classMap, delayMap, latencyMap, dispatchMap, methodCapacityMap);
                     break;
                 case 4:  //service.method.xxx.delay
-                    classifyProperty(propertyValueTrim, propertyNameSplits, "", methodDelayMap, methodReturnMap);
+                    classifyProperty(propertyValueTrim, propertyNameSplits, "", methodDelayMap, methodLatencyMap, methodReturnMap, methodRulesMap, methodGenerateMap, methodFaultMap, methodCapacityMap, methodReturnFileMap);
                     break;
                 case 5:  //service.name1.method.xxx.delay
-                    classifyProperty(propertyValueTrim, propertyNameSplits, propertyNameSplits[1], methodDelayMap, methodReturnMap);
+                    classifyProperty(propertyValueTrim, propertyNameSplits, propertyNameSplits[1], methodDelayMap, methodLatencyMap, methodReturnMap, methodRulesMap, methodGenerateMap, methodFaultMap, methodCapacityMap, methodReturnFileMap);
                     break;
                 default:
                     break;
             }
         }
 
-        //创建Processor
-        Map<String, TProcessor> mockProcessorMap = new HashMap<>();
+        Map<String, ServiceConf> serviceConfMap = new HashMap<>();
         for (Map.Entry<String, String> classEntry : classMap.entrySet()) {
             String serviceType = classEntry.getValue();
             if (serviceType == null || serviceType.isEmpty()) {
                 continue;
             }
-            Class<?> serviceClass = classLoader.loadClass(serviceType);
             String serviceName = classEntry.getKey();
-            Integer defaultDelay = delayMap.getOrDefault(serviceName, 0);
+            //latency优先于delay
+            LatencyModel defaultLatency = latencyMap.getOrDefault(serviceName, delayMap.getOrDefault(serviceName, LatencyModels.ZERO));
+            DispatchEngine dispatchEngine = dispatchMap.getOrDefault(serviceName, DispatchEngine.GENERATED);
             Map<String, String> mockMethodReturnMap = methodReturnMap.getOrDefault(serviceName, Collections.emptyMap());
-            Map<String, Integer> mockMethodDelayMap = methodDelayMap.getOrDefault(serviceName, Collections.emptyMap());
-            MockProcessorFactory processorFactory = new MockProcessorFactory(serviceClass);
-            TProcessor mockProcessor = processorFactory.newProcessor(mockMethodReturnMap, mockMethodDelayMap, defaultDelay);
-            mockProcessorMap.put(serviceName, mockProcessor);
+            Map<String, LatencyModel> mockMethodLatencyMap = new HashMap<>(methodDelayMap.getOrDefault(serviceName, Collections.emptyMap()));
+            mockMethodLatencyMap.putAll(methodLatencyMap.getOrDefault(serviceName, Collections.emptyMap()));
+            Map<String, String> mockMethodRulesMap = methodRulesMap.getOrDefault(serviceName, Collections.emptyMap());
+            Map<String, String> mockMethodGenerateMap = methodGenerateMap.getOrDefault(serviceName, Collections.emptyMap());
+            Map<String, String> mockMethodFaultMap = methodFaultMap.getOrDefault(serviceName, Collections.emptyMap());
+            Map<String, String> mockMethodCapacityMap = methodCapacityMap.getOrDefault(serviceName, Collections.emptyMap());
+            Map<String, String> mockMethodReturnFileMap = methodReturnFileMap.getOrDefault(serviceName, Collections.emptyMap());
+            serviceConfMap.put(serviceName, new ServiceConf(serviceType, defaultLatency, dispatchEngine, mockMethodReturnMap, mockMethodLatencyMap, mockMethodRulesMap, mockMethodGenerateMap, mockMethodFaultMap, mockMethodCapacityMap, mockMethodReturnFileMap));
         }
-
-        //组合Processor
-        if (mockProcessorMap.isEmpty()) {
-            throw new IllegalStateException("None service register in properties");
-        }
-        if (mockProcessorMap.size() == 1) {
-            Map.Entry<String, TProcessor> processorEntry = mockProcessorMap.entrySet().iterator().next();
-            String serviceName = processorEntry.getKey();
-            TProcessor mockProcessor = processorEntry.getValue();
-            if (serviceName.isEmpty()) {
-                return mockProcessor;
-            }
-            TMultiplexedProcessor multiplexedProcessor = new TMultiplexedProcessor();
-            multiplexedProcessor.registerProcessor(serviceName, mockProcessor);
-            return multiplexedProcessor;
-        }
-        TMultiplexedProcessor multiplexedProcessor = new TMultiplexedProcessor();
-        for (Map.Entry<String, TProcessor> processorEntry : mockProcessorMap.entrySet()) {
-            String serviceName = processorEntry.getKey();
-            TProcessor mockProcessor = processorEntry.getValue();
-            if (serviceName.isEmpty()) {
-                multiplexedProcessor.registerDefault(mockProcessor);
-            } else {
-                multiplexedProcessor.registerProcessor(serviceName, mockProcessor);
-            }
-        }
-        return multiplexedProcessor;
+        return serviceConfMap;
     }
 
-    private static void classifyProperty(String propertyValue, String serviceName, String servicePropertyName, Map<String, String> classMap, Map<String, Integer> delayMap) {
+    private static void classifyProperty(String propertyValue, String serviceName, String servicePropertyName, Map<String, String> classMap, Map<String, LatencyModel> delayMap, Map<String, LatencyModel> latencyMap, Map<String, DispatchEngine> dispatchMap, Map<String, Map<String, String>> methodsCapacityMap) {
         if (servicePropertyName.equals("class")) {
             classMap.put(serviceName, propertyValue);
         } else if (servicePropertyName.equals("delay")) {
-            delayMap.put(serviceName, Integer.parseInt(propertyValue));
+            delayMap.put(serviceName, parseDelay(propertyValue));
+        } else if (servicePropertyName.equals("latency")) {
+            latencyMap.put(serviceName, LatencyModelParser.parseLatencyModel(propertyValue));
+        } else if (servicePropertyName.equals("dispatch")) {
+            dispatchMap.put(serviceName, DispatchEngine.parse(propertyValue));
+        } else if (servicePropertyName.equals("capacity")) {
+            //service级别的容量模型, 所有未单独配置的方法共享
+            methodsCapacityMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put("*", propertyValue);
         } else {
             //TODO
         }
     }
 
-    private static void classifyProperty(String propertyValue, String[] propertyNameSplits, String serviceName, Map<String, Map<String, Integer>> methodsDelayMap, Map<String, Map<String, String>> methodsRetrunMap) {
+    private static void classifyProperty(String propertyValue, String[] propertyNameSplits, String serviceName, Map<String, Map<String, LatencyModel>> methodsDelayMap, Map<String, Map<String, LatencyModel>> methodsLatencyMap, Map<String, Map<String, String>> methodsRetrunMap, Map<String, Map<String, String>> methodsRulesMap, Map<String, Map<String, String>> methodsGenerateMap, Map<String, Map<String, String>> methodsFaultMap, Map<String, Map<String, String>> methodsCapacityMap, Map<String, Map<String, String>> methodsReturnFileMap) {
         int length = propertyNameSplits.length;
         if (!propertyNameSplits[length - 3].equals("method")) {
             //TODO
@@ -112,11 +356,103 @@ public class TProcessorParser {
         String methodName = propertyNameSplits[length - 2];
         String methodPropertyName = propertyNameSplits[length - 1];
         if (methodPropertyName.equals("delay")) {
-            methodsDelayMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put(methodName, Integer.parseInt(propertyValue));
+            methodsDelayMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put(methodName, parseDelay(propertyValue));
+        } else if (methodPropertyName.equals("latency")) {
+            methodsLatencyMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put(methodName, LatencyModelParser.parseLatencyModel(propertyValue));
         } else if (methodPropertyName.equals("retrun")) {
             methodsRetrunMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put(methodName, propertyValue);
+        } else if (methodPropertyName.equals("returnFile")) {
+            //只记录路径, 创建MockState时映射, 首次调用时解析
+            methodsReturnFileMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put(methodName, propertyValue);
+        } else if (methodPropertyName.equals("rules")) {
+            methodsRulesMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put(methodName, propertyValue);
+        } else if (methodPropertyName.equals("rulesFile")) {
+            methodsRulesMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put(methodName, readFile(propertyValue));
+        } else if (methodPropertyName.equals("generate")) {
+            methodsGenerateMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put(methodName, propertyValue);
+        } else if (methodPropertyName.equals("fault")) {
+            methodsFaultMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put(methodName, propertyValue);
+        } else if (methodPropertyName.equals("capacity")) {
+            methodsCapacityMap.computeIfAbsent(serviceName, key -> new HashMap<>()).put(methodName, propertyValue);
         } else {
             //TODO
         }
     }
+
+    private static String readFile(String path) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Read file failed: " + path, e);
+        }
+    }
+
+    private static LatencyModel parseDelay(String propertyValue) {
+        return LatencyModels.fixed(Math.max(DurationParser.parseNanos(propertyValue), 0));
+    }
+
+    //eager(threads=N): 监听前创建所有processor, N>1时并行; lazy(warmup=N,cache=dir): 多路复用的service在首次调用时创建,
+    //warmup>0时另起N个线程在后台预热, cache为service元数据索引的目录
+    @Getter
+    private static class Startup {
+
+        private final boolean lazy;
+
+        private final int threads;
+
+        private final int warmup;
+
+        private final String cache;
+
+        private Startup(String name, Map<String, String> attrs) {
+            if (!"eager".equals(name) && !"lazy".equals(name)) {
+                throw new IllegalArgumentException("Unsupported startup: " + name);
+            }
+            this.lazy = "lazy".equals(name);
+            this.threads = Integer.parseInt(attrs.getOrDefault("threads", "1"));
+            this.warmup = Integer.parseInt(attrs.getOrDefault("warmup", "0"));
+            this.cache = attrs.get("cache");
+        }
+    }
+
+    //每个service的配置与state, 按MockStateTable的下标存放; publish一次替换所有service的引用.
+    //已创建的service不解析; 切换前首次调用才创建的service在这里创建, 失败时抛出异常且不替换任何service
+    public static class PreparedStates {
+
+        private final MockStateTable stateTable;
+
+        private final Entry[] entries;
+
+        private PreparedStates(MockStateTable stateTable, Entry[] entries) {
+            this.stateTable = stateTable;
+            this.entries = entries;
+        }
+
+        public void publish() throws Exception {
+            this.stateTable.swap(index -> this.entries[index].state());
+        }
+    }
+
+    //未变化的service在多个场景间共用, state只创建一次; lazy的service首次调用时由MockStateTable调用state()创建并缓存
+    private static class Entry {
+
+        private final MockProcessorFactory processorFactory;
+
+        private final ServiceConf serviceConf;
+
+        private MockProcessorFactory.MockState state;
+
+        private Entry(MockProcessorFactory processorFactory, ServiceConf serviceConf, MockProcessorFactory.MockState state) {
+            this.processorFactory = processorFactory;
+            this.serviceConf = serviceConf;
+            this.state = state;
+        }
+
+        private synchronized MockProcessorFactory.MockState state() throws Exception {
+            if (this.state == null) {
+                this.state = this.processorFactory.newState(this.serviceConf);
+            }
+            return this.state;
+        }
+    }
 }
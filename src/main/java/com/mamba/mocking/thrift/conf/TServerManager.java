@@ -1,11 +1,19 @@
 package com.mamba.mocking.thrift.conf;
 
+import com.mamba.mocking.thrift.metrics.AcceptorStats;
+import com.mamba.mocking.thrift.metrics.TransportMetrics;
+import com.mamba.mocking.thrift.netty.NettyServer;
+import com.mamba.mocking.thrift.netty.NettyServerTransport;
+import com.mamba.mocking.thrift.pool.PooledSelectorServer;
+import com.mamba.mocking.thrift.transport.CountingTransport;
+import com.mamba.mocking.thrift.transport.TransportEventHandler;
 import org.apache.thrift.TProcessor;
 import org.apache.thrift.TProcessorFactory;
 import org.apache.thrift.protocol.TProtocolFactory;
 import org.apache.thrift.server.THsHaServer;
 import org.apache.thrift.server.TNonblockingServer;
 import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TServerEventHandler;
 import org.apache.thrift.server.TSimpleServer;
 import org.apache.thrift.server.TThreadPoolServer;
 import org.apache.thrift.server.TThreadedSelectorServer;
@@ -18,8 +26,14 @@ import org.apache.thrift.transport.TTransportFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 
@@ -33,49 +47,204 @@ public class TServerManager<T extends TServerTransport, S extends TServer> {
 
     private Map<String, String> attrs;
 
+    //SO_REUSEPORT监听socket数, 每个acceptor是独立的server实例; NettyServer在内部处理, 这里为1
+    private int acceptors;
+
     public TServerManager(TServerTransportFactory<T> serverTransportFactory, TServerFactory<T, S> serverFactory, Map<String, String> attrs) {
+        this(serverTransportFactory, serverFactory, attrs, 1);
+    }
+
+    private TServerManager(TServerTransportFactory<T> serverTransportFactory, TServerFactory<T, S> serverFactory, Map<String, String> attrs, int acceptors) {
         this.serverTransportFactory = serverTransportFactory;
         this.serverFactory = serverFactory;
         this.attrs = attrs == null ? Collections.emptyMap() : attrs;
+        this.acceptors = acceptors;
+    }
+
+    //async=true时使用AsyncProcessor, 仅支持nonblocking server
+    public boolean isAsync() {
+        return Boolean.parseBoolean(this.attrs.get("async"));
     }
 
     public void serve(int port, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory) throws TTransportException {
-        try (T transport = this.serverTransportFactory.newTransport(port)) {
+        serve(port, processor, transportFactory, protocolFactory, null);
+    }
+
+    //executor: 多个endpoint共享的worker线程池, 为null时使用thrift默认线程池; TSimpleServer/TNonblockingServer没有worker线程.
+    //server配置了executor属性时优先使用, 此时min/maxWorkerThreads、workerThreads不生效
+    public void serve(int port, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, ExecutorService executor) throws TTransportException {
+        serve(port, processor, transportFactory, protocolFactory, executor, null);
+    }
+
+    //transportMetrics: 不为null时统计连接与读写字节数
+    public void serve(int port, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, ExecutorService executor, TransportMetrics transportMetrics) throws TTransportException {
+        ExecutorService serverExecutor = ExecutorParser.parseExecutor(this.attrs.get("executor"));
+        if (serverExecutor != null) {
+            executor = serverExecutor;
+        }
+        List<T> transports = new ArrayList<>();
+        try {
             LOGGER.info("=========Thrift server starting=======");
             LOGGER.info("Listen port: {}", port);
-            S server = this.serverFactory.newServer(transport, processor, transportFactory, protocolFactory, this.attrs);
+            TServer server = newServer(port, transports, processor, transportFactory, protocolFactory, executor, transportMetrics);
             LOGGER.info("=========Thrift server started=======");
+            //JVM启动到开始监听(NettyServer在serve中bind)的耗时
+            LOGGER.info("Cold start: {}ms", ManagementFactory.getRuntimeMXBean().getUptime());
             server.serve();
             LOGGER.error("Thrift server stopped...");
             server.stop();
+        } finally {
+            transports.forEach(TServerTransport::close);
+            //executor属性创建的线程池属于本server, 共享的线程池由调用方关闭
+            if (serverExecutor != null) {
+                serverExecutor.shutdown();
+            }
+        }
+    }
+
+    //在后台线程serve, 不阻塞; 调用方stop时同时关闭监听端口与executor属性创建的线程池, 用于基准测试等嵌入场景
+    public TServer start(int port, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory) throws TTransportException {
+        ExecutorService serverExecutor = ExecutorParser.parseExecutor(this.attrs.get("executor"));
+        TServer server;
+        try {
+            server = newServer(port, new ArrayList<>(), processor, transportFactory, protocolFactory, serverExecutor, null);
+        } catch (TTransportException | RuntimeException e) {
+            if (serverExecutor != null) {
+                serverExecutor.shutdown();
+            }
+            throw e;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } finally {
+                if (serverExecutor != null) {
+                    serverExecutor.shutdown();
+                }
+            }
+        }, "thrift-server-" + port);
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    //transports: 输出创建的监听transport, 由调用方关闭; 统计时配置的transport外包一层CountingTransport, 每个server注册同一个event handler.
+    //executor由调用方关闭, 每个server只拿到它的视图, server停止时不会关闭共享的线程池
+    private TServer newServer(int port, List<T> transports, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, ExecutorService executor, TransportMetrics transportMetrics) throws TTransportException {
+        TServerEventHandler eventHandler = null;
+        if (transportMetrics != null) {
+            transportFactory = new CountingTransport.Factory(transportFactory == null ? new TTransportFactory() : transportFactory);
+            eventHandler = new TransportEventHandler(transportMetrics);
+        }
+        if (this.acceptors <= 1) {
+            T transport = this.serverTransportFactory.newTransport(port, null);
+            transports.add(transport);
+            S server = this.serverFactory.newServer(transport, processor, transportFactory, protocolFactory, this.attrs, executor == null ? null : ExecutorParser.share(executor));
+            server.setServerEventHandler(eventHandler);
+            setBufferPoolStats(server, transportMetrics);
+            return server;
+        }
+        List<AcceptorStats> statsList = new ArrayList<>();
+        List<TServer> servers = new ArrayList<>();
+        for (int i = 0; i < this.acceptors; i++) {
+            AcceptorStats stats = new AcceptorStats(i);
+            T transport = this.serverTransportFactory.newTransport(port, stats);
+            transports.add(transport);
+            statsList.add(stats);
+            S server = this.serverFactory.newServer(transport, processor, transportFactory, protocolFactory, this.attrs, executor == null ? null : ExecutorParser.share(executor));
+            server.setServerEventHandler(eventHandler);
+            setBufferPoolStats(server, transportMetrics);
+            servers.add(server);
+        }
+        LOGGER.info("Acceptors: {}, SO_REUSEPORT", this.acceptors);
+        return new AcceptorGroup(transports.get(0), servers, statsList, parseReportNanos(this.attrs));
+    }
+
+    //多个acceptor时每个server有自己的缓冲池, 统计合并输出
+    private static void setBufferPoolStats(TServer server, TransportMetrics transportMetrics) {
+        if (transportMetrics != null && server instanceof PooledSelectorServer) {
+            ((PooledSelectorServer) server).setBufferPoolStats(transportMetrics.bufferPool());
         }
     }
 
     public static TServerManager<?, ?> newInstance(String description) {
         if (description == null || description.isEmpty()) {
-            return new TServerManager<>(TServerSocket::new, TServerManager::newTSimpleServer, Collections.emptyMap());
+            return new TServerManager<>((port, stats) -> new TServerSocket(port), TServerManager::newTSimpleServer, Collections.emptyMap());
         } else {
             return ParameterizedPropertyParser.parse(description, TServerManager::newInstance);
         }
     }
 
     public static TServerManager<?, ?> newInstance(String name, Map<String, String> attrs) {
+        int acceptors = parseAcceptors(attrs);
         if (TSimpleServer.class.getSimpleName().equals(name)) {
-            return new TServerManager<>(TServerSocket::new, TServerManager::newTSimpleServer, attrs);
+            checkBlocking(name, attrs);
+            checkExecutor(name, attrs);
+            checkAcceptors(name, acceptors);
+            return new TServerManager<>((port, stats) -> new TServerSocket(port), TServerManager::newTSimpleServer, attrs);
         } else if (TThreadPoolServer.class.getSimpleName().equals(name)) {
-            return new TServerManager<>(TServerSocket::new, TServerManager::newTThreadPoolServer, attrs);
+            checkBlocking(name, attrs);
+            checkAcceptors(name, acceptors);
+            return new TServerManager<>((port, stats) -> new TServerSocket(port), TServerManager::newTThreadPoolServer, attrs);
         } else if (TNonblockingServer.class.getSimpleName().equals(name)) {
-            return new TServerManager<>(TNonblockingServerSocket::new, TServerManager::newTNonblockingServer, attrs);
+            checkExecutor(name, attrs);
+            return new TServerManager<>(TServerManager::newNonblockingServerSocket, TServerManager::newTNonblockingServer, attrs, acceptors);
         } else if (THsHaServer.class.getSimpleName().equals(name)) {
-            return new TServerManager<>(TNonblockingServerSocket::new, TServerManager::newTHsHaServer, attrs);
+            return new TServerManager<>(TServerManager::newNonblockingServerSocket, TServerManager::newTHsHaServer, attrs, acceptors);
         } else if (TThreadedSelectorServer.class.getSimpleName().equals(name)) {
-            return new TServerManager<>(TNonblockingServerSocket::new, TServerManager::newTThreadedSelectorServer, attrs);
+            return new TServerManager<>(TServerManager::newNonblockingServerSocket, TServerManager::newTThreadedSelectorServer, attrs, acceptors);
+        } else if (PooledSelectorServer.class.getSimpleName().equals(name)) {
+            return new TServerManager<>(TServerManager::newNonblockingServerSocket, TServerManager::newPooledSelectorServer, attrs, acceptors);
+        } else if (NettyServer.class.getSimpleName().equals(name)) {
+            //默认async=true, 请求在event loop上处理; async=false时同步processor在executor(未配置时在event loop)上执行
+            Map<String, String> nettyAttrs = new HashMap<>(attrs);
+            nettyAttrs.putIfAbsent("async", "true");
+            return new TServerManager<>((port, stats) -> new NettyServerTransport(port), TServerManager::newNettyServer, nettyAttrs);
         } else {
             throw new IllegalArgumentException("Unsupported server: " + name);
         }
     }
 
-    private static TSimpleServer newTSimpleServer(TServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs) {
+    private static void checkBlocking(String name, Map<String, String> attrs) {
+        if (attrs != null && Boolean.parseBoolean(attrs.get("async"))) {
+            throw new IllegalArgumentException("Unsupported async server: " + name);
+        }
+    }
+
+    private static void checkExecutor(String name, Map<String, String> attrs) {
+        if (attrs != null && attrs.containsKey("executor")) {
+            throw new IllegalArgumentException("Unsupported executor server: " + name);
+        }
+    }
+
+    private static void checkAcceptors(String name, int acceptors) {
+        if (acceptors > 1) {
+            throw new IllegalArgumentException("Unsupported acceptors server: " + name);
+        }
+    }
+
+    private static int parseAcceptors(Map<String, String> attrs) {
+        String acceptors = attrs == null ? null : attrs.get("acceptors");
+        if (acceptors == null) {
+            return 1;
+        }
+        int value = Integer.parseInt(acceptors);
+        if (value < 1) {
+            throw new IllegalArgumentException("Invalid acceptors: " + acceptors);
+        }
+        return value;
+    }
+
+    //acceptor连接与吞吐的输出周期, 默认10s
+    private static long parseReportNanos(Map<String, String> attrs) {
+        return (long) DurationParser.parseNanos(attrs.getOrDefault("acceptorReport", "10s"));
+    }
+
+    private static TNonblockingServerTransport newNonblockingServerSocket(int port, AcceptorStats stats) throws TTransportException {
+        return stats == null ? new TNonblockingServerSocket(port) : new ReusePortServerSocket(port, stats);
+    }
+
+    private static TSimpleServer newTSimpleServer(TServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs, ExecutorService executor) {
         TSimpleServer.Args args = new TSimpleServer.Args(transport);
         args.processorFactory(new TProcessorFactory(processor));
         setValue(args, transportFactory, TSimpleServer.Args::transportFactory);
@@ -83,7 +252,7 @@ public class TServerManager<T extends TServerTransport, S extends TServer> {
         return new TSimpleServer(args);
     }
 
-    private static TThreadPoolServer newTThreadPoolServer(TServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs) {
+    private static TThreadPoolServer newTThreadPoolServer(TServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs, ExecutorService executor) {
         TThreadPoolServer.Args args = new TThreadPoolServer.Args(transport);
         args.processorFactory(new TProcessorFactory(processor));
         setValue(args, transportFactory, TThreadPoolServer.Args::transportFactory);
@@ -98,11 +267,11 @@ public class TServerManager<T extends TServerTransport, S extends TServer> {
             setValue(args, attrs.get("beBackoffSlotLength"), (target, beBackoffSlotLength) -> target.beBackoffSlotLength(Integer.parseInt(beBackoffSlotLength)));
             setValue(args, attrs.get("beBackoffSlotLengthUnit"), (target, beBackoffSlotLengthUnit) -> target.beBackoffSlotLengthUnit(TimeUnit.valueOf(beBackoffSlotLengthUnit)));
         }
-//        args.executorService(Executors.newCachedThreadPool());
+        setValue(args, executor, TThreadPoolServer.Args::executorService);
         return new TThreadPoolServer(args);
     }
 
-    private static TNonblockingServer newTNonblockingServer(TNonblockingServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs) {
+    private static TNonblockingServer newTNonblockingServer(TNonblockingServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs, ExecutorService executor) {
         TNonblockingServer.Args args = new TNonblockingServer.Args(transport);
         args.processorFactory(new TProcessorFactory(processor));
         setValue(args, transportFactory, TNonblockingServer.Args::transportFactory);
@@ -113,7 +282,7 @@ public class TServerManager<T extends TServerTransport, S extends TServer> {
         return new TNonblockingServer(args);
     }
 
-    private static THsHaServer newTHsHaServer(TNonblockingServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs) {
+    private static THsHaServer newTHsHaServer(TNonblockingServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs, ExecutorService executor) {
         THsHaServer.Args args = new THsHaServer.Args(transport);
         args.processorFactory(new TProcessorFactory(processor));
         setValue(args, transportFactory, THsHaServer.Args::transportFactory);
@@ -125,11 +294,11 @@ public class TServerManager<T extends TServerTransport, S extends TServer> {
             setValue(args, attrs.get("stopTimeoutVal"), (target, stopTimeoutVal) -> target.stopTimeoutVal(Integer.parseInt(stopTimeoutVal)));
             setValue(args, attrs.get("stopTimeoutUnit"), (target, stopTimeoutUnit) -> target.stopTimeoutUnit(TimeUnit.valueOf(stopTimeoutUnit)));
         }
-//        args.executorService(Executors.newCachedThreadPool());
+        setValue(args, executor, THsHaServer.Args::executorService);
         return new THsHaServer(args);
     }
 
-    private static TThreadedSelectorServer newTThreadedSelectorServer(TNonblockingServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs) {
+    private static TThreadedSelectorServer newTThreadedSelectorServer(TNonblockingServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs, ExecutorService executor) {
         TThreadedSelectorServer.Args args = new TThreadedSelectorServer.Args(transport);
         args.processorFactory(new TProcessorFactory(processor));
         setValue(args, transportFactory, TThreadedSelectorServer.Args::transportFactory);
@@ -143,23 +312,102 @@ public class TServerManager<T extends TServerTransport, S extends TServer> {
             setValue(args, attrs.get("acceptQueueSizePerThread"), (target, acceptQueueSizePerThread) -> target.acceptQueueSizePerThread(Integer.parseInt(acceptQueueSizePerThread)));
             setValue(args, attrs.get("acceptPolicy"), (target, acceptPolicy) -> target.acceptPolicy(TThreadedSelectorServer.Args.AcceptPolicy.valueOf(acceptPolicy)));
         }
-//        args.executorService(Executors.newCachedThreadPool());
+        setValue(args, executor, TThreadedSelectorServer.Args::executorService);
         return new TThreadedSelectorServer(args);
     }
 
+    private static PooledSelectorServer newPooledSelectorServer(TNonblockingServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs, ExecutorService executor) {
+        PooledSelectorServer.Args args = new PooledSelectorServer.Args(transport);
+        args.processorFactory(new TProcessorFactory(processor));
+        setValue(args, transportFactory, PooledSelectorServer.Args::transportFactory);
+        setValue(args, protocolFactory, PooledSelectorServer.Args::protocolFactory);
+        if (attrs != null && !attrs.isEmpty()) {
+            setValue(args, attrs.get("selectorThreads"), (target, selectorThreads) -> target.selectorThreads(Integer.parseInt(selectorThreads)));
+            setValue(args, attrs.get("workerThreads"), (target, workerThreads) -> target.workerThreads(Integer.parseInt(workerThreads)));
+            setValue(args, attrs.get("maxLength"), (target, maxLength) -> target.maxLength(SizeParser.parseSize(maxLength)));
+            setValue(args, attrs.get("maxPooledSize"), (target, maxPooledSize) -> target.maxPooledSize(SizeParser.parseSize(maxPooledSize)));
+            setValue(args, attrs.get("poolBytes"), (target, poolBytes) -> target.poolBytes(SizeParser.parseSize(poolBytes)));
+        }
+        setValue(args, executor, PooledSelectorServer.Args::executor);
+        return new PooledSelectorServer(args);
+    }
+
+    private static NettyServer newNettyServer(NettyServerTransport transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs, ExecutorService executor) {
+        NettyServer.Args args = new NettyServer.Args(transport);
+        args.processorFactory(new TProcessorFactory(processor));
+        setValue(args, transportFactory, NettyServer.Args::transportFactory);
+        setValue(args, protocolFactory, NettyServer.Args::protocolFactory);
+        if (attrs != null && !attrs.isEmpty()) {
+            setValue(args, attrs.get("ioThreads"), (target, ioThreads) -> target.ioThreads(Integer.parseInt(ioThreads)));
+            setValue(args, attrs.get("maxLength"), (target, maxLength) -> target.maxLength(Integer.parseInt(maxLength)));
+            setValue(args, attrs.get("epoll"), (target, epoll) -> target.epoll(Boolean.parseBoolean(epoll)));
+            setValue(args, attrs.get("acceptors"), (target, acceptors) -> target.acceptors(parseAcceptors(attrs)));
+            setValue(args, attrs.get("acceptorReport"), (target, acceptorReport) -> target.reportNanos(parseReportNanos(attrs)));
+        }
+        setValue(args, executor, NettyServer.Args::executor);
+        return new NettyServer(args);
+    }
+
     private static <T, V> void setValue(T target, V value, BiConsumer<T, V> consumer) {
         if (value != null) {
             consumer.accept(target, value);
         }
     }
 
+    //stats: 多个acceptor时每个监听socket一个, 单个时为null
     private interface TServerTransportFactory<T extends TServerTransport> {
 
-        T newTransport(int port) throws TTransportException;
+        T newTransport(int port, AcceptorStats stats) throws TTransportException;
     }
 
     private interface TServerFactory<T extends TServerTransport, S extends TServer> {
 
-        S newServer(T transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs);
+        S newServer(T transport, TProcessor processor, TTransportFactory transportFactory, TProtocolFactory protocolFactory, Map<String, String> attrs, ExecutorService executor);
+    }
+
+    //多个acceptor: 每个server有自己的监听socket、accept与selector线程, 共享processor与worker线程池; 最后一个在调用线程serve
+    private static class AcceptorGroup extends TServer {
+
+        private final List<TServer> servers;
+
+        private final List<AcceptorStats> statsList;
+
+        private final long reportNanos;
+
+        private ScheduledExecutorService reporter;
+
+        private AcceptorGroup(TServerTransport transport, List<TServer> servers, List<AcceptorStats> statsList, long reportNanos) {
+            super(new Args(transport));
+            this.servers = servers;
+            this.statsList = statsList;
+            this.reportNanos = reportNanos;
+        }
+
+        @Override
+        public void serve() {
+            if (this.reportNanos > 0) {
+                this.reporter = AcceptorStats.report(this.statsList, this.reportNanos);
+            }
+            for (int i = 0; i < this.servers.size() - 1; i++) {
+                TServer server = this.servers.get(i);
+                Thread thread = new Thread(server::serve, "thrift-acceptor-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            this.servers.get(this.servers.size() - 1).serve();
+        }
+
+        @Override
+        public boolean isServing() {
+            return this.servers.stream().allMatch(TServer::isServing);
+        }
+
+        @Override
+        public void stop() {
+            this.servers.forEach(TServer::stop);
+            if (this.reporter != null) {
+                this.reporter.shutdownNow();
+            }
+        }
     }
 }
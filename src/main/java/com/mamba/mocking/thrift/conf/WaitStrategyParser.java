@@ -0,0 +1,39 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.timer.WaitStrategies;
+import com.mamba.mocking.thrift.timer.WaitStrategy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class WaitStrategyParser {
+
+    //相同配置的endpoint共享时间轮线程
+    private static final ConcurrentMap<String, WaitStrategy> WAIT_STRATEGY_MAP = new ConcurrentHashMap<>();
+
+    public static WaitStrategy parseWaitStrategy(String define) {
+        if (define == null || define.trim().isEmpty()) {
+            return WaitStrategies.sleep();
+        }
+        return WAIT_STRATEGY_MAP.computeIfAbsent(define.trim(), key -> ParameterizedPropertyParser.parse(key, WaitStrategyParser::newWaitStrategy));
+    }
+
+    public static WaitStrategy newWaitStrategy(String name, Map<String, String> attrs) {
+        WaitStrategy waitStrategy;
+        if ("sleep".equals(name)) {
+            waitStrategy = WaitStrategies.sleep();
+        } else if ("precise".equals(name)) {
+            String spin = attrs.getOrDefault("spin", "50us");
+            String tick = attrs.getOrDefault("tick", "100us");
+            waitStrategy = WaitStrategies.precise((long) DurationParser.parseNanos(spin), (long) DurationParser.parseNanos(tick));
+        } else {
+            throw new IllegalArgumentException("Unsupported wait: " + name);
+        }
+        String report = attrs.get("report");
+        if (report != null) {
+            waitStrategy = WaitStrategies.reporting(waitStrategy, (long) DurationParser.parseNanos(report));
+        }
+        return waitStrategy;
+    }
+}
@@ -0,0 +1,302 @@
+package com.mamba.mocking.thrift.dispatch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//极简的class文件生成器, 只覆盖生成Iface实现类所需的常量与指令.
+//使用class版本49(Java 5), 不需要生成StackMapTable
+final class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 49;
+
+    private static final byte CONSTANT_UTF8 = 1;
+    private static final byte CONSTANT_CLASS = 7;
+    private static final byte CONSTANT_FIELDREF = 9;
+    private static final byte CONSTANT_METHODREF = 10;
+    private static final byte CONSTANT_INTERFACE_METHODREF = 11;
+    private static final byte CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+
+    private final DataOutputStream constantPool = new DataOutputStream(this.constantPoolBytes);
+
+    private final Map<String, Integer> constantIndexMap = new HashMap<>();
+
+    private int constantCount = 1;
+
+    private final int thisClass;
+
+    private final int superClass;
+
+    private final List<Integer> interfaces = new ArrayList<>();
+
+    private final List<byte[]> fields = new ArrayList<>();
+
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassFileWriter(String internalName, String superInternalName) {
+        this.thisClass = classConstant(internalName);
+        this.superClass = classConstant(superInternalName);
+    }
+
+    void addInterface(String internalName) {
+        this.interfaces.add(classConstant(internalName));
+    }
+
+    void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8Constant(name));
+            out.writeShort(utf8Constant(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.fields.add(bytes.toByteArray());
+    }
+
+    void addMethod(int access, String name, String descriptor, int maxStack, int maxLocals, Code code) {
+        byte[] codeBytes = code.toByteArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8Constant(name));
+            out.writeShort(utf8Constant(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8Constant("Code"));
+            out.writeInt(12 + codeBytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(codeBytes.length);
+            out.write(codeBytes);
+            out.writeShort(0); //exception table
+            out.writeShort(0); //attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(this.constantCount);
+            this.constantPool.flush();
+            this.constantPoolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(this.thisClass);
+            out.writeShort(this.superClass);
+            out.writeShort(this.interfaces.size());
+            for (int index : this.interfaces) {
+                out.writeShort(index);
+            }
+            writeMembers(out, this.fields);
+            writeMembers(out, this.methods);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    int classConstant(String internalName) {
+        return constant("C" + internalName, CONSTANT_CLASS, utf8Constant(internalName), -1);
+    }
+
+    int fieldConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    int interfaceMethodConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberConstant(byte tag, String owner, String name, String descriptor) {
+        int classIndex = classConstant(owner);
+        int nameAndType = constant("N" + name + ' ' + descriptor, CONSTANT_NAME_AND_TYPE, utf8Constant(name), utf8Constant(descriptor));
+        return constant(tag + owner + '.' + name + ' ' + descriptor, tag, classIndex, nameAndType);
+    }
+
+    private int utf8Constant(String value) {
+        Integer index = this.constantIndexMap.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+        try {
+            this.constantPool.writeByte(CONSTANT_UTF8);
+            this.constantPool.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register("U" + value);
+    }
+
+    private int constant(String key, byte tag, int first, int second) {
+        Integer index = this.constantIndexMap.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            this.constantPool.writeByte(tag);
+            this.constantPool.writeShort(first);
+            if (second >= 0) {
+                this.constantPool.writeShort(second);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register(key);
+    }
+
+    private int register(String key) {
+        int index = this.constantCount++;
+        if (index > 0xFFFF) {
+            throw new IllegalStateException("Too many constants");
+        }
+        this.constantIndexMap.put(key, index);
+        return index;
+    }
+
+    private static void writeMembers(DataOutputStream out, List<byte[]> members) throws IOException {
+        out.writeShort(members.size());
+        for (byte[] member : members) {
+            out.write(member);
+        }
+    }
+
+    static String internalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    static String descriptor(Class<?> type) {
+        if (type.isArray()) {
+            return internalName(type);
+        }
+        if (!type.isPrimitive()) {
+            return 'L' + internalName(type) + ';';
+        }
+        if (type == void.class) {
+            return "V";
+        } else if (type == boolean.class) {
+            return "Z";
+        } else if (type == byte.class) {
+            return "B";
+        } else if (type == char.class) {
+            return "C";
+        } else if (type == short.class) {
+            return "S";
+        } else if (type == int.class) {
+            return "I";
+        } else if (type == long.class) {
+            return "J";
+        } else if (type == float.class) {
+            return "F";
+        } else {
+            return "D";
+        }
+    }
+
+    static String descriptor(Class<?> returnType, Class<?>... parameterTypes) {
+        StringBuilder sb = new StringBuilder().append('(');
+        for (Class<?> parameterType : parameterTypes) {
+            sb.append(descriptor(parameterType));
+        }
+        return sb.append(')').append(descriptor(returnType)).toString();
+    }
+
+    static final class Code {
+
+        static final int ACONST_NULL = 0x01;
+        static final int ILOAD = 0x15;
+        static final int LLOAD = 0x16;
+        static final int FLOAD = 0x17;
+        static final int DLOAD = 0x18;
+        static final int ALOAD = 0x19;
+        static final int ALOAD_0 = 0x2a;
+        static final int ALOAD_1 = 0x2b;
+        static final int AALOAD = 0x32;
+        static final int AASTORE = 0x53;
+        static final int POP = 0x57;
+        static final int DUP = 0x59;
+        static final int IRETURN = 0xac;
+        static final int LRETURN = 0xad;
+        static final int FRETURN = 0xae;
+        static final int DRETURN = 0xaf;
+        static final int ARETURN = 0xb0;
+        static final int RETURN = 0xb1;
+        static final int GETFIELD = 0xb4;
+        static final int PUTFIELD = 0xb5;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int INVOKESTATIC = 0xb8;
+        static final int INVOKEINTERFACE = 0xb9;
+        static final int ANEWARRAY = 0xbd;
+        static final int CHECKCAST = 0xc0;
+        static final int SIPUSH = 0x11;
+        static final int WIDE = 0xc4;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code op(int opcode) {
+            this.bytes.write(opcode);
+            return this;
+        }
+
+        Code op(int opcode, int index) {
+            this.bytes.write(opcode);
+            this.bytes.write(index >>> 8);
+            this.bytes.write(index);
+            return this;
+        }
+
+        Code sipush(int value) {
+            return op(SIPUSH, value);
+        }
+
+        Code aload(int slot) {
+            return load(ALOAD, slot);
+        }
+
+        Code load(int opcode, int slot) {
+            if (slot > 0xFF) {
+                this.bytes.write(WIDE);
+                return op(opcode, slot);
+            }
+            this.bytes.write(opcode);
+            this.bytes.write(slot);
+            return this;
+        }
+
+        Code invokeinterface(int index, int argsSize) {
+            op(INVOKEINTERFACE, index);
+            this.bytes.write(argsSize);
+            this.bytes.write(0);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return this.bytes.toByteArray();
+        }
+    }
+}
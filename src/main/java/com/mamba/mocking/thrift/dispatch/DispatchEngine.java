@@ -0,0 +1,25 @@
+package com.mamba.mocking.thrift.dispatch;
+
+public enum DispatchEngine {
+
+    //java.lang.reflect.Proxy + 方法名查找
+    PROXY,
+
+    //启动时生成Iface实现类, 每个方法直接调用对应的MockMethod
+    GENERATED,
+
+    //固定返回值的方法启动时按协议预编码响应, 请求时只读消息头、跳过参数、回写seqid
+    RAW;
+
+    public static DispatchEngine parse(String name) {
+        if (name == null || name.isEmpty()) {
+            return GENERATED;
+        }
+        for (DispatchEngine engine : values()) {
+            if (engine.name().equalsIgnoreCase(name)) {
+                return engine;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported dispatch: " + name);
+    }
+}
@@ -0,0 +1,195 @@
+package com.mamba.mocking.thrift.dispatch;
+
+import com.mamba.mocking.thrift.dispatch.ClassFileWriter.Code;
+import org.apache.thrift.async.AsyncMethodCallback;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+//为Iface/AsyncIface生成实现类: 第i个方法直接调用methods[i].invoke(args, callback), 无反射、无方法名查找; 只有带参数的方法才创建参数数组
+public final class IfaceGenerator {
+
+    private static final String GENERATED_PACKAGE = "com/mamba/mocking/thrift/dispatch/generated/";
+
+    private static final String MOCK_METHOD = ClassFileWriter.internalName(MockMethod.class);
+
+    private static final String MOCK_METHODS_DESCRIPTOR = "[L" + MOCK_METHOD + ';';
+
+    private static final String INVOKE_DESCRIPTOR = ClassFileWriter.descriptor(Object.class, Object[].class, AsyncMethodCallback.class);
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private IfaceGenerator() {
+    }
+
+    public static <T> T newInstance(Class<T> ifaceClass, Function<Method, MockMethod> mockMethodFactory) throws Exception {
+        if (!ifaceClass.isInterface() || !Modifier.isPublic(ifaceClass.getModifiers())) {
+            throw new IllegalArgumentException("Invalid iface: " + ifaceClass.getName());
+        }
+        List<Method> methods = new ArrayList<>();
+        for (Method method : ifaceClass.getMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())) {
+                methods.add(method);
+            }
+        }
+        MockMethod[] mockMethods = new MockMethod[methods.size()];
+        for (int i = 0; i < mockMethods.length; i++) {
+            mockMethods[i] = mockMethodFactory.apply(methods.get(i));
+        }
+        String className = GENERATED_PACKAGE + ifaceClass.getName().substring(ifaceClass.getName().lastIndexOf('.') + 1).replace('$', '_') + '$' + COUNTER.incrementAndGet();
+        byte[] bytes = generate(className, ifaceClass, methods);
+        Class<?> generatedClass = new GeneratedClassLoader(ifaceClass.getClassLoader()).define(className.replace('/', '.'), bytes);
+        return ifaceClass.cast(generatedClass.getConstructor(MockMethod[].class).newInstance((Object) mockMethods));
+    }
+
+    private static byte[] generate(String className, Class<?> ifaceClass, List<Method> methods) {
+        ClassFileWriter writer = new ClassFileWriter(className, "java/lang/Object");
+        writer.addInterface(ClassFileWriter.internalName(ifaceClass));
+        writer.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "methods", MOCK_METHODS_DESCRIPTOR);
+        int methodsField = writer.fieldConstant(className, "methods", MOCK_METHODS_DESCRIPTOR);
+        int invokeMethod = writer.interfaceMethodConstant(MOCK_METHOD, "invoke", INVOKE_DESCRIPTOR);
+
+        Code init = new Code()
+                .op(Code.ALOAD_0)
+                .op(Code.INVOKESPECIAL, writer.methodConstant("java/lang/Object", "<init>", "()V"))
+                .op(Code.ALOAD_0)
+                .op(Code.ALOAD_1)
+                .op(Code.PUTFIELD, methodsField)
+                .op(Code.RETURN);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "(" + MOCK_METHODS_DESCRIPTOR + ")V", 2, 2, init);
+
+        for (int i = 0; i < methods.size(); i++) {
+            Method method = methods.get(i);
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            int[] slots = new int[parameterTypes.length];
+            int argCount = 0;
+            int maxLocals = 1;
+            int callbackSlot = -1;
+            for (int j = 0; j < parameterTypes.length; j++) {
+                slots[j] = maxLocals;
+                if (parameterTypes[j] == AsyncMethodCallback.class) {
+                    callbackSlot = maxLocals;
+                } else {
+                    argCount++;
+                }
+                maxLocals += (parameterTypes[j] == long.class || parameterTypes[j] == double.class) ? 2 : 1;
+            }
+            Code code = new Code()
+                    .op(Code.ALOAD_0)
+                    .op(Code.GETFIELD, methodsField)
+                    .sipush(i)
+                    .op(Code.AALOAD);
+            if (argCount > 0) {
+                code.sipush(argCount).op(Code.ANEWARRAY, writer.classConstant("java/lang/Object"));
+                for (int j = 0, index = 0; j < parameterTypes.length; j++) {
+                    if (slots[j] == callbackSlot) {
+                        continue;
+                    }
+                    code.op(Code.DUP).sipush(index++);
+                    writeLoadBoxed(writer, code, parameterTypes[j], slots[j]);
+                    code.op(Code.AASTORE);
+                }
+            } else {
+                code.op(Code.ACONST_NULL);
+            }
+            if (callbackSlot > 0) {
+                code.aload(callbackSlot);
+            } else {
+                code.op(Code.ACONST_NULL);
+            }
+            code.invokeinterface(invokeMethod, 3);
+            writeReturn(writer, code, method.getReturnType());
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC, method.getName(), ClassFileWriter.descriptor(method.getReturnType(), parameterTypes), 7, maxLocals, code);
+        }
+        return writer.toByteArray();
+    }
+
+    private static void writeLoadBoxed(ClassFileWriter writer, Code code, Class<?> type, int slot) {
+        if (!type.isPrimitive()) {
+            code.load(Code.ALOAD, slot);
+            return;
+        }
+        Class<?> boxedType;
+        int loadOp;
+        if (type == long.class) {
+            boxedType = Long.class;
+            loadOp = Code.LLOAD;
+        } else if (type == float.class) {
+            boxedType = Float.class;
+            loadOp = Code.FLOAD;
+        } else if (type == double.class) {
+            boxedType = Double.class;
+            loadOp = Code.DLOAD;
+        } else {
+            boxedType = type == boolean.class ? Boolean.class : type == byte.class ? Byte.class : type == char.class ? Character.class : type == short.class ? Short.class : Integer.class;
+            loadOp = Code.ILOAD;
+        }
+        String boxedName = ClassFileWriter.internalName(boxedType);
+        code.load(loadOp, slot)
+                .op(Code.INVOKESTATIC, writer.methodConstant(boxedName, "valueOf", ClassFileWriter.descriptor(boxedType, type)));
+    }
+
+    private static void writeReturn(ClassFileWriter writer, Code code, Class<?> returnType) {
+        if (returnType == void.class) {
+            code.op(Code.POP).op(Code.RETURN);
+            return;
+        }
+        if (!returnType.isPrimitive()) {
+            code.op(Code.CHECKCAST, writer.classConstant(ClassFileWriter.internalName(returnType))).op(Code.ARETURN);
+            return;
+        }
+        Class<?> boxedType;
+        int returnOp;
+        if (returnType == boolean.class) {
+            boxedType = Boolean.class;
+            returnOp = Code.IRETURN;
+        } else if (returnType == byte.class) {
+            boxedType = Byte.class;
+            returnOp = Code.IRETURN;
+        } else if (returnType == char.class) {
+            boxedType = Character.class;
+            returnOp = Code.IRETURN;
+        } else if (returnType == short.class) {
+            boxedType = Short.class;
+            returnOp = Code.IRETURN;
+        } else if (returnType == int.class) {
+            boxedType = Integer.class;
+            returnOp = Code.IRETURN;
+        } else if (returnType == long.class) {
+            boxedType = Long.class;
+            returnOp = Code.LRETURN;
+        } else if (returnType == float.class) {
+            boxedType = Float.class;
+            returnOp = Code.FRETURN;
+        } else {
+            boxedType = Double.class;
+            returnOp = Code.DRETURN;
+        }
+        String boxedName = ClassFileWriter.internalName(boxedType);
+        //无参方法描述符"()Z", 单参数的descriptor(Class)只生成字段描述符"Z"
+        code.op(Code.CHECKCAST, writer.classConstant(boxedName))
+                .op(Code.INVOKEVIRTUAL, writer.methodConstant(boxedName, returnType.getName() + "Value", ClassFileWriter.descriptor(returnType, new Class<?>[0])))
+                .op(returnOp);
+    }
+
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        private GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        //Iface所在的ClassLoader不一定能看到MockMethod
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            return Class.forName(name, false, MockMethod.class.getClassLoader());
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.mamba.mocking.thrift.dispatch;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+
+public interface MockMethod {
+
+    //args: 方法参数(不含callback), 无参数时为null; 同步调用时callback为null
+    Object invoke(Object[] args, AsyncMethodCallback<Object> callback) throws Exception;
+}
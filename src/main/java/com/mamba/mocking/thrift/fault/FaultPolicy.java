@@ -0,0 +1,91 @@
+package com.mamba.mocking.thrift.fault;
+
+import lombok.Getter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+//按比例注入故障, 每次请求一次线程内随机判定, 无锁、无分配.
+//periodMillis>0时只在每个周期的前durationMillis内生效, 周期按墙钟对齐, 多个实例同时进入故障窗口
+public class FaultPolicy {
+
+    private final FaultType[] types;
+
+    //累积比例, 与types一一对应
+    private final double[] thresholds;
+
+    private final long periodMillis;
+
+    private final long durationMillis;
+
+    private final long offsetMillis;
+
+    //EXCEPTION使用的异常类名(simple name), 为null时使用方法声明的第一个异常
+    @Getter
+    private final String exceptionType;
+
+    //DROP/TIMEOUT的等待时间, 纳秒
+    @Getter
+    private final long holdNanos;
+
+    public FaultPolicy(Map<FaultType, Double> rates, long periodMillis, long durationMillis, long offsetMillis, String exceptionType, long holdNanos) {
+        Map<FaultType, Double> sortedRates = new EnumMap<>(FaultType.class);
+        for (Map.Entry<FaultType, Double> entry : rates.entrySet()) {
+            double rate = entry.getValue();
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Fault rate must be in [0, 1]: " + entry.getKey() + "=" + rate);
+            }
+            if (rate > 0) {
+                sortedRates.put(entry.getKey(), rate);
+            }
+        }
+        if (periodMillis < 0 || durationMillis < 0 || (periodMillis > 0 && durationMillis > periodMillis)) {
+            throw new IllegalArgumentException("Invalid fault window: period=" + periodMillis + "ms, duration=" + durationMillis + "ms");
+        }
+        this.types = new FaultType[sortedRates.size()];
+        this.thresholds = new double[sortedRates.size()];
+        double sum = 0;
+        int i = 0;
+        for (Map.Entry<FaultType, Double> entry : sortedRates.entrySet()) {
+            sum += entry.getValue();
+            this.types[i] = entry.getKey();
+            this.thresholds[i] = sum;
+            i++;
+        }
+        if (sum > 1 + 1E-9) {
+            throw new IllegalArgumentException("Sum of fault rates exceeds 100%: " + rates);
+        }
+        this.periodMillis = periodMillis;
+        this.durationMillis = durationMillis;
+        this.offsetMillis = offsetMillis;
+        this.exceptionType = exceptionType;
+        this.holdNanos = holdNanos;
+    }
+
+    //返回null表示本次不注入
+    public FaultType decide() {
+        return decide(System.currentTimeMillis(), ThreadLocalRandom.current().nextDouble());
+    }
+
+    FaultType decide(long currentTimeMillis, double random) {
+        if (this.periodMillis > 0 && Math.floorMod(currentTimeMillis - this.offsetMillis, this.periodMillis) >= this.durationMillis) {
+            return null;
+        }
+        for (int i = 0; i < this.thresholds.length; i++) {
+            if (random < this.thresholds[i]) {
+                return this.types[i];
+            }
+        }
+        return null;
+    }
+
+    public boolean contains(FaultType type) {
+        for (FaultType t : this.types) {
+            if (t == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,22 @@
+package com.mamba.mocking.thrift.fault;
+
+public enum FaultType {
+
+    //TApplicationException(INTERNAL_ERROR)
+    ERROR,
+
+    //方法在IDL中声明的异常
+    EXCEPTION,
+
+    //不响应, 直接关闭连接
+    RESET,
+
+    //不响应, hold之后关闭连接
+    DROP,
+
+    //hold之后再正常响应, 用于触发客户端超时
+    TIMEOUT,
+
+    //响应只写出一部分后关闭连接
+    TRUNCATE
+}
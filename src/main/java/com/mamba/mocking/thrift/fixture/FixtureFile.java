@@ -0,0 +1,142 @@
+package com.mamba.mocking.thrift.fixture;
+
+import com.google.gson.Gson;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TByteBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//返回值文件(service.method.X.returnFile): 只读内存映射, 内容不占堆; 同一文件(路径、大小、修改时间都相同)在所有service与热加载之间共享一份映射.
+//.json按json解析, 其它按TBinaryProtocol编码的<方法>_result struct解析(success字段为返回值); 首次使用时才解析, 结果按返回类型缓存
+public final class FixtureFile {
+
+    private static final Gson GSON = new Gson();
+
+    private static final Map<Path, FixtureFile> FILES = new ConcurrentHashMap<>();
+
+    private final Path path;
+
+    private final long size;
+
+    private final long lastModified;
+
+    private final boolean json;
+
+    private final ByteBuffer buffer;
+
+    //key为返回类型(json)或result class(二进制), 值可能为null
+    private final Map<Object, Object> decodedMap = new HashMap<>();
+
+    private FixtureFile(Path path, long size, long lastModified, ByteBuffer buffer) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.json = path.getFileName().toString().toLowerCase().endsWith(".json");
+        this.buffer = buffer;
+    }
+
+    //文件变化后再打开时重新映射, 旧的映射在引用它的MockState释放后回收
+    public static FixtureFile open(String path) throws IOException {
+        Path realPath = Paths.get(path).toRealPath();
+        long size = Files.size(realPath);
+        long lastModified = Files.getLastModifiedTime(realPath).toMillis();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Fixture file too large: " + realPath + ", size " + size);
+        }
+        try {
+            return FILES.compute(realPath, (key, file) -> file != null && file.size == size && file.lastModified == lastModified ? file : map(key, size, lastModified));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static FixtureFile map(Path path, long size, long lastModified) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new FixtureFile(path, size, lastModified, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Map fixture file failed: " + path, e);
+        }
+    }
+
+    public Path getPath() {
+        return this.path;
+    }
+
+    public boolean isJson() {
+        return this.json;
+    }
+
+    //文件内容的只读视图, 位置独立, 可并发使用
+    public ByteBuffer content() {
+        return this.buffer.duplicate();
+    }
+
+    //resultClass: 生成代码中的<方法>_result, 二进制文件使用
+    public synchronized Object decode(Type returnType, Class<?> resultClass) throws Exception {
+        Object key = this.json ? returnType : resultClass;
+        if (this.decodedMap.containsKey(key)) {
+            return this.decodedMap.get(key);
+        }
+        Object value = this.json ? decodeJson(returnType) : decodeBinary(resultClass);
+        this.decodedMap.put(key, value);
+        return value;
+    }
+
+    private Object decodeJson(Type returnType) throws IOException {
+        try (Reader reader = new InputStreamReader(new BufferInputStream(content()), StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, returnType);
+        }
+    }
+
+    private Object decodeBinary(Class<?> resultClass) throws Exception {
+        if (resultClass == null) {
+            throw new IllegalArgumentException("Binary fixture requires generated result class: " + this.path);
+        }
+        TBase result = (TBase) resultClass.newInstance();
+        result.read(new TBinaryProtocol(new TByteBuffer(content())));
+        TFieldIdEnum success = result.fieldForId(0);
+        return success == null ? null : result.getFieldValue(success);
+    }
+
+    //json直接从映射中流式读取, 不复制整个文件到堆
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
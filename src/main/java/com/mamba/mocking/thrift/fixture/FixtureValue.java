@@ -0,0 +1,51 @@
+package com.mamba.mocking.thrift.fixture;
+
+import java.lang.reflect.Type;
+
+//一个方法的返回值文件: 首次调用时解析, 之后只有一次volatile读; 解析失败时每次调用都返回同一个错误, 不重复解析
+public final class FixtureValue {
+
+    private final FixtureFile file;
+
+    private final Type returnType;
+
+    private final Class<?> resultClass;
+
+    private volatile Object value;
+
+    private volatile RuntimeException error;
+
+    private volatile boolean decoded;
+
+    public FixtureValue(FixtureFile file, Type returnType, Class<?> resultClass) {
+        this.file = file;
+        this.returnType = returnType;
+        this.resultClass = resultClass;
+    }
+
+    public FixtureFile getFile() {
+        return this.file;
+    }
+
+    public Object get() {
+        if (!this.decoded) {
+            decode();
+        }
+        if (this.error != null) {
+            throw this.error;
+        }
+        return this.value;
+    }
+
+    private synchronized void decode() {
+        if (this.decoded) {
+            return;
+        }
+        try {
+            this.value = this.file.decode(this.returnType, this.resultClass);
+        } catch (Exception e) {
+            this.error = new IllegalStateException("Decode fixture failed: " + this.file.getPath(), e);
+        }
+        this.decoded = true;
+    }
+}
@@ -0,0 +1,254 @@
+package com.mamba.mocking.thrift.generate;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TEnum;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.TFieldRequirementType;
+import org.apache.thrift.TUnion;
+import org.apache.thrift.meta_data.EnumMetaData;
+import org.apache.thrift.meta_data.FieldMetaData;
+import org.apache.thrift.meta_data.FieldValueMetaData;
+import org.apache.thrift.meta_data.ListMetaData;
+import org.apache.thrift.meta_data.MapMetaData;
+import org.apache.thrift.meta_data.SetMetaData;
+import org.apache.thrift.meta_data.StructMetaData;
+import org.apache.thrift.protocol.TType;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+//按生成代码中的metaDataMap构造返回值: 顶层容器size个元素, 嵌套容器innerSize个元素, string/binary长度为string;
+//相同长度的string只生成少量几个并复用引用, 序列化开销不变, 内存占用只与结构有关
+public class PayloadGenerator {
+
+    private static final int STRING_VARIETY = 16;
+
+    private static final char[] CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+    //返回值类型, 与实际类型不一致时报错; auto表示不校验
+    private final String kind;
+
+    private final int size;
+
+    private final int innerSize;
+
+    private final int stringLength;
+
+    private final int depth;
+
+    private final boolean optional;
+
+    private final int pool;
+
+    private final long seed;
+
+    public PayloadGenerator(String kind, int size, int innerSize, int stringLength, int depth, boolean optional, int pool, long seed) {
+        if (size < 0 || innerSize < 0 || stringLength < 0 || depth < 0 || pool <= 0) {
+            throw new IllegalArgumentException("Invalid generate: " + kind);
+        }
+        this.kind = kind;
+        this.size = size;
+        this.innerSize = innerSize;
+        this.stringLength = stringLength;
+        this.depth = depth;
+        this.optional = optional;
+        this.pool = pool;
+        this.seed = seed;
+    }
+
+    //生成pool个候选值
+    public Object[] generate(Class<?> serviceClass, String methodName) throws Exception {
+        Class<?> resultClass = Class.forName(serviceClass.getName() + '$' + methodName + "_result", true, serviceClass.getClassLoader());
+        FieldMetaData success = null;
+        for (Map.Entry<? extends TFieldIdEnum, FieldMetaData> entry : metaDataMap(resultClass).entrySet()) {
+            if (entry.getKey().getThriftFieldId() == 0) {
+                success = entry.getValue();
+            }
+        }
+        if (success == null) {
+            throw new IllegalArgumentException("Method has no return value: " + methodName);
+        }
+        String actualKind = kindOf(success.valueMetaData);
+        if (!"auto".equals(this.kind) && !this.kind.equals(actualKind)) {
+            throw new IllegalArgumentException("Return type of " + methodName + " is " + actualKind + ", not " + this.kind);
+        }
+        Type type = resultClass.getDeclaredField(success.fieldName).getGenericType();
+        Context context = new Context(new Random(this.seed));
+        Object[] values = new Object[this.pool];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = newValue(context, success.valueMetaData, type, this.size, 0);
+        }
+        return values;
+    }
+
+    private Object newValue(Context context, FieldValueMetaData meta, Type type, int count, int level) throws Exception {
+        Random random = context.random;
+        switch (meta.type) {
+            case TType.BOOL:
+                return random.nextBoolean();
+            case TType.BYTE:
+                return (byte) random.nextInt();
+            case TType.I16:
+                return (short) random.nextInt();
+            case TType.I32:
+                return random.nextInt();
+            case TType.I64:
+                return random.nextLong();
+            case TType.DOUBLE:
+                return random.nextDouble();
+            case TType.STRING:
+                if (meta.isBinary() || rawType(type) == ByteBuffer.class) {
+                    return ByteBuffer.wrap(context.string(this.stringLength).getBytes(StandardCharsets.US_ASCII));
+                }
+                return context.string(this.stringLength);
+            case TType.ENUM: {
+                Class<?> enumClass = meta instanceof EnumMetaData ? ((EnumMetaData) meta).enumClass : rawType(type);
+                TEnum[] constants = (TEnum[]) enumClass.getEnumConstants();
+                return constants.length == 0 ? null : constants[random.nextInt(constants.length)];
+            }
+            case TType.STRUCT: {
+                if (level > this.depth) {
+                    return null;
+                }
+                Class<?> structClass = meta instanceof StructMetaData ? ((StructMetaData) meta).structClass : rawType(type);
+                return newStruct(context, structClass, level);
+            }
+            case TType.LIST: {
+                FieldValueMetaData elemMeta = ((ListMetaData) meta).elemMetaData;
+                Type elemType = typeArgument(type, 0);
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(newValue(context, elemMeta, elemType, this.innerSize, level + 1));
+                }
+                return list;
+            }
+            case TType.SET: {
+                FieldValueMetaData elemMeta = ((SetMetaData) meta).elemMetaData;
+                Type elemType = typeArgument(type, 0);
+                Set<Object> set = new HashSet<>();
+                //取值范围有限时(bool, enum)元素数会少于count
+                for (int i = 0; i < count * 2 && set.size() < count; i++) {
+                    set.add(newValue(context, elemMeta, elemType, this.innerSize, level + 1));
+                }
+                return set;
+            }
+            case TType.MAP: {
+                MapMetaData mapMeta = (MapMetaData) meta;
+                Type keyType = typeArgument(type, 0);
+                Type valueType = typeArgument(type, 1);
+                Map<Object, Object> map = new HashMap<>();
+                for (int i = 0; i < count * 2 && map.size() < count; i++) {
+                    Object key = newValue(context, mapMeta.keyMetaData, keyType, this.innerSize, level + 1);
+                    map.put(key, newValue(context, mapMeta.valueMetaData, valueType, this.innerSize, level + 1));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported type: " + meta.type);
+        }
+    }
+
+    //union只设置第一个字段; 超过depth的struct字段为null
+    private Object newStruct(Context context, Class<?> structClass, int level) throws Exception {
+        TBase struct = (TBase) structClass.newInstance();
+        boolean union = struct instanceof TUnion;
+        for (Map.Entry<? extends TFieldIdEnum, FieldMetaData> entry : metaDataMap(structClass).entrySet()) {
+            FieldMetaData fieldMeta = entry.getValue();
+            if (!this.optional && fieldMeta.requirementType == TFieldRequirementType.OPTIONAL) {
+                continue;
+            }
+            Type fieldType = union ? null : structClass.getDeclaredField(fieldMeta.fieldName).getGenericType();
+            Object value = newValue(context, fieldMeta.valueMetaData, fieldType, this.innerSize, level + 1);
+            if (value != null) {
+                struct.setFieldValue(entry.getKey(), value);
+                if (union) {
+                    break;
+                }
+            }
+        }
+        return struct;
+    }
+
+    private static Map<? extends TFieldIdEnum, FieldMetaData> metaDataMap(Class<?> structClass) throws Exception {
+        return (Map<? extends TFieldIdEnum, FieldMetaData>) structClass.getField("metaDataMap").get(null);
+    }
+
+    private static String kindOf(FieldValueMetaData meta) {
+        switch (meta.type) {
+            case TType.BOOL:
+                return "bool";
+            case TType.BYTE:
+                return "byte";
+            case TType.I16:
+                return "i16";
+            case TType.I32:
+                return "i32";
+            case TType.I64:
+                return "i64";
+            case TType.DOUBLE:
+                return "double";
+            case TType.STRING:
+                return meta.isBinary() ? "binary" : "string";
+            case TType.ENUM:
+                return "enum";
+            case TType.STRUCT:
+                return "struct";
+            case TType.LIST:
+                return "list";
+            case TType.SET:
+                return "set";
+            case TType.MAP:
+                return "map";
+            default:
+                return String.valueOf(meta.type);
+        }
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return Object.class;
+    }
+
+    //typedef的struct/enum没有StructMetaData/EnumMetaData, 需要从字段的泛型类型中取得
+    private static Type typeArgument(Type type, int index) {
+        return type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments()[index] : null;
+    }
+
+    private static class Context {
+
+        private final Random random;
+
+        private final Map<Integer, String[]> stringMap = new HashMap<>();
+
+        private Context(Random random) {
+            this.random = random;
+        }
+
+        private String string(int length) {
+            String[] strings = this.stringMap.computeIfAbsent(length, key -> new String[STRING_VARIETY]);
+            int index = this.random.nextInt(STRING_VARIETY);
+            if (strings[index] == null) {
+                char[] chars = new char[length];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = CHARS[this.random.nextInt(CHARS.length)];
+                }
+                strings[index] = new String(chars);
+            }
+            return strings[index];
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.mamba.mocking.thrift.latency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//M/M/c式的容量模型: servers个并发处理单元 + 有界FIFO等待队列, 服务时间为方法latency的采样.
+//按虚拟时间计算: 到达时预约最早空闲的server, 排队时间=开始时间-到达时间, 由调用方与服务时间一起等待; CAS无锁, 不阻塞线程
+public class CapacityModel {
+
+    //排队位置提前释放的时间: sleep等待方式只有毫秒级精度, 响应可能早于预约的结束时刻发出, 客户端随即发起的下一次请求不应被误拒
+    private static final long QUEUE_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    //每个server空闲的时刻, System.nanoTime
+    private final AtomicLongArray freeTimes;
+
+    //排队中请求的开始时刻, 已过去的位置即为空闲, 无需出队事件; 队列不限时为null
+    private final AtomicLongArray queue;
+
+    //下一个可能空闲的排队位置, FIFO下通常一次命中
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    private final long timeoutNanos;
+
+    //拒绝时关闭连接, 否则返回TApplicationException
+    private final boolean reset;
+
+    public CapacityModel(int servers, int queueSize, long timeoutNanos, boolean reset) {
+        if (servers <= 0) {
+            throw new IllegalArgumentException("servers must be greater than 0: " + servers);
+        }
+        if (queueSize < 0 || timeoutNanos < 0) {
+            throw new IllegalArgumentException("queue and timeout must not be negative: " + queueSize + ", " + timeoutNanos);
+        }
+        this.freeTimes = new AtomicLongArray(servers);
+        long now = System.nanoTime();
+        for (int i = 0; i < servers; i++) {
+            this.freeTimes.set(i, now);
+        }
+        if (queueSize == Integer.MAX_VALUE) {
+            this.queue = null;
+        } else {
+            this.queue = new AtomicLongArray(queueSize);
+            for (int i = 0; i < queueSize; i++) {
+                this.queue.set(i, now);
+            }
+        }
+        this.timeoutNanos = timeoutNanos;
+        this.reset = reset;
+    }
+
+    //队列已满或排队时间将超过timeout时拒绝; 与reserve之间不加锁, 并发到达时队列长度可能短暂超出queueSize
+    public boolean admit() {
+        long now = System.nanoTime();
+        long wait = this.freeTimes.get(earliest()) - now;
+        return wait <= 0 || (wait <= this.timeoutNanos && (this.queue == null || freeSlot(now + QUEUE_SLACK_NANOS) >= 0));
+    }
+
+    //预约一个server, 返回排队时间(纳秒)
+    public long reserve(long serviceTime) {
+        for (; ; ) {
+            int index = earliest();
+            long freeTime = this.freeTimes.get(index);
+            long now = System.nanoTime();
+            long wait = freeTime - now;
+            if (wait <= 0) {
+                if (this.freeTimes.compareAndSet(index, freeTime, now + serviceTime)) {
+                    return 0;
+                }
+            } else if (this.freeTimes.compareAndSet(index, freeTime, freeTime + serviceTime)) {
+                enqueue(now, freeTime);
+                return wait;
+            }
+        }
+    }
+
+    //占用排队位置直到开始时刻; 并发时可能已没有空闲位置, 此时不记录
+    private void enqueue(long now, long startTime) {
+        if (this.queue == null) {
+            return;
+        }
+        long freeTime = now + QUEUE_SLACK_NANOS;
+        for (; ; ) {
+            int slot = freeSlot(freeTime);
+            if (slot < 0) {
+                return;
+            }
+            long value = this.queue.get(slot);
+            if (value - freeTime <= 0 && this.queue.compareAndSet(slot, value, startTime)) {
+                this.cursor.set(slot + 1 == this.queue.length() ? 0 : slot + 1);
+                return;
+            }
+        }
+    }
+
+    private int freeSlot(long freeTime) {
+        int length = this.queue.length();
+        int start = this.cursor.get();
+        for (int i = 0; i < length; i++) {
+            int slot = start + i < length ? start + i : start + i - length;
+            if (this.queue.get(slot) - freeTime <= 0) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isReset() {
+        return this.reset;
+    }
+
+    private int earliest() {
+        int index = 0;
+        long earliest = this.freeTimes.get(0);
+        for (int i = 1, length = this.freeTimes.length(); i < length; i++) {
+            long freeTime = this.freeTimes.get(i);
+            if (freeTime - earliest < 0) {
+                earliest = freeTime;
+                index = i;
+            }
+        }
+        return index;
+    }
+}
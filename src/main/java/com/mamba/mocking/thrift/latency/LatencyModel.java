@@ -0,0 +1,7 @@
+package com.mamba.mocking.thrift.latency;
+
+public interface LatencyModel {
+
+    //采样一次延迟, 单位纳秒; 实现需无锁、无分配
+    long sample();
+}
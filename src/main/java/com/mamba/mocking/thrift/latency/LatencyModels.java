@@ -0,0 +1,207 @@
+package com.mamba.mocking.thrift.latency;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+//所有参数与采样结果单位均为纳秒; 随机数来自ThreadLocalRandom
+public final class LatencyModels {
+
+    public static final LatencyModel ZERO = fixed(0);
+
+    private LatencyModels() {
+    }
+
+    public static LatencyModel fixed(double delay) {
+        checkNonNegative("delay", delay);
+        return new Fixed(Math.round(delay));
+    }
+
+    public static LatencyModel uniform(double min, double max) {
+        checkNonNegative("min", min);
+        if (max < min) {
+            throw new IllegalArgumentException("max must not be less than min: " + min + ", " + max);
+        }
+        return new Uniform(min, max);
+    }
+
+    public static LatencyModel normal(double mean, double stddev) {
+        checkNonNegative("mean", mean);
+        checkNonNegative("stddev", stddev);
+        return new Normal(mean, stddev);
+    }
+
+    public static LatencyModel logNormal(double median, double sigma) {
+        if (median <= 0) {
+            throw new IllegalArgumentException("median must be greater than 0: " + median);
+        }
+        checkNonNegative("sigma", sigma);
+        return new LogNormal(Math.log(median), sigma);
+    }
+
+    public static LatencyModel exponential(double mean) {
+        checkNonNegative("mean", mean);
+        return new Exponential(mean);
+    }
+
+    public static LatencyModel empirical(double[] percentiles, double[] values) {
+        return empirical(percentiles, values, Double.POSITIVE_INFINITY);
+    }
+
+    //percentiles为[0, 1]内递增的分位点, values为对应的延迟; 分位点之间线性插值, 第一个分位点之下从(0, 0)插值.
+    //最后一个分位点之上按指数尾部外推: 延迟随-ln(1 - u)线性增长, 斜率取最后一段, 结果不超过max; 配置p100时没有外推
+    public static LatencyModel empirical(double[] percentiles, double[] values, double max) {
+        if (percentiles.length == 0 || percentiles.length != values.length) {
+            throw new IllegalArgumentException("Invalid empirical percentiles");
+        }
+        for (int i = 0; i < percentiles.length; i++) {
+            if (percentiles[i] < 0 || percentiles[i] > 1 || (i > 0 && percentiles[i] <= percentiles[i - 1])) {
+                throw new IllegalArgumentException("Invalid empirical percentiles: " + Arrays.toString(percentiles));
+            }
+            checkNonNegative("p" + percentiles[i] * 100, values[i]);
+            if (i > 0 && values[i] < values[i - 1]) {
+                throw new IllegalArgumentException("Empirical values must be non-decreasing: " + Arrays.toString(values));
+            }
+        }
+        if (!(max >= values[values.length - 1])) {
+            throw new IllegalArgumentException("Empirical max must not be less than the last value: " + max);
+        }
+        if (percentiles[0] > 0) {
+            double[] anchored = new double[percentiles.length + 1];
+            double[] anchoredValues = new double[values.length + 1];
+            System.arraycopy(percentiles, 0, anchored, 1, percentiles.length);
+            System.arraycopy(values, 0, anchoredValues, 1, values.length);
+            return new Empirical(anchored, anchoredValues, max);
+        }
+        return new Empirical(percentiles.clone(), values.clone(), max);
+    }
+
+    private static void checkNonNegative(String name, double value) {
+        if (!(value >= 0)) {
+            throw new IllegalArgumentException(name + " must not be negative: " + value);
+        }
+    }
+
+    private static long clamp(double nanos) {
+        return nanos <= 0 ? 0 : (long) nanos;
+    }
+
+    private static class Fixed implements LatencyModel {
+
+        private final long nanos;
+
+        private Fixed(long nanos) {
+            this.nanos = nanos;
+        }
+
+        @Override
+        public long sample() {
+            return this.nanos;
+        }
+    }
+
+    private static class Uniform implements LatencyModel {
+
+        private final double min;
+
+        private final double range;
+
+        private Uniform(double min, double max) {
+            this.min = min;
+            this.range = max - min;
+        }
+
+        @Override
+        public long sample() {
+            return clamp(this.min + ThreadLocalRandom.current().nextDouble() * this.range);
+        }
+    }
+
+    private static class Normal implements LatencyModel {
+
+        private final double mean;
+
+        private final double stddev;
+
+        private Normal(double mean, double stddev) {
+            this.mean = mean;
+            this.stddev = stddev;
+        }
+
+        @Override
+        public long sample() {
+            return clamp(this.mean + ThreadLocalRandom.current().nextGaussian() * this.stddev);
+        }
+    }
+
+    private static class LogNormal implements LatencyModel {
+
+        private final double mu;
+
+        private final double sigma;
+
+        private LogNormal(double mu, double sigma) {
+            this.mu = mu;
+            this.sigma = sigma;
+        }
+
+        @Override
+        public long sample() {
+            return clamp(Math.exp(this.mu + ThreadLocalRandom.current().nextGaussian() * this.sigma));
+        }
+    }
+
+    private static class Exponential implements LatencyModel {
+
+        private final double mean;
+
+        private Exponential(double mean) {
+            this.mean = mean;
+        }
+
+        @Override
+        public long sample() {
+            //nextDouble()取值[0, 1), 1 - u避免log(0)
+            return clamp(-this.mean * Math.log(1D - ThreadLocalRandom.current().nextDouble()));
+        }
+    }
+
+    private static class Empirical implements LatencyModel {
+
+        private final double[] percentiles;
+
+        private final double[] values;
+
+        //尾部每单位-ln(1 - u)增加的延迟
+        private final double tailSlope;
+
+        private final double max;
+
+        //percentiles[0]为0
+        private Empirical(double[] percentiles, double[] values, double max) {
+            this.percentiles = percentiles;
+            this.values = values;
+            this.max = max;
+            int last = percentiles.length - 1;
+            double width = last == 0 || percentiles[last] >= 1 ? 0 : Math.log((1D - percentiles[last - 1]) / (1D - percentiles[last]));
+            this.tailSlope = width > 0 ? (values[last] - values[last - 1]) / width : 0;
+        }
+
+        @Override
+        public long sample() {
+            double u = ThreadLocalRandom.current().nextDouble();
+            double[] percentiles = this.percentiles;
+            int last = percentiles.length - 1;
+            if (u >= percentiles[last]) {
+                return clamp(Math.min(this.max, this.values[last] + this.tailSlope * Math.log((1D - percentiles[last]) / (1D - u))));
+            }
+            int index = Arrays.binarySearch(percentiles, u);
+            if (index >= 0) {
+                return clamp(this.values[index]);
+            }
+            int high = -index - 1;
+            int low = high - 1;
+            double ratio = (u - percentiles[low]) / (percentiles[high] - percentiles[low]);
+            return clamp(this.values[low] + ratio * (this.values[high] - this.values[low]));
+        }
+    }
+}
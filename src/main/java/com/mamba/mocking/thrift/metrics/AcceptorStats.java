@@ -0,0 +1,108 @@
+package com.mamba.mocking.thrift.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//多个acceptor(SO_REUSEPORT)时每个监听socket的连接数与读写字节数, 周期输出用于观察内核分配连接是否均衡
+public class AcceptorStats {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("AcceptorBalance");
+
+    private final int index;
+
+    private final LongAdder connections = new LongAdder();
+
+    private final LongAdder closed = new LongAdder();
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    public AcceptorStats(int index) {
+        this.index = index;
+    }
+
+    public void connected() {
+        this.connections.increment();
+    }
+
+    public void disconnected() {
+        this.closed.increment();
+    }
+
+    public void read(long bytes) {
+        this.bytesIn.add(bytes);
+    }
+
+    public void written(long bytes) {
+        this.bytesOut.add(bytes);
+    }
+
+    //返回的线程池在server停止时关闭
+    public static ScheduledExecutorService report(List<AcceptorStats> statsList, long intervalNanos) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "acceptor-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(new Reporter(statsList, intervalNanos), intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        return executor;
+    }
+
+    private static class Reporter implements Runnable {
+
+        private final List<AcceptorStats> statsList;
+
+        private final double seconds;
+
+        private final long[] lastConnections;
+
+        private final long[] lastBytesIn;
+
+        private final long[] lastBytesOut;
+
+        private Reporter(List<AcceptorStats> statsList, long intervalNanos) {
+            this.statsList = statsList;
+            this.seconds = intervalNanos / 1e9;
+            this.lastConnections = new long[statsList.size()];
+            this.lastBytesIn = new long[statsList.size()];
+            this.lastBytesOut = new long[statsList.size()];
+        }
+
+        //区间内没有新连接也没有读写时不输出
+        @Override
+        public void run() {
+            int size = this.statsList.size();
+            long[] connections = new long[size];
+            long[] bytesIn = new long[size];
+            long[] bytesOut = new long[size];
+            boolean active = false;
+            for (int i = 0; i < size; i++) {
+                AcceptorStats stats = this.statsList.get(i);
+                connections[i] = stats.connections.sum();
+                bytesIn[i] = stats.bytesIn.sum();
+                bytesOut[i] = stats.bytesOut.sum();
+                active |= connections[i] != this.lastConnections[i] || bytesIn[i] != this.lastBytesIn[i] || bytesOut[i] != this.lastBytesOut[i];
+            }
+            if (!active) {
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                AcceptorStats stats = this.statsList.get(i);
+                LOGGER.info("acceptor[{}] connections: {}, new: {}, open: {}, in: {}KB/s, out: {}KB/s",
+                        stats.index, connections[i], connections[i] - this.lastConnections[i], connections[i] - stats.closed.sum(),
+                        String.format("%.1f", (bytesIn[i] - this.lastBytesIn[i]) / 1024D / this.seconds),
+                        String.format("%.1f", (bytesOut[i] - this.lastBytesOut[i]) / 1024D / this.seconds));
+            }
+            System.arraycopy(connections, 0, this.lastConnections, 0, size);
+            System.arraycopy(bytesIn, 0, this.lastBytesIn, 0, size);
+            System.arraycopy(bytesOut, 0, this.lastBytesOut, 0, size);
+        }
+    }
+}
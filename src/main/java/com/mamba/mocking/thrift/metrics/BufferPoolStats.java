@@ -0,0 +1,91 @@
+package com.mamba.mocking.thrift.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//帧缓冲池的命中统计: hits从池中取得, misses新分配direct buffer, drops归还时超过池容量上限而丢弃, unpooled超过最大规格直接分配heap buffer
+public class BufferPoolStats implements BufferPoolStatsMBean {
+
+    private final String endpoint;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder drops = new LongAdder();
+
+    private final LongAdder unpooled = new LongAdder();
+
+    //池中空闲buffer的总容量, 多个acceptor时为各自池的合计
+    private final LongAdder pooledBytes = new LongAdder();
+
+    public BufferPoolStats(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public void hit(int capacity) {
+        this.hits.increment();
+        this.pooledBytes.add(-capacity);
+    }
+
+    public void miss() {
+        this.misses.increment();
+    }
+
+    public void pooled(int capacity) {
+        this.pooledBytes.add(capacity);
+    }
+
+    public void drop() {
+        this.drops.increment();
+    }
+
+    public void unpooled() {
+        this.unpooled.increment();
+    }
+
+    @Override
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    @Override
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    @Override
+    public long getDrops() {
+        return this.drops.sum();
+    }
+
+    @Override
+    public long getUnpooled() {
+        return this.unpooled.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = this.hits.sum();
+        long total = hits + this.misses.sum() + this.unpooled.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getPooledBytes() {
+        return this.pooledBytes.sum();
+    }
+
+    //池中容量是瞬时值, 不重置
+    @Override
+    public void reset() {
+        this.hits.reset();
+        this.misses.reset();
+        this.drops.reset();
+        this.unpooled.reset();
+    }
+}
@@ -0,0 +1,20 @@
+package com.mamba.mocking.thrift.metrics;
+
+public interface BufferPoolStatsMBean {
+
+    String getEndpoint();
+
+    long getHits();
+
+    long getMisses();
+
+    long getDrops();
+
+    long getUnpooled();
+
+    double getHitRatio();
+
+    long getPooledBytes();
+
+    void reset();
+}
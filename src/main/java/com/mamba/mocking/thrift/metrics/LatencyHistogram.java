@@ -0,0 +1,127 @@
+package com.mamba.mocking.thrift.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//HDR风格的对数-线性直方图: 每个2的幂区间等分为64个桶, 相对误差不超过1/64; 记录过程无锁
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+    //2^40ns约18分钟, 更大的值按最大值记录
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int BUCKET_COUNT = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long v = Math.min(Math.max(value, 0), MAX_VALUE);
+        this.counts.incrementAndGet(index(v));
+        this.sum.add(v);
+        if (v > this.max.get()) {
+            this.max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    //同HdrHistogram recordValueWithExpectedInterval: 值超过期望间隔时, 补记该期间本应发出却被阻塞的请求, 校正coordinated omission
+    public void record(long value, long expectedInterval) {
+        record(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+            record(missing);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.counts.set(i, 0);
+        }
+        this.sum.reset();
+        this.max.set(0);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.counts.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, this.sum.sum(), this.max.get());
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    //桶内的最大值
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = index - shift * SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public static class Snapshot {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public double getMean() {
+            return this.count == 0 ? 0 : (double) this.sum / this.count;
+        }
+
+        public long getMax() {
+            return this.max;
+        }
+
+        public long getPercentile(double percentile) {
+            if (this.count == 0) {
+                return 0;
+            }
+            long target = Math.max((long) Math.ceil(percentile * this.count), 1);
+            long total = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                total += this.counts[i];
+                if (total >= target) {
+                    return Math.min(highestEquivalentValue(i), this.max);
+                }
+            }
+            return this.max;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.mamba.mocking.thrift.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class MethodMetrics implements MethodMetricsMBean {
+
+    private static final double NANOS_PER_MILLI = 1000000D;
+
+    private final String serviceName;
+
+    private final String methodName;
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder inFlight = new LongAdder();
+
+    //注入的故障数
+    private final LongAdder faults = new LongAdder();
+
+    //容量模型拒绝的请求数
+    private final LongAdder rejections = new LongAdder();
+
+    //请求开始到响应完成的耗时, calls即其count
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+    //注入的延迟
+    private final LatencyHistogram delay = new LatencyHistogram();
+
+    private volatile long windowStartTime = System.nanoTime();
+
+    MethodMetrics(String serviceName, String methodName) {
+        this.serviceName = serviceName;
+        this.methodName = methodName;
+    }
+
+    public long begin() {
+        this.inFlight.increment();
+        return System.nanoTime();
+    }
+
+    public void end(long startTime, boolean error) {
+        this.serviceTime.record(System.nanoTime() - startTime);
+        this.inFlight.decrement();
+        if (error) {
+            this.errors.increment();
+        }
+    }
+
+    public void recordFault() {
+        this.faults.increment();
+    }
+
+    public void recordRejection() {
+        this.rejections.increment();
+    }
+
+    public void recordDelay(long delay) {
+        this.delay.record(delay);
+    }
+
+    public LatencyHistogram.Snapshot serviceTimeSnapshot() {
+        return this.serviceTime.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot delaySnapshot() {
+        return this.delay.snapshot();
+    }
+
+    //统计窗口的秒数, reset后重新开始
+    public double windowSeconds() {
+        return (System.nanoTime() - this.windowStartTime) / 1000000000D;
+    }
+
+    @Override
+    public String getServiceName() {
+        return this.serviceName;
+    }
+
+    @Override
+    public String getMethodName() {
+        return this.methodName;
+    }
+
+    @Override
+    public long getCalls() {
+        return this.serviceTime.snapshot().getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return this.errors.sum();
+    }
+
+    @Override
+    public long getFaults() {
+        return this.faults.sum();
+    }
+
+    @Override
+    public long getRejections() {
+        return this.rejections.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return this.inFlight.sum();
+    }
+
+    @Override
+    public double getQps() {
+        return getCalls() / windowSeconds();
+    }
+
+    @Override
+    public double getServiceTimeMean() {
+        return this.serviceTime.snapshot().getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getServiceTimeP50() {
+        return this.serviceTime.snapshot().getPercentile(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getServiceTimeP90() {
+        return this.serviceTime.snapshot().getPercentile(0.9) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getServiceTimeP99() {
+        return this.serviceTime.snapshot().getPercentile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getServiceTimeP999() {
+        return this.serviceTime.snapshot().getPercentile(0.999) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getServiceTimeMax() {
+        return this.serviceTime.snapshot().getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getDelayMean() {
+        return this.delay.snapshot().getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getDelayP50() {
+        return this.delay.snapshot().getPercentile(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getDelayP99() {
+        return this.delay.snapshot().getPercentile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getDelayMax() {
+        return this.delay.snapshot().getMax() / NANOS_PER_MILLI;
+    }
+
+    //in-flight是瞬时值, 不重置
+    @Override
+    public void reset() {
+        this.serviceTime.reset();
+        this.delay.reset();
+        this.errors.reset();
+        this.faults.reset();
+        this.rejections.reset();
+        this.windowStartTime = System.nanoTime();
+    }
+}
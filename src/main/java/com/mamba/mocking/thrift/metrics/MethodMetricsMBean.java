@@ -0,0 +1,43 @@
+package com.mamba.mocking.thrift.metrics;
+
+//时间单位均为毫秒
+public interface MethodMetricsMBean {
+
+    String getServiceName();
+
+    String getMethodName();
+
+    long getCalls();
+
+    long getErrors();
+
+    long getFaults();
+
+    long getRejections();
+
+    long getInFlight();
+
+    double getQps();
+
+    double getServiceTimeMean();
+
+    double getServiceTimeP50();
+
+    double getServiceTimeP90();
+
+    double getServiceTimeP99();
+
+    double getServiceTimeP999();
+
+    double getServiceTimeMax();
+
+    double getDelayMean();
+
+    double getDelayP50();
+
+    double getDelayP99();
+
+    double getDelayMax();
+
+    void reset();
+}
@@ -0,0 +1,191 @@
+package com.mamba.mocking.thrift.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+//按service/method汇总的指标, 可通过JMX与本地HTTP(GET /metrics, /metrics?reset 读取后重置)查看
+public class MetricsRegistry implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private static final double NANOS_PER_MILLI = 1000000D;
+
+    private final boolean jmx;
+
+    private final InetSocketAddress httpAddress;
+
+    private final ConcurrentMap<String, ServiceMetrics> serviceMap = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentMap<String, TransportMetrics> transportMap = new ConcurrentSkipListMap<>();
+
+    private HttpServer httpServer;
+
+    public MetricsRegistry(boolean jmx, InetSocketAddress httpAddress) {
+        this.jmx = jmx;
+        this.httpAddress = httpAddress;
+    }
+
+    public ServiceMetrics service(String serviceName) {
+        return this.serviceMap.computeIfAbsent(serviceName, key -> new ServiceMetrics(this, key));
+    }
+
+    //endpoint: 监听端口
+    public TransportMetrics transport(String endpoint) {
+        return this.transportMap.computeIfAbsent(endpoint, key -> register(new TransportMetrics(this, key)));
+    }
+
+    private TransportMetrics register(TransportMetrics transportMetrics) {
+        if (!this.jmx) {
+            return transportMetrics;
+        }
+        try {
+            ObjectName objectName = new ObjectName("com.mamba.mocking.thrift:type=TransportMetrics,endpoint=" + ObjectName.quote(transportMetrics.getEndpoint()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(transportMetrics, objectName);
+        } catch (Exception e) {
+            LOGGER.warn("Register mbean failed: {}", transportMetrics.getEndpoint(), e);
+        }
+        return transportMetrics;
+    }
+
+    BufferPoolStats register(BufferPoolStats bufferPoolStats) {
+        if (!this.jmx) {
+            return bufferPoolStats;
+        }
+        try {
+            ObjectName objectName = new ObjectName("com.mamba.mocking.thrift:type=BufferPool,endpoint=" + ObjectName.quote(bufferPoolStats.getEndpoint()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bufferPoolStats, objectName);
+        } catch (Exception e) {
+            LOGGER.warn("Register mbean failed: {}", bufferPoolStats.getEndpoint(), e);
+        }
+        return bufferPoolStats;
+    }
+
+    MethodMetrics register(MethodMetrics methodMetrics) {
+        if (!this.jmx) {
+            return methodMetrics;
+        }
+        try {
+            ObjectName objectName = new ObjectName("com.mamba.mocking.thrift:type=MethodMetrics,service=" + ObjectName.quote(methodMetrics.getServiceName()) + ",method=" + ObjectName.quote(methodMetrics.getMethodName()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(methodMetrics, objectName);
+        } catch (Exception e) {
+            LOGGER.warn("Register mbean failed: {}.{}", methodMetrics.getServiceName(), methodMetrics.getMethodName(), e);
+        }
+        return methodMetrics;
+    }
+
+    public void start() throws IOException {
+        if (this.httpAddress == null) {
+            return;
+        }
+        this.httpServer = HttpServer.create(this.httpAddress, 0);
+        this.httpServer.createContext("/metrics", this::handle);
+        this.httpServer.start();
+        LOGGER.info("Metrics endpoint: http://{}:{}/metrics", this.httpAddress.getHostString(), this.httpServer.getAddress().getPort());
+    }
+
+    @Override
+    public void close() {
+        if (this.httpServer != null) {
+            this.httpServer.stop(0);
+        }
+    }
+
+    public void reset() {
+        for (ServiceMetrics serviceMetrics : this.serviceMap.values()) {
+            serviceMetrics.reset();
+        }
+        for (TransportMetrics transportMetrics : this.transportMap.values()) {
+            transportMetrics.reset();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        byte[] bytes = format().getBytes(StandardCharsets.UTF_8);
+        if (query != null && query.contains("reset")) {
+            reset();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    //每个endpoint一行连接与字节统计(字节), 使用帧缓冲池时另有一行命中统计, 多路复用时每个service先输出一行分发数, 之后每个方法一行, 时间单位毫秒
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        for (TransportMetrics transportMetrics : this.transportMap.values()) {
+            LatencyHistogram.Snapshot requestSize = transportMetrics.requestSizeSnapshot();
+            sb.append("transport:").append(transportMetrics.getEndpoint())
+                    .append(" open=").append(transportMetrics.getOpenConnections())
+                    .append(" opened=").append(transportMetrics.getOpenedConnections())
+                    .append(" closed=").append(transportMetrics.getClosedConnections())
+                    .append(" requests=").append(requestSize.getCount())
+                    .append(" bytesIn=").append(transportMetrics.getBytesIn())
+                    .append(" bytesOut=").append(transportMetrics.getBytesOut());
+            appendSize(sb, " requestSize", requestSize);
+            appendSize(sb, " responseSize", transportMetrics.responseSizeSnapshot());
+            appendSize(sb, " requestsPerConnection", transportMetrics.requestsPerConnectionSnapshot());
+            sb.append('\n');
+            BufferPoolStats bufferPool = transportMetrics.bufferPoolIfPresent();
+            if (bufferPool != null) {
+                sb.append("bufferPool:").append(bufferPool.getEndpoint())
+                        .append(" hits=").append(bufferPool.getHits())
+                        .append(" misses=").append(bufferPool.getMisses())
+                        .append(" drops=").append(bufferPool.getDrops())
+                        .append(" unpooled=").append(bufferPool.getUnpooled())
+                        .append(" hitRatio=").append(String.format("%.4f", bufferPool.getHitRatio()))
+                        .append(" pooledBytes=").append(bufferPool.getPooledBytes())
+                        .append('\n');
+            }
+        }
+        for (ServiceMetrics serviceMetrics : this.serviceMap.values()) {
+            long dispatches = serviceMetrics.getDispatches();
+            if (dispatches > 0) {
+                sb.append(serviceMetrics.getName()).append(" dispatches=").append(dispatches).append('\n');
+            }
+            for (MethodMetrics methodMetrics : serviceMetrics.methods()) {
+                LatencyHistogram.Snapshot serviceTime = methodMetrics.serviceTimeSnapshot();
+                LatencyHistogram.Snapshot delay = methodMetrics.delaySnapshot();
+                sb.append(methodMetrics.getServiceName()).append('.').append(methodMetrics.getMethodName())
+                        .append(" calls=").append(serviceTime.getCount())
+                        .append(" errors=").append(methodMetrics.getErrors())
+                        .append(" faults=").append(methodMetrics.getFaults())
+                        .append(" rejections=").append(methodMetrics.getRejections())
+                        .append(" inFlight=").append(methodMetrics.getInFlight())
+                        .append(" qps=").append(String.format("%.1f", serviceTime.getCount() / methodMetrics.windowSeconds()));
+                append(sb, " serviceTime", serviceTime);
+                append(sb, " delay", delay);
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, LatencyHistogram.Snapshot snapshot) {
+        sb.append(name).append(String.format("[mean=%.3f p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f]",
+                snapshot.getMean() / NANOS_PER_MILLI,
+                snapshot.getPercentile(0.5) / NANOS_PER_MILLI,
+                snapshot.getPercentile(0.9) / NANOS_PER_MILLI,
+                snapshot.getPercentile(0.99) / NANOS_PER_MILLI,
+                snapshot.getPercentile(0.999) / NANOS_PER_MILLI,
+                snapshot.getMax() / NANOS_PER_MILLI));
+    }
+
+    private static void appendSize(StringBuilder sb, String name, LatencyHistogram.Snapshot snapshot) {
+        sb.append(name).append(String.format("[mean=%.1f p50=%d p99=%d max=%d]",
+                snapshot.getMean(), snapshot.getPercentile(0.5), snapshot.getPercentile(0.99), snapshot.getMax()));
+    }
+}
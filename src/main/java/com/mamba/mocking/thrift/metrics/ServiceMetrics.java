@@ -0,0 +1,50 @@
+package com.mamba.mocking.thrift.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ServiceMetrics {
+
+    private final MetricsRegistry registry;
+
+    private final String name;
+
+    private final ConcurrentMap<String, MethodMetrics> methodMap = new ConcurrentSkipListMap<>();
+
+    //多路复用分发到该service的调用数, 包括方法未知/未mock的调用
+    private final LongAdder dispatches = new LongAdder();
+
+    ServiceMetrics(MetricsRegistry registry, String name) {
+        this.registry = registry;
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public MethodMetrics method(String methodName) {
+        return this.methodMap.computeIfAbsent(methodName, key -> this.registry.register(new MethodMetrics(this.name, key)));
+    }
+
+    public void recordDispatch() {
+        this.dispatches.increment();
+    }
+
+    public long getDispatches() {
+        return this.dispatches.sum();
+    }
+
+    void reset() {
+        this.dispatches.reset();
+        for (MethodMetrics methodMetrics : this.methodMap.values()) {
+            methodMetrics.reset();
+        }
+    }
+
+    Collection<MethodMetrics> methods() {
+        return this.methodMap.values();
+    }
+}
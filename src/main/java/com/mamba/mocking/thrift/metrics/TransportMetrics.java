@@ -0,0 +1,159 @@
+package com.mamba.mocking.thrift.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//endpoint的连接数、请求与响应的大小(protocol层字节数, 分帧时即帧长度, 不含4字节帧头)、每个连接的请求数; 直方图复用LatencyHistogram, 值为字节数
+public class TransportMetrics implements TransportMetricsMBean {
+
+    private final MetricsRegistry registry;
+
+    private final String endpoint;
+
+    private final LongAdder opened = new LongAdder();
+
+    private final LongAdder closed = new LongAdder();
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    //请求数即其count
+    private final LatencyHistogram requestSize = new LatencyHistogram();
+
+    //oneway请求没有响应, 记为0
+    private final LatencyHistogram responseSize = new LatencyHistogram();
+
+    //连接关闭时记录
+    private final LatencyHistogram requestsPerConnection = new LatencyHistogram();
+
+    private BufferPoolStats bufferPool;
+
+    TransportMetrics(MetricsRegistry registry, String endpoint) {
+        this.registry = registry;
+        this.endpoint = endpoint;
+    }
+
+    //使用帧缓冲池的server(PooledSelectorServer)才有
+    public synchronized BufferPoolStats bufferPool() {
+        if (this.bufferPool == null) {
+            this.bufferPool = this.registry.register(new BufferPoolStats(this.endpoint));
+        }
+        return this.bufferPool;
+    }
+
+    synchronized BufferPoolStats bufferPoolIfPresent() {
+        return this.bufferPool;
+    }
+
+    public void opened() {
+        this.opened.increment();
+    }
+
+    public void closed(long requests) {
+        this.closed.increment();
+        this.requestsPerConnection.record(requests);
+    }
+
+    public void request(long requestSize, long responseSize) {
+        this.requestSize.record(requestSize);
+        this.responseSize.record(responseSize);
+        this.bytesIn.add(requestSize);
+        this.bytesOut.add(responseSize);
+    }
+
+    public LatencyHistogram.Snapshot requestSizeSnapshot() {
+        return this.requestSize.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot responseSizeSnapshot() {
+        return this.responseSize.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot requestsPerConnectionSnapshot() {
+        return this.requestsPerConnection.snapshot();
+    }
+
+    @Override
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    @Override
+    public long getOpenConnections() {
+        return this.opened.sum() - this.closed.sum();
+    }
+
+    @Override
+    public long getOpenedConnections() {
+        return this.opened.sum();
+    }
+
+    @Override
+    public long getClosedConnections() {
+        return this.closed.sum();
+    }
+
+    @Override
+    public long getRequests() {
+        return this.requestSize.snapshot().getCount();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return this.bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return this.bytesOut.sum();
+    }
+
+    @Override
+    public double getRequestSizeMean() {
+        return this.requestSize.snapshot().getMean();
+    }
+
+    @Override
+    public long getRequestSizeP99() {
+        return this.requestSize.snapshot().getPercentile(0.99);
+    }
+
+    @Override
+    public long getRequestSizeMax() {
+        return this.requestSize.snapshot().getMax();
+    }
+
+    @Override
+    public double getResponseSizeMean() {
+        return this.responseSize.snapshot().getMean();
+    }
+
+    @Override
+    public long getResponseSizeP99() {
+        return this.responseSize.snapshot().getPercentile(0.99);
+    }
+
+    @Override
+    public long getResponseSizeMax() {
+        return this.responseSize.snapshot().getMax();
+    }
+
+    @Override
+    public double getRequestsPerConnectionMean() {
+        return this.requestsPerConnection.snapshot().getMean();
+    }
+
+    //连接数是累计值, 不重置
+    @Override
+    public void reset() {
+        this.bytesIn.reset();
+        this.bytesOut.reset();
+        this.requestSize.reset();
+        this.responseSize.reset();
+        this.requestsPerConnection.reset();
+        BufferPoolStats bufferPool = bufferPoolIfPresent();
+        if (bufferPool != null) {
+            bufferPool.reset();
+        }
+    }
+}
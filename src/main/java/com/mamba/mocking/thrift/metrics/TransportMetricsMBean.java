@@ -0,0 +1,35 @@
+package com.mamba.mocking.thrift.metrics;
+
+//大小单位为字节
+public interface TransportMetricsMBean {
+
+    String getEndpoint();
+
+    long getOpenConnections();
+
+    long getOpenedConnections();
+
+    long getClosedConnections();
+
+    long getRequests();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    double getRequestSizeMean();
+
+    long getRequestSizeP99();
+
+    long getRequestSizeMax();
+
+    double getResponseSizeMean();
+
+    long getResponseSizeP99();
+
+    long getResponseSizeMax();
+
+    double getRequestsPerConnectionMean();
+
+    void reset();
+}
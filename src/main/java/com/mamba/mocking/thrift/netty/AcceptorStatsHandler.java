@@ -0,0 +1,47 @@
+package com.mamba.mocking.thrift.netty;
+
+import com.mamba.mocking.thrift.metrics.AcceptorStats;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+//同一acceptor接受的连接共享, 统计连接数与读写字节数
+@ChannelHandler.Sharable
+class AcceptorStatsHandler extends ChannelDuplexHandler {
+
+    private final AcceptorStats stats;
+
+    AcceptorStatsHandler(AcceptorStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        this.stats.connected();
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        this.stats.disconnected();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            this.stats.read(((ByteBuf) msg).readableBytes());
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf) {
+            this.stats.written(((ByteBuf) msg).readableBytes());
+        }
+        super.write(ctx, msg, promise);
+    }
+}
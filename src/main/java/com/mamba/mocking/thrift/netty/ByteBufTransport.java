@@ -0,0 +1,91 @@
+package com.mamba.mocking.thrift.netty;
+
+import com.mamba.mocking.thrift.transport.TransportCounter;
+import io.netty.buffer.ByteBuf;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+//读写Netty ByteBuf的transport, 每个连接一个, 每条消息reset; heap buffer时暴露底层数组供protocol直接读取.
+//读字节数在reset时按整帧计入
+final class ByteBufTransport extends TTransport implements TransportCounter {
+
+    private ByteBuf in;
+
+    private ByteBuf out;
+
+    private long bytesRead;
+
+    private long bytesWritten;
+
+    void reset(ByteBuf in, ByteBuf out) {
+        this.in = in;
+        this.out = out;
+        if (in != null) {
+            this.bytesRead += in.readableBytes();
+        }
+    }
+
+    ByteBuf getOutput() {
+        return this.out;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    //数据不足时抛出END_OF_FILE, 未分帧时据此判断消息尚未收全
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+        int readable = Math.min(len, this.in.readableBytes());
+        if (readable <= 0 && len > 0) {
+            throw new TTransportException(TTransportException.END_OF_FILE, "No more data available.");
+        }
+        this.in.readBytes(buf, off, readable);
+        return readable;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) {
+        this.out.writeBytes(buf, off, len);
+        this.bytesWritten += len;
+    }
+
+    @Override
+    public byte[] getBuffer() {
+        return this.in.hasArray() ? this.in.array() : null;
+    }
+
+    @Override
+    public int getBufferPosition() {
+        return this.in.hasArray() ? this.in.arrayOffset() + this.in.readerIndex() : 0;
+    }
+
+    @Override
+    public int getBytesRemainingInBuffer() {
+        return this.in.hasArray() ? this.in.readableBytes() : -1;
+    }
+
+    @Override
+    public void consumeBuffer(int len) {
+        this.in.skipBytes(len);
+    }
+}
@@ -0,0 +1,447 @@
+package com.mamba.mocking.thrift.netty;
+
+import com.mamba.mocking.thrift.metrics.AcceptorStats;
+import com.mamba.mocking.thrift.timer.WaitStrategies;
+import com.mamba.mocking.thrift.transport.CountingTransport;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.NettyRuntime;
+import org.apache.thrift.TAsyncProcessor;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TTupleProtocol;
+import org.apache.thrift.server.AbstractNonblockingServer;
+import org.apache.thrift.server.ServerContext;
+import org.apache.thrift.server.TServerEventHandler;
+import org.apache.thrift.transport.TFastFramedTransport;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TTransportFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//基于Netty的server: linux上使用native epoll, 否则NIO; 分帧与未分帧transport, 所有protocol(TTupleProtocol只支持分帧);
+//请求在event loop上处理, 读写使用池化的direct ByteBuf, 响应按批flush; 同一连接按顺序逐个处理(与thrift nonblocking server相同), 保证响应顺序.
+//继承AbstractNonblockingServer只为复用AsyncFrameBuffer, 使现有的AsyncProcessor不经修改即可使用
+public class NettyServer extends AbstractNonblockingServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NettyServer.class);
+
+    //每个连接缓存的待处理请求数超过该值时暂停读
+    private static final int MAX_PENDING_FRAMES = 64;
+
+    private final int port;
+
+    private final int ioThreads;
+
+    private final int maxLength;
+
+    private final boolean epoll;
+
+    private final boolean framed;
+
+    //同步processor(如record/replay)的执行线程池, 为null时在event loop上执行
+    private final ExecutorService executor;
+
+    //大于1时以SO_REUSEPORT绑定多个监听channel, 每个有自己的boss/worker event loop, 由内核分配新连接
+    private final int acceptors;
+
+    private final long reportNanos;
+
+    private final List<Channel> serverChannels = new CopyOnWriteArrayList<>();
+
+    //不设置父类的eventHandler_: FrameBuffer构造时会用它创建context, 这里在连接的event loop上自行回调
+    private TServerEventHandler eventHandler;
+
+    public NettyServer(Args args) {
+        super(args);
+        this.port = ((NettyServerTransport) this.serverTransport_).getPort();
+        this.ioThreads = args.ioThreads;
+        this.maxLength = args.maxLength;
+        this.epoll = args.epoll && Epoll.isAvailable();
+        TTransportFactory transportFactory = CountingTransport.unwrap(this.inputTransportFactory_);
+        this.framed = transportFactory instanceof TFramedTransport.Factory || transportFactory instanceof TFastFramedTransport.Factory;
+        this.executor = args.executor;
+        this.acceptors = args.acceptors;
+        this.reportNanos = args.reportNanos;
+        if (this.acceptors > 1 && !this.epoll) {
+            throw new IllegalArgumentException("NettyServer requires epoll for acceptors");
+        }
+        if (!this.framed && this.inputProtocolFactory_ instanceof TTupleProtocol.Factory) {
+            throw new IllegalArgumentException("NettyServer requires framed transport for TTupleProtocol");
+        }
+    }
+
+    @Override
+    public void serve() {
+        //ioThreads按acceptor平分
+        int ioThreads = Math.max((this.ioThreads > 0 ? this.ioThreads : NettyRuntime.availableProcessors() * 2) / this.acceptors, 1);
+        List<EventLoopGroup> groups = new ArrayList<>();
+        List<AcceptorStats> statsList = new ArrayList<>();
+        ScheduledExecutorService reporter = null;
+        try {
+            for (int i = 0; i < this.acceptors; i++) {
+                EventLoopGroup bossGroup = this.epoll ? new EpollEventLoopGroup(1) : new NioEventLoopGroup(1);
+                EventLoopGroup workerGroup = this.epoll ? new EpollEventLoopGroup(ioThreads) : new NioEventLoopGroup(ioThreads);
+                groups.add(bossGroup);
+                groups.add(workerGroup);
+                AcceptorStatsHandler statsHandler = null;
+                if (this.acceptors > 1) {
+                    AcceptorStats stats = new AcceptorStats(i);
+                    statsList.add(stats);
+                    statsHandler = new AcceptorStatsHandler(stats);
+                }
+                this.serverChannels.add(bind(bossGroup, workerGroup, statsHandler));
+            }
+            LOGGER.info("Netty server listening: {}, {}, {}, acceptors={}", this.port, this.epoll ? "epoll" : "nio", this.framed ? "framed" : "unframed", this.acceptors);
+            if (this.acceptors > 1 && this.reportNanos > 0) {
+                reporter = AcceptorStats.report(statsList, this.reportNanos);
+            }
+            setServing(true);
+            for (Channel channel : this.serverChannels) {
+                channel.closeFuture().sync();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            setServing(false);
+            this.serverChannels.forEach(Channel::close);
+            groups.forEach(EventLoopGroup::shutdownGracefully);
+            if (reporter != null) {
+                reporter.shutdownNow();
+            }
+        }
+    }
+
+    private Channel bind(EventLoopGroup bossGroup, EventLoopGroup workerGroup, AcceptorStatsHandler statsHandler) throws InterruptedException {
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(this.epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        if (statsHandler != null) {
+                            channel.pipeline().addLast(statsHandler);
+                        }
+                        //读事件处理期间的flush合并为一次, 空闲时立即flush
+                        channel.pipeline().addLast(new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
+                        channel.pipeline().addLast(NettyServer.this.framed
+                                ? new LengthFieldBasedFrameDecoder(NettyServer.this.maxLength, 0, 4, 0, 4)
+                                : new UnframedMessageDecoder(NettyServer.this.inputProtocolFactory_, NettyServer.this.maxLength));
+                        channel.pipeline().addLast(new ProcessHandler());
+                    }
+                });
+        if (this.acceptors > 1) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        return bootstrap.bind(this.port).sync().channel();
+    }
+
+    @Override
+    public void setServerEventHandler(TServerEventHandler eventHandler) {
+        this.eventHandler = eventHandler;
+    }
+
+    @Override
+    public TServerEventHandler getEventHandler() {
+        return this.eventHandler;
+    }
+
+    @Override
+    public void stop() {
+        this.stopped_ = true;
+        this.serverChannels.forEach(Channel::close);
+    }
+
+    @Override
+    protected boolean startThreads() {
+        return false;
+    }
+
+    @Override
+    protected void waitForShutdown() {
+    }
+
+    @Override
+    protected boolean requestInvoke(FrameBuffer frameBuffer) {
+        return false;
+    }
+
+    //每个连接一个, 只在所属event loop上访问
+    private class ProcessHandler extends ChannelInboundHandlerAdapter {
+
+        private final Queue<ByteBuf> pending = new ArrayDeque<>();
+
+        private NettyFrameBuffer frameBuffer;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            this.frameBuffer = new NettyFrameBuffer(ctx, this);
+            if (NettyServer.this.eventHandler != null) {
+                this.frameBuffer.context = NettyServer.this.eventHandler.createContext(this.frameBuffer.in, this.frameBuffer.out);
+            }
+            //event loop线程只服务于Netty, 绑定一次即可
+            WaitStrategies.bindScheduler(ctx.channel().eventLoop());
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            this.pending.add((ByteBuf) msg);
+            if (this.pending.size() >= MAX_PENDING_FRAMES) {
+                ctx.channel().config().setAutoRead(false);
+            }
+            processNext();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            ByteBuf frame;
+            while ((frame = this.pending.poll()) != null) {
+                frame.release();
+            }
+            if (this.frameBuffer.context != null) {
+                NettyServer.this.eventHandler.deleteContext(this.frameBuffer.context, this.frameBuffer.in, this.frameBuffer.out);
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            LOGGER.warn("Channel error, close: {}", ctx.channel().remoteAddress(), cause);
+            ctx.close();
+        }
+
+        private void processNext() {
+            //连接已关闭时剩余的请求不再处理, 由channelInactive释放
+            while (!this.frameBuffer.isProcessing() && this.frameBuffer.ctx.channel().isActive()) {
+                ByteBuf frame = this.pending.poll();
+                if (frame == null) {
+                    return;
+                }
+                if (this.pending.size() < MAX_PENDING_FRAMES / 2 && !this.frameBuffer.ctx.channel().config().isAutoRead()) {
+                    this.frameBuffer.ctx.channel().config().setAutoRead(true);
+                }
+                this.frameBuffer.process(frame);
+            }
+        }
+    }
+
+    //复用AsyncFrameBuffer的接口: 输入/输出protocol直接读写ByteBuf; responseReady可在任意线程调用, 在event loop上写出
+    private class NettyFrameBuffer extends AsyncFrameBuffer {
+
+        private final ChannelHandlerContext ctx;
+
+        private final ProcessHandler handler;
+
+        private final ByteBufTransport transport = new ByteBufTransport();
+
+        private final TProtocol in;
+
+        private final TProtocol out;
+
+        private ServerContext context;
+
+        private ByteBuf frame;
+
+        private boolean processing;
+
+        private boolean inProcess;
+
+        private NettyFrameBuffer(ChannelHandlerContext ctx, ProcessHandler handler) {
+            super(null, null, null);
+            this.ctx = ctx;
+            this.handler = handler;
+            this.in = NettyServer.this.inputProtocolFactory_.getProtocol(this.transport);
+            this.out = NettyServer.this.outputProtocolFactory_.getProtocol(this.transport);
+        }
+
+        private boolean isProcessing() {
+            return this.processing;
+        }
+
+        private void process(ByteBuf frame) {
+            this.frame = frame;
+            this.processing = true;
+            ByteBuf output = this.ctx.alloc().ioBuffer(256);
+            if (NettyServer.this.framed) {
+                output.writerIndex(4);
+            }
+            //先只设置输出, 之后的任何异常都由close()释放frame与output
+            this.transport.reset(null, output);
+            this.inProcess = true;
+            try {
+                //同thrift nonblocking server, 在读取本次请求之前回调; reset会计入本帧的读字节数, 因此在reset之前
+                if (this.context != null) {
+                    NettyServer.this.eventHandler.processContext(this.context, this.transport, this.transport);
+                }
+                this.transport.reset(frame, output);
+                this.in.reset();
+                this.out.reset();
+                TProcessor processor = NettyServer.this.processorFactory_.getProcessor(null);
+                if (processor instanceof TAsyncProcessor) {
+                    ((TAsyncProcessor) processor).process(this);
+                } else if (NettyServer.this.executor != null) {
+                    NettyServer.this.executor.execute(() -> processSync(processor));
+                } else {
+                    processSync(processor);
+                }
+            } catch (Throwable t) {
+                LOGGER.warn("Process failed, close: {}", this.ctx.channel().remoteAddress(), t);
+                close();
+            } finally {
+                this.inProcess = false;
+            }
+        }
+
+        private void processSync(TProcessor processor) {
+            try {
+                processor.process(this.in, this.out);
+                responseReady();
+            } catch (Throwable t) {
+                LOGGER.warn("Process failed, close: {}", this.ctx.channel().remoteAddress(), t);
+                close();
+            }
+        }
+
+        @Override
+        public TProtocol getInputProtocol() {
+            return this.in;
+        }
+
+        @Override
+        public TProtocol getOutputProtocol() {
+            return this.out;
+        }
+
+        @Override
+        public void responseReady() {
+            if (this.ctx.executor().inEventLoop()) {
+                complete();
+            } else {
+                this.ctx.executor().execute(this::complete);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (this.ctx.executor().inEventLoop()) {
+                release();
+            } else {
+                this.ctx.executor().execute(this::release);
+            }
+            this.ctx.close();
+        }
+
+        private void complete() {
+            if (!this.processing) {
+                return;
+            }
+            ByteBuf output = this.transport.getOutput();
+            int headerLength = NettyServer.this.framed ? 4 : 0;
+            if (output.readableBytes() > headerLength) {
+                if (NettyServer.this.framed) {
+                    output.setInt(0, output.readableBytes() - 4);
+                }
+                this.transport.reset(null, null);
+                this.ctx.writeAndFlush(output, this.ctx.voidPromise());
+            }
+            //oneway时output仍由transport持有, 由release()释放
+            release();
+            //同步完成时由ProcessHandler.processNext的循环继续处理
+            if (!this.inProcess) {
+                this.handler.processNext();
+            }
+        }
+
+        private void release() {
+            if (this.frame != null) {
+                this.frame.release();
+                this.frame = null;
+            }
+            ByteBuf output = this.transport.getOutput();
+            if (output != null) {
+                output.release();
+            }
+            this.transport.reset(null, null);
+            this.processing = false;
+        }
+    }
+
+    public static class Args extends AbstractNonblockingServerArgs<Args> {
+
+        //0为Netty默认值(2 * CPU核数)
+        private int ioThreads;
+
+        private int maxLength = 16384000;
+
+        private boolean epoll = true;
+
+        private ExecutorService executor;
+
+        private int acceptors = 1;
+
+        private long reportNanos = TimeUnit.SECONDS.toNanos(10);
+
+        public Args(NettyServerTransport transport) {
+            super(transport);
+        }
+
+        public Args ioThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        public Args maxLength(int maxLength) {
+            this.maxLength = maxLength;
+            return this;
+        }
+
+        public Args epoll(boolean epoll) {
+            this.epoll = epoll;
+            return this;
+        }
+
+        public Args executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Args acceptors(int acceptors) {
+            this.acceptors = acceptors;
+            return this;
+        }
+
+        public Args reportNanos(long reportNanos) {
+            this.reportNanos = reportNanos;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.mamba.mocking.thrift.netty;
+
+import org.apache.thrift.transport.TNonblockingServerTransport;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.nio.channels.Selector;
+
+//只记录监听端口, 由NettyServer绑定与关闭; NettyFrameBuffer复用AbstractNonblockingServer.AsyncFrameBuffer,
+//其Args要求TNonblockingServerTransport, 因此保留继承, 但不能交给selector使用
+public class NettyServerTransport extends TNonblockingServerTransport {
+
+    private final int port;
+
+    public NettyServerTransport(int port) {
+        this.port = port;
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    @Override
+    public void registerSelector(Selector selector) {
+        throw new IllegalStateException("NettyServerTransport only holds port " + this.port + " for NettyServer, which binds it with netty; it cannot be registered with a selector");
+    }
+
+    @Override
+    public void listen() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    protected TTransport acceptImpl() throws TTransportException {
+        throw new TTransportException("NettyServerTransport only holds port " + this.port + " for NettyServer, connections are accepted by netty");
+    }
+}
@@ -0,0 +1,54 @@
+package com.mamba.mocking.thrift.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TTransportException;
+
+import java.util.List;
+
+//未分帧时按protocol跳过一条完整消息来确定边界, 数据不足时等待更多数据; TTupleProtocol无法跳过, 只支持分帧
+final class UnframedMessageDecoder extends ByteToMessageDecoder {
+
+    private final ByteBufTransport transport = new ByteBufTransport();
+
+    private final TProtocol protocol;
+
+    private final int maxLength;
+
+    UnframedMessageDecoder(TProtocolFactory protocolFactory, int maxLength) {
+        this.protocol = protocolFactory.getProtocol(this.transport);
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        int start = in.readerIndex();
+        this.transport.reset(in, null);
+        this.protocol.reset();
+        try {
+            this.protocol.readMessageBegin();
+            TProtocolUtil.skip(this.protocol, TType.STRUCT);
+            this.protocol.readMessageEnd();
+        } catch (TTransportException e) {
+            if (e.getType() != TTransportException.END_OF_FILE) {
+                throw e;
+            }
+            in.readerIndex(start);
+            if (in.readableBytes() > this.maxLength) {
+                throw new TooLongFrameException("Message length exceeds " + this.maxLength);
+            }
+            return;
+        } finally {
+            this.transport.reset(null, null);
+        }
+        int length = in.readerIndex() - start;
+        in.readerIndex(start);
+        out.add(in.readRetainedSlice(length));
+    }
+}
@@ -0,0 +1,77 @@
+package com.mamba.mocking.thrift.pool;
+
+import com.mamba.mocking.thrift.metrics.BufferPoolStats;
+
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+//按2的幂分级的direct buffer池, 最小1KB; 归还的buffer按后进先出复用. maxBytes限制池中空闲buffer的总容量, 超过时归还的buffer直接丢弃(由GC回收);
+//超过最大规格的请求分配heap buffer, 不入池
+public final class BufferPool {
+
+    private static final int MIN_SHIFT = 10;
+
+    private final int maxShift;
+
+    private final long maxBytes;
+
+    private final Deque<ByteBuffer>[] classes;
+
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    private final BufferPoolStats stats;
+
+    @SuppressWarnings("unchecked")
+    public BufferPool(int maxPooledSize, long maxBytes, BufferPoolStats stats) {
+        if (maxPooledSize < (1 << MIN_SHIFT)) {
+            throw new IllegalArgumentException("Invalid max pooled size: " + maxPooledSize);
+        }
+        this.maxShift = 32 - Integer.numberOfLeadingZeros(maxPooledSize - 1);
+        this.maxBytes = maxBytes;
+        this.classes = new Deque[this.maxShift - MIN_SHIFT + 1];
+        for (int i = 0; i < this.classes.length; i++) {
+            this.classes[i] = new ConcurrentLinkedDeque<>();
+        }
+        this.stats = stats;
+    }
+
+    //返回的buffer position为0, limit为size
+    public ByteBuffer acquire(int size) {
+        int shift = Math.max(32 - Integer.numberOfLeadingZeros(size - 1), MIN_SHIFT);
+        if (shift > this.maxShift) {
+            this.stats.unpooled();
+            return ByteBuffer.allocate(size);
+        }
+        ByteBuffer buffer = this.classes[shift - MIN_SHIFT].pollFirst();
+        if (buffer == null) {
+            this.stats.miss();
+            buffer = ByteBuffer.allocateDirect(1 << shift);
+        } else {
+            this.pooledBytes.addAndGet(-buffer.capacity());
+            this.stats.hit(buffer.capacity());
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    //heap buffer(超过最大规格)不入池
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if (this.pooledBytes.addAndGet(capacity) > this.maxBytes) {
+            this.pooledBytes.addAndGet(-capacity);
+            this.stats.drop();
+            return;
+        }
+        this.stats.pooled(capacity);
+        this.classes[Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT].offerFirst(buffer);
+    }
+
+    public long getPooledBytes() {
+        return this.pooledBytes.get();
+    }
+}
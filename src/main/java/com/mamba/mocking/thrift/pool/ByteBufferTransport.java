@@ -0,0 +1,109 @@
+package com.mamba.mocking.thrift.pool;
+
+import com.mamba.mocking.thrift.transport.TransportCounter;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.nio.ByteBuffer;
+
+//读写池化ByteBuffer的transport, 每个连接一个, 每条消息reset. 输出前4字节预留给帧头, 容量不足时从池中取更大一级的buffer复制后归还原buffer
+final class ByteBufferTransport extends TTransport implements TransportCounter {
+
+    private final BufferPool pool;
+
+    private ByteBuffer in;
+
+    private ByteBuffer out;
+
+    private long bytesRead;
+
+    private long bytesWritten;
+
+    ByteBufferTransport(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    void reset(ByteBuffer in, ByteBuffer out) {
+        this.in = in;
+        this.out = out;
+        if (in != null) {
+            this.bytesRead += in.remaining();
+        }
+    }
+
+    ByteBuffer getOutput() {
+        return this.out;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+        int readable = Math.min(len, this.in.remaining());
+        if (readable <= 0 && len > 0) {
+            throw new TTransportException(TTransportException.END_OF_FILE, "No more data available.");
+        }
+        this.in.get(buf, off, readable);
+        return readable;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) {
+        if (this.out.remaining() < len) {
+            grow(this.out.position() + len);
+        }
+        this.out.put(buf, off, len);
+        this.bytesWritten += len;
+    }
+
+    private void grow(int required) {
+        ByteBuffer output = this.pool.acquire(Math.max(required, this.out.capacity() << 1));
+        output.limit(output.capacity());
+        this.out.flip();
+        output.put(this.out);
+        this.pool.release(this.out);
+        this.out = output;
+    }
+
+    //heap buffer时暴露底层数组供protocol直接读取
+    @Override
+    public byte[] getBuffer() {
+        return this.in.hasArray() ? this.in.array() : null;
+    }
+
+    @Override
+    public int getBufferPosition() {
+        return this.in.hasArray() ? this.in.arrayOffset() + this.in.position() : 0;
+    }
+
+    @Override
+    public int getBytesRemainingInBuffer() {
+        return this.in.hasArray() ? this.in.remaining() : -1;
+    }
+
+    @Override
+    public void consumeBuffer(int len) {
+        this.in.position(this.in.position() + len);
+    }
+}
@@ -0,0 +1,539 @@
+package com.mamba.mocking.thrift.pool;
+
+import com.mamba.mocking.thrift.metrics.BufferPoolStats;
+import com.mamba.mocking.thrift.transport.CountingTransport;
+import org.apache.thrift.TAsyncProcessor;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.server.AbstractNonblockingServer;
+import org.apache.thrift.server.ServerContext;
+import org.apache.thrift.server.TServerEventHandler;
+import org.apache.thrift.transport.TFastFramedTransport;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TNonblockingServerTransport;
+import org.apache.thrift.transport.TNonblockingTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.apache.thrift.transport.TTransportFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//TThreadedSelectorServer的变体: 请求帧读入BufferPool中的direct buffer, 响应直接序列化到池化buffer(前4字节为帧头)后写出, 处理完成即归还,
+//大消息不再每帧分配heap ByteBuffer与TByteArrayOutputStream. 调用serve的线程accept, selectorThreads个selector线程读写;
+//同步processor在worker线程池(workerThreads=0时在selector线程)上执行, AsyncProcessor在selector线程上执行; 只支持分帧transport, 同一连接按顺序逐个处理.
+//继承AbstractNonblockingServer只为复用AsyncFrameBuffer, 同NettyServer
+public class PooledSelectorServer extends AbstractNonblockingServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledSelectorServer.class);
+
+    private static final int FRAME_HEADER_LENGTH = 4;
+
+    //响应buffer的初始容量; 之后按同一连接上一个响应的大小申请, 大响应不必逐级扩容
+    private static final int OUTPUT_CAPACITY = 1024;
+
+    private final int selectorThreads;
+
+    private final int workerThreads;
+
+    private final int maxLength;
+
+    private final int maxPooledSize;
+
+    private final int poolBytes;
+
+    private final ExecutorService sharedExecutor;
+
+    private final List<SelectorThread> selectors = new ArrayList<>();
+
+    //不设置父类的eventHandler_: FrameBuffer构造时会用它创建context, 这里在selector线程上自行回调
+    private TServerEventHandler eventHandler;
+
+    private BufferPoolStats bufferPoolStats;
+
+    private BufferPool pool;
+
+    private ExecutorService executor;
+
+    private volatile Selector acceptSelector;
+
+    public PooledSelectorServer(Args args) {
+        super(args);
+        this.selectorThreads = args.selectorThreads;
+        this.workerThreads = args.workerThreads;
+        this.maxLength = args.maxLength;
+        this.maxPooledSize = args.maxPooledSize;
+        this.poolBytes = args.poolBytes;
+        this.sharedExecutor = args.executor;
+        TTransportFactory transportFactory = CountingTransport.unwrap(this.inputTransportFactory_);
+        if (!(transportFactory instanceof TFramedTransport.Factory || transportFactory instanceof TFastFramedTransport.Factory)) {
+            throw new IllegalArgumentException("PooledSelectorServer requires framed transport");
+        }
+    }
+
+    //serve之前调用; 未设置时统计不对外输出
+    public void setBufferPoolStats(BufferPoolStats bufferPoolStats) {
+        this.bufferPoolStats = bufferPoolStats;
+    }
+
+    @Override
+    public void setServerEventHandler(TServerEventHandler eventHandler) {
+        this.eventHandler = eventHandler;
+    }
+
+    @Override
+    public TServerEventHandler getEventHandler() {
+        return this.eventHandler;
+    }
+
+    @Override
+    public void serve() {
+        TNonblockingServerTransport serverTransport = (TNonblockingServerTransport) this.serverTransport_;
+        this.pool = new BufferPool(this.maxPooledSize, this.poolBytes, this.bufferPoolStats == null ? new BufferPoolStats("") : this.bufferPoolStats);
+        this.executor = this.sharedExecutor != null || this.workerThreads <= 0 ? this.sharedExecutor : newWorkerExecutor(this.workerThreads);
+        try (Selector acceptSelector = Selector.open()) {
+            this.acceptSelector = acceptSelector;
+            serverTransport.listen();
+            serverTransport.registerSelector(acceptSelector);
+            for (int i = 0; i < this.selectorThreads; i++) {
+                SelectorThread selectorThread = new SelectorThread(i);
+                this.selectors.add(selectorThread);
+                selectorThread.start();
+            }
+            LOGGER.info("Pooled selector server listening, selectors={}, maxPooledSize={}, poolBytes={}", this.selectorThreads, this.maxPooledSize, this.poolBytes);
+            setServing(true);
+            int next = 0;
+            while (!this.stopped_) {
+                acceptSelector.select();
+                Iterator<SelectionKey> iterator = acceptSelector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        try {
+                            TNonblockingTransport socket = (TNonblockingTransport) serverTransport.accept();
+                            this.selectors.get(next++ % this.selectors.size()).register(socket);
+                        } catch (TTransportException e) {
+                            LOGGER.warn("Accept failed", e);
+                        }
+                    }
+                }
+            }
+        } catch (IOException | TTransportException e) {
+            LOGGER.error("Pooled selector server failed", e);
+        } finally {
+            setServing(false);
+            for (SelectorThread selectorThread : this.selectors) {
+                selectorThread.selector.wakeup();
+                try {
+                    selectorThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            serverTransport.close();
+            if (this.executor != null && this.executor != this.sharedExecutor) {
+                this.executor.shutdown();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.stopped_ = true;
+        Selector acceptSelector = this.acceptSelector;
+        if (acceptSelector != null) {
+            acceptSelector.wakeup();
+        }
+    }
+
+    @Override
+    protected boolean startThreads() {
+        return false;
+    }
+
+    @Override
+    protected void waitForShutdown() {
+    }
+
+    @Override
+    protected boolean requestInvoke(FrameBuffer frameBuffer) {
+        return false;
+    }
+
+    BufferPool getPool() {
+        return this.pool;
+    }
+
+    private static ExecutorService newWorkerExecutor(int workerThreads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "pooled-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private class SelectorThread extends Thread {
+
+        private final Selector selector;
+
+        //其他线程提交的注册、响应完成与关闭, 在select返回后执行
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        //已退出(server停止), 之后提交的任务由提交线程执行, 处理中的请求完成时仍能归还buffer
+        private volatile boolean terminated;
+
+        private SelectorThread(int index) throws IOException {
+            super("pooled-selector-" + index);
+            setDaemon(true);
+            this.selector = Selector.open();
+        }
+
+        private void execute(Runnable task) {
+            this.tasks.add(task);
+            if (this.terminated) {
+                runTasks();
+            } else {
+                this.selector.wakeup();
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = this.tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        private boolean inThread() {
+            return Thread.currentThread() == this;
+        }
+
+        private void register(TNonblockingTransport socket) {
+            execute(() -> {
+                try {
+                    SelectionKey key = socket.registerSelector(this.selector, SelectionKey.OP_READ);
+                    key.attach(new Connection(this, socket, key));
+                } catch (IOException | ClosedSelectorException e) {
+                    LOGGER.warn("Register connection failed", e);
+                    socket.close();
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!PooledSelectorServer.this.stopped_) {
+                    this.selector.select();
+                    Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (!key.isValid()) {
+                            connection.closeConnection();
+                        } else if (key.isReadable()) {
+                            connection.handleRead();
+                        } else if (key.isWritable()) {
+                            connection.handleWrite();
+                        }
+                    }
+                    runTasks();
+                }
+            } catch (Throwable t) {
+                LOGGER.error("Selector thread failed", t);
+            } finally {
+                for (SelectionKey key : this.selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).closeConnection();
+                    }
+                }
+                //连接都已关闭: 剩余与之后提交的任务只归还buffer
+                this.terminated = true;
+                runTasks();
+                try {
+                    this.selector.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Close selector failed", e);
+                }
+            }
+        }
+    }
+
+    //复用AsyncFrameBuffer的接口, 除responseReady/close外只在所属selector线程上访问
+    private class Connection extends AsyncFrameBuffer {
+
+        private final SelectorThread selectorThread;
+
+        private final TNonblockingTransport socket;
+
+        private final SelectionKey key;
+
+        private final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_LENGTH);
+
+        private final ByteBufferTransport transport;
+
+        private final TProtocol in;
+
+        private final TProtocol out;
+
+        private final Runnable completeTask = this::complete;
+
+        private ServerContext context;
+
+        //读取中或处理中的请求帧
+        private ByteBuffer frame;
+
+        //写出中的响应
+        private ByteBuffer response;
+
+        private int lastOutputSize = OUTPUT_CAPACITY;
+
+        private boolean processing;
+
+        private boolean closed;
+
+        //处理失败, 响应完成时关闭连接
+        private volatile boolean failed;
+
+        private Connection(SelectorThread selectorThread, TNonblockingTransport socket, SelectionKey key) {
+            super(null, null, null);
+            this.selectorThread = selectorThread;
+            this.socket = socket;
+            this.key = key;
+            this.transport = new ByteBufferTransport(PooledSelectorServer.this.pool);
+            this.in = PooledSelectorServer.this.inputProtocolFactory_.getProtocol(this.transport);
+            this.out = PooledSelectorServer.this.outputProtocolFactory_.getProtocol(this.transport);
+            if (PooledSelectorServer.this.eventHandler != null) {
+                this.context = PooledSelectorServer.this.eventHandler.createContext(this.in, this.out);
+            }
+        }
+
+        private void handleRead() {
+            try {
+                if (this.frame == null) {
+                    if (this.socket.read(this.header) < 0) {
+                        closeConnection();
+                        return;
+                    }
+                    if (this.header.hasRemaining()) {
+                        return;
+                    }
+                    int frameSize = this.header.getInt(0);
+                    if (frameSize <= 0 || frameSize > PooledSelectorServer.this.maxLength) {
+                        LOGGER.warn("Invalid frame size {}, close: {}", frameSize, this.socket);
+                        closeConnection();
+                        return;
+                    }
+                    this.frame = PooledSelectorServer.this.pool.acquire(frameSize);
+                }
+                if (this.socket.read(this.frame) < 0) {
+                    closeConnection();
+                    return;
+                }
+                if (!this.frame.hasRemaining()) {
+                    this.header.clear();
+                    this.frame.flip();
+                    //处理完成前不再读取该连接
+                    this.key.interestOps(0);
+                    process();
+                }
+            } catch (IOException e) {
+                closeConnection();
+            }
+        }
+
+        private void process() {
+            ByteBuffer output = PooledSelectorServer.this.pool.acquire(this.lastOutputSize);
+            output.limit(output.capacity()).position(FRAME_HEADER_LENGTH);
+            //先只设置输出, 失败时由complete归还
+            this.transport.reset(null, output);
+            this.processing = true;
+            //eventHandler与processor的异常只关闭该连接, 不影响selector线程上的其他连接
+            try {
+                //同thrift nonblocking server, 在读取本次请求之前回调, 此时本次请求的字节数尚未计入transport
+                if (this.context != null) {
+                    PooledSelectorServer.this.eventHandler.processContext(this.context, this.transport, this.transport);
+                }
+                this.transport.reset(this.frame, output);
+                TProcessor processor = PooledSelectorServer.this.processorFactory_.getProcessor(null);
+                if (processor instanceof TAsyncProcessor) {
+                    ((TAsyncProcessor) processor).process(this);
+                } else if (PooledSelectorServer.this.executor != null) {
+                    PooledSelectorServer.this.executor.execute(() -> processSync(processor));
+                } else {
+                    processSync(processor);
+                }
+            } catch (Throwable t) {
+                LOGGER.warn("Process failed, close: {}", this.socket, t);
+                this.failed = true;
+                complete();
+            }
+        }
+
+        private void processSync(TProcessor processor) {
+            try {
+                processor.process(this.in, this.out);
+            } catch (Throwable t) {
+                LOGGER.warn("Process failed, close: {}", this.socket, t);
+                this.failed = true;
+            }
+            responseReady();
+        }
+
+        @Override
+        public TProtocol getInputProtocol() {
+            return this.in;
+        }
+
+        @Override
+        public TProtocol getOutputProtocol() {
+            return this.out;
+        }
+
+        @Override
+        public void responseReady() {
+            if (this.selectorThread.inThread()) {
+                complete();
+            } else {
+                this.selectorThread.execute(this.completeTask);
+            }
+        }
+
+        @Override
+        public void close() {
+            this.failed = true;
+            responseReady();
+        }
+
+        //请求处理完成: 归还请求帧, 写出响应; oneway没有响应, 直接继续读
+        private void complete() {
+            if (!this.processing) {
+                return;
+            }
+            this.processing = false;
+            ByteBuffer output = this.transport.getOutput();
+            this.transport.reset(null, null);
+            PooledSelectorServer.this.pool.release(this.frame);
+            this.frame = null;
+            if (this.closed || this.failed) {
+                PooledSelectorServer.this.pool.release(output);
+                closeConnection();
+                return;
+            }
+            if (output.position() > FRAME_HEADER_LENGTH) {
+                this.lastOutputSize = output.position();
+                output.putInt(0, output.position() - FRAME_HEADER_LENGTH);
+                output.flip();
+                this.response = output;
+                handleWrite();
+            } else {
+                PooledSelectorServer.this.pool.release(output);
+                this.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void handleWrite() {
+            try {
+                this.socket.write(this.response);
+            } catch (IOException e) {
+                closeConnection();
+                return;
+            }
+            if (this.response.hasRemaining()) {
+                this.key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            PooledSelectorServer.this.pool.release(this.response);
+            this.response = null;
+            this.key.interestOps(SelectionKey.OP_READ);
+        }
+
+        //处理中的请求帧与响应在complete时归还
+        private void closeConnection() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.key.cancel();
+            this.socket.close();
+            if (!this.processing && this.frame != null) {
+                PooledSelectorServer.this.pool.release(this.frame);
+                this.frame = null;
+            }
+            if (this.response != null) {
+                PooledSelectorServer.this.pool.release(this.response);
+                this.response = null;
+            }
+            if (this.context != null) {
+                PooledSelectorServer.this.eventHandler.deleteContext(this.context, this.in, this.out);
+            }
+        }
+    }
+
+    public static class Args extends AbstractNonblockingServerArgs<Args> {
+
+        private int selectorThreads = 2;
+
+        //0时同步processor在selector线程上执行
+        private int workerThreads = 5;
+
+        private int maxLength = 16384000;
+
+        //最大的池化规格, 更大的帧使用heap buffer
+        private int maxPooledSize = 16 << 20;
+
+        //池中空闲buffer总容量的上限
+        private int poolBytes = 64 << 20;
+
+        private ExecutorService executor;
+
+        public Args(TNonblockingServerTransport transport) {
+            super(transport);
+        }
+
+        public Args selectorThreads(int selectorThreads) {
+            this.selectorThreads = selectorThreads;
+            return this;
+        }
+
+        public Args workerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        public Args maxLength(int maxLength) {
+            this.maxLength = maxLength;
+            return this;
+        }
+
+        public Args maxPooledSize(int maxPooledSize) {
+            this.maxPooledSize = maxPooledSize;
+            return this;
+        }
+
+        public Args poolBytes(int poolBytes) {
+            this.poolBytes = poolBytes;
+            return this;
+        }
+
+        public Args executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.mamba.mocking.thrift.recording;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TJSONProtocol;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMap;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.protocol.TSet;
+import org.apache.thrift.protocol.TSimpleJSONProtocol;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+
+//不依赖IDL, 按TType逐个字段从一个协议复制到另一个协议
+final class ProtocolCopier {
+
+    private static final TStruct ANONYMOUS = new TStruct();
+
+    private ProtocolCopier() {
+    }
+
+    static void copyStruct(TProtocol in, TProtocol out) throws TException {
+        //JSON协议中string/binary的编码不同, 无IDL时无法区分, 按string复制; 其他协议按binary逐字节复制
+        copy(in, out, TType.STRUCT, isText(in) || isText(out));
+    }
+
+    private static boolean isText(TProtocol protocol) {
+        return protocol instanceof TJSONProtocol || protocol instanceof TSimpleJSONProtocol;
+    }
+
+    private static void copy(TProtocol in, TProtocol out, byte type, boolean text) throws TException {
+        switch (type) {
+            case TType.BOOL:
+                out.writeBool(in.readBool());
+                break;
+            case TType.BYTE:
+                out.writeByte(in.readByte());
+                break;
+            case TType.I16:
+                out.writeI16(in.readI16());
+                break;
+            case TType.I32:
+                out.writeI32(in.readI32());
+                break;
+            case TType.I64:
+                out.writeI64(in.readI64());
+                break;
+            case TType.DOUBLE:
+                out.writeDouble(in.readDouble());
+                break;
+            case TType.STRING:
+                if (text) {
+                    out.writeString(in.readString());
+                } else {
+                    out.writeBinary(in.readBinary());
+                }
+                break;
+            case TType.STRUCT: {
+                in.readStructBegin();
+                out.writeStructBegin(ANONYMOUS);
+                for (; ; ) {
+                    TField field = in.readFieldBegin();
+                    if (field.type == TType.STOP) {
+                        break;
+                    }
+                    out.writeFieldBegin(field);
+                    copy(in, out, field.type, text);
+                    in.readFieldEnd();
+                    out.writeFieldEnd();
+                }
+                out.writeFieldStop();
+                in.readStructEnd();
+                out.writeStructEnd();
+                break;
+            }
+            case TType.MAP: {
+                TMap map = in.readMapBegin();
+                out.writeMapBegin(map);
+                for (int i = 0; i < map.size; i++) {
+                    copy(in, out, map.keyType, text);
+                    copy(in, out, map.valueType, text);
+                }
+                in.readMapEnd();
+                out.writeMapEnd();
+                break;
+            }
+            case TType.SET: {
+                TSet set = in.readSetBegin();
+                out.writeSetBegin(set);
+                for (int i = 0; i < set.size; i++) {
+                    copy(in, out, set.elemType, text);
+                }
+                in.readSetEnd();
+                out.writeSetEnd();
+                break;
+            }
+            case TType.LIST: {
+                TList list = in.readListBegin();
+                out.writeListBegin(list);
+                for (int i = 0; i < list.size; i++) {
+                    copy(in, out, list.elemType, text);
+                }
+                in.readListEnd();
+                out.writeListEnd();
+                break;
+            }
+            default:
+                throw new TProtocolException(TProtocolException.INVALID_DATA, "Unsupported type: " + type);
+        }
+    }
+}
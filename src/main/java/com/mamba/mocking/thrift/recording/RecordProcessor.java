@@ -0,0 +1,124 @@
+package com.mamba.mocking.thrift.recording;
+
+import com.mamba.mocking.thrift.metrics.MethodMetrics;
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//转发到上游并记录(消息名, 参数) -> 响应; 上游与客户端使用相同的transport/protocol配置, 连接复用
+public class RecordProcessor implements TProcessor, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordProcessor.class);
+
+    private final String host;
+
+    private final int port;
+
+    private final int timeout;
+
+    private final TTransportFactory transportFactory;
+
+    private final TProtocolFactory protocolFactory;
+
+    private final ReplayStore store;
+
+    private final MetricsRegistry metricsRegistry;
+
+    private final Queue<TProtocol> upstreams = new ConcurrentLinkedQueue<>();
+
+    public RecordProcessor(String host, int port, int timeout, TTransportFactory transportFactory, TProtocolFactory protocolFactory, ReplayStore store, MetricsRegistry metricsRegistry) {
+        this.host = host;
+        this.port = port;
+        this.timeout = timeout;
+        this.transportFactory = transportFactory;
+        this.protocolFactory = protocolFactory;
+        this.store = store;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        TMessage message = in.readMessageBegin();
+        MethodMetrics metrics = ReplayProcessor.metrics(this.metricsRegistry, "record", message.name);
+        long startTime = metrics.begin();
+        boolean error = true;
+        try {
+            ReplayCodec codec = ReplayCodec.get();
+            codec.readRequest(in, message);
+            TProtocol upstream;
+            try {
+                upstream = call(codec, message);
+            } catch (TException e) {
+                LOGGER.warn("Upstream call failed: {}", message.name, e);
+                ReplayCodec.writeException(out, message, new TApplicationException(TApplicationException.INTERNAL_ERROR, "Upstream call failed: " + e.getMessage()));
+                return;
+            }
+            if (upstream == null) {
+                error = false;
+                return;
+            }
+            this.upstreams.offer(upstream);
+            if (this.store.put(codec.getKey(), codec.getKeyLength(), codec.getValue(), codec.getValueLength())) {
+                LOGGER.info("Recorded: {}, total: {}", message.name, this.store.size());
+            }
+            codec.writeReply(out, message, ByteBuffer.wrap(codec.getValue(), 0, codec.getValueLength()));
+            error = false;
+        } catch (IOException e) {
+            throw new TException(e);
+        } finally {
+            metrics.end(startTime, error);
+        }
+    }
+
+    //oneway调用返回null且不记录; 出错的连接直接关闭
+    private TProtocol call(ReplayCodec codec, TMessage message) throws TException {
+        TProtocol upstream = this.upstreams.poll();
+        if (upstream == null) {
+            upstream = connect();
+        }
+        try {
+            codec.writeRequest(upstream, message);
+            if (message.type == TMessageType.ONEWAY) {
+                this.upstreams.offer(upstream);
+                return null;
+            }
+            codec.readReply(upstream);
+            return upstream;
+        } catch (TException | RuntimeException e) {
+            upstream.getTransport().close();
+            throw e;
+        }
+    }
+
+    private TProtocol connect() throws TException {
+        TTransport transport = new TSocket(this.host, this.port, this.timeout);
+        if (this.transportFactory != null) {
+            transport = this.transportFactory.getTransport(transport);
+        }
+        transport.open();
+        return this.protocolFactory.getProtocol(transport);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (TProtocol upstream; (upstream = this.upstreams.poll()) != null; ) {
+            upstream.getTransport().close();
+        }
+        this.store.close();
+    }
+}
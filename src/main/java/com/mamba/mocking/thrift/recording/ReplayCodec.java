@@ -0,0 +1,114 @@
+package com.mamba.mocking.thrift.recording;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TByteArrayOutputStream;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryInputTransport;
+
+import java.nio.ByteBuffer;
+
+//key: 消息名+参数struct, value: 响应消息类型+result struct; 统一用TBinaryProtocol编码, 与客户端/上游使用的协议无关.
+//每个线程一份, 缓冲区复用
+final class ReplayCodec {
+
+    private static final ThreadLocal<ReplayCodec> CODEC = ThreadLocal.withInitial(ReplayCodec::new);
+
+    private final TByteArrayOutputStream key = new TByteArrayOutputStream(1024);
+
+    private final TProtocol keyProtocol = new TBinaryProtocol(new TIOStreamTransport(this.key));
+
+    private final TByteArrayOutputStream value = new TByteArrayOutputStream(1024);
+
+    private final TProtocol valueProtocol = new TBinaryProtocol(new TIOStreamTransport(this.value));
+
+    private final TMemoryInputTransport input = new TMemoryInputTransport();
+
+    private final TProtocol inputProtocol = new TBinaryProtocol(this.input);
+
+    private byte[] scratch = new byte[1024];
+
+    private int argsOffset;
+
+    static ReplayCodec get() {
+        return CODEC.get();
+    }
+
+    void readRequest(TProtocol in, TMessage message) throws TException {
+        this.key.reset();
+        this.keyProtocol.writeString(message.name);
+        this.argsOffset = this.key.len();
+        ProtocolCopier.copyStruct(in, this.keyProtocol);
+        in.readMessageEnd();
+    }
+
+    byte[] getKey() {
+        return this.key.get();
+    }
+
+    int getKeyLength() {
+        return this.key.len();
+    }
+
+    //把已读出的请求转发给上游
+    void writeRequest(TProtocol out, TMessage message) throws TException {
+        out.writeMessageBegin(message);
+        this.input.reset(this.key.get(), this.argsOffset, this.key.len() - this.argsOffset);
+        ProtocolCopier.copyStruct(this.inputProtocol, out);
+        out.writeMessageEnd();
+        out.getTransport().flush();
+    }
+
+    void readReply(TProtocol in) throws TException {
+        TMessage reply = in.readMessageBegin();
+        this.value.reset();
+        this.value.write(reply.type);
+        ProtocolCopier.copyStruct(in, this.valueProtocol);
+        in.readMessageEnd();
+    }
+
+    byte[] getValue() {
+        return this.value.get();
+    }
+
+    int getValueLength() {
+        return this.value.len();
+    }
+
+    //TBinaryProtocol直接写出value字节, 不解码; 其他协议逐字段转换
+    void writeReply(TProtocol out, TMessage message, ByteBuffer value) throws TException {
+        int length = value.remaining() - 1;
+        byte type = value.get(value.position());
+        if (this.scratch.length < length) {
+            this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+        }
+        ByteBuffer body = value.duplicate();
+        body.position(body.position() + 1);
+        body.get(this.scratch, 0, length);
+        out.writeMessageBegin(new TMessage(methodName(message.name), type, message.seqid));
+        if (out.getClass() == TBinaryProtocol.class) {
+            out.getTransport().write(this.scratch, 0, length);
+        } else {
+            this.input.reset(this.scratch, 0, length);
+            ProtocolCopier.copyStruct(this.inputProtocol, out);
+        }
+        out.writeMessageEnd();
+        out.getTransport().flush();
+    }
+
+    static void writeException(TProtocol out, TMessage message, TApplicationException e) throws TException {
+        out.writeMessageBegin(new TMessage(methodName(message.name), TMessageType.EXCEPTION, message.seqid));
+        e.write(out);
+        out.writeMessageEnd();
+        out.getTransport().flush();
+    }
+
+    //同TMultiplexedProcessor, 响应中的消息名不带service前缀
+    private static String methodName(String name) {
+        return name.substring(name.indexOf(':') + 1);
+    }
+}
@@ -0,0 +1,63 @@
+package com.mamba.mocking.thrift.recording;
+
+import com.mamba.mocking.thrift.metrics.MethodMetrics;
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//按(消息名, 参数)从记录文件中查找响应, 不加延迟; 未记录的请求返回TApplicationException
+public class ReplayProcessor implements TProcessor, AutoCloseable {
+
+    private final ReplayStore store;
+
+    private final MetricsRegistry metricsRegistry;
+
+    public ReplayProcessor(ReplayStore store, MetricsRegistry metricsRegistry) {
+        this.store = store;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @Override
+    public void process(TProtocol in, TProtocol out) throws TException {
+        TMessage message = in.readMessageBegin();
+        MethodMetrics metrics = metrics(this.metricsRegistry, "replay", message.name);
+        long startTime = metrics.begin();
+        boolean error = true;
+        try {
+            ReplayCodec codec = ReplayCodec.get();
+            codec.readRequest(in, message);
+            if (message.type == TMessageType.ONEWAY) {
+                error = false;
+                return;
+            }
+            ByteBuffer value = this.store.get(codec.getKey(), codec.getKeyLength());
+            if (value == null) {
+                ReplayCodec.writeException(out, message, new TApplicationException(TApplicationException.MISSING_RESULT, "No recorded reply: " + message.name));
+                return;
+            }
+            codec.writeReply(out, message, value);
+            error = false;
+        } finally {
+            metrics.end(startTime, error);
+        }
+    }
+
+    //多路复用时消息名为service:method
+    static MethodMetrics metrics(MetricsRegistry metricsRegistry, String defaultServiceName, String name) {
+        int split = name.indexOf(':');
+        String serviceName = split < 0 ? defaultServiceName : name.substring(0, split);
+        return metricsRegistry.service(serviceName).method(name.substring(split + 1));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.store.close();
+    }
+}
@@ -0,0 +1,247 @@
+package com.mamba.mocking.thrift.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+//只追加的内存映射文件: 按固定大小分段映射, 每段以(magic, segmentSize)开头, 之后为记录(keyLength, valueLength, key, value);
+//keyLength为0表示段结束. 打开时扫描全部记录重建内存中的开放寻址哈希索引, 相同key只保留第一条
+public class ReplayStore implements AutoCloseable {
+
+    private static final int MAGIC = 0x5452504c;
+
+    private static final int SEGMENT_HEADER = 8;
+
+    private static final int RECORD_HEADER = 8;
+
+    private final FileChannel channel;
+
+    private final boolean readOnly;
+
+    private final int segmentSize;
+
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    //索引: hashes与offsets一一对应, offset为记录在文件中的位置, 0表示空槽(记录不会出现在段首)
+    private long[] hashes = new long[1024];
+
+    private long[] offsets = new long[1024];
+
+    private int size;
+
+    //当前段的写入位置
+    private int position;
+
+    private ReplayStore(FileChannel channel, boolean readOnly, int segmentSize) {
+        this.channel = channel;
+        this.readOnly = readOnly;
+        this.segmentSize = segmentSize;
+    }
+
+    public static ReplayStore open(File file, int segmentSize, boolean readOnly) throws IOException {
+        if (readOnly && !file.isFile()) {
+            throw new IllegalArgumentException("Replay file not found: " + file);
+        }
+        FileChannel channel = readOnly ? FileChannel.open(file.toPath(), StandardOpenOption.READ)
+                : FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            if (channel.size() >= SEGMENT_HEADER) {
+                ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER);
+                channel.read(header, 0);
+                if (header.getInt(0) != MAGIC) {
+                    throw new IllegalArgumentException("Invalid replay file: " + file);
+                }
+                segmentSize = header.getInt(4);
+            } else if (segmentSize <= SEGMENT_HEADER + RECORD_HEADER) {
+                throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+            }
+            ReplayStore store = new ReplayStore(channel, readOnly, segmentSize);
+            store.load();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void load() throws IOException {
+        long segmentCount = this.channel.size() / this.segmentSize;
+        for (int i = 0; i < segmentCount; i++) {
+            MappedByteBuffer segment = map(i);
+            int position = SEGMENT_HEADER;
+            while (position + RECORD_HEADER <= this.segmentSize) {
+                int keyLength = segment.getInt(position);
+                if (keyLength == 0) {
+                    break;
+                }
+                int valueLength = segment.getInt(position + 4);
+                long offset = (long) i * this.segmentSize + position;
+                long hash = hash(segment, position + RECORD_HEADER, keyLength);
+                if (find(hash, null, keyLength, segment, position + RECORD_HEADER) < 0) {
+                    insert(hash, offset);
+                }
+                position += RECORD_HEADER + keyLength + valueLength;
+            }
+            this.position = position;
+        }
+        if (this.segments.isEmpty() && !this.readOnly) {
+            map(0);
+            this.position = SEGMENT_HEADER;
+        }
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        FileChannel.MapMode mode = this.readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+        MappedByteBuffer segment = this.channel.map(mode, (long) index * this.segmentSize, this.segmentSize);
+        if (!this.readOnly && segment.getInt(0) != MAGIC) {
+            segment.putInt(4, this.segmentSize);
+            segment.putInt(0, MAGIC);
+        }
+        this.segments.add(segment);
+        return segment;
+    }
+
+    //已存在相同key时不写入, 返回false
+    public synchronized boolean put(byte[] key, int keyLength, byte[] value, int valueLength) throws IOException {
+        if (this.readOnly) {
+            throw new IllegalStateException("Replay store is read only");
+        }
+        long hash = hash(key, keyLength);
+        if (find(hash, key, keyLength, null, 0) >= 0) {
+            return false;
+        }
+        int recordLength = RECORD_HEADER + keyLength + valueLength;
+        if (SEGMENT_HEADER + recordLength > this.segmentSize) {
+            throw new IllegalArgumentException("Record too large: " + recordLength + ", segmentSize: " + this.segmentSize);
+        }
+        if (this.position + recordLength > this.segmentSize) {
+            map(this.segments.size());
+            this.position = SEGMENT_HEADER;
+        }
+        MappedByteBuffer segment = this.segments.get(this.segments.size() - 1);
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(this.position + RECORD_HEADER);
+        buffer.put(key, 0, keyLength);
+        buffer.put(value, 0, valueLength);
+        if (this.position + recordLength + RECORD_HEADER <= this.segmentSize) {
+            segment.putInt(this.position + recordLength, 0);
+        }
+        //keyLength最后写入, 进程中途退出时不会留下半条记录
+        segment.putInt(this.position + 4, valueLength);
+        segment.putInt(this.position, keyLength);
+        insert(hash, (long) (this.segments.size() - 1) * this.segmentSize + this.position);
+        this.position += recordLength;
+        return true;
+    }
+
+    //返回value的只读视图, 未找到时返回null; 只读模式下可并发调用
+    public ByteBuffer get(byte[] key, int keyLength) {
+        long hash = hash(key, keyLength);
+        int slot = find(hash, key, keyLength, null, 0);
+        if (slot < 0) {
+            return null;
+        }
+        long offset = this.offsets[slot];
+        MappedByteBuffer segment = this.segments.get((int) (offset / this.segmentSize));
+        int position = (int) (offset % this.segmentSize);
+        int valueLength = segment.getInt(position + 4);
+        ByteBuffer value = segment.duplicate();
+        value.position(position + RECORD_HEADER + keyLength);
+        value.limit(position + RECORD_HEADER + keyLength + valueLength);
+        return value;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!this.readOnly) {
+            for (MappedByteBuffer segment : this.segments) {
+                segment.force();
+            }
+        }
+        this.channel.close();
+    }
+
+    //key为byte[]或映射中的一段, 二者取其一
+    private int find(long hash, byte[] key, int keyLength, ByteBuffer keySegment, int keyPosition) {
+        int mask = this.hashes.length - 1;
+        for (int slot = (int) hash & mask; this.offsets[slot] != 0; slot = (slot + 1) & mask) {
+            if (this.hashes[slot] == hash && keyEquals(this.offsets[slot], key, keyLength, keySegment, keyPosition)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(long offset, byte[] key, int keyLength, ByteBuffer keySegment, int keyPosition) {
+        MappedByteBuffer segment = this.segments.get((int) (offset / this.segmentSize));
+        int position = (int) (offset % this.segmentSize);
+        if (segment.getInt(position) != keyLength) {
+            return false;
+        }
+        position += RECORD_HEADER;
+        for (int i = 0; i < keyLength; i++) {
+            byte b = key == null ? keySegment.get(keyPosition + i) : key[i];
+            if (segment.get(position + i) != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(long hash, long offset) {
+        if ((this.size + 1) * 2 > this.hashes.length) {
+            long[] hashes = this.hashes;
+            long[] offsets = this.offsets;
+            this.hashes = new long[hashes.length * 2];
+            this.offsets = new long[offsets.length * 2];
+            for (int i = 0; i < hashes.length; i++) {
+                if (offsets[i] != 0) {
+                    put(hashes[i], offsets[i]);
+                }
+            }
+        }
+        put(hash, offset);
+        this.size++;
+    }
+
+    private void put(long hash, long offset) {
+        int mask = this.hashes.length - 1;
+        int slot = (int) hash & mask;
+        while (this.offsets[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        this.hashes[slot] = hash;
+        this.offsets[slot] = offset;
+    }
+
+    //FNV-1a 64
+    private static long hash(byte[] key, int keyLength) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < keyLength; i++) {
+            hash = (hash ^ (key[i] & 0xff)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long hash(ByteBuffer segment, int position, int keyLength) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < keyLength; i++) {
+            hash = (hash ^ (segment.get(position + i) & 0xff)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    //低位用于定位槽位, 再混合一次高位
+    private static long mix(long hash) {
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,140 @@
+package com.mamba.mocking.thrift.rule;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+//参数路径: 参数名(或下标).struct字段.map的key.list的下标, 例如 in.items.0.id; 启动时解析为访问器链, 规则与返回值模板共用
+public final class ArgumentPath {
+
+    private final String expression;
+
+    private final int argIndex;
+
+    private final Function<Object, Object>[] accessors;
+
+    //路径末端的静态类型, 用于把json常量转换为可以equals/compareTo的值
+    private final Type type;
+
+    private ArgumentPath(String expression, int argIndex, Function<Object, Object>[] accessors, Type type) {
+        this.expression = expression;
+        this.argIndex = argIndex;
+        this.accessors = accessors;
+        this.type = type;
+    }
+
+    public static ArgumentPath compile(String expression, String[] argNames, Type[] argTypes) {
+        String[] segments = expression.split("\\.");
+        int argIndex = indexOf(argNames, segments[0]);
+        if (argIndex < 0) {
+            throw new IllegalArgumentException("Unknown argument: " + segments[0] + " in " + expression);
+        }
+        Type type = argTypes[argIndex];
+        Function<Object, Object>[] accessors = new Function[segments.length - 1];
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            Class<?> rawType = rawType(type);
+            if (TBase.class.isAssignableFrom(rawType)) {
+                TFieldIdEnum field = findField(rawType, segment, expression);
+                accessors[i - 1] = value -> ((TBase) value).getFieldValue(field);
+                try {
+                    type = rawType.getField(field.getFieldName()).getGenericType();
+                } catch (NoSuchFieldException e) {
+                    throw new IllegalArgumentException("Unknown field: " + segment + " in " + expression);
+                }
+            } else if (Map.class.isAssignableFrom(rawType)) {
+                Type[] typeArguments = typeArguments(type);
+                Object key = segment;
+                if (typeArguments != null && !(typeArguments[0] instanceof Class && typeArguments[0] == String.class)) {
+                    key = RuleParser.convert(segment, typeArguments[0]);
+                }
+                Object mapKey = key;
+                accessors[i - 1] = value -> ((Map<?, ?>) value).get(mapKey);
+                type = typeArguments == null ? Object.class : typeArguments[1];
+            } else if (List.class.isAssignableFrom(rawType)) {
+                int index = Integer.parseInt(segment);
+                accessors[i - 1] = value -> {
+                    List<?> list = (List<?>) value;
+                    return index < list.size() ? list.get(index) : null;
+                };
+                Type[] typeArguments = typeArguments(type);
+                type = typeArguments == null ? Object.class : typeArguments[0];
+            } else {
+                throw new IllegalArgumentException("Unsupported path: " + segment + " in " + expression);
+            }
+        }
+        return new ArgumentPath(expression, argIndex, accessors, type);
+    }
+
+    public Object extract(Object[] args) {
+        if (args == null || this.argIndex >= args.length) {
+            return null;
+        }
+        Object value = args[this.argIndex];
+        for (Function<Object, Object> accessor : this.accessors) {
+            if (value == null) {
+                return null;
+            }
+            value = accessor.apply(value);
+        }
+        return value;
+    }
+
+    String getExpression() {
+        return this.expression;
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    private static int indexOf(String[] argNames, String name) {
+        for (int i = 0; i < argNames.length; i++) {
+            if (argNames[i].equals(name)) {
+                return i;
+            }
+        }
+        //arg0或0
+        String index = name.startsWith("arg") ? name.substring(3) : name;
+        try {
+            int i = Integer.parseInt(index);
+            return i < argNames.length ? i : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static TFieldIdEnum findField(Class<?> structClass, String name, String expression) {
+        try {
+            Class<?> fieldsClass = Class.forName(structClass.getName() + "$_Fields", true, structClass.getClassLoader());
+            Method findByName = fieldsClass.getMethod("findByName", String.class);
+            TFieldIdEnum field = (TFieldIdEnum) findByName.invoke(null, name);
+            if (field != null) {
+                return field;
+            }
+        } catch (ReflectiveOperationException e) {
+            //fall through
+        }
+        throw new IllegalArgumentException("Unknown field: " + name + " in " + expression);
+    }
+
+    static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return Object.class;
+    }
+
+    private static Type[] typeArguments(Type type) {
+        return type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments() : null;
+    }
+}
@@ -0,0 +1,52 @@
+package com.mamba.mocking.thrift.rule;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+//一条规则: 相等条件(可编入索引)+其他条件(逐条判断); order为声明顺序
+final class Rule<T> {
+
+    private final int order;
+
+    private final List<ArgumentPath> equalPaths;
+
+    //每个路径可接受的值, in条件有多个
+    private final List<List<Object>> equalValues;
+
+    private final List<Predicate<Object[]>> conditions;
+
+    private final T value;
+
+    Rule(int order, List<ArgumentPath> equalPaths, List<List<Object>> equalValues, List<Predicate<Object[]>> conditions, T value) {
+        this.order = order;
+        this.equalPaths = equalPaths;
+        this.equalValues = equalValues;
+        this.conditions = conditions;
+        this.value = value;
+    }
+
+    int getOrder() {
+        return this.order;
+    }
+
+    List<ArgumentPath> getEqualPaths() {
+        return this.equalPaths;
+    }
+
+    List<List<Object>> getEqualValues() {
+        return this.equalValues;
+    }
+
+    T getValue() {
+        return this.value;
+    }
+
+    boolean testConditions(Object[] args) {
+        for (Predicate<Object[]> condition : this.conditions) {
+            if (!condition.test(args)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
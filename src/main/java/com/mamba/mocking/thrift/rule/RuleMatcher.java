@@ -0,0 +1,116 @@
+package com.mamba.mocking.thrift.rule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//按参数选择响应: 相等/in条件按路径组合编入哈希索引, 其余规则按声明顺序扫描; 多条命中时取声明在前的
+public final class RuleMatcher<T> {
+
+    private final IndexGroup<T>[] indexGroups;
+
+    private final Rule<T>[] scanRules;
+
+    private RuleMatcher(IndexGroup<T>[] indexGroups, Rule<T>[] scanRules) {
+        this.indexGroups = indexGroups;
+        this.scanRules = scanRules;
+    }
+
+    static <T> RuleMatcher<T> compile(List<Rule<T>> rules) {
+        Map<String, IndexGroup<T>> indexGroupMap = new LinkedHashMap<>();
+        List<Rule<T>> scanRules = new ArrayList<>();
+        for (Rule<T> rule : rules) {
+            if (rule.getEqualPaths().isEmpty()) {
+                scanRules.add(rule);
+                continue;
+            }
+            String signature = rule.getEqualPaths().stream().map(ArgumentPath::getExpression).reduce((a, b) -> a + ',' + b).orElse("");
+            indexGroupMap.computeIfAbsent(signature, key -> new IndexGroup<>(rule.getEqualPaths())).add(rule);
+        }
+        scanRules.sort(Comparator.comparingInt(Rule::getOrder));
+        return new RuleMatcher<>(indexGroupMap.values().toArray(new IndexGroup[0]), scanRules.toArray(new Rule[0]));
+    }
+
+    //没有命中时返回null
+    public T match(Object[] args) {
+        Rule<T> matched = null;
+        for (IndexGroup<T> indexGroup : this.indexGroups) {
+            Rule<T> rule = indexGroup.match(args);
+            if (rule != null && (matched == null || rule.getOrder() < matched.getOrder())) {
+                matched = rule;
+            }
+        }
+        for (Rule<T> rule : this.scanRules) {
+            if (matched != null && rule.getOrder() > matched.getOrder()) {
+                break;
+            }
+            if (rule.testConditions(args)) {
+                matched = rule;
+                break;
+            }
+        }
+        return matched == null ? null : matched.getValue();
+    }
+
+    private static final class IndexGroup<T> {
+
+        private final ArgumentPath[] paths;
+
+        //单个路径时key为值本身, 多个路径时为值列表; value按声明顺序排列
+        private final Map<Object, List<Rule<T>>> index = new HashMap<>();
+
+        private IndexGroup(List<ArgumentPath> paths) {
+            this.paths = paths.toArray(new ArgumentPath[0]);
+        }
+
+        private void add(Rule<T> rule) {
+            List<List<Object>> keys = Collections.singletonList(Collections.emptyList());
+            for (List<Object> values : rule.getEqualValues()) {
+                List<List<Object>> expanded = new ArrayList<>(keys.size() * values.size());
+                for (List<Object> key : keys) {
+                    for (Object value : values) {
+                        List<Object> next = new ArrayList<>(key);
+                        next.add(value);
+                        expanded.add(next);
+                    }
+                }
+                keys = expanded;
+            }
+            for (List<Object> key : keys) {
+                List<Rule<T>> indexed = this.index.computeIfAbsent(key.size() == 1 ? key.get(0) : key, k -> new ArrayList<>(1));
+                //同一个key重复出现时只保留声明在前的
+                if (indexed.isEmpty() || indexed.get(indexed.size() - 1) != rule) {
+                    indexed.add(rule);
+                }
+            }
+        }
+
+        private Rule<T> match(Object[] args) {
+            Object key;
+            if (this.paths.length == 1) {
+                key = this.paths[0].extract(args);
+            } else {
+                Object[] values = new Object[this.paths.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = this.paths[i].extract(args);
+                }
+                key = Arrays.asList(values);
+            }
+            List<Rule<T>> rules = this.index.get(key);
+            if (rules == null) {
+                return null;
+            }
+            for (Rule<T> rule : rules) {
+                if (rule.testConditions(args)) {
+                    return rule;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.mamba.mocking.thrift.rule;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+//规则格式: [{"when": {"参数路径": 常量 | {"操作符": 常量, ...}}, ...其他字段交给valueMapper}, ...]
+//操作符: eq, in(可编入索引), ne, gt, gte, lt, lte, regex, exists; 没有when的规则总是命中
+public class RuleParser {
+
+    private static final Gson GSON = new Gson();
+
+    private static final Set<String> OPERATORS = new HashSet<>(Arrays.asList("eq", "in", "ne", "gt", "gte", "lt", "lte", "regex", "exists"));
+
+    public static <T> RuleMatcher<T> parseRules(String json, Class<?> serviceClass, Method method, Function<JsonObject, T> valueMapper) {
+        return parseRules(json, argNames(serviceClass, method), method.getGenericParameterTypes(), valueMapper);
+    }
+
+    public static <T> RuleMatcher<T> parseRules(String json, String[] argNames, Type[] argTypes, Function<JsonObject, T> valueMapper) {
+        JsonArray array = JsonParser.parseString(json).getAsJsonArray();
+        List<Rule<T>> rules = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            JsonObject ruleObject = array.get(i).getAsJsonObject();
+            List<ArgumentPath> equalPaths = new ArrayList<>();
+            List<List<Object>> equalValues = new ArrayList<>();
+            List<Predicate<Object[]>> conditions = new ArrayList<>();
+            JsonElement when = ruleObject.get("when");
+            if (when != null && !when.isJsonNull()) {
+                for (Map.Entry<String, JsonElement> entry : when.getAsJsonObject().entrySet()) {
+                    ArgumentPath path = ArgumentPath.compile(entry.getKey(), argNames, argTypes);
+                    parseCondition(path, entry.getValue(), equalPaths, equalValues, conditions);
+                }
+            }
+            rules.add(new Rule<>(i, equalPaths, equalValues, conditions, valueMapper.apply(ruleObject)));
+        }
+        return RuleMatcher.compile(rules);
+    }
+
+    //参数名取自xxx_args的_Fields, 与Iface方法的参数顺序一致
+    public static String[] argNames(Class<?> serviceClass, Method method) {
+        String[] argNames = new String[method.getParameterCount()];
+        try {
+            Class<?> fieldsClass = Class.forName(serviceClass.getName() + '$' + method.getName() + "_args$_Fields", true, serviceClass.getClassLoader());
+            Object[] fields = fieldsClass.getEnumConstants();
+            for (int i = 0; i < argNames.length && i < fields.length; i++) {
+                argNames[i] = (String) fieldsClass.getMethod("getFieldName").invoke(fields[i]);
+            }
+        } catch (ReflectiveOperationException e) {
+            //只能按下标引用参数
+        }
+        for (int i = 0; i < argNames.length; i++) {
+            if (argNames[i] == null) {
+                argNames[i] = "arg" + i;
+            }
+        }
+        return argNames;
+    }
+
+    static Object convert(String value, Type type) {
+        return convert(new JsonPrimitive(value), type);
+    }
+
+    private static Object convert(JsonElement value, Type type) {
+        return value.isJsonNull() ? null : GSON.fromJson(value, type);
+    }
+
+    private static void parseCondition(ArgumentPath path, JsonElement value, List<ArgumentPath> equalPaths, List<List<Object>> equalValues, List<Predicate<Object[]>> conditions) {
+        if (!isOperators(value)) {
+            addEqual(path, Collections.singletonList(convert(value, path.getType())), equalPaths, equalValues, conditions);
+            return;
+        }
+        for (Map.Entry<String, JsonElement> entry : value.getAsJsonObject().entrySet()) {
+            JsonElement operand = entry.getValue();
+            switch (entry.getKey()) {
+                case "eq":
+                    addEqual(path, Collections.singletonList(convert(operand, path.getType())), equalPaths, equalValues, conditions);
+                    break;
+                case "in": {
+                    List<Object> values = new ArrayList<>();
+                    for (JsonElement element : operand.getAsJsonArray()) {
+                        values.add(convert(element, path.getType()));
+                    }
+                    addEqual(path, values, equalPaths, equalValues, conditions);
+                    break;
+                }
+                case "ne": {
+                    Object expected = convert(operand, path.getType());
+                    conditions.add(args -> !Objects.equals(path.extract(args), expected));
+                    break;
+                }
+                case "gt":
+                    conditions.add(compare(path, operand, c -> c > 0));
+                    break;
+                case "gte":
+                    conditions.add(compare(path, operand, c -> c >= 0));
+                    break;
+                case "lt":
+                    conditions.add(compare(path, operand, c -> c < 0));
+                    break;
+                case "lte":
+                    conditions.add(compare(path, operand, c -> c <= 0));
+                    break;
+                case "regex": {
+                    Pattern pattern = Pattern.compile(operand.getAsString());
+                    conditions.add(args -> {
+                        Object actual = path.extract(args);
+                        return actual != null && pattern.matcher(actual.toString()).matches();
+                    });
+                    break;
+                }
+                case "exists": {
+                    boolean exists = operand.getAsBoolean();
+                    conditions.add(args -> (path.extract(args) != null) == exists);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unsupported operator: " + entry.getKey());
+            }
+        }
+    }
+
+    //同一路径出现多个相等条件时, 只有第一个编入索引
+    private static void addEqual(ArgumentPath path, List<Object> values, List<ArgumentPath> equalPaths, List<List<Object>> equalValues, List<Predicate<Object[]>> conditions) {
+        for (ArgumentPath equalPath : equalPaths) {
+            if (equalPath.getExpression().equals(path.getExpression())) {
+                conditions.add(args -> values.contains(path.extract(args)));
+                return;
+            }
+        }
+        equalPaths.add(path);
+        equalValues.add(values);
+    }
+
+    private static Predicate<Object[]> compare(ArgumentPath path, JsonElement operand, Predicate<Integer> test) {
+        Object expected = convert(operand, path.getType());
+        if (!(expected instanceof Comparable)) {
+            throw new IllegalArgumentException("Not comparable: " + path.getExpression());
+        }
+        Comparable<Object> comparable = (Comparable<Object>) expected;
+        return args -> {
+            Object actual = path.extract(args);
+            //compareTo方向与actual相反
+            return actual != null && test.test(-comparable.compareTo(actual));
+        };
+    }
+
+    private static boolean isOperators(JsonElement value) {
+        if (!value.isJsonObject() || value.getAsJsonObject().size() == 0) {
+            return false;
+        }
+        for (String key : value.getAsJsonObject().keySet()) {
+            if (!OPERATORS.contains(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
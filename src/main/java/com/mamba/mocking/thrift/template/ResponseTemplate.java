@@ -0,0 +1,365 @@
+package com.mamba.mocking.thrift.template;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.mamba.mocking.thrift.rule.ArgumentPath;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.TFieldRequirementType;
+import org.apache.thrift.meta_data.FieldMetaData;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+//返回值模板: json字符串中的${变量}在每次调用时替换, $${转义为${
+//变量: arg.参数路径(同rules), counter(该返回值的调用序号, 从1开始), now(收到请求时的毫秒时间戳), uuid, random(非负long)
+//字符串只含一个变量时按字段类型转换(如i64字段"${counter}"), 否则拼接为字符串后转换.
+//加载时编译: 不含变量的部分用Gson解析一次并共享; 调用时只复制变量所在路径上的struct/容器, 用生成代码的setFieldValue填入, 不解析json、不反射
+public final class ResponseTemplate {
+
+    private static final Gson GSON = new Gson();
+
+    private final Part root;
+
+    private final AtomicLong counter = new AtomicLong();
+
+    private ResponseTemplate(Part root) {
+        this.root = root;
+    }
+
+    //快速判断, 可能误判(如"${"出现在key中), 编译后不含变量的部分仍按常量处理
+    public static boolean isTemplate(String json) {
+        return json != null && json.contains("${");
+    }
+
+    public static boolean isTemplate(JsonElement json) {
+        return containsVariable(json);
+    }
+
+    public static ResponseTemplate compile(String json, Type type, String[] argNames, Type[] argTypes) {
+        return compile(JsonParser.parseString(json), type, argNames, argTypes);
+    }
+
+    public static ResponseTemplate compile(JsonElement json, Type type, String[] argNames, Type[] argTypes) {
+        return new ResponseTemplate(new Compiler(argNames, argTypes).compile(json, type));
+    }
+
+    public Object render(Object[] args) {
+        return this.root.render(args, this.counter.incrementAndGet());
+    }
+
+    private interface Part {
+
+        Object render(Object[] args, long counter);
+    }
+
+    private interface Variable {
+
+        Object value(Object[] args, long counter);
+    }
+
+    private static final class Compiler {
+
+        private final String[] argNames;
+
+        private final Type[] argTypes;
+
+        private Compiler(String[] argNames, Type[] argTypes) {
+            this.argNames = argNames;
+            this.argTypes = argTypes;
+        }
+
+        private Part compile(JsonElement json, Type type) {
+            if (!containsVariable(json)) {
+                Object value = json.isJsonNull() ? null : GSON.fromJson(json, type);
+                return (args, counter) -> value;
+            }
+            Class<?> rawType = rawType(type);
+            if (json.isJsonPrimitive()) {
+                return compileExpression(json.getAsString(), rawType);
+            }
+            if (json.isJsonObject() && TBase.class.isAssignableFrom(rawType)) {
+                return compileStruct(json.getAsJsonObject(), (Class<? extends TBase>) rawType);
+            }
+            if (json.isJsonObject() && Map.class.isAssignableFrom(rawType)) {
+                return compileMap(json.getAsJsonObject(), typeArgument(type, 0), typeArgument(type, 1));
+            }
+            if (json.isJsonArray() && (List.class.isAssignableFrom(rawType) || Set.class.isAssignableFrom(rawType))) {
+                return compileCollection(json.getAsJsonArray(), typeArgument(type, 0), Set.class.isAssignableFrom(rawType));
+            }
+            throw new IllegalArgumentException("Unsupported template: " + json + " for " + type.getTypeName());
+        }
+
+        //不含变量的字段用Gson解析为常量struct, 调用时从空struct复制(共享引用)并填入变量字段
+        private Part compileStruct(JsonObject json, Class<? extends TBase> structClass) {
+            Map<? extends TFieldIdEnum, FieldMetaData> metaDataMap = FieldMetaData.getStructMetaDataMap(structClass);
+            JsonObject constantJson = new JsonObject();
+            List<TFieldIdEnum> variableFields = new ArrayList<>();
+            List<Part> variableParts = new ArrayList<>();
+            for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+                if (!containsVariable(entry.getValue())) {
+                    constantJson.add(entry.getKey(), entry.getValue());
+                    continue;
+                }
+                TFieldIdEnum field = findField(metaDataMap, entry.getKey(), structClass);
+                Type fieldType;
+                try {
+                    fieldType = structClass.getField(field.getFieldName()).getGenericType();
+                } catch (NoSuchFieldException e) {
+                    throw new IllegalArgumentException("Unknown field: " + entry.getKey() + " of " + structClass.getName());
+                }
+                variableFields.add(field);
+                variableParts.add(compile(entry.getValue(), fieldType));
+            }
+            TBase prototype;
+            try {
+                prototype = structClass.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Create struct failed: " + structClass.getName(), e);
+            }
+            TBase constant = GSON.fromJson(constantJson, structClass);
+            //Gson不设置isset位: 与直接解析的返回值一致, 未设置的optional原始类型字段不复制(否则会被写出)
+            List<TFieldIdEnum> constantFields = new ArrayList<>();
+            List<Object> constantValues = new ArrayList<>();
+            for (Map.Entry<? extends TFieldIdEnum, FieldMetaData> entry : metaDataMap.entrySet()) {
+                TFieldIdEnum field = entry.getKey();
+                Object value = constant.getFieldValue(field);
+                if (value == null || variableFields.contains(field)) {
+                    continue;
+                }
+                FieldMetaData metaData = entry.getValue();
+                if (metaData.requirementType == TFieldRequirementType.OPTIONAL && !metaData.valueMetaData.isStruct() && !metaData.valueMetaData.isContainer() && !constant.isSet(field)) {
+                    continue;
+                }
+                constantFields.add(field);
+                constantValues.add(value);
+            }
+            TFieldIdEnum[] fields = constantFields.toArray(new TFieldIdEnum[0]);
+            Object[] values = constantValues.toArray();
+            TFieldIdEnum[] variables = variableFields.toArray(new TFieldIdEnum[0]);
+            Part[] parts = variableParts.toArray(new Part[0]);
+            return (args, counter) -> {
+                TBase struct = prototype.deepCopy();
+                for (int i = 0; i < fields.length; i++) {
+                    struct.setFieldValue(fields[i], values[i]);
+                }
+                for (int i = 0; i < variables.length; i++) {
+                    struct.setFieldValue(variables[i], parts[i].render(args, counter));
+                }
+                return struct;
+            };
+        }
+
+        private Part compileCollection(JsonArray json, Type elementType, boolean set) {
+            Part[] elements = new Part[json.size()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = compile(json.get(i), elementType);
+            }
+            return (args, counter) -> {
+                Collection<Object> collection = set ? new HashSet<>((int) Math.ceil(elements.length / 0.75)) : new ArrayList<>(elements.length);
+                for (Part element : elements) {
+                    collection.add(element.render(args, counter));
+                }
+                return collection;
+            };
+        }
+
+        //只支持value中的变量, key在加载时转换
+        private Part compileMap(JsonObject json, Type keyType, Type valueType) {
+            Object[] keys = new Object[json.size()];
+            Part[] values = new Part[json.size()];
+            int i = 0;
+            for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+                if (containsVariable(new JsonPrimitive(entry.getKey()))) {
+                    throw new IllegalArgumentException("Variable in map key is not supported: " + entry.getKey());
+                }
+                keys[i] = GSON.fromJson(new JsonPrimitive(entry.getKey()), keyType);
+                values[i] = compile(entry.getValue(), valueType);
+                i++;
+            }
+            return (args, counter) -> {
+                Map<Object, Object> map = new HashMap<>((int) Math.ceil(keys.length / 0.75));
+                for (int j = 0; j < keys.length; j++) {
+                    map.put(keys[j], values[j].render(args, counter));
+                }
+                return map;
+            };
+        }
+
+        private Part compileExpression(String text, Class<?> type) {
+            List<Object> segments = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            int i = 0;
+            while (i < text.length()) {
+                if (text.startsWith("$${", i)) {
+                    literal.append("${");
+                    i += 3;
+                } else if (text.startsWith("${", i)) {
+                    int end = text.indexOf('}', i);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unclosed variable: " + text);
+                    }
+                    if (literal.length() > 0) {
+                        segments.add(literal.toString());
+                        literal.setLength(0);
+                    }
+                    segments.add(compileVariable(text.substring(i + 2, end).trim()));
+                    i = end + 1;
+                } else {
+                    literal.append(text.charAt(i++));
+                }
+            }
+            if (literal.length() > 0) {
+                segments.add(literal.toString());
+            }
+            Function<Object, Object> converter = converter(type);
+            if (segments.isEmpty()) {
+                Object value = converter.apply("");
+                return (args, counter) -> value;
+            }
+            if (segments.size() == 1 && segments.get(0) instanceof String) {
+                Object value = converter.apply(segments.get(0));
+                return (args, counter) -> value;
+            }
+            if (segments.size() == 1) {
+                Variable variable = (Variable) segments.get(0);
+                return (args, counter) -> converter.apply(variable.value(args, counter));
+            }
+            Object[] parts = segments.toArray();
+            return (args, counter) -> {
+                StringBuilder sb = new StringBuilder();
+                for (Object part : parts) {
+                    sb.append(part instanceof Variable ? ((Variable) part).value(args, counter) : part);
+                }
+                return converter.apply(sb.toString());
+            };
+        }
+
+        private Variable compileVariable(String name) {
+            switch (name) {
+                case "counter":
+                    return (args, counter) -> counter;
+                case "now":
+                    return (args, counter) -> System.currentTimeMillis();
+                case "uuid":
+                    return (args, counter) -> randomUUID().toString();
+                case "random":
+                    return (args, counter) -> ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+                default:
+                    break;
+            }
+            if (name.startsWith("arg.")) {
+                ArgumentPath path = ArgumentPath.compile(name.substring(4), this.argNames, this.argTypes);
+                return (args, counter) -> path.extract(args);
+            }
+            throw new IllegalArgumentException("Unknown variable: ${" + name + "}");
+        }
+    }
+
+    //null保持为null(未设置字段); 类型已匹配时直接使用, 如${arg.input}填入同类型的struct
+    private static Function<Object, Object> converter(Class<?> type) {
+        if (type == String.class) {
+            return value -> value == null ? null : value.toString();
+        }
+        if (type == long.class || type == Long.class) {
+            return value -> value == null ? null : value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+        }
+        if (type == int.class || type == Integer.class) {
+            return value -> value == null ? null : value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+        }
+        if (type == short.class || type == Short.class) {
+            return value -> value == null ? null : value instanceof Number ? ((Number) value).shortValue() : Short.parseShort(value.toString());
+        }
+        if (type == byte.class || type == Byte.class) {
+            return value -> value == null ? null : value instanceof Number ? ((Number) value).byteValue() : Byte.parseByte(value.toString());
+        }
+        if (type == double.class || type == Double.class) {
+            return value -> value == null ? null : value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return value -> value == null ? null : value instanceof Boolean ? value : Boolean.parseBoolean(value.toString());
+        }
+        if (type == ByteBuffer.class) {
+            return value -> value == null || value instanceof ByteBuffer ? value : ByteBuffer.wrap(value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (type.isEnum()) {
+            return value -> value == null || type.isInstance(value) ? value : Enum.valueOf((Class<? extends Enum>) type, value.toString());
+        }
+        return value -> {
+            if (value != null && !type.isInstance(value)) {
+                throw new IllegalArgumentException("Template value " + value.getClass().getName() + " is not " + type.getName());
+            }
+            return value;
+        };
+    }
+
+    private static boolean containsVariable(JsonElement json) {
+        if (json.isJsonPrimitive()) {
+            return json.getAsJsonPrimitive().isString() && json.getAsString().contains("${");
+        }
+        if (json.isJsonArray()) {
+            for (JsonElement element : json.getAsJsonArray()) {
+                if (containsVariable(element)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (json.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+                if (containsVariable(entry.getValue())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static TFieldIdEnum findField(Map<? extends TFieldIdEnum, FieldMetaData> metaDataMap, String name, Class<?> structClass) {
+        for (TFieldIdEnum field : metaDataMap.keySet()) {
+            if (field.getFieldName().equals(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown field: " + name + " of " + structClass.getName());
+    }
+
+    //version 4, 不使用SecureRandom, 避免熵不足时阻塞
+    private static UUID randomUUID() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & 0xFFFFFFFFFFFF0FFFL) | 0x0000000000004000L;
+        long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return Object.class;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        return type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments()[index] : Object.class;
+    }
+}
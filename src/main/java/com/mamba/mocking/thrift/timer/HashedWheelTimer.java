@@ -0,0 +1,232 @@
+package com.mamba.mocking.thrift.timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class HashedWheelTimer implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    //单个tick最多转移的任务数, 避免提交过快时worker线程饿死到期任务
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final long tickNanos;
+
+    //tick最后spinNanos内有到期任务时自旋等待, 0表示只用parkNanos
+    private final long spinNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final long startTime;
+
+    private final Thread worker;
+
+    //已转入时间轮的任务数, 只由worker线程访问
+    private long scheduled;
+
+    //worker没有任务, park到newTimeout唤醒
+    private volatile boolean idle;
+
+    private volatile boolean running = true;
+
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this(name, tickDuration, unit, ticksPerWheel, 0);
+    }
+
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, long spinNanos) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("ticksPerWheel must be in (0, 2^30]: " + ticksPerWheel);
+        }
+        int wheelSize = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+        if (wheelSize <= 0) {
+            wheelSize = 1;
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.spinNanos = Math.max(spinNanos, 0);
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public void newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (!this.running) {
+            throw new IllegalStateException("Timer is closed");
+        }
+        long deadline = System.nanoTime() + unit.toNanos(delay) - this.startTime;
+        this.pendingTimeouts.add(new Timeout(task, deadline));
+        if (this.idle) {
+            LockSupport.unpark(this.worker);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(this.worker);
+    }
+
+    private void run() {
+        long tick = 0;
+        while (this.running) {
+            if (this.scheduled == 0 && this.pendingTimeouts.isEmpty()) {
+                tick = awaitTimeouts(tick);
+                continue;
+            }
+            long deadline = waitForNextTick(tick);
+            if (deadline < 0) {
+                break;
+            }
+            transferTimeoutsToBuckets(tick);
+            this.scheduled -= this.wheel[(int) (tick & this.mask)].expireTimeouts(deadline);
+            tick++;
+        }
+    }
+
+    //时间轮为空时不逐个tick醒来; 先置idle再检查队列, 与newTimeout的先入队再检查idle配对, 不会丢失唤醒.
+    //醒来后时间轮仍为空, 直接跳到当前tick
+    private long awaitTimeouts(long tick) {
+        this.idle = true;
+        while (this.running && this.pendingTimeouts.isEmpty()) {
+            LockSupport.park(this);
+        }
+        this.idle = false;
+        return Math.max(tick, (System.nanoTime() - this.startTime) / this.tickNanos);
+    }
+
+    //只在本tick有到期任务时自旋最后spinNanos, 否则park到tick结束
+    private long waitForNextTick(long tick) {
+        long deadline = this.tickNanos * (tick + 1);
+        boolean spin = false;
+        for (; ; ) {
+            long currentTime = System.nanoTime() - this.startTime;
+            long sleepNanos = deadline - currentTime;
+            if (sleepNanos <= 0) {
+                return currentTime;
+            }
+            if (!this.running) {
+                return -1;
+            }
+            if (sleepNanos > this.spinNanos) {
+                LockSupport.parkNanos(this, sleepNanos - this.spinNanos);
+            } else if (!spin) {
+                //进入自旋窗口时把新提交的任务转入时间轮, 判断本tick是否有到期任务
+                transferTimeoutsToBuckets(tick);
+                spin = this.wheel[(int) (tick & this.mask)].hasDue();
+                if (!spin) {
+                    LockSupport.parkNanos(this, sleepNanos);
+                }
+            }
+        }
+    }
+
+    private void transferTimeoutsToBuckets(long tick) {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = this.pendingTimeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+            long calculated = timeout.deadline / this.tickNanos;
+            timeout.remainingRounds = (calculated - tick) / this.wheel.length;
+            //已经过期的任务放到当前tick, 立即执行
+            long ticks = Math.max(calculated, tick);
+            this.wheel[(int) (ticks & this.mask)].add(timeout);
+            this.scheduled++;
+        }
+    }
+
+    private static class Timeout {
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private long remainingRounds;
+
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        private void expire() {
+            try {
+                this.task.run();
+            } catch (Throwable t) {
+                LOGGER.warn("An exception was thrown by timer task", t);
+            }
+        }
+    }
+
+    //只由worker线程访问, 无需同步
+    private static class Bucket {
+
+        private Timeout head;
+
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            if (this.head == null) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                this.tail = timeout;
+            }
+        }
+
+        private boolean hasDue() {
+            for (Timeout timeout = this.head; timeout != null; timeout = timeout.next) {
+                if (timeout.remainingRounds <= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        //返回执行的任务数
+        private int expireTimeouts(long deadline) {
+            int expired = 0;
+            Timeout prev = null;
+            Timeout timeout = this.head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    if (prev == null) {
+                        this.head = next;
+                    } else {
+                        prev.next = next;
+                    }
+                    if (timeout == this.tail) {
+                        this.tail = prev;
+                    }
+                    timeout.next = null;
+                    timeout.expire();
+                    expired++;
+                } else {
+                    timeout.remainingRounds--;
+                    prev = timeout;
+                }
+                timeout = next;
+            }
+            return expired;
+        }
+    }
+}
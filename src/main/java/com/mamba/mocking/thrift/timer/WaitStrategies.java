@@ -0,0 +1,183 @@
+package com.mamba.mocking.thrift.timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public final class WaitStrategies {
+
+    //当前线程绑定的调度器(Netty event loop): sleep的异步等待在其上调度, 到期任务与请求在同一线程执行, 不经过时间轮
+    private static final ThreadLocal<ScheduledExecutorService> LOCAL_SCHEDULER = new ThreadLocal<>();
+
+    private WaitStrategies() {
+    }
+
+    public static void bindScheduler(ScheduledExecutorService scheduler) {
+        LOCAL_SCHEDULER.set(scheduler);
+    }
+
+    //Thread.sleep + 1ms时间轮, 精度为毫秒级
+    public static WaitStrategy sleep() {
+        return SleepHolder.SLEEP;
+    }
+
+    //parkNanos等待大部分时间, 最后spinNanos自旋; 异步使用tickNanos粒度的时间轮, 只在tick内有任务到期时自旋, 空闲时park
+    public static WaitStrategy precise(long spinNanos, long tickNanos) {
+        if (spinNanos < 0) {
+            throw new IllegalArgumentException("spin must not be negative: " + spinNanos);
+        }
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tick must be greater than 0: " + tickNanos);
+        }
+        return new Precise(spinNanos, new HashedWheelTimer("mock-precise-timer", tickNanos, TimeUnit.NANOSECONDS, 4096, Math.min(spinNanos, tickNanos)));
+    }
+
+    //统计实际延迟与期望延迟的偏差, 每intervalNanos输出一次
+    public static WaitStrategy reporting(WaitStrategy delegate, long intervalNanos) {
+        return new Reporting(delegate, intervalNanos);
+    }
+
+    private static class SleepHolder {
+
+        private static final WaitStrategy SLEEP = new Sleep(new HashedWheelTimer("mock-delay-timer", 1, TimeUnit.MILLISECONDS, 1024));
+    }
+
+    private static class Sleep implements WaitStrategy {
+
+        private final HashedWheelTimer timer;
+
+        private Sleep(HashedWheelTimer timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        public void await(long nanos) throws InterruptedException {
+            if (nanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            }
+        }
+
+        @Override
+        public void schedule(long nanos, Runnable task) {
+            if (nanos <= 0) {
+                task.run();
+                return;
+            }
+            ScheduledExecutorService scheduler = LOCAL_SCHEDULER.get();
+            if (scheduler != null) {
+                scheduler.schedule(task, nanos, TimeUnit.NANOSECONDS);
+            } else {
+                this.timer.newTimeout(task, nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    //precise不使用event loop调度: NIO的select超时只有毫秒精度
+    private static class Precise implements WaitStrategy {
+
+        private final long spinNanos;
+
+        private final HashedWheelTimer timer;
+
+        private Precise(long spinNanos, HashedWheelTimer timer) {
+            this.spinNanos = spinNanos;
+            this.timer = timer;
+        }
+
+        @Override
+        public void await(long nanos) throws InterruptedException {
+            if (nanos <= 0) {
+                return;
+            }
+            long deadline = System.nanoTime() + nanos;
+            for (; ; ) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                if (remaining > this.spinNanos) {
+                    LockSupport.parkNanos(this, remaining - this.spinNanos);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void schedule(long nanos, Runnable task) {
+            if (nanos > 0) {
+                this.timer.newTimeout(task, nanos, TimeUnit.NANOSECONDS);
+            } else {
+                task.run();
+            }
+        }
+    }
+
+    private static class Reporting implements WaitStrategy {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger("DelayAccuracy");
+
+        private final WaitStrategy delegate;
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder requestedSum = new LongAdder();
+
+        private final LongAdder errorSum = new LongAdder();
+
+        private final AtomicLong maxError = new AtomicLong();
+
+        private Reporting(WaitStrategy delegate, long intervalNanos) {
+            this.delegate = delegate;
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mock-delay-report");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(this::report, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void await(long nanos) throws InterruptedException {
+            long startTime = System.nanoTime();
+            this.delegate.await(nanos);
+            record(nanos, System.nanoTime() - startTime);
+        }
+
+        @Override
+        public void schedule(long nanos, Runnable task) {
+            long startTime = System.nanoTime();
+            this.delegate.schedule(nanos, () -> {
+                record(nanos, System.nanoTime() - startTime);
+                task.run();
+            });
+        }
+
+        private void record(long requested, long actual) {
+            long error = actual - requested;
+            this.count.increment();
+            this.requestedSum.add(requested);
+            this.errorSum.add(error);
+            this.maxError.accumulateAndGet(error, Math::max);
+        }
+
+        private void report() {
+            long count = this.count.sumThenReset();
+            if (count == 0) {
+                return;
+            }
+            long requestedSum = this.requestedSum.sumThenReset();
+            long errorSum = this.errorSum.sumThenReset();
+            long maxError = this.maxError.getAndSet(0);
+            LOGGER.info("delay count: {}, requested avg: {}us, actual avg: {}us, error avg: {}us, error max: {}us",
+                    count, requestedSum / count / 1000D, (requestedSum + errorSum) / count / 1000D, errorSum / count / 1000D, maxError / 1000D);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.mamba.mocking.thrift.timer;
+
+public interface WaitStrategy {
+
+    //同步等待, 占用当前线程
+    void await(long nanos) throws InterruptedException;
+
+    //异步等待, 到期后执行task
+    void schedule(long nanos, Runnable task);
+}
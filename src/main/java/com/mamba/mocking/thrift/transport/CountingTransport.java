@@ -0,0 +1,110 @@
+package com.mamba.mocking.thrift.transport;
+
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.apache.thrift.transport.TTransportFactory;
+
+//包在配置的transport外层, 统计protocol实际读写的字节数; 计数为普通字段, 同一连接的读写不会并发, 汇总由TransportEventHandler在请求边界完成
+public final class CountingTransport extends TTransport implements TransportCounter {
+
+    private final TTransport transport;
+
+    private long bytesRead;
+
+    private long bytesWritten;
+
+    public CountingTransport(TTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.transport.isOpen();
+    }
+
+    @Override
+    public boolean peek() {
+        return this.transport.peek();
+    }
+
+    @Override
+    public void open() throws TTransportException {
+        this.transport.open();
+    }
+
+    @Override
+    public void close() {
+        this.transport.close();
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+        int n = this.transport.read(buf, off, len);
+        if (n > 0) {
+            this.bytesRead += n;
+        }
+        return n;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws TTransportException {
+        this.transport.write(buf, off, len);
+        this.bytesWritten += len;
+    }
+
+    @Override
+    public void flush() throws TTransportException {
+        this.transport.flush();
+    }
+
+    //分帧transport的protocol直接读取底层数组, 通过consumeBuffer计数
+    @Override
+    public byte[] getBuffer() {
+        return this.transport.getBuffer();
+    }
+
+    @Override
+    public int getBufferPosition() {
+        return this.transport.getBufferPosition();
+    }
+
+    @Override
+    public int getBytesRemainingInBuffer() {
+        return this.transport.getBytesRemainingInBuffer();
+    }
+
+    @Override
+    public void consumeBuffer(int len) {
+        this.transport.consumeBuffer(len);
+        this.bytesRead += len;
+    }
+
+    //配置的transport, 未包装时原样返回; 自行分帧的server据此判断是否分帧
+    public static TTransportFactory unwrap(TTransportFactory transportFactory) {
+        return transportFactory instanceof Factory ? ((Factory) transportFactory).transportFactory : transportFactory;
+    }
+
+    public static class Factory extends TTransportFactory {
+
+        private final TTransportFactory transportFactory;
+
+        public Factory(TTransportFactory transportFactory) {
+            this.transportFactory = transportFactory;
+        }
+
+        @Override
+        public TTransport getTransport(TTransport trans) {
+            return new CountingTransport(this.transportFactory.getTransport(trans));
+        }
+    }
+}
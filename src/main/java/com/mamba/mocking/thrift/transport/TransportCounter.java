@@ -0,0 +1,9 @@
+package com.mamba.mocking.thrift.transport;
+
+//连接上protocol层累计读写的字节数(不含帧头), 只在处理该连接的线程上访问
+public interface TransportCounter {
+
+    long getBytesRead();
+
+    long getBytesWritten();
+}
@@ -0,0 +1,74 @@
+package com.mamba.mocking.thrift.transport;
+
+import com.mamba.mocking.thrift.metrics.TransportMetrics;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.server.ServerContext;
+import org.apache.thrift.server.TServerEventHandler;
+import org.apache.thrift.transport.TTransport;
+
+//连接与字节统计: createContext/deleteContext对应连接打开与关闭; server在处理每个请求前调用processContext, 此时结算上一个请求的读写字节数.
+//blocking server在连接关闭前的EOF读取之前也会调用一次, 期间没有读到数据, 不计为请求. 需要transport实现TransportCounter(CountingTransport或Netty的ByteBufTransport)
+public class TransportEventHandler implements TServerEventHandler {
+
+    private final TransportMetrics metrics;
+
+    public TransportEventHandler(TransportMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void preServe() {
+    }
+
+    @Override
+    public ServerContext createContext(TProtocol input, TProtocol output) {
+        this.metrics.opened();
+        return new ConnectionContext();
+    }
+
+    @Override
+    public void deleteContext(ServerContext serverContext, TProtocol input, TProtocol output) {
+        ConnectionContext context = (ConnectionContext) serverContext;
+        settle(context);
+        this.metrics.closed(context.requests);
+    }
+
+    @Override
+    public void processContext(ServerContext serverContext, TTransport inputTransport, TTransport outputTransport) {
+        ConnectionContext context = (ConnectionContext) serverContext;
+        if (context.in == null && inputTransport instanceof TransportCounter && outputTransport instanceof TransportCounter) {
+            context.in = (TransportCounter) inputTransport;
+            context.out = (TransportCounter) outputTransport;
+        }
+        settle(context);
+    }
+
+    private void settle(ConnectionContext context) {
+        if (context.in == null) {
+            return;
+        }
+        long bytesRead = context.in.getBytesRead();
+        long bytesWritten = context.out.getBytesWritten();
+        long requestSize = bytesRead - context.bytesRead;
+        if (requestSize > 0) {
+            context.requests++;
+            this.metrics.request(requestSize, bytesWritten - context.bytesWritten);
+        }
+        context.bytesRead = bytesRead;
+        context.bytesWritten = bytesWritten;
+    }
+
+    //每个连接一个, 同一连接的回调不会并发
+    private static class ConnectionContext implements ServerContext {
+
+        private TransportCounter in;
+
+        private TransportCounter out;
+
+        private long bytesRead;
+
+        private long bytesWritten;
+
+        private long requests;
+    }
+}
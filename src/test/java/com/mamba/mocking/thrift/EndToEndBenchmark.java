@@ -0,0 +1,110 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.conf.ServiceConf;
+import com.mamba.mocking.thrift.conf.TProtocolFactoryParser;
+import com.mamba.mocking.thrift.conf.TServerManager;
+import com.mamba.mocking.thrift.conf.TTransportFactoryParser;
+import com.mamba.mocking.thrift.dispatch.DispatchEngine;
+import com.mamba.mocking.thrift.latency.LatencyModels;
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import com.mamba.mocking.thrift.sample.face.SharedStructIn;
+import com.mamba.mocking.thrift.sample.face.SharedStructOut;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//本机回环, 单连接同步调用getStruct; 覆盖server × protocol × transport组合
+//nonblocking server只支持framed transport(NettyServer除TTupleProtocol外均支持TTransport), 不支持的组合在Setup中失败, JMH记录失败后继续下一组
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EndToEndBenchmark {
+
+    @Param({"TSimpleServer", "TThreadPoolServer", "TNonblockingServer", "THsHaServer", "THsHaServer(async=true)", "TThreadedSelectorServer", "TThreadedSelectorServer(async=true)", "NettyServer"})
+    private String server;
+
+    @Param({"TBinaryProtocol", "TCompactProtocol", "TTupleProtocol", "TJSONProtocol"})
+    private String protocol;
+
+    @Param({"TTransport", "TFramedTransport", "TFastFramedTransport"})
+    private String transport;
+
+    private TServer tServer;
+
+    private TTransport clientTransport;
+
+    private SharedService.Client client;
+
+    private SharedStructIn input;
+
+    @Setup
+    public void setup() throws Exception {
+        TServerManager<?, ?> serverManager = TServerManager.newInstance(this.server);
+        boolean unframed = this.server.startsWith("TSimpleServer") || this.server.startsWith("TThreadPoolServer") || this.server.startsWith("NettyServer");
+        if (!unframed && "TTransport".equals(this.transport)) {
+            throw new IllegalArgumentException("Nonblocking server requires framed transport: " + this.server);
+        }
+        TTransportFactory transportFactory = TTransportFactoryParser.parseTransportFactory(this.transport);
+        TProtocolFactory protocolFactory = TProtocolFactoryParser.parseProtocolFactory(this.protocol);
+        MockProcessorFactory processorFactory = new MockProcessorFactory(SharedService.class);
+        ServiceConf serviceConf = new ServiceConf(SharedService.class.getName(), LatencyModels.ZERO, DispatchEngine.GENERATED, Collections.singletonMap("getStruct", MockProcessorBenchmark.mockReturn(1)), Collections.emptyMap());
+        TProcessor processor = serverManager.isAsync()
+                ? processorFactory.newAsyncProcessor(serviceConf, protocolFactory)
+                : processorFactory.newProcessor(serviceConf, protocolFactory);
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        this.tServer = serverManager.start(port, processor, transportFactory, protocolFactory);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!this.tServer.isServing()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Server not started: " + this.server);
+            }
+            Thread.sleep(10);
+        }
+        TSocket socket = new TSocket("127.0.0.1", port);
+        socket.open();
+        this.clientTransport = transportFactory.getTransport(socket);
+        this.client = new SharedService.Client(protocolFactory.getProtocol(this.clientTransport));
+        this.input = new SharedStructIn(1, "input");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.clientTransport != null) {
+            this.clientTransport.close();
+        }
+        if (this.tServer != null) {
+            this.tServer.stop();
+        }
+    }
+
+    @Benchmark
+    public List<SharedStructOut> getStruct() throws Exception {
+        return this.client.getStruct(1101, "token", this.input);
+    }
+}
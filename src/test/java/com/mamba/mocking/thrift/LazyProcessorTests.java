@@ -0,0 +1,35 @@
+package com.mamba.mocking.thrift;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class LazyProcessorTests {
+
+    @Test
+    void test_init_once() {
+        AtomicInteger count = new AtomicInteger();
+        LazyProcessor processor = new LazyProcessor("test", () -> {
+            count.incrementAndGet();
+            return (in, out) -> {
+            };
+        });
+        Assertions.assertEquals(0, count.get());
+        Assertions.assertTrue(processor.init());
+        Assertions.assertTrue(processor.init());
+        Assertions.assertEquals(1, count.get());
+    }
+
+    @Test
+    void test_init_failed() {
+        AtomicInteger count = new AtomicInteger();
+        LazyProcessor processor = new LazyProcessor("test", () -> {
+            count.incrementAndGet();
+            throw new IllegalStateException("invalid conf");
+        });
+        Assertions.assertFalse(processor.init());
+        Assertions.assertFalse(processor.init());
+        Assertions.assertEquals(1, count.get());
+    }
+}
@@ -0,0 +1,99 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.conf.ServiceConf;
+import com.mamba.mocking.thrift.dispatch.DispatchEngine;
+import com.mamba.mocking.thrift.latency.LatencyModels;
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import com.mamba.mocking.thrift.sample.face.SharedStructIn;
+import org.apache.thrift.TByteArrayOutputStream;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+//不经网络, 在内存中处理一次预编码的getStruct请求, 比较各dispatch引擎(PROXY即MockInvocation.invoke)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MockProcessorBenchmark {
+
+    @Param({"PROXY", "GENERATED", "RAW"})
+    private DispatchEngine dispatch;
+
+    @Param({"1", "100"})
+    private int items;
+
+    private TProcessor processor;
+
+    private byte[] request;
+
+    private TMemoryInputTransport inputTransport;
+
+    private TByteArrayOutputStream outputStream;
+
+    private TProtocol inputProtocol;
+
+    private TProtocol outputProtocol;
+
+    @Setup
+    public void setup() throws Exception {
+        MockProcessorFactory processorFactory = new MockProcessorFactory(SharedService.class);
+        this.processor = processorFactory.newProcessor(new ServiceConf(SharedService.class.getName(), LatencyModels.ZERO, this.dispatch, Collections.singletonMap("getStruct", mockReturn(this.items)), Collections.emptyMap()), new TBinaryProtocol.Factory());
+        this.request = encodeRequest();
+        this.inputTransport = new TMemoryInputTransport(this.request);
+        this.outputStream = new TByteArrayOutputStream(1024);
+        this.inputProtocol = new TBinaryProtocol(this.inputTransport);
+        this.outputProtocol = new TBinaryProtocol(new TIOStreamTransport(this.outputStream));
+    }
+
+    @Benchmark
+    public int process() throws Exception {
+        this.inputTransport.reset(this.request);
+        this.outputStream.reset();
+        this.processor.process(this.inputProtocol, this.outputProtocol);
+        return this.outputStream.len();
+    }
+
+    static String mockReturn(int items) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"key\":").append(i).append(",\"value\":\"value-").append(i).append("\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    static byte[] encodeRequest() throws Exception {
+        TMemoryBuffer buffer = new TMemoryBuffer(256);
+        TProtocol protocol = new TBinaryProtocol(buffer);
+        protocol.writeMessageBegin(new TMessage("getStruct", TMessageType.CALL, 1));
+        new SharedService.getStruct_args(1101, "token", new SharedStructIn(1, "input")).write(protocol);
+        protocol.writeMessageEnd();
+        byte[] bytes = new byte[buffer.length()];
+        System.arraycopy(buffer.getArray(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,48 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.conf.ServiceConf;
+import com.mamba.mocking.thrift.dispatch.DispatchEngine;
+import com.mamba.mocking.thrift.latency.LatencyModels;
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+//启动与热加载路径: Gson解析json返回值(genMockReturnMap)并生成新的MockState
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MockStateBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int items;
+
+    private MockProcessorFactory processorFactory;
+
+    private ServiceConf serviceConf;
+
+    @Setup
+    public void setup() throws Exception {
+        this.processorFactory = new MockProcessorFactory(SharedService.class);
+        this.serviceConf = new ServiceConf(SharedService.class.getName(), LatencyModels.ZERO, DispatchEngine.GENERATED, Collections.singletonMap("getStruct", MockProcessorBenchmark.mockReturn(this.items)), Collections.emptyMap());
+    }
+
+    @Benchmark
+    public Object newState() throws Exception {
+        return this.processorFactory.newState(this.serviceConf);
+    }
+}
@@ -0,0 +1,96 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.conf.ServiceConf;
+import com.mamba.mocking.thrift.dispatch.DispatchEngine;
+import com.mamba.mocking.thrift.latency.LatencyModels;
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import com.mamba.mocking.thrift.sample.face.SharedStructIn;
+import org.apache.thrift.TByteArrayOutputStream;
+import org.apache.thrift.TMultiplexedProcessor;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TMultiplexedProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+//按"服务名:方法名"分发, 注册services个服务, 请求最后一个; 对比libthrift的TMultiplexedProcessor与按路由缓存分发的MultiplexedProcessor
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiplexedProcessorBenchmark {
+
+    @Param({"1", "8", "64"})
+    private int services;
+
+    @Param({"TMultiplexedProcessor", "MultiplexedProcessor"})
+    private String multiplexer;
+
+    private TProcessor processor;
+
+    private byte[] request;
+
+    private TMemoryInputTransport inputTransport;
+
+    private TByteArrayOutputStream outputStream;
+
+    private TProtocol inputProtocol;
+
+    private TProtocol outputProtocol;
+
+    @Setup
+    public void setup() throws Exception {
+        TMultiplexedProcessor tMultiplexedProcessor = new TMultiplexedProcessor();
+        MultiplexedProcessor multiplexedProcessor = new MultiplexedProcessor();
+        for (int i = 0; i < this.services; i++) {
+            MockProcessorFactory processorFactory = new MockProcessorFactory(SharedService.class);
+            TProcessor mockProcessor = processorFactory.newProcessor(new ServiceConf(SharedService.class.getName(), LatencyModels.ZERO, DispatchEngine.GENERATED, Collections.singletonMap("getStruct", MockProcessorBenchmark.mockReturn(1)), Collections.emptyMap()), new TBinaryProtocol.Factory());
+            tMultiplexedProcessor.registerProcessor(serviceName(i), mockProcessor);
+            multiplexedProcessor.registerProcessor(serviceName(i), mockProcessor, processorFactory.getServiceMetrics());
+        }
+        this.processor = "MultiplexedProcessor".equals(this.multiplexer) ? multiplexedProcessor : tMultiplexedProcessor;
+        TMemoryBuffer buffer = new TMemoryBuffer(256);
+        TProtocol protocol = new TMultiplexedProtocol(new TBinaryProtocol(buffer), serviceName(this.services - 1));
+        protocol.writeMessageBegin(new TMessage("getStruct", TMessageType.CALL, 1));
+        new SharedService.getStruct_args(1101, "token", new SharedStructIn(1, "input")).write(protocol);
+        protocol.writeMessageEnd();
+        this.request = new byte[buffer.length()];
+        System.arraycopy(buffer.getArray(), 0, this.request, 0, this.request.length);
+        this.inputTransport = new TMemoryInputTransport(this.request);
+        this.outputStream = new TByteArrayOutputStream(1024);
+        this.inputProtocol = new TBinaryProtocol(this.inputTransport);
+        this.outputProtocol = new TBinaryProtocol(new TIOStreamTransport(this.outputStream));
+    }
+
+    @Benchmark
+    public int process() throws Exception {
+        this.inputTransport.reset(this.request);
+        this.outputStream.reset();
+        this.processor.process(this.inputProtocol, this.outputProtocol);
+        return this.outputStream.len();
+    }
+
+    private static String serviceName(int index) {
+        return "SharedService" + index;
+    }
+}
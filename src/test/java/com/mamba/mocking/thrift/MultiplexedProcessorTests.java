@@ -0,0 +1,50 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class MultiplexedProcessorTests {
+
+    @Test
+    void test_process_release() throws Exception {
+        List<TProtocol> protocols = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        MultiplexedProcessor processor = new MultiplexedProcessor();
+        processor.registerProcessor("Shared", (in, out) -> {
+            protocols.add(in);
+            names.add(in.readMessageBegin().name);
+            Assertions.assertNotNull(in.getTransport());
+            if (names.size() == 3) {
+                throw new TException("failed");
+            }
+        }, new MetricsRegistry(false, null).service("Shared"));
+        processor.process(call("Shared:first"), new TBinaryProtocol(new TMemoryBuffer(16)));
+        processor.process(call("Shared:second"), new TBinaryProtocol(new TMemoryBuffer(16)));
+        Assertions.assertThrows(TException.class, () -> processor.process(call("Shared:third"), new TBinaryProtocol(new TMemoryBuffer(16))));
+        Assertions.assertEquals(3, names.size());
+        Assertions.assertEquals("first", names.get(0));
+        Assertions.assertEquals("second", names.get(1));
+        Assertions.assertEquals("third", names.get(2));
+        //同一线程复用一个包装, 调用结束(包括异常)后不再引用连接
+        Assertions.assertSame(protocols.get(0), protocols.get(1));
+        Assertions.assertSame(protocols.get(0), protocols.get(2));
+        Assertions.assertNull(protocols.get(0).getTransport());
+    }
+
+    private static TProtocol call(String name) throws TException {
+        TProtocol protocol = new TBinaryProtocol(new TMemoryBuffer(64));
+        protocol.writeMessageBegin(new TMessage(name, TMessageType.CALL, 1));
+        protocol.writeMessageEnd();
+        return protocol;
+    }
+}
@@ -0,0 +1,37 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import com.mamba.mocking.thrift.metrics.ServiceMetrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MultiplexedRouterTests {
+
+    @Test
+    void test_route() {
+        MetricsRegistry metricsRegistry = new MetricsRegistry(false, null);
+        ServiceMetrics metrics = metricsRegistry.service("Shared");
+        MultiplexedRouter<String> router = new MultiplexedRouter<>();
+        router.register("Shared", "shared", metrics);
+        for (int i = 0; i < 100; i++) {
+            MultiplexedRouter.Route<String> route = router.route("Shared:method" + i);
+            Assertions.assertEquals("shared", route.processor);
+            Assertions.assertEquals("method" + i, route.methodName);
+            Assertions.assertSame(metrics, route.metrics);
+        }
+        //已缓存的路由复用同一个方法名
+        Assertions.assertSame(router.route("Shared:method7").methodName, router.route(new String("Shared:method7")).methodName);
+        Assertions.assertNull(router.route("Unknown:method"));
+        Assertions.assertNull(router.route("method"));
+    }
+
+    @Test
+    void test_route_default() {
+        MultiplexedRouter<String> router = new MultiplexedRouter<>();
+        router.registerDefault("default", new MetricsRegistry(false, null).service("Default"));
+        MultiplexedRouter.Route<String> route = router.route("method");
+        Assertions.assertEquals("default", route.processor);
+        Assertions.assertTrue(route.isDefault());
+        Assertions.assertNull(router.route("Shared:method"));
+    }
+}
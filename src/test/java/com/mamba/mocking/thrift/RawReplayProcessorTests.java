@@ -0,0 +1,93 @@
+package com.mamba.mocking.thrift;
+
+import com.mamba.mocking.thrift.accesslog.AccessLog;
+import com.mamba.mocking.thrift.conf.TProcessorParser;
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import com.mamba.mocking.thrift.sample.face.SharedStructIn;
+import com.mamba.mocking.thrift.sample.face.SharedStructOut;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TMultiplexedProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+class RawReplayProcessorTests {
+
+    @Test
+    void test_replay() throws Exception {
+        Map<String, MockProcessorFactory> processorFactoryMap = new HashMap<>();
+        Properties props = props("[{\"key\":1,\"value\":\"one\"}]");
+        TProcessor processor = TProcessorParser.parseProcessor(props, getClass().getClassLoader(), false, null, new MetricsRegistry(false, null), AccessLog.OFF, processorFactoryMap, "");
+        //固定返回值预编码, 模板返回值不预编码
+        Assertions.assertNotNull(rawReply(processorFactoryMap.get("one")));
+        Assertions.assertNull(rawReply(processorFactoryMap.get("two")));
+
+        //预编码的响应每次写入请求的seqid, 否则recv时报BAD_SEQUENCE_ID
+        Loopback one = new Loopback(processor, new TBinaryProtocol.Factory(), "one");
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(Collections.singletonList(new SharedStructOut(1, "one")), one.call(7));
+        }
+        Loopback two = new Loopback(processor, new TBinaryProtocol.Factory(), "two");
+        Assertions.assertEquals(Collections.singletonList(new SharedStructOut(7, "two")), two.call(7));
+        Assertions.assertEquals(Collections.singletonList(new SharedStructOut(8, "two")), two.call(8));
+        //与预编码不同的协议交给原processor处理
+        Loopback compact = new Loopback(processor, new TCompactProtocol.Factory(), "one");
+        Assertions.assertEquals(Collections.singletonList(new SharedStructOut(1, "one")), compact.call(7));
+
+        //热加载后重新预编码
+        TProcessorParser.reloadProcessor(props("[{\"key\":2,\"value\":\"reloaded\"}]"), processorFactoryMap);
+        Assertions.assertEquals(Collections.singletonList(new SharedStructOut(2, "reloaded")), one.call(7));
+        Assertions.assertEquals(Collections.singletonList(new SharedStructOut(2, "reloaded")), compact.call(7));
+    }
+
+    private static Properties props(String retrun) {
+        Properties props = new Properties();
+        props.setProperty("service.one.class", SharedService.class.getName());
+        props.setProperty("service.one.dispatch", "raw");
+        props.setProperty("service.one.method.getStruct.retrun", retrun);
+        props.setProperty("service.two.class", SharedService.class.getName());
+        props.setProperty("service.two.dispatch", "raw");
+        props.setProperty("service.two.method.getStruct.retrun", "[{\"key\":\"${arg.key}\",\"value\":\"two\"}]");
+        return props;
+    }
+
+    private static RawReply rawReply(MockProcessorFactory processorFactory) {
+        return processorFactory.getStateTable().get(processorFactory.getStateIndex()).getMethodSlot("getStruct").getRawReply();
+    }
+
+    //请求与响应经内存buffer传递, 同一个client的seqid递增
+    private static class Loopback {
+
+        private final TProcessor processor;
+
+        private final TProtocol request;
+
+        private final TProtocol response;
+
+        private final SharedService.Client client;
+
+        private Loopback(TProcessor processor, TProtocolFactory protocolFactory, String serviceName) {
+            this.processor = processor;
+            this.request = protocolFactory.getProtocol(new TMemoryBuffer(64));
+            this.response = protocolFactory.getProtocol(new TMemoryBuffer(64));
+            this.client = new SharedService.Client(this.response, new TMultiplexedProtocol(this.request, serviceName));
+        }
+
+        private List<SharedStructOut> call(int key) throws Exception {
+            this.client.send_getStruct(key, "token", new SharedStructIn(key, "in"));
+            this.processor.process(this.request, this.response);
+            return this.client.recv_getStruct();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.mamba.mocking.thrift.accesslog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class AccessLogBufferTests {
+
+    @Test
+    void test_drop_when_full() {
+        AccessLogBuffer buffer = new AccessLogBuffer(4);
+        for (int i = 0; i < 6; i++) {
+            Assertions.assertEquals(i < 4, buffer.offer(i, "s", "m", i, i, -1, null));
+        }
+        Assertions.assertEquals(2, buffer.takeDropped());
+        List<Integer> seqids = new ArrayList<>();
+        Assertions.assertEquals(4, buffer.drain(entry -> seqids.add(entry.seqid), 100));
+        Assertions.assertEquals(0, buffer.drain(entry -> seqids.add(entry.seqid), 100));
+        Assertions.assertEquals(seqids.toString(), "[0, 1, 2, 3]");
+        Assertions.assertTrue(buffer.offer(4, "s", "m", 4, 4, -1, null));
+    }
+
+    @Test
+    void test_concurrent_offer() throws Exception {
+        AccessLogBuffer buffer = new AccessLogBuffer(1024);
+        int threads = 4;
+        int count = 100000;
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    buffer.offer(i, "s", "m", i, i, -1, null);
+                }
+                latch.countDown();
+            }).start();
+        }
+        AtomicInteger drained = new AtomicInteger();
+        while (latch.getCount() > 0 || buffer.drain(entry -> drained.incrementAndGet(), 1) > 0) {
+            buffer.drain(entry -> drained.incrementAndGet(), 256);
+        }
+        Assertions.assertEquals(threads * count, drained.get() + buffer.takeDropped());
+    }
+}
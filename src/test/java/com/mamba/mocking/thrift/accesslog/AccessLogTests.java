@@ -0,0 +1,105 @@
+package com.mamba.mocking.thrift.accesslog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class AccessLogTests {
+
+    @Test
+    void test_write() throws Exception {
+        FlakyOutput output = new FlakyOutput();
+        try (AccessLog accessLog = new AccessLog(output, 1, 1024, true, false, false)) {
+            accessLog.log("s", "m", 1500000);
+            output.await("s.m delay=1.5 seqid=-1\n", 1);
+        }
+    }
+
+    @Test
+    void test_reopen_after_failure() throws Exception {
+        FlakyOutput output = new FlakyOutput();
+        try (AccessLog accessLog = new AccessLog(output, 1, 1024, false, false, false)) {
+            for (int i = 0; i < 10; i++) {
+                accessLog.log("s", "before", i);
+            }
+            output.await("s.before", 10);
+            //写失败与重新打开失败期间的日志都计为丢失, 后台线程不退出
+            output.broken = true;
+            for (int i = 0; i < 5; i++) {
+                accessLog.log("s", "broken", i);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (output.opens.get() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(output.opens.get() >= 2);
+            output.broken = false;
+            output.await(" dropped=5\n", 1);
+            for (int i = 0; i < 3; i++) {
+                accessLog.log("s", "after", i);
+            }
+            output.await("s.after", 3);
+            Assertions.assertEquals(0, output.count("s.broken"));
+        }
+    }
+
+    //所有打开的流写入同一个buffer; broken时打开与写入都失败
+    private static class FlakyOutput implements AccessLog.Output {
+
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        private final AtomicInteger opens = new AtomicInteger();
+
+        private volatile boolean broken;
+
+        @Override
+        public OutputStream open() throws IOException {
+            this.opens.incrementAndGet();
+            if (this.broken) {
+                throw new IOException("open failed");
+            }
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    if (FlakyOutput.this.broken) {
+                        throw new IOException("write failed");
+                    }
+                    synchronized (FlakyOutput.this.content) {
+                        FlakyOutput.this.content.write(b, off, len);
+                    }
+                }
+            };
+        }
+
+        private int count(String text) {
+            String content;
+            synchronized (this.content) {
+                content = new String(this.content.toByteArray(), StandardCharsets.UTF_8);
+            }
+            int count = 0;
+            for (int index = content.indexOf(text); index >= 0; index = content.indexOf(text, index + text.length())) {
+                count++;
+            }
+            return count;
+        }
+
+        private void await(String text, int expected) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (count(text) < expected && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(expected, count(text));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.mamba.mocking.thrift.bench;
+
+import com.mamba.mocking.thrift.conf.LoadGeneratorParser;
+import com.mamba.mocking.thrift.conf.TProcessorParser;
+import com.mamba.mocking.thrift.metrics.LatencyHistogram;
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TServerSocket;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+class LoadGeneratorTests {
+
+    private static final long DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    void test_closed_loop() throws Exception {
+        try (Server server = new Server()) {
+            LoadGenerator generator = server.bench("closed(method=getStruct,connections=2,pipeline=2,duration=600ms,warmup=200ms)");
+            generator.run();
+            Assertions.assertTrue(generator.getSuccesses() > 0);
+            Assertions.assertEquals(0, generator.getFailures());
+            Assertions.assertTrue(generator.serviceTimeSnapshot().getPercentile(0.5) >= DELAY_NANOS);
+            //未配置interval时取预热期的平均服务时间
+            Assertions.assertTrue(generator.getExpectedIntervalNanos() >= DELAY_NANOS);
+        }
+    }
+
+    @Test
+    void test_open_loop_queueing() throws Exception {
+        try (Server server = new Server()) {
+            //一个连接每秒最多完成50个请求, 到达率200/s: 请求在客户端排队, 响应时间从计划发送时间算起
+            LoadGenerator generator = server.bench("open(method=getStruct,rate=200,connections=1,pipeline=1,duration=1s,warmup=0s)");
+            generator.run();
+            Assertions.assertEquals(0, generator.getFailures());
+            Assertions.assertTrue(generator.getSent() < 100, "sent " + generator.getSent());
+            LatencyHistogram.Snapshot service = generator.serviceTimeSnapshot();
+            LatencyHistogram.Snapshot response = generator.responseTimeSnapshot();
+            Assertions.assertEquals(service.getCount(), response.getCount());
+            Assertions.assertTrue(service.getPercentile(0.99) < TimeUnit.MILLISECONDS.toNanos(200), "service p99 " + service.getPercentile(0.99));
+            Assertions.assertTrue(response.getPercentile(0.99) > TimeUnit.MILLISECONDS.toNanos(300), "response p99 " + response.getPercentile(0.99));
+        }
+    }
+
+    @Test
+    void test_invalid() {
+        Properties props = new Properties();
+        props.setProperty("service.class", SharedService.class.getName());
+        props.setProperty("bench", "open(target=127.0.0.1:1,method=getStruct)");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LoadGeneratorParser.parseLoadGenerator(props, getClass().getClassLoader(), null, null));
+        props.setProperty("bench", "closed(target=127.0.0.1:1,method=missing)");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LoadGeneratorParser.parseLoadGenerator(props, getClass().getClassLoader(), null, null));
+        props.setProperty("bench", "closed(target=127.0.0.1:1,method=getStruct,connections=0)");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LoadGeneratorParser.parseLoadGenerator(props, getClass().getClassLoader(), null, null));
+    }
+
+    //每个连接一个线程, 同一连接上的请求按顺序处理
+    private static class Server implements AutoCloseable {
+
+        private final Properties props = new Properties();
+
+        private final TServer server;
+
+        private final Thread thread;
+
+        private final int port;
+
+        private Server() throws Exception {
+            this.props.setProperty("service.class", SharedService.class.getName());
+            this.props.setProperty("service.method.getStruct.delay", String.valueOf(TimeUnit.NANOSECONDS.toMillis(DELAY_NANOS)));
+            this.props.setProperty("service.method.getStruct.retrun", "[{\"key\":1,\"value\":\"abc\"}]");
+            this.props.setProperty("bench.args", "[1,\"token\",{\"key\":1,\"value\":\"abc\"}]");
+            TServerSocket serverSocket = new TServerSocket(new InetSocketAddress("127.0.0.1", 0));
+            this.port = serverSocket.getServerSocket().getLocalPort();
+            this.server = new TThreadPoolServer(new TThreadPoolServer.Args(serverSocket).processor(TProcessorParser.parseProcessor(this.props, getClass().getClassLoader())));
+            this.thread = new Thread(this.server::serve, "bench-test-server");
+            this.thread.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!this.server.isServing() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(this.server.isServing());
+        }
+
+        private LoadGenerator bench(String define) {
+            Properties props = new Properties();
+            props.putAll(this.props);
+            props.setProperty("bench", define.replace("(", "(target=127.0.0.1:" + this.port + ","));
+            return LoadGeneratorParser.parseLoadGenerator(props, getClass().getClassLoader(), null, null);
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            this.server.stop();
+            this.thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.MockProcessorFactory;
+import com.mamba.mocking.thrift.accesslog.AccessLog;
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import com.mamba.mocking.thrift.sample.face.SharedStructIn;
+import com.mamba.mocking.thrift.sample.face.SharedStructOut;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ConfigWatcherTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void test_hot_reload() throws Exception {
+        Path path = this.dir.resolve("mock.cfg");
+        write(path, "first");
+        Properties props = load(path);
+        Map<String, MockProcessorFactory> processorFactoryMap = new HashMap<>();
+        TProcessor processor = TProcessorParser.parseProcessor(props, getClass().getClassLoader(), false, null, new MetricsRegistry(false, null), AccessLog.OFF, processorFactoryMap, "");
+        AtomicInteger reloads = new AtomicInteger();
+        AtomicInteger rejects = new AtomicInteger();
+        try (ConfigWatcher ignored = new ConfigWatcher(path.toFile(), props, newProps -> {
+            try {
+                TProcessorParser.reloadProcessor(newProps, processorFactoryMap);
+            } catch (Exception e) {
+                rejects.incrementAndGet();
+                throw e;
+            }
+            reloads.incrementAndGet();
+        })) {
+            Assertions.assertEquals("first", call(processor));
+            write(path, "second");
+            await(reloads, 1);
+            Assertions.assertEquals("second", call(processor));
+
+            //内容未变化时不回调
+            write(path, "second");
+            Thread.sleep(500);
+            Assertions.assertEquals(1, reloads.get());
+
+            //非法配置被拒绝, 保留原配置
+            Files.write(path, ("service.class=" + SharedService.class.getName() + "\nservice.method.getStruct.retrun=[{\"key\":\n").getBytes(StandardCharsets.UTF_8));
+            await(rejects, 1);
+            Assertions.assertEquals("second", call(processor));
+
+            //先写临时文件再rename的保存方式
+            Path temp = this.dir.resolve("mock.cfg.tmp");
+            write(temp, "third");
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            await(reloads, 2);
+            Assertions.assertEquals("third", call(processor));
+        }
+    }
+
+    @Test
+    void test_other_file_ignored() throws Exception {
+        Path path = this.dir.resolve("mock.cfg");
+        write(path, "first");
+        AtomicInteger reloads = new AtomicInteger();
+        try (ConfigWatcher ignored = new ConfigWatcher(path.toFile(), load(path), newProps -> reloads.incrementAndGet())) {
+            write(this.dir.resolve("other.cfg"), "second");
+            Thread.sleep(500);
+            Assertions.assertEquals(0, reloads.get());
+        }
+    }
+
+    private static void write(Path path, String value) throws Exception {
+        String content = "service.class=" + SharedService.class.getName() + "\nservice.method.getStruct.retrun=[{\"key\":1,\"value\":\"" + value + "\"}]\n";
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Properties load(Path path) throws Exception {
+        Properties props = new Properties();
+        try (FileInputStream stream = new FileInputStream(path.toFile())) {
+            props.load(stream);
+        }
+        return props;
+    }
+
+    private static void await(AtomicInteger count, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(expected, count.get());
+    }
+
+    private static String call(TProcessor processor) throws Exception {
+        TMemoryBuffer request = new TMemoryBuffer(64);
+        TMemoryBuffer response = new TMemoryBuffer(64);
+        SharedService.Client client = new SharedService.Client(new TBinaryProtocol(response), new TBinaryProtocol(request));
+        client.send_getStruct(1, "token", new SharedStructIn(1, "in"));
+        processor.process(new TBinaryProtocol(request), new TBinaryProtocol(response));
+        List<SharedStructOut> result = client.recv_getStruct();
+        Assertions.assertEquals(1, result.size());
+        return result.get(0).getValue();
+    }
+}
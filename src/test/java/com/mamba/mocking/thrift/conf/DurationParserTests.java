@@ -0,0 +1,26 @@
+package com.mamba.mocking.thrift.conf;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DurationParserTests {
+
+    @Test
+    void test_parse() {
+        Assertions.assertEquals(250D, DurationParser.parseNanos("250ns"));
+        Assertions.assertEquals(250000D, DurationParser.parseNanos("250us"));
+        Assertions.assertEquals(500000D, DurationParser.parseNanos("0.5ms"));
+        //没有单位时为毫秒
+        Assertions.assertEquals(10000000D, DurationParser.parseNanos("10"));
+        Assertions.assertEquals(1000000000D, DurationParser.parseNanos(" 1s "));
+        Assertions.assertEquals(-1000000D, DurationParser.parseNanos("-1ms"));
+    }
+
+    @Test
+    void test_parse_invalid() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DurationParser.parseNanos("10m"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DurationParser.parseNanos("1h"));
+        Assertions.assertThrows(NumberFormatException.class, () -> DurationParser.parseNanos("ms"));
+        Assertions.assertThrows(NumberFormatException.class, () -> DurationParser.parseNanos("1.2.3ms"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.mamba.mocking.thrift.conf;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+class ExecutorParserTests {
+
+    @Test
+    void test_parse() throws Exception {
+        Assertions.assertNull(ExecutorParser.parseExecutor(null));
+        ExecutorService fixed = ExecutorParser.parseExecutor("fixed(threads=3)");
+        try {
+            Assertions.assertEquals(3, ((ThreadPoolExecutor) fixed).getMaximumPoolSize());
+            Assertions.assertTrue(fixed.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS).startsWith("worker-"));
+        } finally {
+            fixed.shutdownNow();
+        }
+        ExecutorService cached = ExecutorParser.parseExecutor("cached(max=5)");
+        try {
+            Assertions.assertEquals(5, ((ThreadPoolExecutor) cached).getMaximumPoolSize());
+            Assertions.assertEquals(0, ((ThreadPoolExecutor) cached).getCorePoolSize());
+        } finally {
+            cached.shutdownNow();
+        }
+        ExecutorService unbounded = ExecutorParser.parseExecutor("cached");
+        try {
+            Assertions.assertEquals(Integer.MAX_VALUE, ((ThreadPoolExecutor) unbounded).getMaximumPoolSize());
+        } finally {
+            unbounded.shutdownNow();
+        }
+        ExecutorService forkJoin = ExecutorParser.parseExecutor("forkjoin(parallelism=2)");
+        try {
+            Assertions.assertEquals(2, ((ForkJoinPool) forkJoin).getParallelism());
+        } finally {
+            forkJoin.shutdownNow();
+        }
+    }
+
+    @Test
+    void test_parse_invalid() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ExecutorParser.parseExecutor("fixed"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ExecutorParser.parseExecutor("unknown(threads=1)"));
+        Assertions.assertThrows(NumberFormatException.class, () -> ExecutorParser.parseExecutor("fixed(threads=x)"));
+    }
+
+    @Test
+    void test_share() throws Exception {
+        ExecutorService executor = ExecutorParser.newCachedExecutor("test-worker-", 0, true);
+        try {
+            ExecutorService first = ExecutorParser.share(executor);
+            ExecutorService second = ExecutorParser.share(executor);
+            CountDownLatch latch = new CountDownLatch(1);
+            first.execute(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            //同libthrift server停止: shutdown后等待本视图的任务完成, 不关闭底层线程池
+            first.shutdown();
+            Assertions.assertThrows(RejectedExecutionException.class, () -> first.execute(() -> {
+            }));
+            Assertions.assertFalse(first.awaitTermination(50, TimeUnit.MILLISECONDS));
+            latch.countDown();
+            Assertions.assertTrue(first.awaitTermination(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(first.isTerminated());
+            Assertions.assertFalse(executor.isShutdown());
+            Assertions.assertEquals("ok", second.submit(() -> "ok").get(5, TimeUnit.SECONDS));
+            second.shutdownNow();
+            Assertions.assertTrue(second.awaitTermination(5, TimeUnit.SECONDS));
+            Assertions.assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
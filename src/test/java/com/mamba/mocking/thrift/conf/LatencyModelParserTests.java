@@ -0,0 +1,92 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.latency.LatencyModel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+class LatencyModelParserTests {
+
+    @Test
+    void test_parse_percentile() {
+        Assertions.assertEquals(0.5, LatencyModelParser.parsePercentile("p50"), 1e-9);
+        Assertions.assertEquals(0.99, LatencyModelParser.parsePercentile("p99"), 1e-9);
+        Assertions.assertEquals(0.999, LatencyModelParser.parsePercentile("p999"), 1e-9);
+        Assertions.assertEquals(0.9999, LatencyModelParser.parsePercentile("p99.99"), 1e-9);
+        Assertions.assertEquals(1, LatencyModelParser.parsePercentile("p100"), 1e-9);
+    }
+
+    @Test
+    void test_fixed() {
+        Assertions.assertEquals(8000000L, LatencyModelParser.parseLatencyModel("8").sample());
+        Assertions.assertEquals(500000L, LatencyModelParser.parseLatencyModel("fixed(delay=0.5)").sample());
+        Assertions.assertEquals(250000L, LatencyModelParser.parseLatencyModel("250us").sample());
+        Assertions.assertEquals(800L, LatencyModelParser.parseLatencyModel("fixed(delay=800ns)").sample());
+    }
+
+    @Test
+    void test_empirical() {
+        LatencyModel model = LatencyModelParser.parseLatencyModel("empirical(p50=5,p99=40,p999=200)");
+        long[] samples = sample(model, 400000);
+        //p50之下从0插值, 不再集中在p50的值上
+        Assertions.assertTrue(samples[0] < 100000L);
+        Assertions.assertEquals(2500000L, samples[samples.length / 4], 200000L);
+        Assertions.assertEquals(5000000L, samples[samples.length / 2], 500000L);
+        Assertions.assertEquals(22500000L, samples[(int) (samples.length * 0.745)], 500000L);
+        Assertions.assertEquals(200000000L, samples[(int) (samples.length * 0.999)], 10000000L);
+        //p999之上外推: 斜率160ms / ln(10), p99.95约为200 + 69.5 * ln(2) = 248ms
+        Assertions.assertEquals(248000000L, samples[(int) (samples.length * 0.9995)], 20000000L);
+        Assertions.assertTrue(samples[samples.length - 1] > 250000000L);
+    }
+
+    @Test
+    void test_empirical_bounds() {
+        long[] capped = sample(LatencyModelParser.parseLatencyModel("empirical(p50=5,p99=40,p999=200,max=220)"), 200000);
+        Assertions.assertEquals(220000000L, capped[capped.length - 1]);
+        //p0与p100为硬边界
+        long[] bounded = sample(LatencyModelParser.parseLatencyModel("empirical(p0=2,p50=5,p100=10)"), 100000);
+        Assertions.assertTrue(bounded[0] >= 2000000L);
+        Assertions.assertTrue(bounded[bounded.length - 1] <= 10000000L);
+        Assertions.assertEquals(7500000L, bounded[(int) (bounded.length * 0.75)], 200000L);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LatencyModelParser.parseLatencyModel("empirical(p50=5,p99=40,max=30)"));
+    }
+
+    @Test
+    void test_lognormal() {
+        long[] samples = sample(LatencyModelParser.parseLatencyModel("lognormal(median=8,sigma=0.6)"), 200000);
+        Assertions.assertEquals(8000000L, samples[samples.length / 2], 200000L);
+    }
+
+    @Test
+    void test_uniform() {
+        long[] samples = sample(LatencyModelParser.parseLatencyModel("uniform(min=5,max=15)"), 100000);
+        Assertions.assertTrue(samples[0] >= 5000000L);
+        Assertions.assertTrue(samples[samples.length - 1] <= 15000000L);
+    }
+
+    @Test
+    void test_units() {
+        long[] samples = sample(LatencyModelParser.parseLatencyModel("uniform(min=200us,max=300us)"), 10000);
+        Assertions.assertTrue(samples[0] >= 200000L);
+        Assertions.assertTrue(samples[samples.length - 1] <= 300000L);
+        Assertions.assertEquals(1000000000L, LatencyModelParser.parseLatencyModel("1s").sample());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LatencyModelParser.parseLatencyModel("10min"));
+    }
+
+    @Test
+    void test_invalid() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LatencyModelParser.parseLatencyModel("gamma(k=1)"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LatencyModelParser.parseLatencyModel("normal(mean=1)"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LatencyModelParser.parseLatencyModel("empirical(p50=10,p99=5)"));
+    }
+
+    private static long[] sample(LatencyModel model, int count) {
+        long[] samples = new long[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = model.sample();
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+}
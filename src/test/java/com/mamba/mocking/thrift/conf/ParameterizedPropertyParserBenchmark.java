@@ -0,0 +1,32 @@
+package com.mamba.mocking.thrift.conf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParameterizedPropertyParserBenchmark {
+
+    @Param({"TBinaryProtocol", "TThreadedSelectorServer(async=true,selectorThreads=2,workerThreads=8,executor=fixed)", "empirical(p50=5,p90=12,p99=40,p999=200)"})
+    private String define;
+
+    @Benchmark
+    public Map<String, String> parse() {
+        return ParameterizedPropertyParser.parse(this.define, (name, attrs) -> attrs);
+    }
+}
@@ -0,0 +1,135 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.metrics.AcceptorStats;
+import org.apache.thrift.transport.TNonblockingSocket;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class ReusePortServerSocketTests {
+
+    private static final int CONNECTIONS = 32;
+
+    @Test
+    void test_reuse_port() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        CountingStats firstStats = new CountingStats(0);
+        CountingStats secondStats = new CountingStats(1);
+        ReusePortServerSocket first;
+        try {
+            first = new ReusePortServerSocket(port, firstStats);
+        } catch (TTransportException e) {
+            //Java 8没有SO_REUSEPORT, 启动时明确报错
+            Assertions.assertTrue(e.getMessage().contains("SO_REUSEPORT"), e.getMessage());
+            Assertions.assertTrue(System.getProperty("java.specification.version").startsWith("1."), e.getMessage());
+            return;
+        }
+        //两个实例监听同一端口, 由内核分配新连接
+        ReusePortServerSocket second = new ReusePortServerSocket(port, secondStats);
+        List<Socket> clients = new ArrayList<>();
+        List<TNonblockingSocket> accepted = new ArrayList<>();
+        try {
+            for (int i = 0; i < CONNECTIONS; i++) {
+                Socket client = new Socket();
+                client.connect(new InetSocketAddress("127.0.0.1", port));
+                clients.add(client);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (accepted.size() < CONNECTIONS && System.nanoTime() < deadline) {
+                for (ReusePortServerSocket acceptor : new ReusePortServerSocket[]{first, second}) {
+                    TNonblockingSocket socket = acceptor.acceptImpl();
+                    if (socket != null) {
+                        accepted.add(socket);
+                    }
+                }
+            }
+            Assertions.assertEquals(CONNECTIONS, accepted.size());
+            Assertions.assertEquals(CONNECTIONS, firstStats.connected.get() + secondStats.connected.get());
+            Assertions.assertTrue(firstStats.connected.get() > 0 && secondStats.connected.get() > 0, firstStats.connected + "/" + secondStats.connected);
+
+            //接受的连接统计读写字节数
+            Socket client = clients.get(0);
+            TNonblockingSocket socket = accepted.stream().filter(s -> s.getSocketChannel().socket().getPort() == client.getLocalPort()).findFirst().get();
+            OutputStream out = client.getOutputStream();
+            out.write(new byte[]{1, 2, 3});
+            out.flush();
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            while (buffer.position() < 3 && System.nanoTime() < deadline) {
+                socket.read(buffer);
+            }
+            Assertions.assertEquals(3, buffer.position());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                socket.write(buffer);
+            }
+            InputStream in = client.getInputStream();
+            Assertions.assertEquals(1, in.read());
+            Assertions.assertEquals(2, in.read());
+            Assertions.assertEquals(3, in.read());
+            Assertions.assertEquals(3, firstStats.read.get() + secondStats.read.get());
+            Assertions.assertEquals(3, firstStats.written.get() + secondStats.written.get());
+            //重复关闭只计一次
+            socket.close();
+            socket.close();
+            Assertions.assertEquals(1, firstStats.disconnected.get() + secondStats.disconnected.get());
+        } finally {
+            for (Socket client : clients) {
+                client.close();
+            }
+            for (TNonblockingSocket socket : accepted) {
+                socket.close();
+            }
+            first.close();
+            second.close();
+        }
+    }
+
+    private static class CountingStats extends AcceptorStats {
+
+        private final AtomicLong connected = new AtomicLong();
+
+        private final AtomicLong disconnected = new AtomicLong();
+
+        private final AtomicLong read = new AtomicLong();
+
+        private final AtomicLong written = new AtomicLong();
+
+        private CountingStats(int index) {
+            super(index);
+        }
+
+        @Override
+        public void connected() {
+            this.connected.incrementAndGet();
+        }
+
+        @Override
+        public void disconnected() {
+            this.disconnected.incrementAndGet();
+        }
+
+        @Override
+        public void read(long bytes) {
+            this.read.addAndGet(bytes);
+        }
+
+        @Override
+        public void written(long bytes) {
+            this.written.addAndGet(bytes);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.mamba.mocking.thrift.conf;
+
+import com.mamba.mocking.thrift.MockProcessorFactory;
+import com.mamba.mocking.thrift.MockStateTable;
+import com.mamba.mocking.thrift.accesslog.AccessLog;
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+class ScenarioManagerTests {
+
+    @Test
+    void test_switch() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("service.one.class", SharedService.class.getName());
+        props.setProperty("service.one.method.getStruct.retrun", "[{\"key\":1,\"value\":\"healthy\"}]");
+        props.setProperty("scenario.slow.service.one.method.getStruct.latency", "200");
+        props.setProperty("scenario", "slow");
+        ScenarioManager scenarioManager = new ScenarioManager(props, Collections.singletonMap("one", new MockProcessorFactory(SharedService.class)));
+        Assertions.assertTrue(scenarioManager.status().startsWith("active=slow\nscenarios=default,slow\n"));
+        scenarioManager.switchTo(ScenarioManager.DEFAULT_SCENARIO);
+        Assertions.assertTrue(scenarioManager.status().startsWith("active=default\n"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> scenarioManager.switchTo("unknown"));
+        Assertions.assertEquals(2, scenarioManager.audit().split("\n").length);
+    }
+
+    @Test
+    void test_override_invalid() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("service.one.class", SharedService.class.getName());
+        ScenarioManager scenarioManager = new ScenarioManager(props, Collections.singletonMap("one", new MockProcessorFactory(SharedService.class)));
+        Properties lines = new Properties();
+        lines.setProperty("server", "TSimpleServer");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> scenarioManager.override(lines));
+        lines.clear();
+        lines.setProperty("service.one.method.getStruct.retrun", "[{\"key\":\"x");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> scenarioManager.override(lines));
+        Assertions.assertEquals("active=default\nscenarios=default\n", scenarioManager.status());
+    }
+
+    @Test
+    void test_switch_atomic() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("service.one.class", SharedService.class.getName());
+        props.setProperty("service.two.class", SharedService.class.getName());
+        props.setProperty("scenario.slow.service.one.method.getStruct.latency", "200");
+        Map<String, MockProcessorFactory> processorFactoryMap = new HashMap<>();
+        TProcessorParser.parseProcessor(props, getClass().getClassLoader(), false, null, new MetricsRegistry(false, null), AccessLog.OFF, processorFactoryMap, "");
+        MockStateTable stateTable = processorFactoryMap.get("one").getStateTable();
+        int one = processorFactoryMap.get("one").getStateIndex();
+        int two = processorFactoryMap.get("two").getStateIndex();
+        MockProcessorFactory.MockState defaultOne = stateTable.get(one);
+        MockProcessorFactory.MockState defaultTwo = stateTable.get(two);
+        //基础场景直接使用已发布的state; 场景只为覆盖的service创建state, 其余共用
+        ScenarioManager scenarioManager = new ScenarioManager(props, processorFactoryMap);
+        Assertions.assertSame(defaultOne, stateTable.get(one));
+        scenarioManager.switchTo("slow");
+        Assertions.assertNotSame(defaultOne, stateTable.get(one));
+        Assertions.assertSame(defaultTwo, stateTable.get(two));
+        scenarioManager.switchTo(ScenarioManager.DEFAULT_SCENARIO);
+        Assertions.assertSame(defaultOne, stateTable.get(one));
+        Assertions.assertSame(defaultTwo, stateTable.get(two));
+    }
+
+    @Test
+    void test_lazy_deferred() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("startup", "lazy");
+        props.setProperty("service.one.class", SharedService.class.getName());
+        props.setProperty("service.two.class", SharedService.class.getName());
+        //lazy且未调用的service不解析返回值, 非法配置直到首次调用才报错
+        props.setProperty("service.two.method.getStruct.retrun", "[{\"key\":\"x");
+        props.setProperty("scenario.slow.service.one.method.getStruct.latency", "200");
+        props.setProperty("scenario.slow.service.two.method.getStruct.latency", "200");
+        Map<String, MockProcessorFactory> processorFactoryMap = new HashMap<>();
+        TProcessorParser.parseProcessor(props, getClass().getClassLoader(), false, null, new MetricsRegistry(false, null), AccessLog.OFF, processorFactoryMap, "");
+        MockStateTable stateTable = processorFactoryMap.get("one").getStateTable();
+        ScenarioManager scenarioManager = new ScenarioManager(props, processorFactoryMap);
+        scenarioManager.switchTo("slow");
+        Assertions.assertTrue(stateTable.isPending(processorFactoryMap.get("one").getStateIndex()));
+        Assertions.assertTrue(stateTable.isPending(processorFactoryMap.get("two").getStateIndex()));
+        Assertions.assertNull(stateTable.get(processorFactoryMap.get("two").getStateIndex()));
+    }
+}
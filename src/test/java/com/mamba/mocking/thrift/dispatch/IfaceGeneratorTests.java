@@ -0,0 +1,147 @@
+package com.mamba.mocking.thrift.dispatch;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class IfaceGeneratorTests {
+
+    public interface Iface {
+
+        void none() throws TException;
+
+        boolean getBoolean(boolean value) throws TException;
+
+        byte getByte(byte value) throws TException;
+
+        char getChar(char value) throws TException;
+
+        short getShort(short value) throws TException;
+
+        int getInt(int value) throws TException;
+
+        long getLong(long value) throws TException;
+
+        float getFloat(float value) throws TException;
+
+        double getDouble(double value) throws TException;
+
+        List<String> getList(List<String> value) throws TException;
+
+        //long/double占两个slot, 后续参数的slot要跟着偏移
+        String mixed(long a, int b, double c, String d, boolean e, float f) throws TException;
+    }
+
+    public interface AsyncIface {
+
+        void none(AsyncMethodCallback<Void> callback) throws TException;
+
+        void mixed(long a, String b, double c, AsyncMethodCallback<String> callback) throws TException;
+    }
+
+    @Test
+    void test_iface() throws Exception {
+        Map<String, Object[]> calls = new HashMap<>();
+        Map<String, Object> returns = new HashMap<>();
+        returns.put("getBoolean", true);
+        returns.put("getByte", (byte) -7);
+        returns.put("getChar", 'x');
+        returns.put("getShort", (short) -300);
+        returns.put("getInt", Integer.MIN_VALUE);
+        returns.put("getLong", Long.MAX_VALUE);
+        returns.put("getFloat", 1.5F);
+        returns.put("getDouble", -2.25D);
+        returns.put("getList", Arrays.asList("a", "b"));
+        returns.put("mixed", "mixed");
+        Iface iface = IfaceGenerator.newInstance(Iface.class, method -> (args, callback) -> {
+            Assertions.assertNull(callback);
+            calls.put(method.getName(), args);
+            return returns.get(method.getName());
+        });
+
+        iface.none();
+        Assertions.assertNull(calls.get("none"));
+        Assertions.assertTrue(calls.containsKey("none"));
+
+        Assertions.assertTrue(iface.getBoolean(false));
+        Assertions.assertArrayEquals(new Object[]{false}, calls.get("getBoolean"));
+        Assertions.assertEquals((byte) -7, iface.getByte((byte) 3));
+        Assertions.assertArrayEquals(new Object[]{(byte) 3}, calls.get("getByte"));
+        Assertions.assertEquals('x', iface.getChar('y'));
+        Assertions.assertArrayEquals(new Object[]{'y'}, calls.get("getChar"));
+        Assertions.assertEquals((short) -300, iface.getShort((short) 300));
+        Assertions.assertArrayEquals(new Object[]{(short) 300}, calls.get("getShort"));
+        Assertions.assertEquals(Integer.MIN_VALUE, iface.getInt(Integer.MAX_VALUE));
+        Assertions.assertArrayEquals(new Object[]{Integer.MAX_VALUE}, calls.get("getInt"));
+        Assertions.assertEquals(Long.MAX_VALUE, iface.getLong(Long.MIN_VALUE));
+        Assertions.assertArrayEquals(new Object[]{Long.MIN_VALUE}, calls.get("getLong"));
+        Assertions.assertEquals(1.5F, iface.getFloat(-0.5F));
+        Assertions.assertArrayEquals(new Object[]{-0.5F}, calls.get("getFloat"));
+        Assertions.assertEquals(-2.25D, iface.getDouble(Double.MAX_VALUE));
+        Assertions.assertArrayEquals(new Object[]{Double.MAX_VALUE}, calls.get("getDouble"));
+        Assertions.assertEquals(Arrays.asList("a", "b"), iface.getList(Arrays.asList("c")));
+        Assertions.assertArrayEquals(new Object[]{Arrays.asList("c")}, calls.get("getList"));
+        Assertions.assertEquals("mixed", iface.mixed(1L << 40, 2, 3.5D, "d", true, 4.5F));
+        Assertions.assertArrayEquals(new Object[]{1L << 40, 2, 3.5D, "d", true, 4.5F}, calls.get("mixed"));
+    }
+
+    @Test
+    void test_async_iface() throws Exception {
+        Map<String, Object[]> calls = new HashMap<>();
+        AsyncIface iface = IfaceGenerator.newInstance(AsyncIface.class, method -> (args, callback) -> {
+            calls.put(method.getName(), args);
+            callback.onComplete(method.getName());
+            return null;
+        });
+        Object[] results = new Object[2];
+        iface.none(new Callback<>(results, 0));
+        Assertions.assertTrue(calls.containsKey("none"));
+        Assertions.assertNull(calls.get("none"));
+        Assertions.assertEquals("none", results[0]);
+        iface.mixed(-1L, "b", 0.5D, new Callback<>(results, 1));
+        Assertions.assertArrayEquals(new Object[]{-1L, "b", 0.5D}, calls.get("mixed"));
+        Assertions.assertEquals("mixed", results[1]);
+    }
+
+    @Test
+    void test_exception() throws Exception {
+        Iface iface = IfaceGenerator.newInstance(Iface.class, method -> (args, callback) -> {
+            throw new TException(method.getName());
+        });
+        TException e = Assertions.assertThrows(TException.class, () -> iface.getInt(1));
+        Assertions.assertEquals("getInt", e.getMessage());
+    }
+
+    @Test
+    void test_invalid_iface() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> IfaceGenerator.newInstance(Object.class, method -> null));
+    }
+
+    private static class Callback<T> implements AsyncMethodCallback<T> {
+
+        private final Object[] results;
+
+        private final int index;
+
+        private Callback(Object[] results, int index) {
+            this.results = results;
+            this.index = index;
+        }
+
+        @Override
+        public void onComplete(T response) {
+            this.results[this.index] = response;
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            this.results[this.index] = exception;
+        }
+    }
+}
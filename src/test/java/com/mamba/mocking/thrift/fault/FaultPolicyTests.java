@@ -0,0 +1,37 @@
+package com.mamba.mocking.thrift.fault;
+
+import com.mamba.mocking.thrift.conf.FaultPolicyParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class FaultPolicyTests {
+
+    @Test
+    void test_random() {
+        FaultPolicy policy = FaultPolicyParser.parseFaultPolicy("random(error=10%,reset=0.05,truncate=5%)");
+        Assertions.assertEquals(FaultType.ERROR, policy.decide(0, 0.0));
+        Assertions.assertEquals(FaultType.ERROR, policy.decide(0, 0.099));
+        Assertions.assertEquals(FaultType.RESET, policy.decide(0, 0.11));
+        Assertions.assertEquals(FaultType.TRUNCATE, policy.decide(0, 0.19));
+        Assertions.assertNull(policy.decide(0, 0.2));
+        Assertions.assertTrue(policy.contains(FaultType.RESET));
+        Assertions.assertFalse(policy.contains(FaultType.EXCEPTION));
+    }
+
+    @Test
+    void test_burst() {
+        FaultPolicy policy = FaultPolicyParser.parseFaultPolicy("burst(period=60s,duration=5s,error=100%)");
+        Assertions.assertEquals(FaultType.ERROR, policy.decide(120000, 0.5));
+        Assertions.assertEquals(FaultType.ERROR, policy.decide(124999, 0.99));
+        Assertions.assertNull(policy.decide(125000, 0.0));
+        Assertions.assertNull(policy.decide(179999, 0.0));
+    }
+
+    @Test
+    void test_invalid() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FaultPolicyParser.parseFaultPolicy("random(error=60%,reset=50%)"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FaultPolicyParser.parseFaultPolicy("random(oops=1%)"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FaultPolicyParser.parseFaultPolicy("burst(error=1%)"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FaultPolicyParser.parseFaultPolicy("random(period=60s,error=1%)"));
+    }
+}
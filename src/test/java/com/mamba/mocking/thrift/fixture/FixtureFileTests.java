@@ -0,0 +1,110 @@
+package com.mamba.mocking.thrift.fixture;
+
+import com.mamba.mocking.thrift.conf.TProcessorParser;
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import com.mamba.mocking.thrift.sample.face.SharedStructIn;
+import com.mamba.mocking.thrift.sample.face.SharedStructOut;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+class FixtureFileTests {
+
+    private static final List<SharedStructOut> EXPECTED = Arrays.asList(new SharedStructOut(1, "first"), new SharedStructOut(2, "second"));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void test_json() throws Exception {
+        Path path = writeJson("get.json");
+        FixtureFile file = FixtureFile.open(path.toString());
+        //同一文件只映射一次, 解析结果按返回类型共享
+        Assertions.assertSame(file, FixtureFile.open(path.toString()));
+        Assertions.assertTrue(file.isJson());
+        FixtureValue first = new FixtureValue(file, returnType(), SharedService.getStruct_result.class);
+        FixtureValue second = new FixtureValue(FixtureFile.open(path.toString()), returnType(), SharedService.getStruct_result.class);
+        Assertions.assertEquals(EXPECTED, first.get());
+        Assertions.assertSame(first.get(), second.get());
+    }
+
+    @Test
+    void test_binary() throws Exception {
+        Path path = writeBinary("get.bin");
+        FixtureFile file = FixtureFile.open(path.toString());
+        Assertions.assertFalse(file.isJson());
+        Assertions.assertEquals(EXPECTED, new FixtureValue(file, returnType(), SharedService.getStruct_result.class).get());
+    }
+
+    @Test
+    void test_changed() throws Exception {
+        Path path = writeJson("changed.json");
+        FixtureFile file = FixtureFile.open(path.toString());
+        Files.write(path, "[]".getBytes(StandardCharsets.UTF_8));
+        FixtureFile changed = FixtureFile.open(path.toString());
+        Assertions.assertNotSame(file, changed);
+        Assertions.assertEquals(0, ((List<?>) new FixtureValue(changed, returnType(), null).get()).size());
+    }
+
+    @Test
+    void test_invalid() throws Exception {
+        Path path = this.dir.resolve("invalid.json");
+        Files.write(path, "[{\"key\":".getBytes(StandardCharsets.UTF_8));
+        //映射时不解析, 首次使用时报错, 之后返回同一个错误
+        FixtureValue value = new FixtureValue(FixtureFile.open(path.toString()), returnType(), null);
+        IllegalStateException error = Assertions.assertThrows(IllegalStateException.class, value::get);
+        Assertions.assertSame(error, Assertions.assertThrows(IllegalStateException.class, value::get));
+        Assertions.assertThrows(java.nio.file.NoSuchFileException.class, () -> FixtureFile.open(this.dir.resolve("missing.json").toString()));
+    }
+
+    @Test
+    void test_return_file() throws Exception {
+        //generated: 首次调用时解析; raw: 二进制文件直接作为预编码的响应写出
+        Assertions.assertEquals(EXPECTED, call(writeJson("generated.json"), "generated"));
+        Assertions.assertEquals(EXPECTED, call(writeBinary("generated.bin"), "generated"));
+        Assertions.assertEquals(EXPECTED, call(writeJson("raw.json"), "raw"));
+        Assertions.assertEquals(EXPECTED, call(writeBinary("raw.bin"), "raw"));
+    }
+
+    private List<SharedStructOut> call(Path path, String dispatch) throws Exception {
+        Properties props = new Properties();
+        props.setProperty("service.class", SharedService.class.getName());
+        props.setProperty("service.dispatch", dispatch);
+        props.setProperty("service.method.getStruct.returnFile", path.toString());
+        TProcessor processor = TProcessorParser.parseProcessor(props, getClass().getClassLoader());
+        TMemoryBuffer request = new TMemoryBuffer(64);
+        TMemoryBuffer response = new TMemoryBuffer(64);
+        SharedService.Client client = new SharedService.Client(new TBinaryProtocol(response), new TBinaryProtocol(request));
+        client.send_getStruct(1, "token", new SharedStructIn(1, "in"));
+        processor.process(new TBinaryProtocol(request), new TBinaryProtocol(response));
+        return client.recv_getStruct();
+    }
+
+    private Path writeJson(String name) throws Exception {
+        Path path = this.dir.resolve(name);
+        Files.write(path, "[{\"key\":1,\"value\":\"first\"},{\"key\":2,\"value\":\"second\"}]".getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private Path writeBinary(String name) throws Exception {
+        Path path = this.dir.resolve(name);
+        Files.write(path, new TSerializer(new TBinaryProtocol.Factory()).serialize(new SharedService.getStruct_result().setSuccess(EXPECTED)));
+        return path;
+    }
+
+    private static Type returnType() throws Exception {
+        return SharedService.Iface.class.getMethod("getStruct", int.class, String.class, SharedStructIn.class).getGenericReturnType();
+    }
+}
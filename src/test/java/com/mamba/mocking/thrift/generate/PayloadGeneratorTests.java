@@ -0,0 +1,31 @@
+package com.mamba.mocking.thrift.generate;
+
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import com.mamba.mocking.thrift.sample.face.SharedStructOut;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class PayloadGeneratorTests {
+
+    @Test
+    void test_generate() throws Exception {
+        Object[] values = new PayloadGenerator("list", 100, 2, 64, 4, true, 2, 0).generate(SharedService.class, "getStruct");
+        Assertions.assertEquals(2, values.length);
+        for (Object value : values) {
+            List<SharedStructOut> list = (List<SharedStructOut>) value;
+            Assertions.assertEquals(100, list.size());
+            for (SharedStructOut struct : list) {
+                Assertions.assertTrue(struct.isSetKey());
+                Assertions.assertEquals(64, struct.getValue().length());
+            }
+        }
+    }
+
+    @Test
+    void test_kind_mismatch() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PayloadGenerator("struct", 1, 1, 1, 1, true, 1, 0).generate(SharedService.class, "getStruct"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PayloadGenerator("auto", 1, 1, 1, 1, true, 1, 0).generate(SharedService.class, "getStruct1"));
+    }
+}
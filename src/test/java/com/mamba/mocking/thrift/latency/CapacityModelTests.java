@@ -0,0 +1,42 @@
+package com.mamba.mocking.thrift.latency;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class CapacityModelTests {
+
+    private static final long SERVICE_TIME = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    void test_queue() {
+        CapacityModel model = new CapacityModel(2, 1, Long.MAX_VALUE, false);
+        Assertions.assertTrue(model.admit());
+        Assertions.assertEquals(0, model.reserve(SERVICE_TIME));
+        Assertions.assertEquals(0, model.reserve(SERVICE_TIME));
+        //两个server都忙, 队列还有一个位置
+        Assertions.assertTrue(model.admit());
+        Assertions.assertEquals(SERVICE_TIME, model.reserve(SERVICE_TIME), TimeUnit.SECONDS.toNanos(1));
+        Assertions.assertFalse(model.admit());
+    }
+
+    @Test
+    void test_no_queue() {
+        CapacityModel model = new CapacityModel(1, 0, Long.MAX_VALUE, true);
+        Assertions.assertTrue(model.admit());
+        model.reserve(SERVICE_TIME);
+        Assertions.assertFalse(model.admit());
+        Assertions.assertTrue(model.isReset());
+    }
+
+    @Test
+    void test_timeout() {
+        CapacityModel model = new CapacityModel(1, Integer.MAX_VALUE, TimeUnit.SECONDS.toNanos(1), false);
+        model.reserve(TimeUnit.MILLISECONDS.toNanos(500));
+        //排队约500ms, 未超过timeout
+        Assertions.assertTrue(model.admit());
+        model.reserve(SERVICE_TIME);
+        Assertions.assertFalse(model.admit());
+    }
+}
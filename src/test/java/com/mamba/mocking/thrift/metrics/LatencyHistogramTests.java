@@ -0,0 +1,49 @@
+package com.mamba.mocking.thrift.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTests {
+
+    @Test
+    void test_index() {
+        for (long value : new long[]{0, 1, 127, 128, 129, 255, 256, 1000, 123456789, 1L << 39}) {
+            int index = LatencyHistogram.index(value);
+            Assertions.assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+            Assertions.assertTrue(index == 0 || LatencyHistogram.highestEquivalentValue(index - 1) < value);
+        }
+    }
+
+    @Test
+    void test_percentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assertions.assertEquals(10000, snapshot.getCount());
+        Assertions.assertEquals(5000500, snapshot.getMean(), 1e-6);
+        Assertions.assertEquals(5000000, snapshot.getPercentile(0.5), 5000000 / 64);
+        Assertions.assertEquals(9900000, snapshot.getPercentile(0.99), 9900000 / 64);
+        Assertions.assertEquals(10000000, snapshot.getPercentile(1));
+        Assertions.assertEquals(10000000, snapshot.getMax());
+
+        histogram.reset();
+        Assertions.assertEquals(0, histogram.snapshot().getCount());
+        Assertions.assertEquals(0, histogram.snapshot().getPercentile(0.99));
+    }
+
+    @Test
+    void test_expected_interval() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000, 1000);
+        }
+        //一次100倍的停顿补记为100000, 99000, ..., 1000共100个值
+        histogram.record(100000, 1000);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assertions.assertEquals(199, snapshot.getCount());
+        Assertions.assertEquals(51000, snapshot.getPercentile(0.75), 51000 / 64);
+        Assertions.assertEquals(100000, snapshot.getMax());
+    }
+}
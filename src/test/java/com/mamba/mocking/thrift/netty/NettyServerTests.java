@@ -0,0 +1,434 @@
+package com.mamba.mocking.thrift.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakDetectorFactory;
+import org.apache.thrift.TAsyncProcessor;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.server.AbstractNonblockingServer.AsyncFrameBuffer;
+import org.apache.thrift.server.ServerContext;
+import org.apache.thrift.server.TServerEventHandler;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class NettyServerTests {
+
+    private static final String LEAK_HINT = "NettyServerTests.leak";
+
+    private static final AtomicInteger LEAKS = new AtomicInteger();
+
+    private static final AtomicInteger EXPECTED_LEAKS = new AtomicInteger();
+
+    static {
+        //AbstractByteBuf类初始化时创建检测器, 需要在使用任何ByteBuf之前设置
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        ResourceLeakDetectorFactory.setResourceLeakDetectorFactory(new ResourceLeakDetectorFactory() {
+            @Override
+            public <T> ResourceLeakDetector<T> newResourceLeakDetector(Class<T> resource, int samplingInterval, long maxActive) {
+                return new ResourceLeakDetector<T>(resource, samplingInterval) {
+                    @Override
+                    protected void reportTracedLeak(String resourceType, String records) {
+                        (records.contains(LEAK_HINT) ? EXPECTED_LEAKS : LEAKS).incrementAndGet();
+                        super.reportTracedLeak(resourceType, records);
+                    }
+
+                    @Override
+                    protected void reportUntracedLeak(String resourceType) {
+                        LEAKS.incrementAndGet();
+                        super.reportUntracedLeak(resourceType);
+                    }
+                };
+            }
+        });
+    }
+
+    //参数: 1: i32 响应大小, 2: i32 处理延迟(毫秒), 3: binary 填充; 响应: 0: binary, 每个字节为seqid
+    private static final TProcessor SYNC_PROCESSOR = (in, out) -> {
+        TMessage message = in.readMessageBegin();
+        int[] args = readArgs(in);
+        sleep(args[1]);
+        if (message.type != TMessageType.ONEWAY) {
+            writeReply(out, message, args[0]);
+        }
+    };
+
+    @Test
+    void test_leak_detector() throws Exception {
+        //确认检测器已生效, 否则其它用例的泄漏检查没有意义
+        PooledByteBufAllocator.DEFAULT.directBuffer(16).touch(LEAK_HINT);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (EXPECTED_LEAKS.get() == 0 && System.nanoTime() < deadline) {
+            collectLeaks();
+        }
+        Assertions.assertTrue(EXPECTED_LEAKS.get() > 0);
+    }
+
+    @Test
+    void test_framed() throws Exception {
+        try (Server server = new Server(true, SYNC_PROCESSOR, null)) {
+            exchange(server);
+        }
+        assertNoLeaks();
+    }
+
+    @Test
+    void test_unframed() throws Exception {
+        try (Server server = new Server(false, SYNC_PROCESSOR, null)) {
+            exchange(server);
+        }
+        assertNoLeaks();
+    }
+
+    @Test
+    void test_executor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (Server server = new Server(true, SYNC_PROCESSOR, executor)) {
+            pipeline(server);
+            disconnect(server);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertNoLeaks();
+    }
+
+    @Test
+    void test_async() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            for (boolean framed : new boolean[]{true, false}) {
+                try (Server server = new Server(framed, new AsyncProcessor(scheduler), null)) {
+                    pipeline(server);
+                    disconnect(server);
+                }
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+        assertNoLeaks();
+    }
+
+    @Test
+    void test_process_context_error() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        TServerEventHandler eventHandler = new TServerEventHandler() {
+            @Override
+            public void preServe() {
+            }
+
+            @Override
+            public ServerContext createContext(TProtocol input, TProtocol output) {
+                return new ServerContext() {
+                };
+            }
+
+            @Override
+            public void deleteContext(ServerContext serverContext, TProtocol input, TProtocol output) {
+            }
+
+            @Override
+            public void processContext(ServerContext serverContext, TTransport inputTransport, TTransport outputTransport) {
+                if (failing.get()) {
+                    throw new IllegalStateException("failed");
+                }
+            }
+        };
+        try (Server server = new Server(true, SYNC_PROCESSOR, null)) {
+            server.server.setServerEventHandler(eventHandler);
+            //异常关闭连接, 已读取的请求帧与后续缓存的请求都要释放
+            try (Client client = new Client(server)) {
+                client.out.write(concat(client.request(TMessageType.CALL, 1, 10, 0, 100), client.request(TMessageType.CALL, 2, 10, 0, 100)));
+                Assertions.assertEquals(-1, client.in.read());
+            }
+            failing.set(false);
+            try (Client client = new Client(server)) {
+                client.call(3, 10, 10);
+            }
+        }
+        assertNoLeaks();
+    }
+
+    //分多次到达的请求, 一次写入的多个请求(含oneway), 大于初始输出buffer的响应
+    private static void exchange(Server server) throws Exception {
+        try (Client client = new Client(server)) {
+            byte[] request = client.request(TMessageType.CALL, 1, 100, 0, 5000);
+            int[] splits = {0, 2, 3, 5, 1000, request.length};
+            for (int i = 1; i < splits.length; i++) {
+                client.out.write(request, splits[i - 1], splits[i] - splits[i - 1]);
+                client.out.flush();
+                Thread.sleep(20);
+            }
+            client.read(1, 100);
+            client.out.write(concat(concat(client.request(TMessageType.CALL, 2, 10, 0, 0), client.request(TMessageType.ONEWAY, 3, 10, 0, 0)), client.request(TMessageType.CALL, 4, 20, 0, 0)));
+            client.read(2, 10);
+            client.read(4, 20);
+            client.call(5, 1 << 20, 1 << 16);
+        }
+    }
+
+    //处理时间不同的多个请求仍按请求顺序响应
+    private static void pipeline(Server server) throws Exception {
+        try (Client client = new Client(server)) {
+            client.out.write(concat(concat(client.request(TMessageType.CALL, 1, 100, 100, 10), client.request(TMessageType.ONEWAY, 2, 10, 30, 0)), client.request(TMessageType.CALL, 3, 200, 0, 10)));
+            client.read(1, 100);
+            client.read(3, 200);
+        }
+    }
+
+    //请求处理中客户端断开, 处理完成后仍要释放请求与响应buffer, 不影响其它连接
+    private static void disconnect(Server server) throws Exception {
+        try (Client client = new Client(server)) {
+            client.out.write(concat(client.request(TMessageType.CALL, 1, 100, 200, 10), client.request(TMessageType.CALL, 2, 100, 0, 10)));
+            Thread.sleep(50);
+        }
+        Thread.sleep(300);
+        try (Client client = new Client(server)) {
+            client.call(3, 10, 10);
+        }
+    }
+
+    private static void assertNoLeaks() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            collectLeaks();
+        }
+        Assertions.assertEquals(0, LEAKS.get());
+    }
+
+    //检测器在分配时检查已回收未释放的对象
+    private static void collectLeaks() throws InterruptedException {
+        System.gc();
+        Thread.sleep(100);
+        for (int i = 0; i < 16; i++) {
+            ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(16);
+            buf.release();
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static int[] readArgs(TProtocol in) throws TException {
+        int[] args = new int[2];
+        in.readStructBegin();
+        for (; ; ) {
+            TField field = in.readFieldBegin();
+            if (field.type == TType.STOP) {
+                break;
+            }
+            if (field.id == 1 || field.id == 2) {
+                args[field.id - 1] = in.readI32();
+            } else {
+                TProtocolUtil.skip(in, field.type);
+            }
+            in.readFieldEnd();
+        }
+        in.readStructEnd();
+        in.readMessageEnd();
+        return args;
+    }
+
+    private static void writeReply(TProtocol out, TMessage message, int responseSize) throws TException {
+        byte[] body = new byte[responseSize];
+        Arrays.fill(body, (byte) message.seqid);
+        out.writeMessageBegin(new TMessage(message.name, TMessageType.REPLY, message.seqid));
+        out.writeStructBegin(new TStruct("result"));
+        out.writeFieldBegin(new TField("success", TType.STRING, (short) 0));
+        out.writeBinary(ByteBuffer.wrap(body));
+        out.writeFieldEnd();
+        out.writeFieldStop();
+        out.writeStructEnd();
+        out.writeMessageEnd();
+        out.getTransport().flush();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    private static class AsyncProcessor implements TProcessor, TAsyncProcessor {
+
+        private final ScheduledExecutorService scheduler;
+
+        private AsyncProcessor(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void process(TProtocol in, TProtocol out) throws TException {
+            SYNC_PROCESSOR.process(in, out);
+        }
+
+        //同TBaseAsyncProcessor: oneway立即responseReady, 否则在其它线程写响应
+        @Override
+        public void process(AsyncFrameBuffer frameBuffer) throws TException {
+            TMessage message = frameBuffer.getInputProtocol().readMessageBegin();
+            int[] args = readArgs(frameBuffer.getInputProtocol());
+            if (message.type == TMessageType.ONEWAY) {
+                frameBuffer.responseReady();
+                return;
+            }
+            this.scheduler.schedule(() -> {
+                try {
+                    writeReply(frameBuffer.getOutputProtocol(), message, args[0]);
+                    frameBuffer.responseReady();
+                } catch (TException e) {
+                    frameBuffer.close();
+                }
+            }, args[1], TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static class Server implements AutoCloseable {
+
+        private final NettyServer server;
+
+        private final Thread thread;
+
+        private final int port;
+
+        private final boolean framed;
+
+        private Server(boolean framed, TProcessor processor, ExecutorService executor) throws Exception {
+            try (ServerSocket serverSocket = new ServerSocket(0)) {
+                this.port = serverSocket.getLocalPort();
+            }
+            this.framed = framed;
+            this.server = new NettyServer(new NettyServer.Args(new NettyServerTransport(this.port)).ioThreads(1).executor(executor)
+                    .processor(processor).transportFactory(framed ? new TFramedTransport.Factory() : new TTransportFactory()).protocolFactory(new TBinaryProtocol.Factory()));
+            this.thread = new Thread(this.server::serve, "netty-server-test");
+            this.thread.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!this.server.isServing() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(this.server.isServing());
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            this.server.stop();
+            this.thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private static class Client implements AutoCloseable {
+
+        private final Socket socket;
+
+        private final boolean framed;
+
+        private final OutputStream out;
+
+        private final DataInputStream in;
+
+        private Client(Server server) throws IOException {
+            this.socket = new Socket("127.0.0.1", server.port);
+            this.socket.setTcpNoDelay(true);
+            this.framed = server.framed;
+            this.out = this.socket.getOutputStream();
+            this.in = new DataInputStream(this.socket.getInputStream());
+        }
+
+        private void call(int seqid, int responseSize, int padding) throws Exception {
+            this.out.write(request(TMessageType.CALL, seqid, responseSize, 0, padding));
+            read(seqid, responseSize);
+        }
+
+        private byte[] request(byte type, int seqid, int responseSize, int delay, int padding) throws TException {
+            TMemoryBuffer buffer = new TMemoryBuffer(padding + 64);
+            TProtocol protocol = new TBinaryProtocol(buffer);
+            protocol.writeMessageBegin(new TMessage("call", type, seqid));
+            protocol.writeStructBegin(new TStruct("args"));
+            protocol.writeFieldBegin(new TField("responseSize", TType.I32, (short) 1));
+            protocol.writeI32(responseSize);
+            protocol.writeFieldEnd();
+            protocol.writeFieldBegin(new TField("delay", TType.I32, (short) 2));
+            protocol.writeI32(delay);
+            protocol.writeFieldEnd();
+            protocol.writeFieldBegin(new TField("padding", TType.STRING, (short) 3));
+            protocol.writeBinary(ByteBuffer.wrap(new byte[padding]));
+            protocol.writeFieldEnd();
+            protocol.writeFieldStop();
+            protocol.writeStructEnd();
+            protocol.writeMessageEnd();
+            byte[] message = Arrays.copyOf(buffer.getArray(), buffer.length());
+            if (!this.framed) {
+                return message;
+            }
+            return concat(ByteBuffer.allocate(4).putInt(message.length).array(), message);
+        }
+
+        private void read(int seqid, int responseSize) throws Exception {
+            TProtocol protocol;
+            if (this.framed) {
+                byte[] frame = new byte[this.in.readInt()];
+                this.in.readFully(frame);
+                protocol = new TBinaryProtocol(new TMemoryInputTransport(frame));
+            } else {
+                protocol = new TBinaryProtocol(new TIOStreamTransport(this.in));
+            }
+            TMessage message = protocol.readMessageBegin();
+            Assertions.assertEquals(TMessageType.REPLY, message.type);
+            Assertions.assertEquals(seqid, message.seqid);
+            protocol.readStructBegin();
+            TField field = protocol.readFieldBegin();
+            Assertions.assertEquals(0, field.id);
+            ByteBuffer body = protocol.readBinary();
+            protocol.readFieldEnd();
+            Assertions.assertEquals(TType.STOP, protocol.readFieldBegin().type);
+            protocol.readStructEnd();
+            protocol.readMessageEnd();
+            Assertions.assertEquals(responseSize, body.remaining());
+            int mismatches = 0;
+            while (body.hasRemaining()) {
+                if (body.get() != (byte) seqid) {
+                    mismatches++;
+                }
+            }
+            Assertions.assertEquals(0, mismatches);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.socket.close();
+        }
+    }
+}
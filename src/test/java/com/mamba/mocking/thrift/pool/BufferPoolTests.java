@@ -0,0 +1,42 @@
+package com.mamba.mocking.thrift.pool;
+
+import com.mamba.mocking.thrift.metrics.BufferPoolStats;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+class BufferPoolTests {
+
+    @Test
+    void test_reuse() {
+        BufferPoolStats stats = new BufferPoolStats("test");
+        BufferPool pool = new BufferPool(1 << 20, 4 << 10, stats);
+        ByteBuffer buffer = pool.acquire(3000);
+        Assertions.assertTrue(buffer.isDirect());
+        Assertions.assertEquals(4096, buffer.capacity());
+        Assertions.assertEquals(3000, buffer.limit());
+        pool.release(buffer);
+        Assertions.assertSame(buffer, pool.acquire(2049));
+        Assertions.assertEquals(1, stats.getHits());
+        Assertions.assertEquals(1, stats.getMisses());
+        //超过最大规格时不入池
+        ByteBuffer large = pool.acquire((1 << 20) + 1);
+        Assertions.assertFalse(large.isDirect());
+        pool.release(large);
+        Assertions.assertEquals(1, stats.getUnpooled());
+    }
+
+    @Test
+    void test_bound() {
+        BufferPoolStats stats = new BufferPoolStats("test");
+        BufferPool pool = new BufferPool(1 << 20, 4 << 10, stats);
+        ByteBuffer first = pool.acquire(4096);
+        ByteBuffer second = pool.acquire(1024);
+        pool.release(first);
+        pool.release(second);
+        Assertions.assertEquals(4096, pool.getPooledBytes());
+        Assertions.assertEquals(4096, stats.getPooledBytes());
+        Assertions.assertEquals(1, stats.getDrops());
+    }
+}
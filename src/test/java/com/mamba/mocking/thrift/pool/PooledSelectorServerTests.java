@@ -0,0 +1,311 @@
+package com.mamba.mocking.thrift.pool;
+
+import com.mamba.mocking.thrift.metrics.BufferPoolStats;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.server.ServerContext;
+import org.apache.thrift.server.TServerEventHandler;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.apache.thrift.transport.TTransport;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class PooledSelectorServerTests {
+
+    private static final int MAX_POOLED_SIZE = 64 << 10;
+
+    //请求参数: i32 响应大小, i32 处理延迟(毫秒), binary 填充; 响应: binary, 每个字节为seqid
+    private static final TProcessor PROCESSOR = (in, out) -> {
+        TMessage message = in.readMessageBegin();
+        int responseSize = in.readI32();
+        int delay = in.readI32();
+        in.readBinary();
+        in.readMessageEnd();
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (message.type == TMessageType.ONEWAY) {
+            return;
+        }
+        byte[] body = new byte[responseSize];
+        Arrays.fill(body, (byte) message.seqid);
+        out.writeMessageBegin(new TMessage(message.name, TMessageType.REPLY, message.seqid));
+        out.writeBinary(ByteBuffer.wrap(body));
+        out.writeMessageEnd();
+        out.getTransport().flush();
+    };
+
+    @Test
+    void test_partial_read() throws Exception {
+        try (Server server = new Server(null); Socket socket = server.connect()) {
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            //帧头与帧体都分多次到达
+            byte[] frame = request(TMessageType.CALL, 1, 100, 0, 5000);
+            int[] splits = {0, 2, 3, 5, 1000, frame.length};
+            for (int i = 1; i < splits.length; i++) {
+                out.write(frame, splits[i - 1], splits[i] - splits[i - 1]);
+                out.flush();
+                Thread.sleep(20);
+            }
+            readResponse(in, 1, 100);
+            //一次写入中的两个请求按顺序响应
+            byte[] second = request(TMessageType.CALL, 2, 10, 0, 0);
+            byte[] third = request(TMessageType.CALL, 3, 20, 0, 0);
+            out.write(concat(second, third));
+            out.flush();
+            readResponse(in, 2, 10);
+            readResponse(in, 3, 20);
+        }
+    }
+
+    @Test
+    void test_partial_write() throws Exception {
+        try (Server server = new Server(null); Socket socket = new Socket()) {
+            //接收端不读取时server的一次write写不完, 需要等待OP_WRITE
+            socket.setReceiveBufferSize(4096);
+            socket.connect(server.address());
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(request(TMessageType.CALL, 1, 4 << 20, 0, 0));
+            out.flush();
+            Thread.sleep(300);
+            readResponse(in, 1, 4 << 20);
+            out.write(request(TMessageType.CALL, 2, 10, 0, 0));
+            out.flush();
+            readResponse(in, 2, 10);
+        }
+    }
+
+    @Test
+    void test_oneway() throws Exception {
+        try (Server server = new Server(null); Socket socket = server.connect()) {
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(concat(request(TMessageType.ONEWAY, 1, 100, 0, 0), request(TMessageType.CALL, 2, 10, 0, 0)));
+            out.flush();
+            //oneway没有响应, 第一个响应即为第二个请求的
+            readResponse(in, 2, 10);
+            server.awaitPooled(server.awaitStable());
+        }
+    }
+
+    @Test
+    void test_pool_release() throws Exception {
+        try (Server server = new Server(null); Socket socket = server.connect()) {
+            //超过OUTPUT_CAPACITY: 输出buffer从池中扩容; 首次调用后池中的buffer即可满足, 之后同样的调用不改变池中容量
+            call(socket, 1, 10 << 10, 10 << 10);
+            long baseline = server.awaitStable();
+            for (int i = 2; i < 5; i++) {
+                call(socket, i, 10 << 10, 10 << 10);
+                server.awaitPooled(baseline);
+            }
+            Assertions.assertEquals(0, server.stats.getUnpooled());
+            //超过maxPooledSize: 请求帧与响应使用heap buffer, 不入池
+            call(socket, 5, MAX_POOLED_SIZE * 2, MAX_POOLED_SIZE * 2);
+            baseline = server.awaitStable();
+            call(socket, 6, MAX_POOLED_SIZE * 2, MAX_POOLED_SIZE * 2);
+            server.awaitPooled(baseline);
+            Assertions.assertTrue(server.stats.getUnpooled() >= 4);
+            Assertions.assertEquals(0, server.stats.getDrops());
+        }
+    }
+
+    @Test
+    void test_close_while_processing() throws Exception {
+        Server server = new Server(null);
+        try (Socket socket = server.connect()) {
+            call(socket, 1, 100, 100);
+            long baseline = server.awaitStable();
+            OutputStream out = socket.getOutputStream();
+            out.write(request(TMessageType.CALL, 2, 100, 300, 100));
+            out.flush();
+            Thread.sleep(100);
+            //selector线程退出时关闭处理中的连接, worker完成后仍要归还请求帧与响应buffer
+            server.close();
+            Assertions.assertEquals(-1, socket.getInputStream().read());
+            server.awaitPooled(baseline);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void test_process_context_error() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        AtomicInteger deleted = new AtomicInteger();
+        TServerEventHandler eventHandler = new TServerEventHandler() {
+            @Override
+            public void preServe() {
+            }
+
+            @Override
+            public ServerContext createContext(TProtocol input, TProtocol output) {
+                return new ServerContext() {
+                };
+            }
+
+            @Override
+            public void deleteContext(ServerContext serverContext, TProtocol input, TProtocol output) {
+                deleted.incrementAndGet();
+            }
+
+            @Override
+            public void processContext(ServerContext serverContext, TTransport inputTransport, TTransport outputTransport) {
+                if (failing.get()) {
+                    throw new IllegalStateException("failed");
+                }
+            }
+        };
+        try (Server server = new Server(eventHandler)) {
+            //processContext的异常只关闭所在连接, selector线程继续服务其它连接
+            try (Socket socket = server.connect()) {
+                socket.getOutputStream().write(request(TMessageType.CALL, 2, 10, 0, 0));
+                Assertions.assertEquals(-1, socket.getInputStream().read());
+            }
+            failing.set(false);
+            try (Socket socket = server.connect()) {
+                call(socket, 3, 10, 10);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (deleted.get() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(2, deleted.get());
+        }
+    }
+
+    private static void call(Socket socket, int seqid, int responseSize, int padding) throws Exception {
+        OutputStream out = socket.getOutputStream();
+        out.write(request(TMessageType.CALL, seqid, responseSize, 0, padding));
+        out.flush();
+        readResponse(new DataInputStream(socket.getInputStream()), seqid, responseSize);
+    }
+
+    private static byte[] request(byte type, int seqid, int responseSize, int delay, int padding) throws TException {
+        TMemoryBuffer buffer = new TMemoryBuffer(padding + 64);
+        TProtocol protocol = new TBinaryProtocol(buffer);
+        protocol.writeMessageBegin(new TMessage("call", type, seqid));
+        protocol.writeI32(responseSize);
+        protocol.writeI32(delay);
+        protocol.writeBinary(ByteBuffer.wrap(new byte[padding]));
+        protocol.writeMessageEnd();
+        byte[] frame = new byte[4 + buffer.length()];
+        ByteBuffer.wrap(frame).putInt(buffer.length()).put(buffer.getArray(), 0, buffer.length());
+        return frame;
+    }
+
+    private static void readResponse(DataInputStream in, int seqid, int responseSize) throws Exception {
+        byte[] frame = new byte[in.readInt()];
+        in.readFully(frame);
+        TProtocol protocol = new TBinaryProtocol(new TMemoryInputTransport(frame));
+        TMessage message = protocol.readMessageBegin();
+        Assertions.assertEquals(TMessageType.REPLY, message.type);
+        Assertions.assertEquals(seqid, message.seqid);
+        ByteBuffer body = protocol.readBinary();
+        Assertions.assertEquals(responseSize, body.remaining());
+        int mismatches = 0;
+        while (body.hasRemaining()) {
+            if (body.get() != (byte) seqid) {
+                mismatches++;
+            }
+        }
+        Assertions.assertEquals(0, mismatches);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    private static class Server implements AutoCloseable {
+
+        private final BufferPoolStats stats = new BufferPoolStats("test");
+
+        private final PooledSelectorServer server;
+
+        private final Thread thread;
+
+        private final int port;
+
+        private Server(TServerEventHandler eventHandler) throws Exception {
+            TNonblockingServerSocket serverSocket = new TNonblockingServerSocket(new InetSocketAddress("127.0.0.1", 0));
+            this.port = serverSocket.getPort();
+            this.server = new PooledSelectorServer(new PooledSelectorServer.Args(serverSocket).selectorThreads(1).workerThreads(2).maxPooledSize(MAX_POOLED_SIZE).poolBytes(16 << 20)
+                    .processor(PROCESSOR).transportFactory(new TFramedTransport.Factory()).protocolFactory(new TBinaryProtocol.Factory()));
+            this.server.setBufferPoolStats(this.stats);
+            if (eventHandler != null) {
+                this.server.setServerEventHandler(eventHandler);
+            }
+            this.thread = new Thread(this.server::serve, "pooled-server-test");
+            this.thread.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!this.server.isServing() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(this.server.isServing());
+        }
+
+        private InetSocketAddress address() {
+            return new InetSocketAddress("127.0.0.1", this.port);
+        }
+
+        private Socket connect() throws Exception {
+            Socket socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address());
+            return socket;
+        }
+
+        //响应写出后才归还buffer, 客户端收到响应时可能还没归还
+        private long awaitStable() throws InterruptedException {
+            long pooledBytes = this.server.getPool().getPooledBytes();
+            for (int i = 0; i < 100; i++) {
+                Thread.sleep(50);
+                long current = this.server.getPool().getPooledBytes();
+                if (current == pooledBytes) {
+                    return current;
+                }
+                pooledBytes = current;
+            }
+            return pooledBytes;
+        }
+
+        private void awaitPooled(long expected) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (this.server.getPool().getPooledBytes() != expected && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(expected, this.server.getPool().getPooledBytes());
+            Assertions.assertEquals(expected, this.stats.getPooledBytes());
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            this.server.stop();
+            this.thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mamba.mocking.thrift.recording;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+class ReplayStoreTests {
+
+    @Test
+    void test_put_get_reopen(@TempDir File dir) throws Exception {
+        File file = new File(dir, "replay.dat");
+        try (ReplayStore store = ReplayStore.open(file, 256, false)) {
+            for (int i = 0; i < 100; i++) {
+                byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+                byte[] value = ("value" + i).getBytes(StandardCharsets.UTF_8);
+                Assertions.assertTrue(store.put(key, key.length, value, value.length));
+            }
+            byte[] key = "key1".getBytes(StandardCharsets.UTF_8);
+            Assertions.assertFalse(store.put(key, key.length, key, key.length));
+            Assertions.assertEquals(100, store.size());
+        }
+        //256字节的段只能放下十几条记录, 需要跨段
+        Assertions.assertTrue(file.length() > 256);
+        try (ReplayStore store = ReplayStore.open(file, 0, true)) {
+            Assertions.assertEquals(100, store.size());
+            for (int i = 0; i < 100; i++) {
+                byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+                Assertions.assertEquals("value" + i, toString(store.get(key, key.length)));
+            }
+            byte[] key = "key100".getBytes(StandardCharsets.UTF_8);
+            Assertions.assertNull(store.get(key, key.length));
+        }
+    }
+
+    private static String toString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
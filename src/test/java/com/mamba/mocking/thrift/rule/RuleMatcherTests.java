@@ -0,0 +1,53 @@
+package com.mamba.mocking.thrift.rule;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+class RuleMatcherTests {
+
+    private static final String[] ARG_NAMES = {"id", "name", "attrs", "tags"};
+
+    @Test
+    void test_match() throws Exception {
+        String rules = "["
+                + "{\"when\":{\"id\":{\"gt\":100},\"name\":{\"regex\":\"^vip.*\"}},\"id\":\"vip\"},"
+                + "{\"when\":{\"id\":1,\"name\":\"a\"},\"id\":\"1a\"},"
+                + "{\"when\":{\"id\":{\"in\":[1,2,3]}},\"id\":\"123\"},"
+                + "{\"when\":{\"attrs.level\":5,\"tags.0\":\"x\"},\"id\":\"level5\"},"
+                + "{\"when\":{\"3\":{\"exists\":false}},\"id\":\"notags\"},"
+                + "{\"id\":\"default\"}"
+                + "]";
+        RuleMatcher<String> matcher = RuleParser.parseRules(rules, ARG_NAMES, argTypes(), rule -> rule.get("id").getAsString());
+        Assertions.assertEquals("1a", matcher.match(args(1L, "a", null, Collections.emptyList())));
+        Assertions.assertEquals("123", matcher.match(args(1L, "b", null, Collections.emptyList())));
+        Assertions.assertEquals("123", matcher.match(args(3L, "a", null, Collections.emptyList())));
+        Assertions.assertEquals("vip", matcher.match(args(101L, "vip-1", null, Collections.emptyList())));
+        Assertions.assertEquals("level5", matcher.match(args(7L, "b", Collections.singletonMap("level", 5), Arrays.asList("x", "y"))));
+        Assertions.assertEquals("notags", matcher.match(args(7L, "b", null, null)));
+        Assertions.assertEquals("default", matcher.match(args(7L, "b", null, Collections.emptyList())));
+    }
+
+    @Test
+    void test_declaration_order() throws Exception {
+        String rules = "[{\"when\":{\"id\":{\"lte\":10}},\"id\":\"scan\"},{\"when\":{\"id\":5},\"id\":\"index\"}]";
+        RuleMatcher<String> matcher = RuleParser.parseRules(rules, ARG_NAMES, argTypes(), rule -> rule.get("id").getAsString());
+        Assertions.assertEquals("scan", matcher.match(args(5L, "a", null, null)));
+        Assertions.assertNull(matcher.match(args(11L, "a", null, null)));
+    }
+
+    private static Object[] args(long id, String name, Map<String, Integer> attrs, List<String> tags) {
+        return new Object[]{id, name, attrs, tags};
+    }
+
+    private static Type[] argTypes() throws Exception {
+        Method method = RuleMatcherTests.class.getDeclaredMethod("args", long.class, String.class, Map.class, List.class);
+        return method.getGenericParameterTypes();
+    }
+}
@@ -0,0 +1,47 @@
+package com.mamba.mocking.thrift.template;
+
+import com.mamba.mocking.thrift.sample.face.SharedService;
+import com.mamba.mocking.thrift.sample.face.SharedStructIn;
+import com.mamba.mocking.thrift.sample.face.SharedStructOut;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+class ResponseTemplateTests {
+
+    private static final String[] ARG_NAMES = {"key", "token", "input"};
+
+    @Test
+    void test_render() throws Exception {
+        ResponseTemplate template = compile("[{\"key\":\"${arg.key}\",\"value\":\"${arg.input.value}-${counter}\"},{\"key\":7,\"value\":\"const\"}]");
+        Object[] args = {11, "token", new SharedStructIn(1, "abc")};
+        List<SharedStructOut> first = (List<SharedStructOut>) template.render(args);
+        List<SharedStructOut> second = (List<SharedStructOut>) template.render(args);
+        Assertions.assertEquals(new SharedStructOut(11, "abc-1"), first.get(0));
+        Assertions.assertEquals(new SharedStructOut(11, "abc-2"), second.get(0));
+        //不含变量的元素共享同一个对象
+        Assertions.assertEquals(new SharedStructOut(7, "const"), first.get(1));
+        Assertions.assertSame(first.get(1), second.get(1));
+    }
+
+    @Test
+    void test_escape() throws Exception {
+        ResponseTemplate template = compile("[{\"key\":\"${counter}\",\"value\":\"$${counter}\"}]");
+        List<SharedStructOut> result = (List<SharedStructOut>) template.render(new Object[3]);
+        Assertions.assertEquals(new SharedStructOut(1, "${counter}"), result.get(0));
+    }
+
+    @Test
+    void test_invalid() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> compile("[{\"key\":\"${oops}\"}]"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> compile("[{\"key\":\"${arg.missing}\"}]"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> compile("[{\"key\":\"${counter\"}]"));
+    }
+
+    private static ResponseTemplate compile(String json) throws Exception {
+        Method method = SharedService.Iface.class.getMethod("getStruct", int.class, String.class, SharedStructIn.class);
+        return ResponseTemplate.compile(json, method.getGenericReturnType(), ARG_NAMES, method.getGenericParameterTypes());
+    }
+}
@@ -0,0 +1,146 @@
+package com.mamba.mocking.thrift.timer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class HashedWheelTimerTests {
+
+    @Test
+    void test_deadline_order() throws Exception {
+        try (HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 16)) {
+            List<Integer> fired = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(5);
+            //倒序提交, 按到期时间执行; 相邻任务相差多个tick
+            for (int i = 5; i > 0; i--) {
+                int index = i;
+                timer.newTimeout(() -> {
+                    fired.add(index);
+                    latch.countDown();
+                }, i * 10, TimeUnit.MILLISECONDS);
+            }
+            Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, fired.get(0).intValue());
+            Assertions.assertEquals(2, fired.get(1).intValue());
+            Assertions.assertEquals(3, fired.get(2).intValue());
+            Assertions.assertEquals(4, fired.get(3).intValue());
+            Assertions.assertEquals(5, fired.get(4).intValue());
+        }
+    }
+
+    @Test
+    void test_never_early() throws Exception {
+        //延迟不是tick的整数倍时向后取整, 不会提前执行
+        try (HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8)) {
+            long[] delays = {1, 5, 9, 11, 15, 19, 21, 25, 33};
+            long[] elapsed = new long[delays.length];
+            CountDownLatch latch = new CountDownLatch(delays.length);
+            for (int i = 0; i < delays.length; i++) {
+                int index = i;
+                long start = System.nanoTime();
+                timer.newTimeout(() -> {
+                    elapsed[index] = System.nanoTime() - start;
+                    latch.countDown();
+                }, delays[i], TimeUnit.MILLISECONDS);
+            }
+            Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < delays.length; i++) {
+                Assertions.assertTrue(elapsed[i] >= TimeUnit.MILLISECONDS.toNanos(delays[i]), "delay " + delays[i] + "ms fired after " + elapsed[i] + "ns");
+            }
+        }
+    }
+
+    @Test
+    void test_multiple_rounds() throws Exception {
+        //一圈为8 * 5ms = 40ms, 超过一圈的任务要等remainingRounds减到0
+        try (HashedWheelTimer timer = new HashedWheelTimer("test-timer", 5, TimeUnit.MILLISECONDS, 8)) {
+            long[] delays = {10, 50, 130, 170};
+            long[] elapsed = new long[delays.length];
+            List<Long> fired = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(delays.length);
+            for (int i = delays.length - 1; i >= 0; i--) {
+                int index = i;
+                long start = System.nanoTime();
+                timer.newTimeout(() -> {
+                    elapsed[index] = System.nanoTime() - start;
+                    fired.add(delays[index]);
+                    latch.countDown();
+                }, delays[i], TimeUnit.MILLISECONDS);
+            }
+            Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < delays.length; i++) {
+                Assertions.assertTrue(elapsed[i] >= TimeUnit.MILLISECONDS.toNanos(delays[i]), "delay " + delays[i] + "ms fired after " + elapsed[i] + "ns");
+                Assertions.assertEquals(delays[i], fired.get(i).longValue());
+            }
+        }
+    }
+
+    @Test
+    void test_schedule_in_task() throws Exception {
+        try (HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 16)) {
+            int depth = 5;
+            long delay = 12;
+            CountDownLatch latch = new CountDownLatch(depth);
+            long start = System.nanoTime();
+            //任务内提交的新任务在下一个tick转入时间轮, 同样不会提前执行
+            timer.newTimeout(new Runnable() {
+                private int count;
+
+                @Override
+                public void run() {
+                    latch.countDown();
+                    if (++this.count < depth) {
+                        timer.newTimeout(this, delay, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(depth * delay));
+        }
+    }
+
+    @Test
+    void test_idle_no_spin() throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assertions.assertTrue(threadMXBean.isThreadCpuTimeSupported());
+        //tick与自旋窗口相同: 旧实现每个tick都整段自旋, 空闲时占满一个核
+        try (HashedWheelTimer timer = new HashedWheelTimer("idle-timer", 100, TimeUnit.MICROSECONDS, 64, TimeUnit.MICROSECONDS.toNanos(100))) {
+            long threadId = Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals("idle-timer")).findFirst().get().getId();
+            CountDownLatch latch = new CountDownLatch(1);
+            timer.newTimeout(latch::countDown, 1, TimeUnit.MILLISECONDS);
+            Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            long cpuStart = threadMXBean.getThreadCpuTime(threadId);
+            long start = System.nanoTime();
+            Thread.sleep(300);
+            long cpu = threadMXBean.getThreadCpuTime(threadId) - cpuStart;
+            long wall = System.nanoTime() - start;
+            Assertions.assertTrue(cpu < wall / 4, "idle timer used " + cpu + "ns cpu in " + wall + "ns");
+            //空闲后新任务仍不会提前执行
+            long delay = TimeUnit.MILLISECONDS.toNanos(2);
+            long[] elapsed = new long[1];
+            CountDownLatch second = new CountDownLatch(1);
+            long submitted = System.nanoTime();
+            timer.newTimeout(() -> {
+                elapsed[0] = System.nanoTime() - submitted;
+                second.countDown();
+            }, delay, TimeUnit.NANOSECONDS);
+            Assertions.assertTrue(second.await(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(elapsed[0] >= delay);
+        }
+    }
+
+    @Test
+    void test_close() {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 16);
+        timer.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> timer.newTimeout(() -> {
+        }, 1, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,62 @@
+package com.mamba.mocking.thrift.timer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class WaitStrategiesTests {
+
+    @Test
+    void test_precise_await() throws Exception {
+        WaitStrategy waitStrategy = WaitStrategies.precise(TimeUnit.MICROSECONDS.toNanos(50), TimeUnit.MICROSECONDS.toNanos(100));
+        for (long delay : new long[]{TimeUnit.MICROSECONDS.toNanos(300), TimeUnit.MILLISECONDS.toNanos(2)}) {
+            long start = System.nanoTime();
+            waitStrategy.await(delay);
+            Assertions.assertTrue(System.nanoTime() - start >= delay);
+        }
+        long start = System.nanoTime();
+        waitStrategy.await(-1);
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void test_precise_schedule() throws Exception {
+        WaitStrategy waitStrategy = WaitStrategies.precise(TimeUnit.MICROSECONDS.toNanos(50), TimeUnit.MICROSECONDS.toNanos(100));
+        //时间轮空闲park后, 新任务仍按时执行且不会提前
+        Thread.sleep(50);
+        long delay = TimeUnit.MILLISECONDS.toNanos(3);
+        AtomicLong elapsed = new AtomicLong();
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        waitStrategy.schedule(delay, () -> {
+            elapsed.set(System.nanoTime() - start);
+            latch.countDown();
+        });
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(elapsed.get() >= delay);
+        //不大于0时在当前线程执行
+        Thread[] thread = new Thread[1];
+        waitStrategy.schedule(0, () -> thread[0] = Thread.currentThread());
+        Assertions.assertSame(Thread.currentThread(), thread[0]);
+    }
+
+    @Test
+    void test_precise_invalid() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WaitStrategies.precise(-1, 100000));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WaitStrategies.precise(50000, 0));
+    }
+
+    @Test
+    void test_reporting() throws Exception {
+        WaitStrategy waitStrategy = WaitStrategies.reporting(WaitStrategies.sleep(), TimeUnit.SECONDS.toNanos(60));
+        long start = System.nanoTime();
+        waitStrategy.await(TimeUnit.MILLISECONDS.toNanos(5));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5));
+        CountDownLatch latch = new CountDownLatch(1);
+        waitStrategy.schedule(TimeUnit.MILLISECONDS.toNanos(5), latch::countDown);
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,44 @@
+package com.mamba.mocking.thrift.transport;
+
+import com.mamba.mocking.thrift.metrics.MetricsRegistry;
+import com.mamba.mocking.thrift.metrics.TransportMetrics;
+import org.apache.thrift.server.ServerContext;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TTransport;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TransportEventHandlerTests {
+
+    @Test
+    void test_settle() throws Exception {
+        TransportMetrics metrics = new MetricsRegistry(false, null).transport("test");
+        TransportEventHandler handler = new TransportEventHandler(metrics);
+        //两个10字节的帧
+        TMemoryBuffer client = new TMemoryBuffer(64);
+        TTransport framed = new TFramedTransport(client);
+        framed.write(new byte[10]);
+        framed.flush();
+        framed.write(new byte[10]);
+        framed.flush();
+        TTransport in = new CountingTransport.Factory(new TFramedTransport.Factory()).getTransport(client);
+        TTransport out = new CountingTransport(new TMemoryBuffer(64));
+        ServerContext context = handler.createContext(null, null);
+        for (int i = 0; i < 2; i++) {
+            handler.processContext(context, in, out);
+            in.readAll(new byte[10], 0, 10);
+            out.write(new byte[3]);
+        }
+        //blocking server在EOF之前的回调, 没有读到数据, 不计为请求
+        handler.processContext(context, in, out);
+        Assertions.assertEquals(1, metrics.getOpenConnections());
+        handler.deleteContext(context, null, null);
+        Assertions.assertEquals(0, metrics.getOpenConnections());
+        Assertions.assertEquals(1, metrics.getClosedConnections());
+        Assertions.assertEquals(2, metrics.getRequests());
+        Assertions.assertEquals(20, metrics.getBytesIn());
+        Assertions.assertEquals(6, metrics.getBytesOut());
+        Assertions.assertEquals(2, metrics.getRequestsPerConnectionMean());
+    }
+}